@@ -0,0 +1,108 @@
+package io.github.cszach.Trailblazer.benchmarks;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import io.github.cszach.Trailblazer.geo.Geography;
+import io.github.cszach.Trailblazer.geo.GeographyBuilder;
+import io.github.cszach.Trailblazer.synthetic.MapGenerator;
+import io.github.cszach.Trailblazer.synthetic.Topology;
+
+/**
+ * The maps that the benchmarks run on, by the name of their {@code map} parameter.
+ *
+ * <p>
+ * A name such as {@code ur} or {@code monroe} is the map data file of that name in the {@code data}
+ * folder of the repository, looked up from the repository or from this module. A name of the form
+ * {@code <TOPOLOGY>-<COUNT>}, such as {@code perturbed-grid-1000000}, is a map that
+ * {@code MapGenerator} generates with a fixed seed, which is written once to the temporary
+ * directory for the benchmarks that import it, and added directly to a {@code GeographyBuilder} for
+ * the others.
+ */
+final class BenchmarkMaps {
+  private static final long SEED = 42;
+
+  private BenchmarkMaps() {}
+
+  /**
+   * Returns the generator of a generated map.
+   *
+   * @param name the name of the map
+   * @return the generator of the map, or {@code null} if the map is not generated.
+   */
+  private static MapGenerator getGenerator(String name) {
+    int separator = name.lastIndexOf('-');
+
+    for (Topology topology : Topology.values()) {
+      if (separator > 0 && name.substring(0, separator).equals(topology.toString())) {
+        return new MapGenerator(topology, Integer.parseInt(name.substring(separator + 1)), SEED);
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Returns the path of the map data file of a map, generating it if needed.
+   *
+   * @param name the name of the map
+   * @return the path of the map data file.
+   * @throws FileNotFoundException when no map data file has the name.
+   * @throws IOException when the generated file cannot be written.
+   */
+  static String getPath(String name) throws IOException {
+    MapGenerator generator = getGenerator(name);
+
+    if (generator != null) {
+      Path path = Path.of(System.getProperty("java.io.tmpdir"), "trailblazer-" + name + ".txt");
+
+      if (!Files.isRegularFile(path)) {
+        // Written aside and moved into place, so that an interrupted run leaves no partial map
+        Path temporaryPath = Files.createTempFile(path.getParent(), "trailblazer-", ".tmp");
+
+        generator.write(temporaryPath.toString());
+        Files.move(temporaryPath, path, StandardCopyOption.ATOMIC_MOVE);
+      }
+
+      return path.toString();
+    }
+
+    for (String directory : new String[] {"data", "../data"}) {
+      Path path = Path.of(directory, name + ".txt");
+
+      if (Files.isRegularFile(path)) {
+        return path.toString();
+      }
+    }
+
+    throw new FileNotFoundException("data/" + name + ".txt (No such file)");
+  }
+
+  /**
+   * Loads a map.
+   *
+   * @param name the name of the map
+   * @return the map.
+   * @throws IOException when the map data file cannot be found or read.
+   */
+  static Geography load(String name) throws IOException {
+    MapGenerator generator = getGenerator(name);
+
+    if (generator != null) {
+      GeographyBuilder builder = new GeographyBuilder();
+
+      generator.generateInto(builder);
+
+      return builder.build();
+    }
+
+    Geography geo = new Geography();
+
+    geo.importFromFile(getPath(name));
+
+    return geo;
+  }
+}
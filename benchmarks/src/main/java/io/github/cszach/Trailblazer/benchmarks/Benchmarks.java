@@ -0,0 +1,38 @@
+package io.github.cszach.Trailblazer.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the JMH command line options, such as {@code -p map=ur} or a regular
+ * expression of the benchmarks to run.
+ *
+ * <p>
+ * Unless other profilers are given with {@code -prof}, the GC profiler is added, so that every
+ * result comes with the allocation rate ({@code gc.alloc.rate.norm} is the bytes allocated per
+ * operation) and the time spent collecting garbage next to its throughput.
+ */
+public final class Benchmarks {
+  private Benchmarks() {}
+
+  public static void main(String[] args) throws Exception {
+    CommandLineOptions options = new CommandLineOptions(args);
+
+    if (options.shouldHelp() || options.shouldList() || options.shouldListWithParams()
+        || options.shouldListProfilers() || options.shouldListResultFormats()) {
+      org.openjdk.jmh.Main.main(args);
+      return;
+    }
+
+    ChainedOptionsBuilder builder = new OptionsBuilder().parent(options);
+
+    if (options.getProfilers().isEmpty()) {
+      builder.addProfiler(GCProfiler.class);
+    }
+
+    new Runner(builder.build()).run();
+  }
+}
@@ -0,0 +1,49 @@
+package io.github.cszach.Trailblazer.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.github.cszach.Trailblazer.geo.Geography;
+
+/**
+ * Measures {@code Geography.importFromFile}: parsing a map data file and building its graph.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class ImportBenchmark {
+  @Param({"ur", "monroe", "perturbed-grid-1000000"})
+  public String map;
+
+  private String path;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    this.path = BenchmarkMaps.getPath(this.map);
+  }
+
+  @Benchmark
+  public Geography importFromFile() throws IOException {
+    Geography geo = new Geography();
+
+    geo.importFromFile(this.path);
+
+    return geo;
+  }
+}
@@ -0,0 +1,73 @@
+package io.github.cszach.Trailblazer.benchmarks;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.github.cszach.Trailblazer.gui.MapPanel;
+import io.github.cszach.Trailblazer.projection.WebMercatorProjection;
+
+/**
+ * Measures {@code MapPanel.paintComponent}, by painting the whole map offscreen into a
+ * {@code BufferedImage} of the size of the default window. The panel is never shown, so this runs
+ * headless.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-Djava.awt.headless=true"})
+public class PaintBenchmark {
+  private static final int WIDTH = 1280;
+  private static final int HEIGHT = 800;
+
+  @Param({"ur", "monroe", "perturbed-grid-1000000"})
+  public String map;
+
+  private MapPanel panel;
+  private BufferedImage image;
+  private Graphics2D graphics;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    this.panel =
+        new MapPanel(BenchmarkMaps.load(this.map), new WebMercatorProjection(WIDTH, HEIGHT, 0));
+    this.panel.setSize(WIDTH, HEIGHT);
+    this.panel.setRoute(null);
+    this.panel.setAlternativeRoutes(null);
+    this.panel.setShortestPathTree(null);
+    this.panel.project();
+    this.panel.resetView();
+
+    this.image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+    this.graphics = this.image.createGraphics();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    this.graphics.dispose();
+  }
+
+  @Benchmark
+  public BufferedImage paint() {
+    this.panel.paint(this.graphics);
+
+    return this.image;
+  }
+}
@@ -0,0 +1,58 @@
+package io.github.cszach.Trailblazer.benchmarks;
+
+import java.awt.Point;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.github.cszach.Trailblazer.geo.RoadGraph;
+import io.github.cszach.Trailblazer.projection.WebMercatorProjection;
+
+/**
+ * Measures the projection of every intersection of a map, as {@code MapPanel.project} does it on
+ * every zoom.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class ProjectionBenchmark {
+  @Param({"ur", "monroe", "perturbed-grid-1000000"})
+  public String map;
+
+  private RoadGraph graph;
+  private WebMercatorProjection projection;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    this.graph = BenchmarkMaps.load(this.map).getGraph();
+    this.projection = new WebMercatorProjection(1280, 800, 12);
+  }
+
+  @Benchmark
+  public void projectMap(Blackhole blackhole) {
+    int n = this.graph.getIntersectionCount();
+
+    for (int i = 0; i < n; i++) {
+      Point point = this.projection.project(this.graph.getLatitude(i), this.graph.getLongtitude(i));
+
+      blackhole.consume(point.x);
+      blackhole.consume(point.y);
+    }
+  }
+}
@@ -0,0 +1,113 @@
+package io.github.cszach.Trailblazer.benchmarks;
+
+import java.io.IOException;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.github.cszach.Trailblazer.geo.RoadGraph;
+import io.github.cszach.Trailblazer.routing.Algorithm;
+import io.github.cszach.Trailblazer.routing.ContractionHierarchy;
+import io.github.cszach.Trailblazer.routing.ContractionHierarchyBuilder;
+import io.github.cszach.Trailblazer.routing.Route;
+import io.github.cszach.Trailblazer.routing.RoutingEngine;
+
+/**
+ * Measures {@code RoutingEngine.findShortestPath} between random pairs of connected intersections.
+ *
+ * <p>
+ * The pairs are drawn once per trial from a fixed seed, so that every algorithm answers the same
+ * queries, and are cycled through in order. The preprocessing of {@code alt}, {@code ch}, and
+ * {@code crp} happens in the setup, and is not measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class RoutingBenchmark {
+  /**
+   * The number of pairs to cycle through.
+   */
+  private static final int PAIR_COUNT = 1024;
+  private static final long SEED = 42;
+
+  @Param({"ur", "monroe", "perturbed-grid-1000000"})
+  public String map;
+
+  @Param({"dijkstra", "bidirectional", "crp"})
+  public String algorithm;
+
+  private RoutingEngine engine;
+  private Algorithm searchAlgorithm;
+  private int[] startIntersections;
+  private int[] endIntersections;
+  private int next = 0;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    RoadGraph graph = BenchmarkMaps.load(this.map).getGraph();
+
+    this.searchAlgorithm = Algorithm.fromName(this.algorithm);
+
+    ContractionHierarchy hierarchy =
+        this.searchAlgorithm == Algorithm.CH ? new ContractionHierarchyBuilder(graph).build()
+            : null;
+
+    this.engine = new RoutingEngine(graph, hierarchy);
+
+    switch (this.searchAlgorithm) {
+      case ALT:
+        this.engine.getLandmarks();
+        break;
+
+      case CRP:
+        this.engine.getOverlayMetric();
+        break;
+
+      default:
+    }
+
+    SplittableRandom random = new SplittableRandom(SEED);
+    int n = graph.getIntersectionCount();
+
+    this.startIntersections = new int[PAIR_COUNT];
+    this.endIntersections = new int[PAIR_COUNT];
+
+    for (int i = 0; i < PAIR_COUNT; i++) {
+      int start;
+      int end;
+
+      do {
+        start = random.nextInt(n);
+        end = random.nextInt(n);
+      } while (!this.engine.getComponents().areConnected(start, end));
+
+      this.startIntersections[i] = start;
+      this.endIntersections[i] = end;
+    }
+  }
+
+  @Benchmark
+  public Route findShortestPath() {
+    int i = this.next;
+
+    this.next = (i + 1) % PAIR_COUNT;
+
+    return this.engine.findShortestPath(this.startIntersections[i], this.endIntersections[i],
+        this.searchAlgorithm);
+  }
+}
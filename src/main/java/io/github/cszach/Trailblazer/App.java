@@ -1,15 +1,51 @@
 package io.github.cszach.Trailblazer;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.FileNotFoundException;
-import java.util.LinkedList;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
+import io.github.cszach.Trailblazer.geo.ImportStatistics;
 import io.github.cszach.Trailblazer.geo.Intersection;
-import io.github.cszach.Trailblazer.geo.Road;
 import io.github.cszach.Trailblazer.geo.Geography;
+import io.github.cszach.Trailblazer.geo.GeographyBuilder;
+import io.github.cszach.Trailblazer.geo.GeographySnapshot;
+import io.github.cszach.Trailblazer.geo.Road;
+import io.github.cszach.Trailblazer.geo.RoadChains;
+import io.github.cszach.Trailblazer.geo.RoadGraph;
+import io.github.cszach.Trailblazer.geo.RoadUpdateStatistics;
+import io.github.cszach.Trailblazer.geo.RoadUpdates;
 import io.github.cszach.Trailblazer.gui.MapPanel;
 import io.github.cszach.Trailblazer.gui.AppWindow;
+import io.github.cszach.Trailblazer.metrics.Metrics;
+import io.github.cszach.Trailblazer.osm.OsmImporter;
 import io.github.cszach.Trailblazer.projection.WebMercatorProjection;
+import io.github.cszach.Trailblazer.routing.Algorithm;
+import io.github.cszach.Trailblazer.routing.ConnectedComponents;
+import io.github.cszach.Trailblazer.routing.ContractionHierarchy;
+import io.github.cszach.Trailblazer.routing.ContractionHierarchyBuilder;
+import io.github.cszach.Trailblazer.routing.DistanceMatrixWriter;
+import io.github.cszach.Trailblazer.routing.OverlayMetric;
+import io.github.cszach.Trailblazer.routing.QueueType;
+import io.github.cszach.Trailblazer.routing.Route;
+import io.github.cszach.Trailblazer.routing.RouteCache;
+import io.github.cszach.Trailblazer.routing.RoutingEngine;
+import io.github.cszach.Trailblazer.routing.ShortestPathTree;
+import io.github.cszach.Trailblazer.server.RoutingServer;
+import io.github.cszach.Trailblazer.spatial.KdTree;
+import io.github.cszach.Trailblazer.synthetic.MapGenerator;
+import io.github.cszach.Trailblazer.synthetic.Topology;
 
 /** The main application */
 public class App {
@@ -18,93 +54,458 @@ public class App {
    *
    * @param args an array of command line arguments. Accepted options are
    *        <ul>
-   *        <li>{@code <MAP>}: the path of the map data file, which must be the first argument. The
-   *        other options can be specified in any order;
+   *        <li>{@code <MAP>}: the path of the map data file, which may be gzip-compressed and must
+   *        be the first argument unless {@code --load-snapshot} or {@code --generate} is present.
+   *        OpenStreetMap extracts ({@code .osm.pbf}, {@code .osm}, or {@code .osm.gz}) are also
+   *        accepted. The other options can be specified in any order;
+   *        <li>{@code --load-snapshot <SNAPSHOT>}: load the map from a binary snapshot file instead
+   *        of a map data file;
+   *        <li>{@code --save-snapshot <SNAPSHOT>}: write the loaded map to a binary snapshot file;
+   *        <li>{@code --generate <TOPOLOGY> <COUNT> <SEED>}: generate a map of {@code <COUNT>}
+   *        intersections instead of loading one, where {@code <TOPOLOGY>} is {@code grid},
+   *        {@code perturbed-grid}, or {@code random-geometric}; the same seed always gives the same
+   *        map. Its contraction hierarchy is kept in the current directory, named after these three
+   *        values;
+   *        <li>{@code --bounds <MINLAT> <MINLON> <MAXLAT> <MAXLON>}: the bounds of the generated
+   *        map, in degrees, which default to those of the state of New York;
+   *        <li>{@code --write-map <FILE>}: write the generated map to a map data file, which is
+   *        gzip-compressed if its name ends with {@code .gz}, instead of loading it, and exit;
    *        <li>{@code --show}: display the map in GUI mode;
    *        <li>{@code --directions <INTERSECTION1> <INTERSECTION2>}: print the intersections that
    *        form the shortest path between {@code <INTERSECTION1>} and {@code <INTERSECTION2>},
    *        which is indicated on the GUI if {@code --show} is present;
+   *        <li>{@code --directions-latlon <LAT1> <LON1> <LAT2> <LON2>}: like {@code --directions},
+   *        between the intersections nearest to two points, given by their latitudes and
+   *        longtitudes in degrees;
+   *        <li>{@code --algorithm <ALGORITHM>}: the algorithm that {@code --directions} searches
+   *        with: {@code dijkstra} (the default), {@code astar}, {@code alt}, {@code bidirectional},
+   *        {@code ch}, or {@code crp}. The contraction hierarchy that {@code ch} needs is kept next
+   *        to the map file (or snapshot) with an extension of {@code .ch}, and is built when
+   *        missing or stale; the overlay that {@code crp} needs is built on startup;
+   *        <li>{@code --stats}: print the number of intersections, roads, and connected components
+   *        of the map, the size of the largest component, and every island, that is, every other
+   *        component;
+   *        <li>{@code --batch <QUERIES>}: answer every query of the file {@code <QUERIES>}, one
+   *        pair of intersection IDs per line, in parallel, and print the directions of each in the
+   *        format of {@code --directions}, separated by blank lines and in the order of the file;
+   *        <li>{@code --repl}: read queries from the standard input, one pair of intersection IDs
+   *        per line, and print the directions of each as soon as it is read, until the end of the
+   *        input or a line of {@code quit}. A line of {@code update <ROAD> <MILES> ...} changes the
+   *        distances of roads at once, where {@code <MILES>} can be {@code closed} to close the
+   *        road;
+   *        <li>{@code --serve <PORT>}: answer route, nearest intersection, and distance matrix
+   *        queries as JSON over HTTP on {@code <PORT>}, until the process is stopped;
+   *        <li>{@code --alternatives <COUNT>}: also print up to {@code <COUNT>} alternatives to the
+   *        route that {@code --directions} finds, each with its mileage; they are drawn in other
+   *        colors on the GUI if {@code --show} is present;
+   *        <li>{@code --queue <QUEUE>}: the priority queue of the search: {@code heap} (the
+   *        default), an indexed 4-ary heap, or {@code radix}, a radix heap;
+   *        <li>{@code --isochrone <INTERSECTION> <MILES>}: print every intersection within
+   *        {@code <MILES>} miles of {@code <INTERSECTION>} by road, nearest first, with its
+   *        distance; the area is indicated on the GUI if {@code --show} is present;
+   *        <li>{@code --matrix <SOURCES> <TARGETS> <OUTPUT>}: write the road distance from every
+   *        intersection listed in the file {@code <SOURCES>} to every intersection listed in the
+   *        file {@code <TARGETS>}, one ID per line, to {@code <OUTPUT>}, as CSV if its name ends
+   *        with {@code .csv} and in binary otherwise;
+   *        <li>{@code --compress}: fold every chain of intersections with two roads each into a
+   *        single road of a smaller core graph, which point-to-point queries search instead; with
+   *        {@code ch}, the hierarchy of the core graph is kept with an extension of
+   *        {@code .core.ch};
+   *        <li>{@code --metrics}: count and time the searches, the phases of the import, and the
+   *        projection of the map, and print the counters and latency histograms on exit;
+   *        <li>{@code --metrics-interval <SECONDS>}: like {@code --metrics}, and also print them
+   *        every {@code <SECONDS>} seconds;
    *        <li>{@code --debug}: turn on debugging mode, which draws a bounding box around the map
    *        on the GUI panel.
    *        </ul>
    */
   public static void main(String[] args) {
-    Geography geo = new Geography();
+    // Options' values
+    String mapPath = null;
+    String loadSnapshotPath = null;
+    Topology generatedTopology = null;
+    int generatedIntersectionCount = 0;
+    long generatedSeed = 0;
+    double[] generatedBounds = null;
+    String writeMapPath = null;
+    String saveSnapshotPath = null;
+    boolean show = false;
+    String startIntersectionId = null;
+    String endIntersectionId = null;
+    double[] directionsCoordinates = null;
+    Algorithm algorithm = Algorithm.DIJKSTRA;
+    QueueType queueType = QueueType.HEAP;
+    int alternativeCount = 0;
+    String batchPath = null;
+    boolean repl = false;
+    int servePort = -1;
+    boolean printsStatistics = false;
+    String[] matrixPaths = null;
+    String isochroneSourceId = null;
+    double isochroneCutoff = 0;
+    boolean compresses = false;
+    boolean reportsMetrics = false;
+    long metricsInterval = 0;
+    boolean debugging = false;
 
-    try {
-      geo.importFromFile(args[0]);
-    } catch (ArrayIndexOutOfBoundsException exception) {
+    // Parse command line arguments
+
+    for (int i = 0; i < args.length; i++) {
+      try {
+        switch (args[i]) {
+          case "--load-snapshot":
+            loadSnapshotPath = args[++i];
+
+            break;
+
+          case "--generate":
+            generatedTopology = Topology.fromName(args[++i]);
+            generatedIntersectionCount = Integer.parseInt(args[++i]);
+            generatedSeed = Long.parseLong(args[++i]);
+
+            break;
+
+          case "--bounds":
+            generatedBounds = new double[4];
+
+            for (int j = 0; j < 4; j++) {
+              generatedBounds[j] = Double.parseDouble(args[++i]);
+            }
+
+            break;
+
+          case "--write-map":
+            writeMapPath = args[++i];
+
+            break;
+
+          case "--save-snapshot":
+            saveSnapshotPath = args[++i];
+
+            break;
+
+          case "--show":
+            show = true;
+
+            break;
+
+          case "--directions":
+            startIntersectionId = args[++i];
+            endIntersectionId = args[++i];
+
+            break;
+
+          case "--directions-latlon":
+            directionsCoordinates = new double[4];
+
+            for (int j = 0; j < 4; j++) {
+              directionsCoordinates[j] = Double.parseDouble(args[++i]);
+            }
+
+            if (!isValidPoint(directionsCoordinates[0], directionsCoordinates[1])
+                || !isValidPoint(directionsCoordinates[2], directionsCoordinates[3])) {
+              throw new IllegalArgumentException("Invalid coordinates");
+            }
+
+            break;
+
+          case "--algorithm":
+            algorithm = Algorithm.fromName(args[++i]);
+
+            break;
+
+          case "--stats":
+            printsStatistics = true;
+
+            break;
+
+          case "--batch":
+            batchPath = args[++i];
+
+            break;
+
+          case "--repl":
+            repl = true;
+
+            break;
+
+          case "--serve":
+            servePort = Integer.parseInt(args[++i]);
+
+            if (servePort < 0 || servePort > 65535) {
+              throw new IllegalArgumentException("Invalid port");
+            }
+
+            break;
+
+          case "--alternatives":
+            alternativeCount = Integer.parseInt(args[++i]);
+
+            if (alternativeCount < 0) {
+              throw new IllegalArgumentException("The number of alternatives must not be negative");
+            }
+
+            break;
+
+          case "--queue":
+            queueType = QueueType.fromName(args[++i]);
+
+            break;
+
+          case "--isochrone":
+            isochroneSourceId = args[++i];
+            isochroneCutoff = Double.parseDouble(args[++i]);
+
+            if (!(isochroneCutoff >= 0)) {
+              throw new IllegalArgumentException("The cutoff must not be negative");
+            }
+
+            break;
+
+          case "--matrix":
+            matrixPaths = new String[] {args[++i], args[++i], args[++i]};
+
+            break;
+
+          case "--compress":
+            compresses = true;
+
+            break;
+
+          case "--metrics":
+            reportsMetrics = true;
+
+            break;
+
+          case "--metrics-interval":
+            reportsMetrics = true;
+            metricsInterval = Long.parseLong(args[++i]);
+
+            if (metricsInterval <= 0) {
+              throw new IllegalArgumentException("The interval must be positive");
+            }
+
+            break;
+
+          case "--debug":
+            debugging = true;
+
+            break;
+
+          default:
+            if (i == 0) {
+              mapPath = args[i];
+            }
+        }
+      } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException exception) {
+        System.err.println("Invalid command line arguments");
+        System.exit(ExitCodes.INVALID_COMMAND_LINE_ARGUMENTS);
+      }
+    }
+
+    // Exactly one map must be given, and --bounds and --write-map only apply to a generated one
+
+    MapGenerator generator = null;
+
+    if ((mapPath != null ? 1 : 0) + (loadSnapshotPath != null ? 1 : 0)
+        + (generatedTopology != null ? 1 : 0) != 1
+        || (generatedTopology == null && (generatedBounds != null || writeMapPath != null))) {
       System.err.println("Invalid command line arguments");
       System.exit(ExitCodes.INVALID_COMMAND_LINE_ARGUMENTS);
+    }
+
+    if (generatedTopology != null) {
+      try {
+        generator = generatedBounds == null
+            ? new MapGenerator(generatedTopology, generatedIntersectionCount, generatedSeed)
+            : new MapGenerator(generatedTopology, generatedIntersectionCount, generatedSeed,
+                generatedBounds[0], generatedBounds[1], generatedBounds[2], generatedBounds[3]);
+      } catch (IllegalArgumentException exception) {
+        System.err.println("Invalid command line arguments");
+        System.exit(ExitCodes.INVALID_COMMAND_LINE_ARGUMENTS);
+      }
+    }
+
+    // If --metrics is specified, count and time the work from here on, and print it on exit
+
+    if (reportsMetrics) {
+      Metrics.enable();
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+        synchronized (System.err) {
+          System.err.println("--- Metrics ---");
+          Metrics.report(System.err);
+        }
+      }));
+
+      if (metricsInterval > 0) {
+        Metrics.startReporting(System.err, metricsInterval);
+      }
+    }
+
+    // Load the map, either from a map data file or from a snapshot
+
+    Geography geo = null;
+    RoadChains chains = null;
+    ContractionHierarchy hierarchy = null;
+
+    try {
+      if (writeMapPath != null) {
+        ImportStatistics statistics = generator.write(writeMapPath);
+
+        System.err.printf("Generated %d intersections and %d roads (%.1f MB in %d ms, %.1f MB/s)%n",
+            statistics.getIntersectionCount(), statistics.getRoadCount(),
+            statistics.getBytes() / 1e6, statistics.getNanos() / 1_000_000,
+            statistics.getMegabytesPerSecond());
+
+        return;
+      } else if (generator != null) {
+        GeographyBuilder builder = new GeographyBuilder();
+        ImportStatistics statistics = generator.generateInto(builder);
+
+        System.err.printf("Generated %d intersections and %d roads (%d ms)%n",
+            statistics.getIntersectionCount(), statistics.getRoadCount(),
+            statistics.getNanos() / 1_000_000);
+        geo = builder.build();
+      } else if (loadSnapshotPath != null) {
+        long startTime = System.nanoTime();
+        geo = GeographySnapshot.open(loadSnapshotPath).toGeography();
+
+        System.err.printf("Loaded %d intersections and %d roads from snapshot (%d ms)%n",
+            geo.getGraph().getIntersectionCount(), geo.getGraph().getRoadCount(),
+            (System.nanoTime() - startTime) / 1_000_000);
+      } else if (OsmImporter.isOsmFile(mapPath)) {
+        GeographyBuilder builder = new GeographyBuilder();
+        OsmImporter importer = new OsmImporter(Runtime.getRuntime().availableProcessors());
+
+        System.err.println(importer.importInto(builder, mapPath));
+        geo = builder.build();
+      } else {
+        geo = new Geography();
+
+        ImportStatistics statistics = geo.importFromFile(mapPath);
+        System.err.println(statistics);
+      }
+
+      if (saveSnapshotPath != null) {
+        GeographySnapshot.write(geo, saveSnapshotPath);
+      }
+
+      if (compresses) {
+        chains = RoadChains.compress(geo.getGraph());
+        System.err.println(chains);
+      }
+
+      // The hierarchy of the core graph is kept apart, so that switching between the two does not
+      // rebuild either. That of a generated map is not kept, since it has no file to sit next to.
+      if (algorithm == Algorithm.CH) {
+        String hierarchyPath = loadSnapshotPath != null ? loadSnapshotPath : mapPath;
+
+        hierarchy = loadHierarchy(compresses ? chains.getCoreGraph() : geo.getGraph(),
+            hierarchyPath == null ? null : hierarchyPath + (compresses ? ".core.ch" : ".ch"));
+      }
     } catch (FileNotFoundException exception) {
       exception.printStackTrace();
       System.exit(ExitCodes.FILE_NOT_FOUND);
+    } catch (IOException exception) {
+      exception.printStackTrace();
+      System.exit(ExitCodes.FILE_NOT_READABLE);
     } catch (NoSuchElementException exception) {
       exception.printStackTrace();
       System.exit(ExitCodes.INVALID_FILE_FORMAT);
     }
 
-    // Options' values
-    boolean show = false;
-    String startIntersectionId = null;
-    String endIntersectionId = null;
-    boolean debugging = false;
+    RoutingEngine engine = compresses ? new RoutingEngine(chains, hierarchy, queueType)
+        : new RoutingEngine(geo.getGraph(), hierarchy, queueType);
+    Route route = null;
 
-    // Parse command line arguments
+    if (printsStatistics) {
+      printStatistics(geo, engine.getComponents());
+    }
 
-    for (int i = 1; i < args.length; i++) {
-      switch (args[i]) {
-        case "--show":
-          show = true;
+    // The overlay is customized up front so that later updates only customize what they change
+    if (algorithm == Algorithm.CRP) {
+      OverlayMetric metric = engine.getCoreEngine().getOverlayMetric();
 
-          break;
+      System.err.println(metric.getOverlay().getPartition());
+      System.err.println(metric);
+    }
 
-        case "--directions":
-          try {
-            startIntersectionId = args[++i];
-            endIntersectionId = args[++i];
-          } catch (ArrayIndexOutOfBoundsException exception) {
-            System.err.println("Invalid command line arguments");
-            System.exit(ExitCodes.INVALID_COMMAND_LINE_ARGUMENTS);
-          }
+    Route[] alternatives = null;
 
-          break;
+    // If --directions-latlon is specified, snap both points to the nearest intersections
 
-        case "--debug":
-          debugging = true;
+    if (directionsCoordinates != null) {
+      KdTree tree = KdTree.build(geo.getGraph());
 
-          break;
-      }
+      System.err.println(tree);
+      startIntersectionId = snap(geo, tree, directionsCoordinates[0], directionsCoordinates[1]);
+      endIntersectionId = snap(geo, tree, directionsCoordinates[2], directionsCoordinates[3]);
     }
 
-    // If --directions is specified, find the shortest path between the given
-    // intersections and print the intersections of the path in order.
+    // If --directions or --directions-latlon is specified, find the shortest path between the
+    // given intersections and print the intersections of the path in order
 
     if (startIntersectionId != null) {
-      Intersection startIntersection = geo.getIntersection(startIntersectionId);
-      Intersection endIntersection = geo.getIntersection(endIntersectionId);
+      if (algorithm == Algorithm.ALT) {
+        System.err.println(engine.getCoreEngine().getLandmarks());
+      }
+
+      route = printDirections(geo, engine, algorithm, startIntersectionId, endIntersectionId);
 
-      LinkedList<Road> shortestPath = geo.findShortestPath(startIntersection, endIntersection);
+      if (alternativeCount > 0 && route.isFound()) {
+        alternatives = printAlternatives(geo, engine, route, alternativeCount);
+      }
+    }
 
-      Intersection currentIntersection = startIntersection;
-      System.out.println(currentIntersection.getId());
+    // If --isochrone is specified, print every intersection within the distance from the source
 
-      if (shortestPath.size() == 0) {
-        System.out.println("No path connects " + startIntersectionId + " and " + endIntersectionId);
-      } else {
-        System.out.println("Going from " + startIntersectionId + " to " + endIntersectionId);
+    ShortestPathTree tree = null;
+
+    if (isochroneSourceId != null) {
+      tree = printIsochrone(geo, engine, isochroneSourceId, isochroneCutoff);
+    }
+
+    // If --matrix is specified, write the distances from every source to every target
+
+    if (matrixPaths != null) {
+      try {
+        writeDistanceMatrix(geo, engine, matrixPaths[0], matrixPaths[1], matrixPaths[2]);
+      } catch (NoSuchFileException exception) {
+        exception.printStackTrace();
+        System.exit(ExitCodes.FILE_NOT_FOUND);
+      } catch (IOException exception) {
+        exception.printStackTrace();
+        System.exit(ExitCodes.FILE_NOT_READABLE);
+      }
+    }
+
+    // If --batch, --repl, or --serve is specified, answer queries with the map kept in memory,
+    // reusing the routes of earlier queries
 
-        double totalMiles = 0.0;
+    if (batchPath != null || repl || servePort >= 0) {
+      RouteCache cache = new RouteCache(engine, algorithm, RouteCache.DEFAULT_CAPACITY);
 
-        for (Road road : shortestPath) {
-          Intersection nextIntersection = road.getTheOtherEnd(currentIntersection);
-          System.out.println(nextIntersection.getId());
-          totalMiles += road.getDistance();
-          currentIntersection = nextIntersection;
+      try {
+        if (batchPath != null) {
+          runBatch(geo, cache, batchPath);
         }
 
-        System.out.println("Total miles travelled: " + totalMiles);
+        if (repl) {
+          runRepl(geo, cache, algorithm);
+        }
+
+        if (servePort >= 0) {
+          serve(geo, cache, servePort);
+        }
+      } catch (NoSuchFileException exception) {
+        exception.printStackTrace();
+        System.exit(ExitCodes.FILE_NOT_FOUND);
+      } catch (IOException exception) {
+        exception.printStackTrace();
+        System.exit(ExitCodes.FILE_NOT_READABLE);
       }
+
+      System.err.println(cache);
     }
 
     // Display GUI if --show is present
@@ -118,8 +519,530 @@ public class App {
       window.display();
 
       map.setDebugging(debugging);
+      map.setRoute(route);
+      map.setAlternativeRoutes(alternatives);
+      map.setShortestPathTree(tree);
       map.project();
       map.resetView();
     }
   }
+
+  /**
+   * Loads the contraction hierarchy of a graph from a file, or builds it and writes it to the file
+   * if the file is missing, unreadable, or was built from a different graph. A hierarchy that
+   * cannot be written is still used, with a warning.
+   *
+   * @param graph the graph whose hierarchy is needed
+   * @param hierarchyPath the path of the hierarchy file, or {@code null} to build the hierarchy
+   *        without keeping it
+   * @return the contraction hierarchy of the graph.
+   */
+  private static ContractionHierarchy loadHierarchy(RoadGraph graph, String hierarchyPath) {
+    long startTime = System.nanoTime();
+
+    if (hierarchyPath != null) {
+      try {
+        ContractionHierarchy hierarchy = ContractionHierarchy.read(hierarchyPath);
+
+        if (hierarchy.matches(graph)) {
+          System.err.printf("Loaded contraction hierarchy from %s (%d ms)%n", hierarchyPath,
+              (System.nanoTime() - startTime) / 1_000_000);
+
+          return hierarchy;
+        }
+      } catch (IOException | NoSuchElementException exception) {
+        // Build a new hierarchy below
+      }
+    }
+
+    ContractionHierarchy hierarchy = new ContractionHierarchyBuilder(graph).build();
+
+    System.err.printf("Built contraction hierarchy with %d shortcuts (%d ms)%n",
+        hierarchy.getShortcutCount(), (System.nanoTime() - startTime) / 1_000_000);
+
+    if (hierarchyPath != null) {
+      try {
+        hierarchy.write(hierarchyPath);
+      } catch (IOException exception) {
+        System.err.println("Could not save the contraction hierarchy to " + hierarchyPath + ": "
+            + exception.getMessage());
+      }
+    }
+
+    return hierarchy;
+  }
+
+  /**
+   * Prints the size of a {@code Geography} and its connected components: the largest one, and every
+   * island with its size and the ID of one of its intersections.
+   *
+   * @param geo the {@code Geography} to describe
+   * @param components the connected components of the graph of the geography
+   */
+  private static void printStatistics(Geography geo, ConnectedComponents components) {
+    int n = geo.getGraph().getIntersectionCount();
+    int componentCount = components.getComponentCount();
+    // The first intersection of every component, to name it by
+    int[] firstIntersections = new int[componentCount];
+
+    Arrays.fill(firstIntersections, -1);
+
+    for (int intersection = n - 1; intersection >= 0; intersection--) {
+      firstIntersections[components.getComponent(intersection)] = intersection;
+    }
+
+    System.out.println("Intersections: " + n);
+    System.out.println("Roads: " + geo.getGraph().getRoadCount());
+    System.out.println("Connected components: " + componentCount);
+
+    if (componentCount > 0) {
+      System.out.printf("Largest component: %d intersections (%.1f%%)%n", components.getSize(0),
+          100.0 * components.getSize(0) / n);
+    }
+
+    System.out.println("Islands: " + Math.max(0, componentCount - 1));
+
+    for (int component = 1; component < componentCount; component++) {
+      System.out.println("  " + components.getSize(component) + " intersections, including "
+          + geo.getIntersectionId(firstIntersections[component]));
+    }
+  }
+
+  /**
+   * Answers every query of a file in parallel, and prints their directions in the order of the file
+   * through a buffer. Only a bounded number of queries are in flight at once, so the file can be
+   * arbitrarily long.
+   *
+   * @param geo the {@code Geography} to search
+   * @param cache the {@code RouteCache} that answers the queries
+   * @param queriesPath the path of the file that lists the queries, one pair of intersection IDs
+   *        per line
+   * @throws IOException when the file cannot be read.
+   */
+  private static void runBatch(Geography geo, RouteCache cache, String queriesPath)
+      throws IOException {
+    long startTime = System.nanoTime();
+    int window = 2 * ForkJoinPool.getCommonPoolParallelism();
+    Deque<ForkJoinTask<String>> pending = new ArrayDeque<>();
+    int queryCount = 0;
+    BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(System.out));
+
+    try (BufferedReader reader = Files.newBufferedReader(Path.of(queriesPath))) {
+      String line;
+
+      while ((line = reader.readLine()) != null) {
+        String query = line.strip();
+
+        if (query.isEmpty()) {
+          continue;
+        }
+
+        if (pending.size() >= window) {
+          writeAnswer(writer, pending.poll().join(), queryCount++);
+        }
+
+        pending.add(ForkJoinPool.commonPool().submit(() -> answerQuery(geo, cache, query)));
+      }
+
+      while (!pending.isEmpty()) {
+        writeAnswer(writer, pending.poll().join(), queryCount++);
+      }
+    } finally {
+      for (ForkJoinTask<String> task : pending) {
+        task.cancel(false);
+      }
+
+      writer.flush();
+    }
+
+    System.err.printf("Answered %d queries (%d ms)%n", queryCount,
+        (System.nanoTime() - startTime) / 1_000_000);
+  }
+
+  /**
+   * Answers HTTP requests until the process is stopped.
+   *
+   * @param geo the {@code Geography} to search
+   * @param cache the {@code RouteCache} that answers route queries
+   * @param port the port to listen on
+   * @throws IOException when the port cannot be bound.
+   */
+  private static void serve(Geography geo, RouteCache cache, int port) throws IOException {
+    KdTree tree = KdTree.build(geo.getGraph());
+    RoutingServer server = new RoutingServer(geo, cache, tree);
+
+    System.err.println(tree);
+    server.start(port);
+    System.err.printf("Serving on port %d, with up to %d requests in flight%n", server.getPort(),
+        server.getMaxInFlight());
+
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      server.stop();
+      System.err.println(cache);
+    }));
+
+    // The server's threads keep running; this thread waits to be stopped with them
+    try {
+      Thread.currentThread().join();
+    } catch (InterruptedException exception) {
+      server.stop();
+    }
+  }
+
+  private static void writeAnswer(BufferedWriter writer, String answer, int queryNumber)
+      throws IOException {
+    if (queryNumber > 0) {
+      writer.newLine();
+    }
+
+    writer.write(answer);
+  }
+
+  /**
+   * Answers queries from the standard input one at a time, until the end of the input or a line of
+   * {@code quit}. Lines that start with {@code update} change the distances of roads.
+   *
+   * @param geo the {@code Geography} to search
+   * @param cache the {@code RouteCache} that answers the queries
+   * @param algorithm the algorithm that the cache searches with
+   * @throws IOException when the standard input cannot be read.
+   */
+  private static void runRepl(Geography geo, RouteCache cache, Algorithm algorithm)
+      throws IOException {
+    BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+    String line;
+
+    System.err.print("> ");
+
+    while ((line = reader.readLine()) != null) {
+      String query = line.strip();
+
+      if (query.equals("quit")) {
+        break;
+      }
+
+      if (query.startsWith("update ")) {
+        updateRoads(geo, cache, algorithm, query.substring("update ".length()).strip());
+      } else if (!query.isEmpty()) {
+        long startTime = System.nanoTime();
+
+        System.out.print(answerQuery(geo, cache, query));
+        System.out.flush();
+        System.err.printf("(%.1f ms)%n", (System.nanoTime() - startTime) / 1e6);
+      }
+
+      System.err.print("> ");
+    }
+  }
+
+  /**
+   * Applies a batch of road updates to a {@code Geography}, and repairs the engine of a cache to
+   * search the new graph. The updates are applied at once, or not at all if one is invalid.
+   *
+   * @param geo the {@code Geography} to update
+   * @param cache the {@code RouteCache} whose engine to repair, which drops every cached route
+   * @param algorithm the algorithm that the cache searches with
+   * @param updates pairs of a road ID and its new distance in miles, or {@code closed}, separated
+   *        by whitespace
+   */
+  private static void updateRoads(Geography geo, RouteCache cache, Algorithm algorithm,
+      String updates) {
+    String[] tokens = updates.split("\\s+");
+    RoadUpdates batch = new RoadUpdates();
+
+    if (tokens.length % 2 != 0) {
+      System.err.println("Invalid update " + updates);
+      return;
+    }
+
+    for (int i = 0; i < tokens.length; i += 2) {
+      Road road = geo.getRoad(tokens[i]);
+
+      if (road == null) {
+        System.err.println("Unknown road " + tokens[i]);
+        return;
+      }
+
+      try {
+        if (tokens[i + 1].equals("closed")) {
+          batch.close(road.getIndex());
+        } else {
+          batch.setDistance(road.getIndex(), Double.parseDouble(tokens[i + 1]));
+        }
+      } catch (IllegalArgumentException exception) {
+        System.err.println("Invalid distance " + tokens[i + 1]);
+        return;
+      }
+    }
+
+    RoadUpdateStatistics statistics = geo.updateRoads(batch);
+    long startTime = System.nanoTime();
+    RoutingEngine engine = cache.getEngine().withUpdatedGraph(geo.getGraph(), batch.getRoads());
+    String repair = "repaired the routing engine";
+
+    if (algorithm == Algorithm.CRP) {
+      repair += "; " + engine.getCoreEngine().getOverlayMetric();
+    }
+
+    cache.setEngine(engine);
+
+    System.err.printf("%s; %s (%.1f ms)%n", statistics, repair,
+        (System.nanoTime() - startTime) / 1e6);
+  }
+
+  /**
+   * Answers a query of the batch and REPL modes.
+   *
+   * @param geo the {@code Geography} to search
+   * @param cache the {@code RouteCache} that answers the query
+   * @param query the IDs of the start and the end intersection, separated by whitespace
+   * @return the directions of the query in the format of {@code --directions}, or a line that
+   *         explains why the query could not be answered.
+   */
+  private static String answerQuery(Geography geo, RouteCache cache, String query) {
+    String[] ids = query.split("\\s+");
+
+    if (ids.length != 2) {
+      return "Invalid query " + query + System.lineSeparator();
+    }
+
+    Intersection startIntersection = geo.getIntersection(ids[0]);
+    Intersection endIntersection = geo.getIntersection(ids[1]);
+
+    if (startIntersection == null || endIntersection == null) {
+      return "Unknown intersection " + (startIntersection == null ? ids[0] : ids[1])
+          + System.lineSeparator();
+    }
+
+    Route route = cache.findShortestPath(startIntersection.getIndex(), endIntersection.getIndex());
+
+    return formatDirections(geo, route, ids[0], ids[1]);
+  }
+
+  /**
+   * Finds alternatives to a route and prints each of them with its mileage, followed by its
+   * intersections in order.
+   *
+   * @param geo the {@code Geography} to search
+   * @param engine the {@code RoutingEngine} over the graph of the geography
+   * @param route the route to find alternatives to
+   * @param count the largest number of alternatives to find
+   * @return the alternatives that were found, shortest first.
+   */
+  private static Route[] printAlternatives(Geography geo, RoutingEngine engine, Route route,
+      int count) {
+    long startTime = System.nanoTime();
+    Route[] routes = engine.findAlternativeRoutes(route.getStartIntersection(),
+        route.getEndIntersection(), count);
+    Route[] alternatives = Arrays.copyOfRange(routes, 1, routes.length);
+
+    System.err.printf("Found %d alternatives, settling %d intersections (%.1f ms)%n",
+        alternatives.length, routes[0].getSettledCount(), (System.nanoTime() - startTime) / 1e6);
+
+    for (int i = 0; i < alternatives.length; i++) {
+      System.out.printf("Alternative %d: %s miles (%+.1f%%)%n", i + 1,
+          alternatives[i].getDistance(),
+          (alternatives[i].getDistance() / route.getDistance() - 1) * 100);
+
+      int[] intersections = alternatives[i].getIntersections();
+
+      for (int j = 1; j < intersections.length; j++) {
+        System.out.println(geo.getIntersectionId(intersections[j]));
+      }
+    }
+
+    return alternatives;
+  }
+
+  /**
+   * Finds every intersection of a {@code Geography} within a distance of an intersection, and
+   * prints them nearest first with their distances.
+   *
+   * @param geo the {@code Geography} to search
+   * @param engine the {@code RoutingEngine} over the graph of the geography
+   * @param sourceId the ID of the source intersection
+   * @param cutoff the distance, in miles
+   * @return the shortest path tree within the distance.
+   */
+  private static ShortestPathTree printIsochrone(Geography geo, RoutingEngine engine,
+      String sourceId, double cutoff) {
+    Intersection source = geo.getIntersection(sourceId);
+
+    if (source == null) {
+      System.err.println("Unknown intersection " + sourceId);
+      System.exit(ExitCodes.INVALID_COMMAND_LINE_ARGUMENTS);
+    }
+
+    long startTime = System.nanoTime();
+    ShortestPathTree tree = engine.findShortestPathTree(source.getIndex(), cutoff);
+    int[] intersections = tree.getReachableIntersections();
+
+    System.err.printf("Reached %d intersections within %s miles, bounded by %d roads (%.1f ms)%n",
+        intersections.length, cutoff, tree.getFrontierRoads().length,
+        (System.nanoTime() - startTime) / 1e6);
+
+    for (int intersection : intersections) {
+      System.out
+          .println(geo.getIntersectionId(intersection) + " " + tree.getDistance(intersection));
+    }
+
+    return tree;
+  }
+
+  /**
+   * Computes the road distances from a list of intersections to another, and writes them to a file
+   * row by row.
+   *
+   * @param geo the {@code Geography} to search
+   * @param engine the {@code RoutingEngine} over the graph of the geography
+   * @param sourcesPath the path of the file that lists the IDs of the sources, one per line
+   * @param targetsPath the path of the file that lists the IDs of the targets, one per line
+   * @param outputPath the path of the output file
+   * @throws IOException when a list cannot be read or the output cannot be written.
+   */
+  private static void writeDistanceMatrix(Geography geo, RoutingEngine engine, String sourcesPath,
+      String targetsPath, String outputPath) throws IOException {
+    String[] sourceIds = readIntersectionIds(sourcesPath);
+    String[] targetIds = readIntersectionIds(targetsPath);
+    int[] sources = toIndices(geo, sourceIds);
+    int[] targets = toIndices(geo, targetIds);
+    long startTime = System.nanoTime();
+
+    try (
+        DistanceMatrixWriter writer = DistanceMatrixWriter.open(outputPath, sourceIds, targetIds)) {
+      engine.distanceMatrix(sources, targets, writer);
+    }
+
+    System.err.printf("Computed %dx%d distance matrix (%d ms)%n", sources.length, targets.length,
+        (System.nanoTime() - startTime) / 1_000_000);
+  }
+
+  /**
+   * Reads a file that lists intersection IDs, one per line. Blank lines are skipped.
+   */
+  private static String[] readIntersectionIds(String path) throws IOException {
+    return Files.readAllLines(Path.of(path)).stream().map(String::strip)
+        .filter(line -> !line.isEmpty()).toArray(String[]::new);
+  }
+
+  /**
+   * Looks up the indices of intersections by their IDs, and exits if one is unknown.
+   */
+  private static int[] toIndices(Geography geo, String[] intersectionIds) {
+    int[] indices = new int[intersectionIds.length];
+
+    for (int i = 0; i < intersectionIds.length; i++) {
+      Intersection intersection = geo.getIntersection(intersectionIds[i]);
+
+      if (intersection == null) {
+        System.err.println("Unknown intersection " + intersectionIds[i]);
+        System.exit(ExitCodes.INVALID_COMMAND_LINE_ARGUMENTS);
+      }
+
+      indices[i] = intersection.getIndex();
+    }
+
+    return indices;
+  }
+
+  /**
+   * Finds the shortest path between two intersections of a {@code Geography} and prints the
+   * intersections of the path in order.
+   *
+   * @param geo the {@code Geography} to search
+   * @param engine the {@code RoutingEngine} over the graph of the geography
+   * @param algorithm the algorithm to search with
+   * @param startIntersectionId the ID of the start intersection
+   * @param endIntersectionId the ID of the end intersection
+   * @return the route that was found.
+   */
+  private static Route printDirections(Geography geo, RoutingEngine engine, Algorithm algorithm,
+      String startIntersectionId, String endIntersectionId) {
+    Intersection startIntersection = geo.getIntersection(startIntersectionId);
+    Intersection endIntersection = geo.getIntersection(endIntersectionId);
+
+    if (startIntersection == null || endIntersection == null) {
+      System.err.println("Unknown intersection "
+          + (startIntersection == null ? startIntersectionId : endIntersectionId));
+      System.exit(ExitCodes.INVALID_COMMAND_LINE_ARGUMENTS);
+    }
+
+    long startTime = System.nanoTime();
+    Route route = engine.findShortestPath(startIntersection.getIndex(), endIntersection.getIndex(),
+        algorithm);
+
+    System.err.printf("Settled %d intersections with %s (%.1f ms)%n", route.getSettledCount(),
+        algorithm, (System.nanoTime() - startTime) / 1e6);
+    System.out.print(formatDirections(geo, route, startIntersectionId, endIntersectionId));
+
+    return route;
+  }
+
+  /**
+   * Checks whether a latitude and a longtitude, in degrees, are those of a point on Earth.
+   */
+  private static boolean isValidPoint(double latitude, double longtitude) {
+    return latitude >= -90 && latitude <= 90 && longtitude >= -180 && longtitude <= 180;
+  }
+
+  /**
+   * Finds the intersection nearest to a point and prints how far it is from the point.
+   *
+   * @param geo the {@code Geography} to search
+   * @param tree the k-d tree of the intersections of {@code geo}
+   * @param latitude the latitude of the point, in degrees
+   * @param longtitude the longtitude of the point, in degrees
+   * @return the ID of the nearest intersection.
+   */
+  private static String snap(Geography geo, KdTree tree, double latitude, double longtitude) {
+    int index = tree.findNearest(latitude, longtitude);
+
+    if (index < 0) {
+      System.err.println("The map has no intersections");
+      System.exit(ExitCodes.INVALID_COMMAND_LINE_ARGUMENTS);
+    }
+
+    Intersection intersection = geo.getIntersection(index);
+
+    System.err.printf("Snapped (%f, %f) to %s, %.3f miles away%n", latitude, longtitude,
+        intersection.getId(), Road.haversine(latitude, longtitude, intersection.getLatitude(),
+            intersection.getLongtitude()));
+
+    return intersection.getId();
+  }
+
+  /**
+   * Formats the directions of a route: the ID of the start intersection, then the IDs of the
+   * intersections of the route in order, and the total distance, one per line.
+   *
+   * @param geo the {@code Geography} that was searched
+   * @param route the route that was found
+   * @param startIntersectionId the ID of the start intersection
+   * @param endIntersectionId the ID of the end intersection
+   * @return the lines of the directions, each followed by a line separator.
+   */
+  private static String formatDirections(Geography geo, Route route, String startIntersectionId,
+      String endIntersectionId) {
+    StringBuilder directions = new StringBuilder();
+    String lineSeparator = System.lineSeparator();
+    int[] intersections = route.getIntersections();
+
+    directions.append(startIntersectionId).append(lineSeparator);
+
+    if (intersections.length <= 1) {
+      directions.append("No path connects " + startIntersectionId + " and " + endIntersectionId)
+          .append(lineSeparator);
+    } else {
+      directions.append("Going from " + startIntersectionId + " to " + endIntersectionId)
+          .append(lineSeparator);
+
+      for (int i = 1; i < intersections.length; i++) {
+        directions.append(geo.getIntersectionId(intersections[i])).append(lineSeparator);
+      }
+
+      directions.append("Total miles travelled: " + route.getDistance()).append(lineSeparator);
+    }
+
+    return directions.toString();
+  }
 }
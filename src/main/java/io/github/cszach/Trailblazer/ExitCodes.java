@@ -5,4 +5,5 @@ class ExitCodes {
   static final int INVALID_COMMAND_LINE_ARGUMENTS = 1;
   static final int FILE_NOT_FOUND = 2;
   static final int INVALID_FILE_FORMAT = 3;
+  static final int FILE_NOT_READABLE = 4;
 }
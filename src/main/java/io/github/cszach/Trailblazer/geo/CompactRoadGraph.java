@@ -0,0 +1,147 @@
+package io.github.cszach.Trailblazer.geo;
+
+/**
+ * A {@code RoadGraph} that is stored in compressed sparse row form in primitive arrays.
+ *
+ * <p>
+ * A {@code CompactRoadGraph} is frozen: it is built once, after a map has been imported, and is
+ * never modified. Edge weights are copied next to the edge targets so that relaxing an edge does
+ * not need to look up its road.
+ *
+ * @see GeographyBuilder
+ */
+public final class CompactRoadGraph implements RoadGraph {
+  private final double[] latitudes;
+  private final double[] longtitudes;
+  /**
+   * The first edge of every intersection, plus the total number of edges.
+   */
+  private final int[] offsets;
+  private final int[] targets;
+  private final int[] edgeRoads;
+  private final double[] weights;
+  private final int[] roadIntersections1;
+  private final int[] roadIntersections2;
+  private final double[] roadDistances;
+
+  /**
+   * Builds a {@code CompactRoadGraph} from the coordinates of its intersections and the endpoints
+   * of its roads. The arrays are owned by the graph afterwards.
+   *
+   * <p>
+   * Roads whose endpoints are the same intersection are kept as roads but get no edges, since they
+   * can never be part of a shortest path.
+   *
+   * @param latitudes the latitudes, in degrees, of the intersections
+   * @param longtitudes the longtitudes, in degrees, of the intersections
+   * @param roadIntersections1 the first endpoint of every road
+   * @param roadIntersections2 the second endpoint of every road
+   * @param roadDistances the distance, in miles, of every road
+   */
+  CompactRoadGraph(double[] latitudes, double[] longtitudes, int[] roadIntersections1,
+      int[] roadIntersections2, double[] roadDistances) {
+    int intersectionCount = latitudes.length;
+    int roadCount = roadIntersections1.length;
+
+    this.latitudes = latitudes;
+    this.longtitudes = longtitudes;
+    this.roadIntersections1 = roadIntersections1;
+    this.roadIntersections2 = roadIntersections2;
+    this.roadDistances = roadDistances;
+
+    // Count the edges of every intersection, then lay them out with a counting sort
+
+    this.offsets = new int[intersectionCount + 1];
+
+    for (int road = 0; road < roadCount; road++) {
+      if (roadIntersections1[road] != roadIntersections2[road]) {
+        this.offsets[roadIntersections1[road] + 1]++;
+        this.offsets[roadIntersections2[road] + 1]++;
+      }
+    }
+
+    for (int i = 0; i < intersectionCount; i++) {
+      this.offsets[i + 1] += this.offsets[i];
+    }
+
+    int edgeCount = this.offsets[intersectionCount];
+    int[] next = new int[intersectionCount];
+
+    this.targets = new int[edgeCount];
+    this.edgeRoads = new int[edgeCount];
+    this.weights = new double[edgeCount];
+
+    System.arraycopy(this.offsets, 0, next, 0, intersectionCount);
+
+    for (int road = 0; road < roadCount; road++) {
+      int intersection1 = roadIntersections1[road];
+      int intersection2 = roadIntersections2[road];
+
+      if (intersection1 != intersection2) {
+        this.addEdge(next[intersection1]++, intersection2, road);
+        this.addEdge(next[intersection2]++, intersection1, road);
+      }
+    }
+  }
+
+  private void addEdge(int edge, int target, int road) {
+    this.targets[edge] = target;
+    this.edgeRoads[edge] = road;
+    this.weights[edge] = this.roadDistances[road];
+  }
+
+  @Override
+  public int getIntersectionCount() {
+    return this.latitudes.length;
+  }
+
+  @Override
+  public int getRoadCount() {
+    return this.roadIntersections1.length;
+  }
+
+  @Override
+  public double getLatitude(int intersection) {
+    return this.latitudes[intersection];
+  }
+
+  @Override
+  public double getLongtitude(int intersection) {
+    return this.longtitudes[intersection];
+  }
+
+  @Override
+  public int getFirstEdge(int intersection) {
+    return this.offsets[intersection];
+  }
+
+  @Override
+  public int getEdgeTarget(int edge) {
+    return this.targets[edge];
+  }
+
+  @Override
+  public int getEdgeRoad(int edge) {
+    return this.edgeRoads[edge];
+  }
+
+  @Override
+  public double getEdgeWeight(int edge) {
+    return this.weights[edge];
+  }
+
+  @Override
+  public int getRoadIntersection1(int road) {
+    return this.roadIntersections1[road];
+  }
+
+  @Override
+  public int getRoadIntersection2(int road) {
+    return this.roadIntersections2[road];
+  }
+
+  @Override
+  public double getRoadDistance(int road) {
+    return this.roadDistances[road];
+  }
+}
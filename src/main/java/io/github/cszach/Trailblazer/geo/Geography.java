@@ -1,49 +1,111 @@
 package io.github.cszach.Trailblazer.geo;
 
-import java.io.File;
 import java.io.FileNotFoundException;
-import java.util.ArrayList;
+import java.io.IOException;
+import java.util.AbstractList;
 import java.util.Collection;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.Map;
 import java.util.NoSuchElementException;
-import java.util.PriorityQueue;
-import java.util.Scanner;
-
-/** A class that stores intersections and roads data that forms a geography. */
+import java.util.Objects;
+
+import io.github.cszach.Trailblazer.metrics.ImportPhase;
+
+/**
+ * A class that stores intersections and roads data that forms a geography.
+ *
+ * <p>
+ * The data is held in a frozen {@code RoadGraph}, in which intersections and roads are numbered
+ * densely. {@code Intersection} and {@code Road} objects are lightweight views over the graph that
+ * are created on demand. The IDs of the intersections and roads are kept in {@code StringPool}s,
+ * which map an ID to its index in constant time.
+ *
+ * <p>
+ * The distances of roads can be changed while the geography is in use, with {@code updateRoads}.
+ * Every batch of changes replaces the graph with a new one at once, so a reader that holds on to
+ * the graph sees either none or all of the changes of a batch.
+ *
+ * @see GeographyBuilder
+ */
 public class Geography {
   /**
-   * The intersections in this geography, which is stored in a {@Map} that maps from an intersection
-   * ID to its corresponding intersection object.
+   * The graph that holds the coordinates of the intersections and the endpoints and distances of
+   * the roads.
+   */
+  private volatile RoadGraph graph;
+  /**
+   * The ID of every intersection, by index, which also maps an intersection ID to its index.
    */
-  private Map<String, Intersection> intersections;
-  /** The list of roads in this geography. */
-  private ArrayList<Road> roads;
+  private StringPool intersectionIds;
+  /**
+   * The ID of every road, by index, which also maps a road ID to its index.
+   */
+  private StringPool roadIds;
 
   /** Initializes an empty geography with no intersections and roads. */
   public Geography() {
-    this.intersections = new HashMap<>();
-    this.roads = new ArrayList<>();
+    this.initialize(
+        new CompactRoadGraph(new double[0], new double[0], new int[0], new int[0], new double[0]),
+        new StringPool.Builder().build(), new StringPool.Builder().build());
+  }
+
+  /**
+   * Replaces the data of this geography.
+   *
+   * @param graph the graph of the geography
+   * @param intersectionIds the ID of every intersection of the graph, by index
+   * @param roadIds the ID of every road of the graph, by index
+   */
+  void initialize(RoadGraph graph, StringPool intersectionIds, StringPool roadIds) {
+    this.graph = graph;
+    this.intersectionIds = intersectionIds;
+    this.roadIds = roadIds;
+  }
+
+  /**
+   * Returns the graph that holds the data of this geography.
+   *
+   * @return the graph that holds the data of this geography.
+   */
+  public RoadGraph getGraph() {
+    return this.graph;
   }
 
   /**
    * Returns the intersections data of this geography.
    *
-   * @return the intersections data of this geography.
+   * @return the intersections data of this geography, as a list of views that are ordered by index.
    */
   public Collection<Intersection> getIntersections() {
-    return this.intersections.values();
+    return new AbstractList<Intersection>() {
+      @Override
+      public Intersection get(int index) {
+        return getIntersection(index);
+      }
+
+      @Override
+      public int size() {
+        return graph.getIntersectionCount();
+      }
+    };
   }
 
   /**
    * Returns the roads data of this geography.
    *
-   * @return the roads data of this geography.
+   * @return the roads data of this geography, as a list of views that are ordered by index.
    */
   public Collection<Road> getRoads() {
-    return this.roads;
+    return new AbstractList<Road>() {
+      @Override
+      public Road get(int index) {
+        return getRoad(index);
+      }
+
+      @Override
+      public int size() {
+        return graph.getRoadCount();
+      }
+    };
   }
 
   /**
@@ -54,7 +116,19 @@ public class Geography {
    *         intersection does not exist in this geography.
    */
   public Intersection getIntersection(String intersectionId) {
-    return this.intersections.get(intersectionId);
+    int index = this.intersectionIds.indexOf(intersectionId);
+
+    return index < 0 ? null : new Intersection(this, index);
+  }
+
+  /**
+   * Returns an intersection in this geography.
+   *
+   * @param index the index of the intersection in the graph of this geography
+   * @return the intersection at the specified index.
+   */
+  public Intersection getIntersection(int index) {
+    return new Intersection(this, index);
   }
 
   /**
@@ -62,27 +136,82 @@ public class Geography {
    *
    * @param roadId the ID of the road
    * @return the road that is identified by the specified ID, or {@code null} if such a road does
-   *         not exist in this geography.
+   *         not exist in this geography. If several roads have the ID, the first one is returned.
    */
   public Road getRoad(String roadId) {
-    for (Road road : this.roads) {
-      if (road.getId().equals(roadId)) {
-        return road;
-      }
-    }
+    int index = this.roadIds.indexOf(roadId);
+
+    return index < 0 ? null : new Road(this, index);
+  }
 
-    return null;
+  /**
+   * Returns a road in this geography.
+   *
+   * @param index the index of the road in the graph of this geography
+   * @return the road at the specified index.
+   */
+  public Road getRoad(int index) {
+    return new Road(this, index);
+  }
+
+  /**
+   * Returns the ID of an intersection in this geography.
+   *
+   * @param index the index of the intersection
+   * @return the ID of the intersection.
+   */
+  public String getIntersectionId(int index) {
+    return this.intersectionIds.get(index);
+  }
+
+  /**
+   * Translates intersection IDs to indices in bulk, e.g. for a batch of queries.
+   *
+   * @param intersectionIds the IDs of the intersections
+   * @return the index of every intersection, or {@code -1} for an ID that does not identify an
+   *         intersection in this geography.
+   */
+  public int[] getIntersectionIndices(String[] intersectionIds) {
+    return this.intersectionIds.indicesOf(intersectionIds);
   }
 
   /**
-   * Imports data about a geography from a file.
+   * Returns the pool of the intersection IDs of this geography.
+   *
+   * @return the pool of the intersection IDs, in which the index of an ID is the index of its
+   *         intersection.
+   */
+  public StringPool getIntersectionIds() {
+    return this.intersectionIds;
+  }
+
+  /**
+   * Returns the pool of the road IDs of this geography.
+   *
+   * @return the pool of the road IDs, in which the index of an ID is the index of its road.
+   */
+  public StringPool getRoadIds() {
+    return this.roadIds;
+  }
+
+  /**
+   * Returns the ID of a road in this geography.
+   *
+   * @param index the index of the road
+   * @return the ID of the road.
+   */
+  public String getRoadId(int index) {
+    return this.roadIds.get(index);
+  }
+
+  /**
+   * Imports data about a geography from a file, replacing the data of this geography.
    *
    * <p>
    * The file format is hard-coded and assumed to be as follows:
    *
    * <ul>
-   * <li>The file consists of multiple entries separated by whitespace (but preferably a newline
-   * character);
+   * <li>The file consists of multiple entries separated by a newline character;
    * <li>An entry has cells that are delimited by whitespace;
    * <li>If the first cell of an entry is {@code i}, the entry describes an intersection, and the
    * next three cells describe the ID, the latitude, and the longtitude of the intersection,
@@ -95,145 +224,67 @@ public class Geography {
    * <li>There should be no redundant cells; that is, each entry has exactly four cells.
    * </ul>
    *
+   * <p>
+   * The file may be gzip-compressed. Plain files are memory-mapped and parsed on all available
+   * processors; see {@link MapFileImporter}. Once the file is parsed, the {@code RoadGraph} of this
+   * geography is built. The {@code parse}, {@code resolve}, and {@code build} phases are timed as
+   * {@code ImportPhase}s.
+   *
    * @param path the path of the file to read from
+   * @return the statistics of the import, such as its throughput.
    * @throws FileNotFoundException when the specified file does not exist.
-   * @throws NoSuchElementException when there is a trouble reading the file, which the program
+   * @throws IOException when there is a trouble reading the file.
+   * @throws NoSuchElementException when there is a trouble parsing the file, which the program
    *         assumes to be due to an invalid file format.
    */
-  public void importFromFile(String path) throws FileNotFoundException, NoSuchElementException {
-    File file = new File(path);
-    Scanner scanner = null;
-
-    try {
-      scanner = new Scanner(file);
-    } catch (FileNotFoundException exception) {
-      throw exception;
-    }
-
-    while (scanner.hasNext()) {
-      String type = scanner.next();
-
-      switch (type) {
-        case "i":
-          String id;
-          double latitude;
-          double longtitude;
-
-          try {
-            id = scanner.next();
-            latitude = scanner.nextDouble();
-            longtitude = scanner.nextDouble();
-          } catch (NoSuchElementException exception) {
-            throw new NoSuchElementException("Invalid or broken file format", exception.getCause());
-          }
-
-          this.intersections.put(id, new Intersection(id, latitude, longtitude));
+  public ImportStatistics importFromFile(String path) throws IOException, NoSuchElementException {
+    long startTime = System.nanoTime();
 
-          break;
+    MapFileImporter importer = new MapFileImporter(Runtime.getRuntime().availableProcessors());
+    GeographyBuilder builder = new GeographyBuilder();
 
-        case "r":
-          String intersection1Id;
-          String intersection2Id;
+    long bytes = importer.importInto(builder, path);
+    ImportPhase phase = ImportPhase.begin("build");
 
-          try {
-            id = scanner.next();
-            intersection1Id = scanner.next();
-            intersection2Id = scanner.next();
-          } catch (NoSuchElementException exception) {
-            throw new NoSuchElementException("Invalid or broken file format", exception.getCause());
-          }
+    builder.buildInto(this);
+    phase.end(this.graph.getRoadCount());
 
-          Intersection intersection1 = this.intersections.get(intersection1Id);
-          Intersection intersection2 = this.intersections.get(intersection2Id);
-
-          Road road = new Road(id, intersection1, intersection2);
-
-          this.roads.add(road);
-
-          intersection1.getNeighbors().put(intersection2, road);
-          intersection2.getNeighbors().put(intersection1, road);
-
-          break;
-
-        default:
-          throw new NoSuchElementException("Invalid or broken file format");
-      }
-    }
-
-    scanner.close();
+    return new ImportStatistics(bytes, this.graph.getIntersectionCount(), this.graph.getRoadCount(),
+        System.nanoTime() - startTime);
   }
 
   /**
-   * Finds the shortest path between two given intersections using Dijkstra's algorithm.
+   * Applies a batch of changes to the distances of roads, replacing the graph of this geography
+   * with one that has all of them. The old graph is not modified, so searches that are running on
+   * it finish undisturbed; searches must use the new graph, from {@code getGraph}, to see the
+   * changes.
    *
-   * @param startIntersection the start intersection
-   * @param endIntersection the end intersection
-   * @return a (linked) list of roads that form the shortest path between the start intersection and
-   *         the end, in the order that they should be taken starting from the start intersection.
+   * @param updates the changes to apply
+   * @return the statistics of the update, such as the time that it took.
+   * @throws IndexOutOfBoundsException when a road index is not that of a road, in which case no
+   *         change is applied.
    */
-  public LinkedList<Road> findShortestPath(Intersection startIntersection,
-      Intersection endIntersection) {
-    PriorityQueue<Intersection> q =
-        new PriorityQueue<>(this.intersections.size(), new Comparator<Intersection>() {
-          @Override
-          public int compare(Intersection intersection1, Intersection intersection2) {
-            double diff = intersection1.getDistance() - intersection2.getDistance();
-
-            if (diff > 0) {
-              return 1;
-            } else if (diff < 0) {
-              return -1;
-            } else {
-              return 0;
-            }
-          }
-        });
-
-    Collection<Intersection> intersections = this.intersections.values();
-
-    for (Intersection intersection : intersections) {
-      intersection.setDistance(Double.MAX_VALUE);
-      intersection.setPrev(null);
-    }
-
-    startIntersection.setDistance(0);
-    startIntersection.setPrev(null);
-    q.add(startIntersection);
-
-    // Main Dijkstra's algorithm's loop
-
-    while (!q.isEmpty()) {
-      Intersection min = q.poll();
-      if (min.equals(endIntersection)) {
-        break;
+  public synchronized RoadUpdateStatistics updateRoads(RoadUpdates updates) {
+    long startTime = System.nanoTime();
+    Map<Integer, Double> distances = updates.getDistances();
+    int[] roads = new int[distances.size()];
+    double[] newDistances = new double[distances.size()];
+    int closedCount = 0;
+    int i = 0;
+
+    for (Map.Entry<Integer, Double> entry : distances.entrySet()) {
+      roads[i] = Objects.checkIndex(entry.getKey(), this.graph.getRoadCount());
+      newDistances[i] = entry.getValue();
+
+      if (newDistances[i] == Double.POSITIVE_INFINITY) {
+        closedCount++;
       }
 
-      for (Map.Entry<Intersection, Road> neighbor : min.getNeighbors().entrySet()) {
-        Intersection neighborIntersection = neighbor.getKey();
-        Road neighborRoad = neighbor.getValue();
-
-        double temp = min.getDistance() + neighborRoad.getDistance();
-
-        if (temp < neighborIntersection.getDistance()) {
-          neighborIntersection.setDistance(temp);
-          neighborIntersection.setPrev(neighborRoad);
-
-          q.add(neighborIntersection);
-        }
-      }
+      i++;
     }
 
-    // Compile the list of roads in the shortest path
-
-    Intersection currentIntersection = endIntersection;
-    LinkedList<Road> shortestPath = new LinkedList<>();
-
-    while (currentIntersection.getPrev() != null) {
-      shortestPath.addFirst(currentIntersection.getPrev());
-      currentIntersection.getPrev().setIsShortestRoad(true);
-      currentIntersection = currentIntersection.getPrev().getTheOtherEnd(currentIntersection);
-    }
+    this.graph = ReweightedRoadGraph.reweight(this.graph, roads, newDistances);
 
-    return shortestPath;
+    return new RoadUpdateStatistics(roads.length, closedCount, System.nanoTime() - startTime);
   }
 }
@@ -0,0 +1,213 @@
+package io.github.cszach.Trailblazer.geo;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * A builder that collects intersections and roads into primitive arrays, and then freezes them into
+ * a {@code Geography}.
+ *
+ * <p>
+ * Intersections and roads are numbered in the order that they are added, and keep their numbers in
+ * the built {@code Geography}. Their IDs are collected into {@code StringPool}s, and can be added
+ * as UTF-8 bytes so that importers do not need to create a {@code String} per ID.
+ *
+ * @see Geography
+ * @see CompactRoadGraph
+ */
+public class GeographyBuilder {
+  /**
+   * The IDs of the intersections, which also map an intersection ID to its index.
+   */
+  private StringPool.Builder intersectionIds = new StringPool.Builder();
+  private double[] latitudes = new double[256];
+  private double[] longtitudes = new double[256];
+
+  /**
+   * The IDs of the roads.
+   */
+  private StringPool.Builder roadIds = new StringPool.Builder();
+  private int[] roadIntersections1 = new int[256];
+  private int[] roadIntersections2 = new int[256];
+
+  /**
+   * Returns the number of intersections added to this builder.
+   *
+   * @return the number of intersections added to this builder.
+   */
+  public int getIntersectionCount() {
+    return this.intersectionIds.size();
+  }
+
+  /**
+   * Returns the number of roads added to this builder.
+   *
+   * @return the number of roads added to this builder.
+   */
+  public int getRoadCount() {
+    return this.roadIds.size();
+  }
+
+  /**
+   * Returns the index of an intersection that has been added.
+   *
+   * @param bytes an array that holds the UTF-8 encoded ID of the intersection
+   * @param offset the start of the ID in the array
+   * @param length the length, in bytes, of the ID
+   * @return the index of the intersection, or {@code -1} if it has not been added.
+   */
+  public int getIntersectionIndex(byte[] bytes, int offset, int length) {
+    return this.intersectionIds.indexOf(bytes, offset, length);
+  }
+
+  /**
+   * Adds an intersection. If an intersection with the same ID has been added, its coordinates are
+   * replaced instead.
+   *
+   * @param id the ID that identifies the intersection
+   * @param latitude the geodetic latitude, in degrees, of the intersection
+   * @param longtitude the geodetic longtitude, in degrees, of the intersection
+   * @return the index of the intersection.
+   */
+  public int addIntersection(String id, double latitude, double longtitude) {
+    byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+
+    return this.addIntersection(bytes, 0, bytes.length, latitude, longtitude);
+  }
+
+  /**
+   * Adds an intersection whose ID is UTF-8 encoded. If an intersection with the same ID has been
+   * added, its coordinates are replaced instead.
+   *
+   * @param bytes an array that holds the UTF-8 encoded ID of the intersection
+   * @param offset the start of the ID in the array
+   * @param length the length, in bytes, of the ID
+   * @param latitude the geodetic latitude, in degrees, of the intersection
+   * @param longtitude the geodetic longtitude, in degrees, of the intersection
+   * @return the index of the intersection.
+   */
+  public int addIntersection(byte[] bytes, int offset, int length, double latitude,
+      double longtitude) {
+    int index = this.intersectionIds.indexOf(bytes, offset, length);
+
+    if (index < 0) {
+      index = this.intersectionIds.add(bytes, offset, length);
+
+      if (index == this.latitudes.length) {
+        this.latitudes = Arrays.copyOf(this.latitudes, index * 2);
+        this.longtitudes = Arrays.copyOf(this.longtitudes, index * 2);
+      }
+    }
+
+    this.latitudes[index] = latitude;
+    this.longtitudes[index] = longtitude;
+
+    return index;
+  }
+
+  /**
+   * Adds a road between two intersections that have been added.
+   *
+   * @param id the ID that identifies the road
+   * @param intersection1Id the ID of one of the endpoints of the road
+   * @param intersection2Id the ID of the other endpoint of the road
+   * @return the index of the road.
+   * @throws NoSuchElementException when an endpoint has not been added.
+   */
+  public int addRoad(String id, String intersection1Id, String intersection2Id)
+      throws NoSuchElementException {
+    int intersection1 = this.intersectionIds.indexOf(intersection1Id);
+    int intersection2 = this.intersectionIds.indexOf(intersection2Id);
+
+    if (intersection1 < 0 || intersection2 < 0) {
+      throw new NoSuchElementException("Road " + id + " connects an unknown intersection "
+          + (intersection1 < 0 ? intersection1Id : intersection2Id));
+    }
+
+    return this.addRoad(id, intersection1, intersection2);
+  }
+
+  /**
+   * Adds a road between two intersections that have been added.
+   *
+   * @param id the ID that identifies the road
+   * @param intersection1 the index of one of the endpoints of the road
+   * @param intersection2 the index of the other endpoint of the road
+   * @return the index of the road.
+   */
+  public int addRoad(String id, int intersection1, int intersection2) {
+    byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+
+    return this.addRoad(bytes, 0, bytes.length, intersection1, intersection2);
+  }
+
+  /**
+   * Adds a road whose ID is UTF-8 encoded between two intersections that have been added.
+   *
+   * @param bytes an array that holds the UTF-8 encoded ID of the road
+   * @param offset the start of the ID in the array
+   * @param length the length, in bytes, of the ID
+   * @param intersection1 the index of one of the endpoints of the road
+   * @param intersection2 the index of the other endpoint of the road
+   * @return the index of the road.
+   */
+  public int addRoad(byte[] bytes, int offset, int length, int intersection1, int intersection2) {
+    int index = this.roadIds.add(bytes, offset, length);
+
+    if (index == this.roadIntersections1.length) {
+      this.roadIntersections1 = Arrays.copyOf(this.roadIntersections1, index * 2);
+      this.roadIntersections2 = Arrays.copyOf(this.roadIntersections2, index * 2);
+    }
+
+    this.roadIntersections1[index] = intersection1;
+    this.roadIntersections2[index] = intersection2;
+
+    return index;
+  }
+
+  /**
+   * Freezes the added intersections and roads into a new {@code Geography}.
+   *
+   * @return a new {@code Geography}.
+   */
+  public Geography build() {
+    Geography geo = new Geography();
+    this.buildInto(geo);
+
+    return geo;
+  }
+
+  /**
+   * Freezes the added intersections and roads into a {@code Geography}, replacing its data.
+   *
+   * <p>
+   * The road distances are computed here, and the {@code CompactRoadGraph} of the geography is laid
+   * out.
+   *
+   * @param geo the {@code Geography} to build into
+   */
+  void buildInto(Geography geo) {
+    int n = this.intersectionIds.size();
+    int m = this.roadIds.size();
+
+    double[] latitudes = Arrays.copyOf(this.latitudes, n);
+    double[] longtitudes = Arrays.copyOf(this.longtitudes, n);
+    int[] roadIntersections1 = Arrays.copyOf(this.roadIntersections1, m);
+    int[] roadIntersections2 = Arrays.copyOf(this.roadIntersections2, m);
+    double[] roadDistances = new double[m];
+
+    for (int road = 0; road < m; road++) {
+      int intersection1 = roadIntersections1[road];
+      int intersection2 = roadIntersections2[road];
+
+      roadDistances[road] = Road.haversine(latitudes[intersection1], longtitudes[intersection1],
+          latitudes[intersection2], longtitudes[intersection2]);
+    }
+
+    RoadGraph graph = new CompactRoadGraph(latitudes, longtitudes, roadIntersections1,
+        roadIntersections2, roadDistances);
+
+    geo.initialize(graph, this.intersectionIds.build(), this.roadIds.build());
+  }
+}
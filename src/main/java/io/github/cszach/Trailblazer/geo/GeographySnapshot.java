@@ -0,0 +1,557 @@
+package io.github.cszach.Trailblazer.geo;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32C;
+
+/**
+ * A read-only copy of a {@code Geography} that is memory-mapped from a binary snapshot file.
+ *
+ * <p>
+ * A snapshot stores a geography in a form that can be queried in place: intersections are numbered
+ * densely, coordinates are fixed-point integers, the neighbors of every intersection are stored in
+ * adjacency arrays, road lengths are precomputed, and IDs are stored in hashed tables. Opening a
+ * snapshot maps the file and verifies its checksum, but does not create one Java object per
+ * intersection or road. A snapshot is a {@code RoadGraph} itself, so searches run directly over the
+ * mapped adjacency arrays.
+ *
+ * <p>
+ * The file consists of a header of {@code HEADER_SIZE} bytes followed by a body. All values are
+ * little-endian, and every section of the body starts on an 8-byte boundary. Every section is
+ * mapped on its own, so a snapshot can be larger than 2 GB, but no single section can:
+ *
+ * <ul>
+ * <li>The header holds {@code MAGIC}, the format version, the number of intersections, roads, and
+ * adjacency entries, the length of the body, and the CRC-32C checksum of the body;
+ * <li>The latitudes and then the longtitudes of the intersections, as {@code int} values in units
+ * of {@code 1 / FIXED_POINT_SCALE} degrees;
+ * <li>The adjacency offsets: one {@code int} per intersection plus one, such that the adjacency
+ * entries of intersection {@code i} are from offset {@code i} (inclusive) to offset {@code i + 1}
+ * (exclusive);
+ * <li>The adjacency targets and then the adjacency roads: one {@code int} per adjacency entry each,
+ * which are the neighbor's index and the index of the road to the neighbor, respectively;
+ * <li>The first and then the second endpoints of the roads: one {@code int} per road each;
+ * <li>The lengths of the roads, in miles, as {@code double} values;
+ * <li>The ID pool of the intersections and then the ID pool of the roads. An ID pool is a
+ * {@code StringPool} that is stored as the number of IDs, the number of hash slots, the offset of
+ * every ID in the pool's UTF-8 byte arena plus the end offset, the hash slots, and the arena.
+ * </ul>
+ *
+ * @see Geography
+ */
+public class GeographySnapshot implements RoadGraph {
+  /**
+   * The first 8 bytes of every snapshot file, which read {@code TRLBLZRS} in ASCII.
+   */
+  private static final long MAGIC = 0x53525a4c424c5254L;
+  /**
+   * The version of the snapshot format that this class reads and writes.
+   */
+  private static final int VERSION = 1;
+  /**
+   * The size of the header, in bytes.
+   */
+  private static final int HEADER_SIZE = 64;
+  /**
+   * The number of fixed-point units in a degree.
+   */
+  private static final double FIXED_POINT_SCALE = 1e7;
+  /**
+   * The size of the regions of the body that are mapped in turn to verify its checksum, in bytes.
+   */
+  private static final int CHECKSUM_REGION_SIZE = 1 << 30;
+
+  private int intersectionCount;
+  private int roadCount;
+
+  // Views over the sections of the mapped file
+  private IntBuffer latitudes;
+  private IntBuffer longtitudes;
+  private IntBuffer edgeOffsets;
+  private IntBuffer edgeTargets;
+  private IntBuffer edgeRoads;
+  private IntBuffer roadIntersections1;
+  private IntBuffer roadIntersections2;
+  private DoubleBuffer roadDistances;
+  private StringPool intersectionIds;
+  private StringPool roadIds;
+
+  private GeographySnapshot() {}
+
+  /**
+   * Returns the number of intersections in this snapshot.
+   *
+   * @return the number of intersections in this snapshot.
+   */
+  @Override
+  public int getIntersectionCount() {
+    return this.intersectionCount;
+  }
+
+  /**
+   * Returns the number of roads in this snapshot.
+   *
+   * @return the number of roads in this snapshot.
+   */
+  @Override
+  public int getRoadCount() {
+    return this.roadCount;
+  }
+
+  /**
+   * Returns the latitude of an intersection in this snapshot.
+   *
+   * @param intersection the index of the intersection
+   * @return the geodetic latitude, in degrees, of the intersection.
+   */
+  @Override
+  public double getLatitude(int intersection) {
+    return this.latitudes.get(intersection) / FIXED_POINT_SCALE;
+  }
+
+  /**
+   * Returns the longtitude of an intersection in this snapshot.
+   *
+   * @param intersection the index of the intersection
+   * @return the geodetic longtitude, in degrees, of the intersection.
+   */
+  @Override
+  public double getLongtitude(int intersection) {
+    return this.longtitudes.get(intersection) / FIXED_POINT_SCALE;
+  }
+
+  /**
+   * Returns the first intersection of a road in this snapshot.
+   *
+   * @param road the index of the road
+   * @return the index of the first intersection of the road.
+   */
+  @Override
+  public int getRoadIntersection1(int road) {
+    return this.roadIntersections1.get(road);
+  }
+
+  /**
+   * Returns the second intersection of a road in this snapshot.
+   *
+   * @param road the index of the road
+   * @return the index of the second intersection of the road.
+   */
+  @Override
+  public int getRoadIntersection2(int road) {
+    return this.roadIntersections2.get(road);
+  }
+
+  /**
+   * Returns the distance of a road in this snapshot.
+   *
+   * @param road the index of the road
+   * @return the distance, in miles, of the road.
+   */
+  @Override
+  public double getRoadDistance(int road) {
+    return this.roadDistances.get(road);
+  }
+
+  @Override
+  public int getFirstEdge(int intersection) {
+    return this.edgeOffsets.get(intersection);
+  }
+
+  @Override
+  public int getEdgeTarget(int edge) {
+    return this.edgeTargets.get(edge);
+  }
+
+  @Override
+  public int getEdgeRoad(int edge) {
+    return this.edgeRoads.get(edge);
+  }
+
+  @Override
+  public double getEdgeWeight(int edge) {
+    return this.roadDistances.get(this.edgeRoads.get(edge));
+  }
+
+  /**
+   * Creates a {@code Geography} whose graph and ID pools are this snapshot.
+   *
+   * <p>
+   * Nothing is copied: the returned geography reads intersections, roads, and IDs directly from the
+   * mapped file.
+   *
+   * @return a new {@code Geography} with the data of this snapshot.
+   */
+  public Geography toGeography() {
+    Geography geo = new Geography();
+    geo.initialize(this, this.intersectionIds, this.roadIds);
+
+    return geo;
+  }
+
+  /**
+   * Maps a snapshot file and verifies it.
+   *
+   * @param path the path of the snapshot file
+   * @return the mapped snapshot.
+   * @throws FileNotFoundException when the specified file does not exist.
+   * @throws IOException when there is a trouble reading the file.
+   * @throws NoSuchElementException when the file is not a snapshot, has an unsupported version, or
+   *         is corrupted.
+   */
+  public static GeographySnapshot open(String path) throws IOException, NoSuchElementException {
+    Path file = Path.of(path);
+
+    if (!Files.isRegularFile(file)) {
+      throw new FileNotFoundException(path + " (No such file)");
+    }
+
+    GeographySnapshot snapshot = new GeographySnapshot();
+
+    // Mapped regions stay valid once the channel is closed
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+
+      if (size < HEADER_SIZE) {
+        throw new NoSuchElementException("Invalid or broken snapshot: unexpected file size");
+      }
+
+      ByteBuffer header =
+          channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+      if (header.getLong(0) != MAGIC) {
+        throw new NoSuchElementException("Invalid or broken snapshot: not a snapshot file");
+      }
+
+      if (header.getInt(8) != VERSION) {
+        throw new NoSuchElementException(
+            "Invalid or broken snapshot: unsupported version " + header.getInt(8));
+      }
+
+      snapshot.intersectionCount = header.getInt(12);
+      snapshot.roadCount = header.getInt(16);
+      int edgeCount = header.getInt(20);
+      long bodyLength = header.getLong(24);
+      long checksum = header.getLong(32);
+
+      if (bodyLength != size - HEADER_SIZE) {
+        throw new NoSuchElementException("Invalid or broken snapshot: truncated file");
+      }
+
+      CRC32C crc = new CRC32C();
+
+      for (long offset = HEADER_SIZE; offset < size; offset += CHECKSUM_REGION_SIZE) {
+        crc.update(channel.map(FileChannel.MapMode.READ_ONLY, offset,
+            Math.min(CHECKSUM_REGION_SIZE, size - offset)));
+      }
+
+      if (crc.getValue() != checksum) {
+        throw new NoSuchElementException("Invalid or broken snapshot: checksum mismatch");
+      }
+
+      // Counts are checked before they size anything, so that n + 1 cannot overflow
+      if (snapshot.intersectionCount < 0 || snapshot.intersectionCount == Integer.MAX_VALUE
+          || snapshot.roadCount < 0 || edgeCount < 0) {
+        throw new NoSuchElementException("Invalid or broken snapshot: bad counts");
+      }
+
+      SectionReader reader = new SectionReader(channel, HEADER_SIZE, size);
+      int n = snapshot.intersectionCount;
+      int m = snapshot.roadCount;
+
+      snapshot.latitudes = reader.ints(n);
+      snapshot.longtitudes = reader.ints(n);
+      snapshot.edgeOffsets = reader.ints(n + 1);
+      snapshot.edgeTargets = reader.ints(edgeCount);
+      snapshot.edgeRoads = reader.ints(edgeCount);
+      snapshot.roadIntersections1 = reader.ints(m);
+      snapshot.roadIntersections2 = reader.ints(m);
+      snapshot.roadDistances = reader.doubles(m);
+      snapshot.intersectionIds = readPool(reader);
+      snapshot.roadIds = readPool(reader);
+    }
+
+    return snapshot;
+  }
+
+  /**
+   * Writes a {@code Geography} to a snapshot file.
+   *
+   * <p>
+   * The snapshot is written to a temporary file first, which then replaces the file at the given
+   * path, so that a reader never sees a partially written snapshot.
+   *
+   * @param geo the {@code Geography} to write
+   * @param path the path of the snapshot file
+   * @throws IOException when there is a trouble writing the file, or when a section of the snapshot
+   *         would be larger than 2 GB, in which case nothing is written.
+   */
+  public static void write(Geography geo, String path) throws IOException {
+    RoadGraph graph = geo.getGraph();
+    int n = graph.getIntersectionCount();
+    int m = graph.getRoadCount();
+    int edgeCount = graph.getFirstEdge(n);
+    long largestSection =
+        Math.max(Math.max((long) (n + 1) * Integer.BYTES, (long) edgeCount * Integer.BYTES),
+            (long) m * Double.BYTES);
+
+    for (StringPool pool : new StringPool[] {geo.getIntersectionIds(), geo.getRoadIds()}) {
+      largestSection = Math.max(largestSection,
+          Math.max(pool.getArena().remaining(), (long) pool.getSlotCount() * Integer.BYTES));
+    }
+
+    if (largestSection > Integer.MAX_VALUE) {
+      throw new IOException(String.format(
+          "The snapshot is too large: a section would take %d bytes, over the 2 GB that can be mapped",
+          largestSection));
+    }
+
+    Path file = Path.of(path);
+    Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+
+    try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      SectionWriter writer = new SectionWriter(channel, HEADER_SIZE);
+
+      for (int i = 0; i < n; i++) {
+        writer.putInt(toFixedPoint(graph.getLatitude(i)));
+      }
+      writer.align();
+
+      for (int i = 0; i < n; i++) {
+        writer.putInt(toFixedPoint(graph.getLongtitude(i)));
+      }
+      writer.align();
+
+      for (int i = 0; i <= n; i++) {
+        writer.putInt(graph.getFirstEdge(i));
+      }
+      writer.align();
+
+      for (int edge = 0; edge < edgeCount; edge++) {
+        writer.putInt(graph.getEdgeTarget(edge));
+      }
+      writer.align();
+
+      for (int edge = 0; edge < edgeCount; edge++) {
+        writer.putInt(graph.getEdgeRoad(edge));
+      }
+      writer.align();
+
+      for (int road = 0; road < m; road++) {
+        writer.putInt(graph.getRoadIntersection1(road));
+      }
+      writer.align();
+
+      for (int road = 0; road < m; road++) {
+        writer.putInt(graph.getRoadIntersection2(road));
+      }
+      writer.align();
+
+      for (int road = 0; road < m; road++) {
+        writer.putDouble(graph.getRoadDistance(road));
+      }
+      writer.align();
+
+      writePool(writer, geo.getIntersectionIds());
+      writePool(writer, geo.getRoadIds());
+
+      long bodyLength = writer.finish();
+
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+      header.putLong(MAGIC);
+      header.putInt(VERSION);
+      header.putInt(n);
+      header.putInt(m);
+      header.putInt(edgeCount);
+      header.putLong(bodyLength);
+      header.putLong(writer.getChecksum());
+      header.clear();
+
+      while (header.hasRemaining()) {
+        channel.write(header, header.position());
+      }
+
+      channel.force(false);
+    }
+
+    Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private static int toFixedPoint(double degrees) {
+    return (int) Math.round(degrees * FIXED_POINT_SCALE);
+  }
+
+  /**
+   * Reads a {@code StringPool} whose arena, offsets, and hash slots stay in the mapped file.
+   */
+  private static StringPool readPool(SectionReader reader) throws IOException {
+    ByteBuffer counts = reader.bytes(8);
+    int count = counts.getInt(0);
+    int slotCount = counts.getInt(4);
+
+    if (count < 0 || Integer.bitCount(slotCount) != 1 || slotCount <= count) {
+      throw new NoSuchElementException("Invalid or broken snapshot: bad ID table");
+    }
+
+    IntBuffer offsets = reader.ints(count + 1);
+    IntBuffer slots = reader.ints(slotCount);
+    ByteBuffer arena = reader.bytes(offsets.get(count));
+
+    return new StringPool(count, offsets, slots, arena);
+  }
+
+  /**
+   * Writes a {@code StringPool} as its number of strings, its number of hash slots, its offsets,
+   * its hash slots, and its arena.
+   */
+  private static void writePool(SectionWriter writer, StringPool pool) throws IOException {
+    IntBuffer offsets = pool.getOffsets();
+    IntBuffer slots = pool.getSlots();
+    ByteBuffer arena = pool.getArena();
+
+    writer.putInt(pool.size());
+    writer.putInt(pool.getSlotCount());
+
+    while (offsets.hasRemaining()) {
+      writer.putInt(offsets.get());
+    }
+    writer.align();
+
+    while (slots.hasRemaining()) {
+      writer.putInt(slots.get());
+    }
+    writer.align();
+
+    while (arena.hasRemaining()) {
+      writer.putByte(arena.get());
+    }
+    writer.align();
+  }
+
+  /**
+   * Maps the 8-byte aligned sections of a snapshot in order, each as a region of its own.
+   */
+  private static class SectionReader {
+    private FileChannel channel;
+    private long position;
+    private long size;
+
+    SectionReader(FileChannel channel, long position, long size) {
+      this.channel = channel;
+      this.position = position;
+      this.size = size;
+    }
+
+    private ByteBuffer section(long length) throws IOException {
+      if (length < 0 || length > Integer.MAX_VALUE || this.position + length > this.size) {
+        throw new NoSuchElementException("Invalid or broken snapshot: section out of bounds");
+      }
+
+      ByteBuffer section = this.channel.map(FileChannel.MapMode.READ_ONLY, this.position, length)
+          .order(ByteOrder.LITTLE_ENDIAN);
+      this.position += (length + 7) & ~7;
+
+      return section;
+    }
+
+    IntBuffer ints(int count) throws IOException {
+      return this.section((long) count * Integer.BYTES).asIntBuffer();
+    }
+
+    DoubleBuffer doubles(int count) throws IOException {
+      return this.section((long) count * Double.BYTES).asDoubleBuffer();
+    }
+
+    ByteBuffer bytes(int count) throws IOException {
+      return this.section(count);
+    }
+  }
+
+  /**
+   * Writes the 8-byte aligned sections of a snapshot through a buffer, and computes the checksum of
+   * everything written.
+   */
+  private static class SectionWriter {
+    private FileChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+    private CRC32C crc = new CRC32C();
+    private long position;
+    private long length = 0;
+
+    SectionWriter(FileChannel channel, long position) {
+      this.channel = channel;
+      this.position = position;
+    }
+
+    void putInt(int value) throws IOException {
+      this.ensureRemaining(Integer.BYTES);
+      this.buffer.putInt(value);
+    }
+
+    void putDouble(double value) throws IOException {
+      this.ensureRemaining(Double.BYTES);
+      this.buffer.putDouble(value);
+    }
+
+    void putByte(byte value) throws IOException {
+      this.ensureRemaining(1);
+      this.buffer.put(value);
+    }
+
+    /**
+     * Pads the current section with zeros up to the next 8-byte boundary.
+     */
+    void align() throws IOException {
+      while (((this.length + this.buffer.position()) & 7) != 0) {
+        this.ensureRemaining(1);
+        this.buffer.put((byte) 0);
+      }
+    }
+
+    long getChecksum() {
+      return this.crc.getValue();
+    }
+
+    /**
+     * Flushes everything that is written.
+     *
+     * @return the total number of bytes written.
+     */
+    long finish() throws IOException {
+      this.flush();
+
+      return this.length;
+    }
+
+    private void ensureRemaining(int count) throws IOException {
+      if (this.buffer.remaining() < count) {
+        this.flush();
+      }
+    }
+
+    private void flush() throws IOException {
+      this.buffer.flip();
+      this.crc.update(this.buffer.duplicate());
+
+      while (this.buffer.hasRemaining()) {
+        int written = this.channel.write(this.buffer, this.position);
+        this.position += written;
+        this.length += written;
+      }
+
+      this.buffer.clear();
+    }
+  }
+}
@@ -0,0 +1,97 @@
+package io.github.cszach.Trailblazer.geo;
+
+/**
+ * Statistics about an import of a map data file into a {@code Geography}.
+ *
+ * @see Geography#importFromFile(String)
+ */
+public class ImportStatistics {
+  /**
+   * The number of bytes of map data that were parsed. For compressed files, this is the size of the
+   * decompressed data.
+   */
+  private long bytes;
+  /**
+   * The number of intersections that were imported.
+   */
+  private int intersectionCount;
+  /**
+   * The number of roads that were imported.
+   */
+  private int roadCount;
+  /**
+   * The wall-clock time, in nanoseconds, that the import took.
+   */
+  private long nanos;
+
+  /**
+   * Constructs a new {@code ImportStatistics}.
+   *
+   * @param bytes the number of bytes of map data that were parsed
+   * @param intersectionCount the number of intersections that were imported
+   * @param roadCount the number of roads that were imported
+   * @param nanos the wall-clock time, in nanoseconds, that the import took
+   */
+  public ImportStatistics(long bytes, int intersectionCount, int roadCount, long nanos) {
+    this.bytes = bytes;
+    this.intersectionCount = intersectionCount;
+    this.roadCount = roadCount;
+    this.nanos = nanos;
+  }
+
+  /**
+   * Returns the number of bytes of map data that were parsed.
+   *
+   * @return the number of bytes of map data that were parsed.
+   */
+  public long getBytes() {
+    return this.bytes;
+  }
+
+  /**
+   * Returns the number of intersections that were imported.
+   *
+   * @return the number of intersections that were imported.
+   */
+  public int getIntersectionCount() {
+    return this.intersectionCount;
+  }
+
+  /**
+   * Returns the number of roads that were imported.
+   *
+   * @return the number of roads that were imported.
+   */
+  public int getRoadCount() {
+    return this.roadCount;
+  }
+
+  /**
+   * Returns the wall-clock time that the import took.
+   *
+   * @return the wall-clock time, in nanoseconds, that the import took.
+   */
+  public long getNanos() {
+    return this.nanos;
+  }
+
+  /**
+   * Returns the import throughput.
+   *
+   * @return the import throughput, in megabytes (10<sup>6</sup> bytes) per second.
+   */
+  public double getMegabytesPerSecond() {
+    if (this.nanos == 0) {
+      return 0.0;
+    }
+
+    return (this.bytes / 1e6) / (this.nanos / 1e9);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Imported %d intersections and %d roads (%.1f MB in %d ms, %.1f MB/s)",
+        this.intersectionCount, this.roadCount, this.bytes / 1e6, this.nanos / 1_000_000,
+        this.getMegabytesPerSecond());
+  }
+}
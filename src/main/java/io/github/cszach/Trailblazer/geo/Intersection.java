@@ -1,7 +1,7 @@
 package io.github.cszach.Trailblazer.geo;
 
-import java.awt.Point;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * A geographical intersection that is the endpoint of a road.
@@ -10,67 +10,52 @@ import java.util.HashMap;
  * An intersection is identified by its ID and has a latitude and longtitude.
  *
  * <p>
- * An intersection is also a {@code Point} whose x and y values can be used to e.g. determine its
- * location on a drawing panel (such as {@code JPanel}).
+ * An {@code Intersection} is a lightweight view over an intersection of the {@code RoadGraph} of a
+ * {@code Geography}: it only knows the index of the intersection, and reads everything else from
+ * the graph. Views are created on demand, and two views of the same intersection are equal.
  *
  * @see Road
+ * @see RoadGraph
  */
-public class Intersection extends Point {
+public class Intersection {
   /**
-   * The ID of this intersection.
+   * The geography that this intersection belongs to.
    */
-  private String id;
+  private Geography geo;
   /**
-   * The geodetic latitude, in degrees, of this intersection.
+   * The index of this intersection in the graph of its geography.
    */
-  private double latitude;
-  /**
-   * The geodetic longtitude, in degrees, of this intersection.
-   */
-  private double longtitude;
-  /**
-   * A {@code Map} that maps this intersection's neighbors to the roads that connect between this
-   * intersection and the respective neighbor.
-   */
-  private HashMap<Intersection, Road> neighbors;
-
-  // For Dijkstra's algorithm
-  private double distance;
-  private Road prev;
+  private int index;
 
   /**
-   * Constructs a new {@code Intersection} with the given ID, latitude, and longtitude.
+   * Constructs a new view of an intersection of a {@code Geography}.
    *
-   * @param id the ID that identifies the intersection
-   * @param latitude the geodetic latitude, in degrees, of this intersection
-   * @param longtitude the geodetic longtitude, in degrees, of this intersection
+   * @param geo the geography that the intersection belongs to
+   * @param index the index of the intersection in the graph of the geography
    */
-  public Intersection(String id, double latitude, double longtitude) {
-    this.id = id;
-    this.latitude = latitude;
-    this.longtitude = longtitude;
-
-    this.neighbors = new HashMap<>();
+  Intersection(Geography geo, int index) {
+    this.geo = geo;
+    this.index = index;
   }
 
   /**
    * Checks whether two intersections are equal.
    *
    * <p>
-   * Returns {@code true} if the argument {@code obj} is an {@code Intersection} object and has the
-   * same ID, latitude, and longtitude as this intersection.
+   * Returns {@code true} if the argument {@code obj} is an {@code Intersection} object that views
+   * the same intersection of the same geography as this intersection.
    *
    * @return {@code true} if the objects are equal, {@code false} otherwise.
    */
   @Override
   public boolean equals(Object obj) {
-    return (obj instanceof Intersection intersection) && (this.id.equals(intersection.id))
-        && (this.latitude == intersection.latitude) && this.longtitude == intersection.longtitude;
+    return (obj instanceof Intersection intersection) && (this.geo == intersection.geo)
+        && (this.index == intersection.index);
   }
 
   @Override
   public int hashCode() {
-    return this.id.hashCode();
+    return this.index;
   }
 
   /**
@@ -79,7 +64,16 @@ public class Intersection extends Point {
    * @return the ID of this intersection.
    */
   public String getId() {
-    return this.id;
+    return this.geo.getIntersectionId(this.index);
+  }
+
+  /**
+   * Returns the index of this intersection.
+   *
+   * @return the index of this intersection in the graph of its geography.
+   */
+  public int getIndex() {
+    return this.index;
   }
 
   /**
@@ -88,7 +82,7 @@ public class Intersection extends Point {
    * @return the geodetic latitude, in degrees, of this intersection.
    */
   public double getLatitude() {
-    return this.latitude;
+    return this.geo.getGraph().getLatitude(this.index);
   }
 
   /**
@@ -97,73 +91,30 @@ public class Intersection extends Point {
    * @return the geodetic longtitude, in degrees, of this intersection.
    */
   public double getLongtitude() {
-    return this.longtitude;
+    return this.geo.getGraph().getLongtitude(this.index);
   }
 
   /**
-   * Returns the {@code HashMap} that maps from the neighbors of this intersection to the roads that
+   * Returns a {@code Map} that maps from the neighbors of this intersection to the roads that
    * connect this intersection and the corresponding neighbor.
    *
-   * @return the {@code HashMap} that maps from the neighbors of this intersection to the roads that
-   *         connect this intersection and the corresponding neighbor.
-   */
-  public HashMap<Intersection, Road> getNeighbors() {
-    return this.neighbors;
-  }
-
-  /**
-   * Returns the distance of the shortest path that connects between a start intersection and this
-   * intersection.
-   *
    * <p>
-   * This is intended for use in the Djikstra's algorithm.
+   * The map is built from the graph on every call. If several roads connect this intersection and a
+   * neighbor, the one that was added last is mapped to.
    *
-   * @return the distance, in miles, of the shortest path that connects between a start intersection
-   *         and this intersection.
-   */
-  protected double getDistance() {
-    return this.distance;
-  }
-
-  /**
-   * Returns the road that connects this intersection and the previous intersection in the shortest
-   * path between a start intersection and this intersection.
-   *
-   * <p>
-   * This is intended for use in the Djikstra's algorithm.
-   *
-   * @return the road that connects this intersection and the previous intersection in the shortest
-   *         path between a start intersection and this intersection.
+   * @return a {@code Map} that maps from the neighbors of this intersection to the roads that
+   *         connect this intersection and the corresponding neighbor.
    */
-  protected Road getPrev() {
-    return this.prev;
-  }
+  public Map<Intersection, Road> getNeighbors() {
+    RoadGraph graph = this.geo.getGraph();
+    Map<Intersection, Road> neighbors = new LinkedHashMap<>();
+    int edgeEnd = graph.getFirstEdge(this.index + 1);
 
-  /**
-   * Updates the distance of the shortest path that connects between a start intersection and this
-   * intersection.
-   *
-   * <p>
-   * This is intended for use in the Djikstra's algorithm.
-   *
-   * @param distance the new distance of the shortest path that connects between a start
-   *        intersection and this intersection
-   */
-  protected void setDistance(double distance) {
-    this.distance = distance;
-  }
+    for (int edge = graph.getFirstEdge(this.index); edge < edgeEnd; edge++) {
+      neighbors.put(new Intersection(this.geo, graph.getEdgeTarget(edge)),
+          new Road(this.geo, graph.getEdgeRoad(edge)));
+    }
 
-  /**
-   * Updates the road that connects this intersection and the previous intersection in the shortest
-   * path between a start intersection and this intersection.
-   *
-   * <p>
-   * This is intended for use in the Djikstra's algorithm.
-   *
-   * @param prev the new road that connects this intersection and the previous intersection in the
-   *        shortest path between a start intersection and this intersection.
-   */
-  protected void setPrev(Road prev) {
-    this.prev = prev;
+    return neighbors;
   }
 }
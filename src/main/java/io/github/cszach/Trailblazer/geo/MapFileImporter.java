@@ -0,0 +1,611 @@
+package io.github.cszach.Trailblazer.geo;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+import io.github.cszach.Trailblazer.metrics.ImportPhase;
+
+/**
+ * A parallel reader for map data files.
+ *
+ * <p>
+ * Plain files are memory-mapped and split into chunks on line boundaries, and the chunks are parsed
+ * concurrently. Gzip-compressed files cannot be mapped, so they are decompressed as a stream and
+ * handed to the parsers in blocks that also end on line boundaries. Either way, all intersections
+ * are resolved before any road, so a road may refer to an intersection that appears later in the
+ * file.
+ *
+ * <p>
+ * Since chunks are split on line boundaries, each entry is expected to be on its own line.
+ *
+ * @see Geography#importFromFile(String)
+ */
+class MapFileImporter {
+  /**
+   * The default size, in bytes, of the chunks that the input is split into.
+   */
+  private static final int DEFAULT_CHUNK_SIZE = 4 << 20;
+  /**
+   * The number of bytes read at a time when looking for the end of a line.
+   */
+  private static final int BOUNDARY_WINDOW = 4096;
+  /**
+   * The first two bytes of a gzip stream.
+   */
+  private static final int GZIP_MAGIC = 0x1f8b;
+
+  /**
+   * The number of threads that parse chunks.
+   */
+  private int threads;
+  /**
+   * The size, in bytes, of the chunks that the input is split into.
+   */
+  private int chunkSize;
+
+  /**
+   * Constructs a new {@code MapFileImporter} that parses on the given number of threads.
+   *
+   * @param threads the number of threads that parse chunks
+   */
+  MapFileImporter(int threads) {
+    this(threads, DEFAULT_CHUNK_SIZE);
+  }
+
+  /**
+   * Constructs a new {@code MapFileImporter} that parses chunks of the given size on the given
+   * number of threads.
+   *
+   * @param threads the number of threads that parse chunks
+   * @param chunkSize the size, in bytes, of the chunks that the input is split into
+   */
+  MapFileImporter(int threads, int chunkSize) {
+    this.threads = Math.max(1, threads);
+    this.chunkSize = Math.max(1, chunkSize);
+  }
+
+  /**
+   * Imports the map data file at the given path into a {@code GeographyBuilder}.
+   *
+   * @param builder the {@code GeographyBuilder} to import into
+   * @param path the path of the file to read from
+   * @return the number of bytes of map data that were parsed.
+   * @throws FileNotFoundException when the specified file does not exist.
+   * @throws IOException when the file cannot be read.
+   * @throws NoSuchElementException when the file format is invalid.
+   */
+  long importInto(GeographyBuilder builder, String path) throws IOException {
+    Path file = Path.of(path);
+
+    if (!Files.isRegularFile(file)) {
+      throw new FileNotFoundException(path + " (No such file)");
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(this.threads, runnable -> {
+      Thread thread = new Thread(runnable, "map-file-importer");
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    List<Future<ParsedChunk>> futures = new ArrayList<>();
+    FileChannel channel = null;
+    long bytes;
+    ImportPhase phase = ImportPhase.begin("parse");
+
+    try {
+      if (isGzip(file)) {
+        bytes = submitGzipChunks(file, this.chunkSize, executor, futures);
+      } else {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        bytes = submitMappedChunks(channel, this.chunkSize, executor, futures);
+      }
+
+      List<ParsedChunk> chunks = new ArrayList<>(futures.size());
+
+      for (Future<ParsedChunk> future : futures) {
+        chunks.add(await(future));
+      }
+
+      phase.end(bytes);
+      phase = ImportPhase.begin("resolve");
+
+      // Resolve every intersection before any road, in file order
+
+      for (ParsedChunk chunk : chunks) {
+        for (int i = 0; i < chunk.intersectionCount; i++) {
+          builder.addIntersection(chunk.text, chunk.intersectionIds[i],
+              chunk.intersectionIdLengths[i], chunk.latitudes[i], chunk.longtitudes[i]);
+        }
+      }
+
+      for (ParsedChunk chunk : chunks) {
+        int[] tokens = chunk.roadTokens;
+
+        for (int i = 0; i < chunk.roadCount; i++) {
+          int intersection1 =
+              builder.getIntersectionIndex(chunk.text, tokens[6 * i + 2], tokens[6 * i + 3]);
+          int intersection2 =
+              builder.getIntersectionIndex(chunk.text, tokens[6 * i + 4], tokens[6 * i + 5]);
+
+          if (intersection1 < 0 || intersection2 < 0) {
+            throw new NoSuchElementException("Invalid or broken file format: road "
+                + chunk.getText(tokens[6 * i], tokens[6 * i + 1])
+                + " connects an unknown intersection");
+          }
+
+          builder.addRoad(chunk.text, tokens[6 * i], tokens[6 * i + 1], intersection1,
+              intersection2);
+        }
+      }
+
+      phase.end(builder.getRoadCount());
+
+      return bytes;
+    } finally {
+      executor.shutdownNow();
+
+      if (channel != null) {
+        channel.close();
+      }
+    }
+  }
+
+  /**
+   * Checks whether a file starts with the gzip magic number.
+   *
+   * @param file the file to check
+   * @return {@code true} if the file is gzip-compressed, {@code false} otherwise.
+   * @throws IOException when the file cannot be read.
+   */
+  private static boolean isGzip(Path file) throws IOException {
+    try (InputStream input = Files.newInputStream(file)) {
+      int byte1 = input.read();
+      int byte2 = input.read();
+
+      return byte1 >= 0 && byte2 >= 0 && ((byte1 << 8) | byte2) == GZIP_MAGIC;
+    }
+  }
+
+  /**
+   * Splits a plain file into chunks on line boundaries, and submits a task that maps and parses
+   * each chunk.
+   *
+   * @param channel the channel of the file to read, which must stay open until the tasks finish
+   * @param chunkSize the size, in bytes, of each chunk before it is extended to the end of a line
+   * @param executor the executor that runs the parsing tasks
+   * @param futures the list to append the tasks' futures to, in file order
+   * @return the size of the file, in bytes.
+   * @throws IOException when the file cannot be read.
+   */
+  private static long submitMappedChunks(FileChannel channel, int chunkSize,
+      ExecutorService executor, List<Future<ParsedChunk>> futures) throws IOException {
+    long size = channel.size();
+    long start = 0;
+
+    while (start < size) {
+      long end = findLineEnd(channel, Math.min(size, start + chunkSize), size);
+      long chunkStart = start;
+      long chunkLength = end - start;
+
+      futures.add(executor.submit(
+          () -> parse(channel.map(FileChannel.MapMode.READ_ONLY, chunkStart, chunkLength))));
+
+      start = end;
+    }
+
+    return size;
+  }
+
+  /**
+   * Returns the position right after the first newline character at or after the given position.
+   *
+   * @param channel the channel of the file
+   * @param position the position to start looking from
+   * @param size the size of the file
+   * @return the position right after the newline character, or {@code size} if there is none.
+   * @throws IOException when the file cannot be read.
+   */
+  private static long findLineEnd(FileChannel channel, long position, long size)
+      throws IOException {
+    ByteBuffer window = ByteBuffer.allocate(BOUNDARY_WINDOW);
+
+    while (position < size) {
+      window.clear();
+      int read = channel.read(window, position);
+
+      if (read <= 0) {
+        break;
+      }
+
+      for (int i = 0; i < read; i++) {
+        if (window.get(i) == '\n') {
+          return position + i + 1;
+        }
+      }
+
+      position += read;
+    }
+
+    return size;
+  }
+
+  /**
+   * Decompresses a gzip file as a stream, and submits a task that parses each block of lines.
+   *
+   * @param file the file to read
+   * @param chunkSize the size, in bytes, of the blocks that are read at a time
+   * @param executor the executor that runs the parsing tasks
+   * @param futures the list to append the tasks' futures to, in file order
+   * @return the size of the decompressed data, in bytes.
+   * @throws IOException when the file cannot be read or decompressed.
+   */
+  private static long submitGzipChunks(Path file, int chunkSize, ExecutorService executor,
+      List<Future<ParsedChunk>> futures) throws IOException {
+    long bytes = 0;
+
+    try (InputStream input = new GZIPInputStream(
+        new BufferedInputStream(new FileInputStream(file.toFile()), 1 << 16), 1 << 16)) {
+      byte[] block = new byte[chunkSize];
+      int length = 0;
+
+      while (true) {
+        int read = input.readNBytes(block, length, block.length - length);
+        length += read;
+        bytes += read;
+
+        boolean isLast = length < block.length;
+        int end = length;
+
+        if (!isLast) {
+          while (end > 0 && block[end - 1] != '\n') {
+            end--;
+          }
+
+          if (end == 0) {
+            // A single line longer than a block: grow the block and keep reading
+            block = Arrays.copyOf(block, block.length * 2);
+            continue;
+          }
+        }
+
+        ByteBuffer chunk = ByteBuffer.wrap(Arrays.copyOf(block, end));
+        futures.add(executor.submit(() -> parse(chunk)));
+
+        if (isLast) {
+          break;
+        }
+
+        // Carry the unfinished line over to the next block
+        System.arraycopy(block, end, block, 0, length - end);
+        length -= end;
+      }
+    }
+
+    return bytes;
+  }
+
+  /**
+   * Waits for a parsing task to finish, rethrowing its failure.
+   *
+   * @param future the future of the task
+   * @return the parsed chunk.
+   * @throws IOException when the task failed to read its chunk.
+   */
+  private static ParsedChunk await(Future<ParsedChunk> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while importing", exception);
+    } catch (ExecutionException exception) {
+      Throwable cause = exception.getCause();
+
+      if (cause instanceof IOException ioException) {
+        throw ioException;
+      } else if (cause instanceof UncheckedIOException uncheckedException) {
+        throw uncheckedException.getCause();
+      } else if (cause instanceof RuntimeException runtimeException) {
+        throw runtimeException;
+      } else {
+        throw new IOException(cause);
+      }
+    }
+  }
+
+  /**
+   * Parses the entries in a chunk of a map data file.
+   *
+   * @param buffer the chunk, from position 0 to its limit
+   * @return the entries in the chunk.
+   * @throws NoSuchElementException when the chunk's format is invalid.
+   */
+  static ParsedChunk parse(ByteBuffer buffer) {
+    Tokenizer tokenizer = new Tokenizer(buffer);
+    ParsedChunk chunk = new ParsedChunk();
+
+    while (tokenizer.next()) {
+      if (tokenizer.length() != 1) {
+        throw new NoSuchElementException("Invalid or broken file format");
+      }
+
+      switch (buffer.get(tokenizer.start)) {
+        case 'i':
+          int id = chunk.addText(tokenizer.nextToken(), tokenizer.start, tokenizer.length());
+          int idLength = tokenizer.length();
+          double latitude = tokenizer.nextNumber();
+          double longtitude = tokenizer.nextNumber();
+
+          chunk.addIntersection(id, idLength, latitude, longtitude);
+
+          break;
+
+        case 'r':
+          int roadId = chunk.addText(tokenizer.nextToken(), tokenizer.start, tokenizer.length());
+          int roadIdLength = tokenizer.length();
+          int intersection1Id =
+              chunk.addText(tokenizer.nextToken(), tokenizer.start, tokenizer.length());
+          int intersection1IdLength = tokenizer.length();
+          int intersection2Id =
+              chunk.addText(tokenizer.nextToken(), tokenizer.start, tokenizer.length());
+          int intersection2IdLength = tokenizer.length();
+
+          chunk.addRoad(roadId, roadIdLength, intersection1Id, intersection1IdLength,
+              intersection2Id, intersection2IdLength);
+
+          break;
+
+        default:
+          throw new NoSuchElementException("Invalid or broken file format");
+      }
+    }
+
+    return chunk;
+  }
+
+  /**
+   * Splits a chunk into whitespace-delimited tokens without copying it.
+   */
+  private static class Tokenizer {
+    /**
+     * Powers of ten that are exactly representable as {@code double} values.
+     */
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9,
+        1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+    /**
+     * The largest integer below which every integer is exactly representable as a {@code double}.
+     */
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private ByteBuffer buffer;
+    private int position;
+    private int limit;
+
+    // The bounds of the current token
+    private int start;
+    private int end;
+
+    Tokenizer(ByteBuffer buffer) {
+      this.buffer = buffer;
+      this.position = 0;
+      this.limit = buffer.limit();
+    }
+
+    /**
+     * Advances to the next token.
+     *
+     * @return {@code true} if there is a next token, {@code false} if the chunk is exhausted.
+     */
+    boolean next() {
+      while (this.position < this.limit && isWhitespace(this.buffer.get(this.position))) {
+        this.position++;
+      }
+
+      if (this.position >= this.limit) {
+        return false;
+      }
+
+      this.start = this.position;
+
+      while (this.position < this.limit && !isWhitespace(this.buffer.get(this.position))) {
+        this.position++;
+      }
+
+      this.end = this.position;
+
+      return true;
+    }
+
+    int length() {
+      return this.end - this.start;
+    }
+
+    /**
+     * Advances to the next token, which must exist.
+     *
+     * @return the chunk that is being tokenized.
+     * @throws NoSuchElementException when the chunk is exhausted.
+     */
+    ByteBuffer nextToken() {
+      if (!this.next()) {
+        throw new NoSuchElementException("Invalid or broken file format");
+      }
+
+      return this.buffer;
+    }
+
+    /**
+     * Advances to the next token and parses it as a decimal number.
+     *
+     * <p>
+     * Plain decimals with at most 18 digits, such as coordinates, are parsed without allocating and
+     * are correctly rounded. Anything else falls back to {@code Double.parseDouble}.
+     *
+     * @return the value of the next token.
+     * @throws NoSuchElementException when the chunk is exhausted or the token is not a number.
+     */
+    double nextNumber() {
+      if (!this.next()) {
+        throw new NoSuchElementException("Invalid or broken file format");
+      }
+
+      int i = this.start;
+      boolean isNegative = false;
+
+      byte sign = this.buffer.get(i);
+      if (sign == '-' || sign == '+') {
+        isNegative = sign == '-';
+        i++;
+      }
+
+      long mantissa = 0;
+      int digits = 0;
+      int fractionDigits = 0;
+      boolean hasDot = false;
+
+      for (; i < this.end; i++) {
+        byte c = this.buffer.get(i);
+
+        if (c >= '0' && c <= '9') {
+          if (digits == 18) {
+            return this.parseSlowly();
+          }
+
+          mantissa = mantissa * 10 + (c - '0');
+          digits++;
+
+          if (hasDot) {
+            fractionDigits++;
+          }
+        } else if (c == '.' && !hasDot) {
+          hasDot = true;
+        } else {
+          return this.parseSlowly();
+        }
+      }
+
+      if (digits == 0 || mantissa >= MAX_EXACT_MANTISSA || fractionDigits >= POWERS_OF_TEN.length) {
+        return this.parseSlowly();
+      }
+
+      // Both operands are exact, so a single division is correctly rounded
+      double value = mantissa / POWERS_OF_TEN[fractionDigits];
+
+      return isNegative ? -value : value;
+    }
+
+    private double parseSlowly() {
+      int length = this.length();
+      byte[] bytes = new byte[length];
+      this.buffer.get(this.start, bytes, 0, length);
+
+      try {
+        return Double.parseDouble(new String(bytes, StandardCharsets.US_ASCII));
+      } catch (NumberFormatException exception) {
+        throw new NoSuchElementException("Invalid or broken file format");
+      }
+    }
+
+    private static boolean isWhitespace(byte c) {
+      return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == 0x0b;
+    }
+  }
+
+  /**
+   * The entries parsed from a chunk, in the order that they appear in the chunk.
+   *
+   * <p>
+   * The bytes of the IDs are copied into a single text arena, and entries refer to them by offset
+   * and length, so that no {@code String} is created per ID.
+   */
+  static class ParsedChunk {
+    byte[] text = new byte[4096];
+    int textLength = 0;
+
+    int intersectionCount = 0;
+    int[] intersectionIds = new int[256];
+    int[] intersectionIdLengths = new int[256];
+    double[] latitudes = new double[256];
+    double[] longtitudes = new double[256];
+
+    int roadCount = 0;
+    /**
+     * The offset and length of the ID, the first endpoint's ID, and the second endpoint's ID of
+     * every road.
+     */
+    int[] roadTokens = new int[6 * 256];
+
+    /**
+     * Copies bytes from the chunk into the text arena.
+     *
+     * @return the offset of the copied bytes in the text arena.
+     */
+    int addText(ByteBuffer buffer, int start, int length) {
+      if (this.textLength + length > this.text.length) {
+        this.text =
+            Arrays.copyOf(this.text, Math.max(this.textLength + length, this.text.length * 2));
+      }
+
+      buffer.get(start, this.text, this.textLength, length);
+      this.textLength += length;
+
+      return this.textLength - length;
+    }
+
+    String getText(int offset, int length) {
+      return new String(this.text, offset, length, StandardCharsets.UTF_8);
+    }
+
+    void addIntersection(int id, int idLength, double latitude, double longtitude) {
+      if (this.intersectionCount == this.intersectionIds.length) {
+        int capacity = this.intersectionCount * 2;
+
+        this.intersectionIds = Arrays.copyOf(this.intersectionIds, capacity);
+        this.intersectionIdLengths = Arrays.copyOf(this.intersectionIdLengths, capacity);
+        this.latitudes = Arrays.copyOf(this.latitudes, capacity);
+        this.longtitudes = Arrays.copyOf(this.longtitudes, capacity);
+      }
+
+      this.intersectionIds[this.intersectionCount] = id;
+      this.intersectionIdLengths[this.intersectionCount] = idLength;
+      this.latitudes[this.intersectionCount] = latitude;
+      this.longtitudes[this.intersectionCount] = longtitude;
+      this.intersectionCount++;
+    }
+
+    void addRoad(int id, int idLength, int intersection1Id, int intersection1IdLength,
+        int intersection2Id, int intersection2IdLength) {
+      if (6 * this.roadCount == this.roadTokens.length) {
+        this.roadTokens = Arrays.copyOf(this.roadTokens, this.roadTokens.length * 2);
+      }
+
+      int i = 6 * this.roadCount;
+
+      this.roadTokens[i] = id;
+      this.roadTokens[i + 1] = idLength;
+      this.roadTokens[i + 2] = intersection1Id;
+      this.roadTokens[i + 3] = intersection1IdLength;
+      this.roadTokens[i + 4] = intersection2Id;
+      this.roadTokens[i + 5] = intersection2IdLength;
+      this.roadCount++;
+    }
+  }
+}
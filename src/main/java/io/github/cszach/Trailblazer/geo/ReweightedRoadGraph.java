@@ -0,0 +1,141 @@
+package io.github.cszach.Trailblazer.geo;
+
+/**
+ * A {@code RoadGraph} that has the intersections, roads, and edges of another graph, but its own
+ * road distances.
+ *
+ * <p>
+ * Like the graph that it is made from, a {@code ReweightedRoadGraph} is never modified: updating
+ * roads makes a new one, so that searches that are running on the old one are not disturbed. The
+ * distances are copied next to the edges, as in {@code CompactRoadGraph}, and updating a few roads
+ * copies the distances but shares everything else.
+ *
+ * @see Geography#updateRoads(RoadUpdates)
+ */
+final class ReweightedRoadGraph implements RoadGraph {
+  /**
+   * The graph that the intersections, roads, and edges are read from, which is never itself a
+   * {@code ReweightedRoadGraph}.
+   */
+  private final RoadGraph base;
+  private final double[] roadDistances;
+  private final double[] weights;
+
+  private ReweightedRoadGraph(RoadGraph base, double[] roadDistances, double[] weights) {
+    this.base = base;
+    this.roadDistances = roadDistances;
+    this.weights = weights;
+  }
+
+  /**
+   * Makes a graph with some of the road distances of another graph changed.
+   *
+   * @param graph the graph to change
+   * @param roads the indices of the roads to change
+   * @param distances the new distance, in miles, of every road to change, which is
+   *        {@code +Infinity} for a closed road
+   * @return a graph with the new distances.
+   */
+  static ReweightedRoadGraph reweight(RoadGraph graph, int[] roads, double[] distances) {
+    RoadGraph base;
+    double[] roadDistances;
+    double[] weights;
+
+    if (graph instanceof ReweightedRoadGraph reweighted) {
+      base = reweighted.base;
+      roadDistances = reweighted.roadDistances.clone();
+      weights = reweighted.weights.clone();
+    } else {
+      base = graph;
+      roadDistances = new double[graph.getRoadCount()];
+      weights = new double[graph.getFirstEdge(graph.getIntersectionCount())];
+
+      for (int road = 0; road < roadDistances.length; road++) {
+        roadDistances[road] = graph.getRoadDistance(road);
+      }
+
+      for (int edge = 0; edge < weights.length; edge++) {
+        weights[edge] = graph.getEdgeWeight(edge);
+      }
+    }
+
+    for (int i = 0; i < roads.length; i++) {
+      int road = roads[i];
+
+      roadDistances[road] = distances[i];
+      setEdgeWeights(base, weights, base.getRoadIntersection1(road), road, distances[i]);
+      setEdgeWeights(base, weights, base.getRoadIntersection2(road), road, distances[i]);
+    }
+
+    return new ReweightedRoadGraph(base, roadDistances, weights);
+  }
+
+  /**
+   * Sets the weight of the edges of a road among the edges of one of its endpoints.
+   */
+  private static void setEdgeWeights(RoadGraph base, double[] weights, int intersection, int road,
+      double distance) {
+    int edgeEnd = base.getFirstEdge(intersection + 1);
+
+    for (int edge = base.getFirstEdge(intersection); edge < edgeEnd; edge++) {
+      if (base.getEdgeRoad(edge) == road) {
+        weights[edge] = distance;
+      }
+    }
+  }
+
+  @Override
+  public int getIntersectionCount() {
+    return this.base.getIntersectionCount();
+  }
+
+  @Override
+  public int getRoadCount() {
+    return this.base.getRoadCount();
+  }
+
+  @Override
+  public double getLatitude(int intersection) {
+    return this.base.getLatitude(intersection);
+  }
+
+  @Override
+  public double getLongtitude(int intersection) {
+    return this.base.getLongtitude(intersection);
+  }
+
+  @Override
+  public int getFirstEdge(int intersection) {
+    return this.base.getFirstEdge(intersection);
+  }
+
+  @Override
+  public int getEdgeTarget(int edge) {
+    return this.base.getEdgeTarget(edge);
+  }
+
+  @Override
+  public int getEdgeRoad(int edge) {
+    return this.base.getEdgeRoad(edge);
+  }
+
+  @Override
+  public double getEdgeWeight(int edge) {
+    return this.weights[edge];
+  }
+
+  @Override
+  public int getRoadIntersection1(int road) {
+    return this.base.getRoadIntersection1(road);
+  }
+
+  @Override
+  public int getRoadIntersection2(int road) {
+    return this.base.getRoadIntersection2(road);
+  }
+
+  @Override
+  public double getRoadDistance(int road) {
+    return this.roadDistances[road];
+  }
+}
@@ -3,49 +3,37 @@ package io.github.cszach.Trailblazer.geo;
 /**
  * A road which connects two intersections.
  *
+ * <p>
+ * Like {@code Intersection}, a {@code Road} is a lightweight view over a road of the
+ * {@code RoadGraph} of a {@code Geography}. The distance of a road is computed when the graph is
+ * built, and can be changed, or the road closed, with {@code Geography.updateRoads}.
+ *
  * @see Intersection
  */
 public class Road {
   /**
-   * The ID of this road.
-   */
-  private String id;
-  /**
-   * An intersection that is an endpoint of this road.
-   */
-  private Intersection intersection1;
-  /**
-   * An intersection that is the other endpoint of this road.
+   * The geography that this road belongs to.
    */
-  private Intersection intersection2;
+  private Geography geo;
   /**
-   * The distance, or length, of this road, in miles.
+   * The index of this road in the graph of its geography.
    */
-  private double distance;
+  private int index;
 
   /**
    * The radius of the Earth, in kilometers.
    */
   private static double RADIUS = 6371;
 
-  // for Dijkstra
-  private boolean isShortestRoad = false;
-
   /**
-   * Constructs a new {@code Road} with the given ID and {@code Intersection} endpoints.
+   * Constructs a new view of a road of a {@code Geography}.
    *
-   * @param id the ID that identifies this road
-   * @param intersection1 one of the endpoints of this road
-   * @param intersection2 the other endpoint of this road
+   * @param geo the geography that the road belongs to
+   * @param index the index of the road in the graph of the geography
    */
-  public Road(String id, Intersection intersection1, Intersection intersection2) {
-    this.id = id;
-    this.intersection1 = intersection1;
-    this.intersection2 = intersection2;
-
-    // Compute the distance using the haversine formula
-    this.distance = haversine(intersection1.getLatitude(), intersection1.getLongtitude(),
-        intersection2.getLatitude(), intersection2.getLongtitude());
+  Road(Geography geo, int index) {
+    this.geo = geo;
+    this.index = index;
   }
 
   /**
@@ -59,7 +47,7 @@ public class Road {
    * @return the distance between the two geographical points, in miles, with the assumption that
    *         the Earth is a perfect sphere with a radius of {@code RADIUS} kilometers.
    */
-  private static double haversine(double lat1, double long1, double lat2, double long2) {
+  public static double haversine(double lat1, double long1, double lat2, double long2) {
     double dLat = Math.toRadians(lat2 - lat1);
     double dLong = Math.toRadians(long2 - long1);
 
@@ -77,22 +65,19 @@ public class Road {
    * Checks whether two roads are equal.
    *
    * <p>
-   * Returns {code true} if the argument {@code obj} is a {@code Road} object that has the same ID
-   * and connects the same intersections as this road.
+   * Returns {@code true} if the argument {@code obj} is a {@code Road} object that views the same
+   * road of the same geography as this road.
    *
    * @return {@code true} if the objects are equal, {@code false} otherwise.
    */
   @Override
   public boolean equals(Object obj) {
-    return (obj instanceof Road road) && ((this.intersection1.equals(road.intersection1))
-        && (this.intersection2.equals(road.intersection2))
-        || (this.intersection1.equals(road.intersection2))
-            && (this.intersection2.equals(road.intersection1)));
+    return (obj instanceof Road road) && (this.geo == road.geo) && (this.index == road.index);
   }
 
   @Override
   public int hashCode() {
-    return this.id.hashCode();
+    return this.index;
   }
 
   /**
@@ -101,7 +86,16 @@ public class Road {
    * @return the ID of this road.
    */
   public String getId() {
-    return this.id;
+    return this.geo.getRoadId(this.index);
+  }
+
+  /**
+   * Returns the index of this road.
+   *
+   * @return the index of this road in the graph of its geography.
+   */
+  public int getIndex() {
+    return this.index;
   }
 
   /**
@@ -110,7 +104,7 @@ public class Road {
    * @return the first intersection of this road.
    */
   public Intersection getIntersection1() {
-    return this.intersection1;
+    return new Intersection(this.geo, this.geo.getGraph().getRoadIntersection1(this.index));
   }
 
   /**
@@ -119,39 +113,25 @@ public class Road {
    * @return the second intersection of this road.
    */
   public Intersection getIntersection2() {
-    return this.intersection2;
+    return new Intersection(this.geo, this.geo.getGraph().getRoadIntersection2(this.index));
   }
 
   /**
    * Returns the distance of this road.
    *
-   * @return the distance, in miles, of this road.
+   * @return the distance, in miles, of this road, or {@code +Infinity} if it is closed.
    */
   public double getDistance() {
-    return this.distance;
-  }
-
-  /**
-   * Returns whether this road is a shortest road in a shortest path.
-   *
-   * <p>
-   * This is intended for use in the Djikstra's algorithm.
-   *
-   * @return {@code true} if this road is a shortest road in a shortest path, {@code false}
-   *         otherwise.
-   */
-  public boolean getIsShortestRoad() {
-    return this.isShortestRoad;
+    return this.geo.getGraph().getRoadDistance(this.index);
   }
 
   /**
-   * Marks or unmarks this road as the shortest road in a shortest path.
+   * Checks whether this road is closed.
    *
-   * @param isShortestRoad {@code true} if this road is a shortest road in a shortest path,
-   *        {@code false} if not.
+   * @return {@code true} if this road has been closed, {@code false} otherwise.
    */
-  public void setIsShortestRoad(boolean isShortestRoad) {
-    this.isShortestRoad = isShortestRoad;
+  public boolean isClosed() {
+    return this.getDistance() == Double.POSITIVE_INFINITY;
   }
 
   /**
@@ -162,10 +142,14 @@ public class Road {
    *         endpoint of this road.
    */
   public Intersection getTheOtherEnd(Intersection intersection) {
-    if (intersection.equals(this.intersection1)) {
-      return this.intersection2;
-    } else if (intersection.equals(this.intersection2)) {
-      return this.intersection1;
+    RoadGraph graph = this.geo.getGraph();
+    int intersection1 = graph.getRoadIntersection1(this.index);
+    int intersection2 = graph.getRoadIntersection2(this.index);
+
+    if (intersection.getIndex() == intersection1) {
+      return new Intersection(this.geo, intersection2);
+    } else if (intersection.getIndex() == intersection2) {
+      return new Intersection(this.geo, intersection1);
     } else {
       return null;
     }
@@ -0,0 +1,343 @@
+package io.github.cszach.Trailblazer.geo;
+
+import java.util.Arrays;
+
+/**
+ * The chains of a graph: the maximal paths whose inner intersections have two roads each, which
+ * only shape a curve of the road between the intersections at their ends.
+ *
+ * <p>
+ * The core graph of a {@code RoadChains} has an intersection for every intersection of the graph
+ * that does not have exactly two roads, and a road for every chain, whose distance is the sum of
+ * the distances of the roads of the chain. Maps from OpenStreetMap are mostly made of such inner
+ * intersections, so the core graph is several times smaller, and a search over it settles
+ * correspondingly fewer intersections. The roads and inner intersections of every chain are kept,
+ * in order, so that a route over the core graph can be expanded back into the roads of the graph. A
+ * ring of intersections that all have two roads is given one core intersection, so that every chain
+ * has ends.
+ *
+ * <p>
+ * Like the graphs that it is made from, a {@code RoadChains} is never modified: updating roads
+ * makes a new one, which shares the chains and only has new core road distances.
+ *
+ * @see io.github.cszach.Trailblazer.routing.RoutingEngine#RoutingEngine(RoadChains,
+ *      io.github.cszach.Trailblazer.routing.ContractionHierarchy,
+ *      io.github.cszach.Trailblazer.routing.QueueType)
+ */
+public final class RoadChains {
+  private final RoadGraph graph;
+  private final RoadGraph coreGraph;
+  /**
+   * The core intersection of every intersection, or {@code -1} for the inner intersections of
+   * chains.
+   */
+  private final int[] coreIntersections;
+  /**
+   * The intersection of every core intersection.
+   */
+  private final int[] intersections;
+  /**
+   * The roads of every chain, in order from the first end of its core road to the second, where the
+   * roads of chain {@code c} are from {@code chainOffsets[c]} (inclusive) to
+   * {@code chainOffsets[c + 1]} (exclusive) in {@code chainRoads}.
+   */
+  private final int[] chainOffsets;
+  private final int[] chainRoads;
+  /**
+   * The chain of every road, or {@code -1} for a road whose ends are the same intersection.
+   */
+  private final int[] roadChains;
+  /**
+   * The position of every road within its chain, counting from {@code 0}.
+   */
+  private final int[] roadPositions;
+  private final long compressionTime;
+
+  private RoadChains(RoadGraph graph, RoadGraph coreGraph, int[] coreIntersections,
+      int[] intersections, int[] chainOffsets, int[] chainRoads, int[] roadChains,
+      int[] roadPositions, long compressionTime) {
+    this.graph = graph;
+    this.coreGraph = coreGraph;
+    this.coreIntersections = coreIntersections;
+    this.intersections = intersections;
+    this.chainOffsets = chainOffsets;
+    this.chainRoads = chainRoads;
+    this.roadChains = roadChains;
+    this.roadPositions = roadPositions;
+    this.compressionTime = compressionTime;
+  }
+
+  /**
+   * Finds the chains of a graph and builds its core graph.
+   *
+   * @param graph the graph to compress
+   * @return the chains of the graph.
+   */
+  public static RoadChains compress(RoadGraph graph) {
+    long startTime = System.nanoTime();
+    int n = graph.getIntersectionCount();
+    int roadCount = graph.getRoadCount();
+    boolean[] isCore = new boolean[n];
+    boolean[] isVisited = new boolean[n];
+    int[] roadChains = new int[roadCount];
+    int[] roadPositions = new int[roadCount];
+    int[] chainOffsets = new int[roadCount + 1];
+    int[] chainRoads = new int[roadCount];
+    int[] chainEnds1 = new int[roadCount];
+    int[] chainEnds2 = new int[roadCount];
+    int chainCount = 0;
+
+    Arrays.fill(roadChains, -1);
+
+    for (int intersection = 0; intersection < n; intersection++) {
+      isCore[intersection] =
+          graph.getFirstEdge(intersection + 1) - graph.getFirstEdge(intersection) != 2;
+    }
+
+    // Walk the chains from every core intersection, then from an intersection of every ring that
+    // no walk has reached, which becomes a core intersection
+
+    for (int pass = 0; pass < 2; pass++) {
+      for (int start = 0; start < n; start++) {
+        if (pass == 1 && !isCore[start] && !isVisited[start]) {
+          isCore[start] = true;
+        } else if (!isCore[start] || pass == 1) {
+          continue;
+        }
+
+        int edgeEnd = graph.getFirstEdge(start + 1);
+
+        for (int edge = graph.getFirstEdge(start); edge < edgeEnd; edge++) {
+          int road = graph.getEdgeRoad(edge);
+
+          if (roadChains[road] >= 0) {
+            continue; // walked from the other end
+          }
+
+          int chain = chainCount++;
+          int length = 0;
+          int current = graph.getEdgeTarget(edge);
+
+          chainRoads[chainOffsets[chain]] = road;
+          roadChains[road] = chain;
+          roadPositions[road] = length++;
+
+          while (!isCore[current]) {
+            isVisited[current] = true;
+
+            // Leave along the other road of the inner intersection
+            int first = graph.getFirstEdge(current);
+            int next = graph.getEdgeRoad(first) == road ? first + 1 : first;
+
+            road = graph.getEdgeRoad(next);
+            current = graph.getEdgeTarget(next);
+            chainRoads[chainOffsets[chain] + length] = road;
+            roadChains[road] = chain;
+            roadPositions[road] = length++;
+          }
+
+          chainOffsets[chain + 1] = chainOffsets[chain] + length;
+          chainEnds1[chain] = start;
+          chainEnds2[chain] = current;
+        }
+      }
+    }
+
+    // Number the core intersections in the order of their intersections
+
+    int[] coreIntersections = new int[n];
+    int coreCount = 0;
+
+    for (int intersection = 0; intersection < n; intersection++) {
+      coreIntersections[intersection] = isCore[intersection] ? coreCount++ : -1;
+    }
+
+    int[] intersections = new int[coreCount];
+    double[] latitudes = new double[coreCount];
+    double[] longtitudes = new double[coreCount];
+
+    for (int intersection = 0; intersection < n; intersection++) {
+      int coreIntersection = coreIntersections[intersection];
+
+      if (coreIntersection >= 0) {
+        intersections[coreIntersection] = intersection;
+        latitudes[coreIntersection] = graph.getLatitude(intersection);
+        longtitudes[coreIntersection] = graph.getLongtitude(intersection);
+      }
+    }
+
+    int[] coreRoadIntersections1 = new int[chainCount];
+    int[] coreRoadIntersections2 = new int[chainCount];
+    double[] coreRoadDistances = new double[chainCount];
+
+    for (int chain = 0; chain < chainCount; chain++) {
+      coreRoadIntersections1[chain] = coreIntersections[chainEnds1[chain]];
+      coreRoadIntersections2[chain] = coreIntersections[chainEnds2[chain]];
+      coreRoadDistances[chain] =
+          getDistance(graph, chainRoads, chainOffsets[chain], chainOffsets[chain + 1]);
+    }
+
+    RoadGraph coreGraph = new CompactRoadGraph(latitudes, longtitudes, coreRoadIntersections1,
+        coreRoadIntersections2, coreRoadDistances);
+
+    return new RoadChains(graph, coreGraph, coreIntersections, intersections,
+        Arrays.copyOf(chainOffsets, chainCount + 1),
+        Arrays.copyOf(chainRoads, chainOffsets[chainCount]), roadChains, roadPositions,
+        (System.nanoTime() - startTime) / 1_000_000);
+  }
+
+  /**
+   * Sums the distances of a range of the roads of chains, in order.
+   */
+  private static double getDistance(RoadGraph graph, int[] chainRoads, int from, int to) {
+    double distance = 0.0;
+
+    for (int i = from; i < to; i++) {
+      distance += graph.getRoadDistance(chainRoads[i]);
+    }
+
+    return distance;
+  }
+
+  /**
+   * Makes the chains of a graph whose road distances have changed, such as the new graph of a
+   * {@code Geography} after {@code updateRoads}. The chains are shared, and only the distances of
+   * the core roads of the changed chains are summed again.
+   *
+   * @param graph the graph with the new road distances, which must have the same intersections,
+   *        roads, and edges as the graph of this
+   * @param changedRoads the indices of the roads whose distance changed
+   * @return the chains of the new graph.
+   * @throws IllegalArgumentException when the graph does not have the same intersections and roads.
+   */
+  public RoadChains withUpdatedGraph(RoadGraph graph, int[] changedRoads) {
+    if (graph.getIntersectionCount() != this.graph.getIntersectionCount()
+        || graph.getRoadCount() != this.graph.getRoadCount()) {
+      throw new IllegalArgumentException("The graph must have the same intersections and roads");
+    }
+
+    int[] changedChains = this.getChains(changedRoads);
+    double[] distances = new double[changedChains.length];
+
+    for (int i = 0; i < changedChains.length; i++) {
+      int chain = changedChains[i];
+
+      distances[i] = getDistance(graph, this.chainRoads, this.chainOffsets[chain],
+          this.chainOffsets[chain + 1]);
+    }
+
+    return new RoadChains(graph,
+        ReweightedRoadGraph.reweight(this.coreGraph, changedChains, distances),
+        this.coreIntersections, this.intersections, this.chainOffsets, this.chainRoads,
+        this.roadChains, this.roadPositions, this.compressionTime);
+  }
+
+  /**
+   * Returns the chains of some roads, which are the core roads that they are part of.
+   *
+   * @param roads the indices of the roads
+   * @return the distinct chains of the roads, in increasing order, leaving out roads whose ends are
+   *         the same intersection.
+   */
+  public int[] getChains(int[] roads) {
+    return Arrays.stream(roads).map(road -> this.roadChains[road]).filter(chain -> chain >= 0)
+        .sorted().distinct().toArray();
+  }
+
+  /**
+   * Returns the graph that was compressed.
+   *
+   * @return the graph that was compressed.
+   */
+  public RoadGraph getGraph() {
+    return this.graph;
+  }
+
+  /**
+   * Returns the core graph, whose roads are the chains.
+   *
+   * @return the core graph.
+   */
+  public RoadGraph getCoreGraph() {
+    return this.coreGraph;
+  }
+
+  /**
+   * Returns the core intersection of an intersection.
+   *
+   * @param intersection the index of the intersection
+   * @return the index of the intersection in the core graph, or {@code -1} if it is an inner
+   *         intersection of a chain.
+   */
+  public int getCoreIntersection(int intersection) {
+    return this.coreIntersections[intersection];
+  }
+
+  /**
+   * Returns the intersection of a core intersection.
+   *
+   * @param coreIntersection the index of the intersection in the core graph
+   * @return the index of the intersection in the graph.
+   */
+  public int getIntersection(int coreIntersection) {
+    return this.intersections[coreIntersection];
+  }
+
+  /**
+   * Returns the chain that a road is part of.
+   *
+   * @param road the index of the road
+   * @return the index of the core road of the chain, or {@code -1} if the ends of the road are the
+   *         same intersection.
+   */
+  public int getChain(int road) {
+    return this.roadChains[road];
+  }
+
+  /**
+   * Returns the position of a road within its chain.
+   *
+   * @param road the index of the road
+   * @return the number of roads before it, from the first end of the core road of its chain.
+   */
+  public int getPosition(int road) {
+    return this.roadPositions[road];
+  }
+
+  /**
+   * Returns the number of roads of a chain.
+   *
+   * @param chain the index of the core road of the chain
+   * @return the number of roads of the chain.
+   */
+  public int getLength(int chain) {
+    return this.chainOffsets[chain + 1] - this.chainOffsets[chain];
+  }
+
+  /**
+   * Returns a road of a chain.
+   *
+   * @param chain the index of the core road of the chain
+   * @param position the position of the road, from the first end of the core road
+   * @return the index of the road.
+   */
+  public int getRoad(int chain, int position) {
+    return this.chainRoads[this.chainOffsets[chain] + position];
+  }
+
+  /**
+   * Returns the time that compressing the graph took.
+   *
+   * @return the compression time, in milliseconds.
+   */
+  public long getCompressionTime() {
+    return this.compressionTime;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Compressed %d intersections and %d roads into %d and %d (%d ms)",
+        this.graph.getIntersectionCount(), this.graph.getRoadCount(),
+        this.coreGraph.getIntersectionCount(), this.coreGraph.getRoadCount(), this.compressionTime);
+  }
+}
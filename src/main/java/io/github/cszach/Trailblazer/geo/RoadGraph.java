@@ -0,0 +1,118 @@
+package io.github.cszach.Trailblazer.geo;
+
+/**
+ * An undirected road network whose intersections and roads are numbered densely, starting from 0.
+ *
+ * <p>
+ * The neighbors of an intersection are stored as a contiguous range of edges: the edges of
+ * intersection {@code i} are numbered from {@code getFirstEdge(i)} (inclusive) to
+ * {@code getFirstEdge(i + 1)} (exclusive). Every road that connects two different intersections has
+ * an edge in the range of each of its endpoints.
+ *
+ * <p>
+ * Searches iterate over a {@code RoadGraph} by index, so that no object is touched per intersection
+ * or edge.
+ *
+ * @see Geography#getGraph()
+ */
+public interface RoadGraph {
+  /**
+   * Returns the number of intersections in this graph.
+   *
+   * @return the number of intersections in this graph.
+   */
+  public int getIntersectionCount();
+
+  /**
+   * Returns the number of roads in this graph.
+   *
+   * @return the number of roads in this graph.
+   */
+  public int getRoadCount();
+
+  /**
+   * Returns the latitude of an intersection.
+   *
+   * @param intersection the index of the intersection
+   * @return the geodetic latitude, in degrees, of the intersection.
+   */
+  public double getLatitude(int intersection);
+
+  /**
+   * Returns the longtitude of an intersection.
+   *
+   * @param intersection the index of the intersection
+   * @return the geodetic longtitude, in degrees, of the intersection.
+   */
+  public double getLongtitude(int intersection);
+
+  /**
+   * Returns the first edge of an intersection.
+   *
+   * @param intersection the index of the intersection, or the number of intersections to get the
+   *        total number of edges
+   * @return the index of the first edge of the intersection.
+   */
+  public int getFirstEdge(int intersection);
+
+  /**
+   * Returns the intersection that an edge leads to.
+   *
+   * @param edge the index of the edge
+   * @return the index of the neighbor that the edge leads to.
+   */
+  public int getEdgeTarget(int edge);
+
+  /**
+   * Returns the road that an edge belongs to.
+   *
+   * @param edge the index of the edge
+   * @return the index of the road that the edge belongs to.
+   */
+  public int getEdgeRoad(int edge);
+
+  /**
+   * Returns the weight of an edge, which is the distance of its road.
+   *
+   * @param edge the index of the edge
+   * @return the weight, in miles, of the edge.
+   */
+  public double getEdgeWeight(int edge);
+
+  /**
+   * Returns the first intersection of a road.
+   *
+   * @param road the index of the road
+   * @return the index of the first intersection of the road.
+   */
+  public int getRoadIntersection1(int road);
+
+  /**
+   * Returns the second intersection of a road.
+   *
+   * @param road the index of the road
+   * @return the index of the second intersection of the road.
+   */
+  public int getRoadIntersection2(int road);
+
+  /**
+   * Returns the distance of a road.
+   *
+   * @param road the index of the road
+   * @return the distance, in miles, of the road, or {@code +Infinity} if it is closed.
+   */
+  public double getRoadDistance(int road);
+
+  /**
+   * Given an endpoint of a road, returns the other endpoint.
+   *
+   * @param road the index of the road
+   * @param intersection the index of an endpoint of the road
+   * @return the index of the other endpoint.
+   */
+  public default int getTheOtherEnd(int road, int intersection) {
+    int intersection1 = this.getRoadIntersection1(road);
+
+    return intersection == intersection1 ? this.getRoadIntersection2(road) : intersection1;
+  }
+}
@@ -0,0 +1,67 @@
+package io.github.cszach.Trailblazer.geo;
+
+/**
+ * Statistics about a batch of road updates that was applied to a {@code Geography}.
+ *
+ * @see Geography#updateRoads(RoadUpdates)
+ */
+public class RoadUpdateStatistics {
+  /**
+   * The number of roads whose distance was changed.
+   */
+  private int updatedCount;
+  /**
+   * The number of roads that were closed.
+   */
+  private int closedCount;
+  /**
+   * The wall-clock time, in nanoseconds, that applying the batch took.
+   */
+  private long nanos;
+
+  /**
+   * Constructs a new {@code RoadUpdateStatistics}.
+   *
+   * @param updatedCount the number of roads whose distance was changed
+   * @param closedCount the number of roads that were closed
+   * @param nanos the wall-clock time, in nanoseconds, that applying the batch took
+   */
+  public RoadUpdateStatistics(int updatedCount, int closedCount, long nanos) {
+    this.updatedCount = updatedCount;
+    this.closedCount = closedCount;
+    this.nanos = nanos;
+  }
+
+  /**
+   * Returns the number of roads whose distance was changed, including the closed ones.
+   *
+   * @return the number of roads whose distance was changed.
+   */
+  public int getUpdatedCount() {
+    return this.updatedCount;
+  }
+
+  /**
+   * Returns the number of roads that were closed.
+   *
+   * @return the number of roads that were closed.
+   */
+  public int getClosedCount() {
+    return this.closedCount;
+  }
+
+  /**
+   * Returns the wall-clock time that applying the batch took.
+   *
+   * @return the wall-clock time, in nanoseconds, that applying the batch took.
+   */
+  public long getNanos() {
+    return this.nanos;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Updated %d roads, %d of them closed (%.1f ms)", this.updatedCount,
+        this.closedCount, this.nanos / 1e6);
+  }
+}
@@ -0,0 +1,90 @@
+package io.github.cszach.Trailblazer.geo;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A batch of changes to the distances of roads, which a {@code Geography} applies all at once.
+ *
+ * <p>
+ * A road can be closed, which gives it an infinite distance so that no path takes it, or given a
+ * new distance, which also reopens a closed road. If a road is changed more than once in a batch,
+ * the last change wins.
+ *
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * RoadUpdates updates = new RoadUpdates();
+ * updates.close(geo.getRoad("R12").getIndex());
+ * updates.setDistance(geo.getRoad("R13").getIndex(), 0.25);
+ * geo.updateRoads(updates);
+ * </pre>
+ *
+ * @see Geography#updateRoads(RoadUpdates)
+ */
+public final class RoadUpdates {
+  /**
+   * The new distance of every changed road, by index, in the order of the changes.
+   */
+  private final Map<Integer, Double> distances = new LinkedHashMap<>();
+
+  /**
+   * Closes a road.
+   *
+   * @param road the index of the road
+   * @return this batch.
+   */
+  public RoadUpdates close(int road) {
+    this.distances.put(road, Double.POSITIVE_INFINITY);
+
+    return this;
+  }
+
+  /**
+   * Changes the distance of a road, reopening it if it is closed.
+   *
+   * @param road the index of the road
+   * @param distance the new distance, in miles, of the road
+   * @return this batch.
+   * @throws IllegalArgumentException when the distance is negative, infinite, or {@code NaN}.
+   */
+  public RoadUpdates setDistance(int road, double distance) {
+    if (!(distance >= 0) || distance == Double.POSITIVE_INFINITY) {
+      throw new IllegalArgumentException("The distance of a road must be finite and not negative");
+    }
+
+    this.distances.put(road, distance);
+
+    return this;
+  }
+
+  /**
+   * Returns the number of roads that this batch changes.
+   *
+   * @return the number of roads that this batch changes.
+   */
+  public int size() {
+    return this.distances.size();
+  }
+
+  /**
+   * Returns the roads that this batch changes.
+   *
+   * @return the indices of the changed roads, in the order that they were first changed.
+   */
+  public int[] getRoads() {
+    return this.distances.keySet().stream().mapToInt(Integer::intValue).toArray();
+  }
+
+  /**
+   * Returns the changes of this batch.
+   *
+   * @return the new distance of every changed road, by index, which is {@code +Infinity} for a
+   *         closed road.
+   */
+  Map<Integer, Double> getDistances() {
+    return Collections.unmodifiableMap(this.distances);
+  }
+}
@@ -0,0 +1,380 @@
+package io.github.cszach.Trailblazer.geo;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * An immutable, compact pool of strings that are numbered densely, starting from 0.
+ *
+ * <p>
+ * All strings are stored back to back in a single UTF-8 byte arena, and an open-addressing hash
+ * index with linear probing maps a string to its index. Compared with a {@code HashMap} from
+ * {@code String} to {@code Integer}, a pool holds no object per string, and looking up an ASCII
+ * string does not allocate.
+ *
+ * <p>
+ * If a string was added several times, looking it up returns the index of its first occurrence.
+ *
+ * <p>
+ * The arena, the offsets, and the hash slots are buffers, so that a pool can be read in place from
+ * a memory-mapped {@code GeographySnapshot}.
+ *
+ * @see StringPool.Builder
+ */
+public final class StringPool {
+  /**
+   * The number of strings above which bulk lookups are done in parallel.
+   */
+  private static final int PARALLEL_THRESHOLD = 1 << 12;
+
+  private final int count;
+  /**
+   * The start of every string in the arena, plus the end of the arena.
+   */
+  private final IntBuffer offsets;
+  /**
+   * The hash slots, each of which holds the index of a string plus 1, or 0 if it is empty. The
+   * number of slots is a power of 2.
+   */
+  private final IntBuffer slots;
+  private final ByteBuffer arena;
+
+  /**
+   * Constructs a {@code StringPool} over existing buffers.
+   *
+   * @param count the number of strings
+   * @param offsets the start of every string in the arena, plus the end of the arena
+   * @param slots the hash slots
+   * @param arena the UTF-8 byte arena
+   */
+  StringPool(int count, IntBuffer offsets, IntBuffer slots, ByteBuffer arena) {
+    this.count = count;
+    this.offsets = offsets;
+    this.slots = slots;
+    this.arena = arena;
+  }
+
+  /**
+   * Returns the number of strings in this pool.
+   *
+   * @return the number of strings in this pool.
+   */
+  public int size() {
+    return this.count;
+  }
+
+  /**
+   * Returns a string in this pool.
+   *
+   * @param index the index of the string
+   * @return the string at the specified index.
+   */
+  public String get(int index) {
+    int start = this.offsets.get(index);
+    int length = this.offsets.get(index + 1) - start;
+    byte[] bytes = new byte[length];
+
+    this.arena.get(start, bytes, 0, length);
+
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Returns the index of a string in this pool.
+   *
+   * @param string the string to look up
+   * @return the index of the string, or {@code -1} if the string is not in this pool.
+   */
+  public int indexOf(String string) {
+    return indexOf(string, this.offsets, this.slots, this.arena);
+  }
+
+  /**
+   * Returns the index of a UTF-8 encoded string in this pool.
+   *
+   * @param bytes an array that holds the encoded string
+   * @param offset the start of the encoded string in the array
+   * @param length the length, in bytes, of the encoded string
+   * @return the index of the string, or {@code -1} if the string is not in this pool.
+   */
+  public int indexOf(byte[] bytes, int offset, int length) {
+    return indexOf(bytes, offset, length, this.offsets, this.slots, this.arena);
+  }
+
+  /**
+   * Returns the indices of several strings in this pool. Large batches are looked up in parallel.
+   *
+   * @param strings the strings to look up
+   * @return the index of every string, or {@code -1} for a string that is not in this pool.
+   */
+  public int[] indicesOf(String[] strings) {
+    IntStream indices = IntStream.range(0, strings.length);
+
+    if (strings.length >= PARALLEL_THRESHOLD) {
+      indices = indices.parallel();
+    }
+
+    return indices.map(i -> this.indexOf(strings[i])).toArray();
+  }
+
+  /**
+   * Returns the number of bytes that this pool occupies, excluding object headers.
+   *
+   * @return the number of bytes that this pool occupies.
+   */
+  public long getByteSize() {
+    return this.arena.capacity()
+        + (long) Integer.BYTES * (this.offsets.capacity() + this.slots.capacity());
+  }
+
+  int getSlotCount() {
+    return this.slots.capacity();
+  }
+
+  IntBuffer getOffsets() {
+    return this.offsets.duplicate();
+  }
+
+  IntBuffer getSlots() {
+    return this.slots.duplicate();
+  }
+
+  ByteBuffer getArena() {
+    return this.arena.duplicate();
+  }
+
+  // Hashing and probing, shared with Builder
+
+  private static int indexOf(String string, IntBuffer offsets, IntBuffer slots, ByteBuffer arena) {
+    int length = string.length();
+
+    for (int i = 0; i < length; i++) {
+      if (string.charAt(i) >= 0x80) {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+
+        return indexOf(bytes, 0, bytes.length, offsets, slots, arena);
+      }
+    }
+
+    // An ASCII string: its characters are its UTF-8 bytes
+
+    int hash = 0x811c9dc5;
+    for (int i = 0; i < length; i++) {
+      hash = (hash ^ string.charAt(i)) * 0x01000193;
+    }
+
+    int mask = slots.capacity() - 1;
+
+    for (int slot = mix(hash) & mask;; slot = (slot + 1) & mask) {
+      int index = slots.get(slot) - 1;
+
+      if (index < 0) {
+        return -1;
+      }
+
+      int start = offsets.get(index);
+
+      if (offsets.get(index + 1) - start == length) {
+        int i = 0;
+
+        while (i < length && arena.get(start + i) == string.charAt(i)) {
+          i++;
+        }
+
+        if (i == length) {
+          return index;
+        }
+      }
+    }
+  }
+
+  private static int indexOf(byte[] bytes, int offset, int length, IntBuffer offsets,
+      IntBuffer slots, ByteBuffer arena) {
+    int mask = slots.capacity() - 1;
+
+    for (int slot = hash(bytes, offset, length) & mask;; slot = (slot + 1) & mask) {
+      int index = slots.get(slot) - 1;
+
+      if (index < 0) {
+        return -1;
+      }
+
+      int start = offsets.get(index);
+
+      if (offsets.get(index + 1) - start == length) {
+        int i = 0;
+
+        while (i < length && arena.get(start + i) == bytes[offset + i]) {
+          i++;
+        }
+
+        if (i == length) {
+          return index;
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the 32-bit FNV-1a hash of a byte string, with its bits mixed so that the low bits can
+   * be used as a slot index.
+   */
+  private static int hash(byte[] bytes, int offset, int length) {
+    int hash = 0x811c9dc5;
+
+    for (int i = offset; i < offset + length; i++) {
+      hash = (hash ^ (bytes[i] & 0xff)) * 0x01000193;
+    }
+
+    return mix(hash);
+  }
+
+  private static int mix(int hash) {
+    return hash ^ (hash >>> 16);
+  }
+
+  /**
+   * A builder that appends strings to a {@code StringPool}.
+   */
+  public static class Builder {
+    private int count = 0;
+    private int[] offsets = new int[257];
+    private int[] slots = new int[512];
+    private byte[] arena = new byte[4096];
+
+    // Buffer views of the arrays above, for lookups
+    private IntBuffer offsetsView = IntBuffer.wrap(this.offsets);
+    private IntBuffer slotsView = IntBuffer.wrap(this.slots);
+    private ByteBuffer arenaView = ByteBuffer.wrap(this.arena);
+
+    /**
+     * Returns the number of strings added to this builder.
+     *
+     * @return the number of strings added to this builder.
+     */
+    public int size() {
+      return this.count;
+    }
+
+    /**
+     * Returns the index of a string added to this builder.
+     *
+     * @param string the string to look up
+     * @return the index of the string, or {@code -1} if it has not been added.
+     */
+    public int indexOf(String string) {
+      return StringPool.indexOf(string, this.offsetsView, this.slotsView, this.arenaView);
+    }
+
+    /**
+     * Returns the index of a UTF-8 encoded string added to this builder.
+     *
+     * @param bytes an array that holds the encoded string
+     * @param offset the start of the encoded string in the array
+     * @param length the length, in bytes, of the encoded string
+     * @return the index of the string, or {@code -1} if it has not been added.
+     */
+    public int indexOf(byte[] bytes, int offset, int length) {
+      return StringPool.indexOf(bytes, offset, length, this.offsetsView, this.slotsView,
+          this.arenaView);
+    }
+
+    /**
+     * Appends a string, even if it has been added before.
+     *
+     * @param string the string to add
+     * @return the index of the added string.
+     */
+    public int add(String string) {
+      byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+
+      return this.add(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Appends a UTF-8 encoded string, even if it has been added before.
+     *
+     * @param bytes an array that holds the encoded string
+     * @param offset the start of the encoded string in the array
+     * @param length the length, in bytes, of the encoded string
+     * @return the index of the added string.
+     */
+    public int add(byte[] bytes, int offset, int length) {
+      int index = this.count;
+      int start = this.offsets[index];
+
+      if (index + 2 > this.offsets.length) {
+        this.offsets = Arrays.copyOf(this.offsets, this.offsets.length * 2);
+        this.offsetsView = IntBuffer.wrap(this.offsets);
+      }
+
+      if (start + length > this.arena.length) {
+        this.arena = Arrays.copyOf(this.arena, Math.max(start + length, this.arena.length * 2));
+        this.arenaView = ByteBuffer.wrap(this.arena);
+      }
+
+      System.arraycopy(bytes, offset, this.arena, start, length);
+      this.offsets[index + 1] = start + length;
+
+      // Index the string unless an equal one is indexed already
+
+      if (StringPool.indexOf(bytes, offset, length, this.offsetsView, this.slotsView,
+          this.arenaView) < 0) {
+        insert(this.slots, index, hash(bytes, offset, length));
+      }
+
+      this.count++;
+
+      // At most half of the slots are used, so that probe sequences stay short
+      if (this.count * 2 > this.slots.length) {
+        this.rehash(this.slots.length * 2);
+      }
+
+      return index;
+    }
+
+    /**
+     * Builds a {@code StringPool} with the strings added to this builder. The builder can still be
+     * used afterwards.
+     *
+     * @return a new {@code StringPool}.
+     */
+    public StringPool build() {
+      int arenaLength = this.offsets[this.count];
+
+      return new StringPool(this.count, IntBuffer.wrap(Arrays.copyOf(this.offsets, this.count + 1)),
+          IntBuffer.wrap(this.slots.clone()),
+          ByteBuffer.wrap(Arrays.copyOf(this.arena, arenaLength)));
+    }
+
+    private void rehash(int slotCount) {
+      int[] slots = new int[slotCount];
+
+      for (int slot : this.slots) {
+        if (slot != 0) {
+          int index = slot - 1;
+          int start = this.offsets[index];
+
+          insert(slots, index, hash(this.arena, start, this.offsets[index + 1] - start));
+        }
+      }
+
+      this.slots = slots;
+      this.slotsView = IntBuffer.wrap(slots);
+    }
+
+    private static void insert(int[] slots, int index, int hash) {
+      int mask = slots.length - 1;
+      int slot = hash & mask;
+
+      while (slots[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+
+      slots[slot] = index + 1;
+    }
+  }
+}
@@ -5,11 +5,15 @@ import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Point;
 import java.awt.Rectangle;
+import java.util.BitSet;
 
-import io.github.cszach.Trailblazer.geo.Intersection;
-import io.github.cszach.Trailblazer.geo.Road;
 import io.github.cszach.Trailblazer.geo.Geography;
+import io.github.cszach.Trailblazer.geo.RoadGraph;
+import io.github.cszach.Trailblazer.metrics.Metrics;
+import io.github.cszach.Trailblazer.metrics.ProjectionEvent;
 import io.github.cszach.Trailblazer.projection.Projection;
+import io.github.cszach.Trailblazer.routing.Route;
+import io.github.cszach.Trailblazer.routing.ShortestPathTree;
 
 /**
  * A {@code JPanel} that displays a map of a {@code Geography}.
@@ -26,6 +30,23 @@ public class MapPanel extends TransformPanel {
    */
   private Projection projection;
 
+  /**
+   * The roads of the route that is highlighted on the map.
+   */
+  private BitSet routeRoads = new BitSet();
+  /**
+   * The roads of every alternative route that is shown on the map.
+   */
+  private BitSet[] alternativeRoads = new BitSet[0];
+  /**
+   * The roads within the isochrone that is shown on the map.
+   */
+  private BitSet isochroneRoads = new BitSet();
+  /**
+   * The roads that cross the boundary of the isochrone that is shown on the map.
+   */
+  private BitSet frontierRoads = new BitSet();
+
   /**
    * The debugging flag.
    */
@@ -34,8 +55,25 @@ public class MapPanel extends TransformPanel {
    * The bounding box of the drawn map without any {@code AffineTransform}.
    */
   private Rectangle boundingBox;
+  /**
+   * The projected x coordinate of every intersection, by index.
+   */
+  private int[] projectedX = new int[0];
+  /**
+   * The projected y coordinate of every intersection, by index.
+   */
+  private int[] projectedY = new int[0];
 
   private final double LOG_2 = Math.log(2);
+  /**
+   * The color of the roads within an isochrone.
+   */
+  private static final Color ISOCHRONE_COLOR = new Color(0, 150, 0);
+  /**
+   * The colors of alternative routes, in order, which are reused if there are more routes.
+   */
+  private static final Color[] ALTERNATIVE_COLORS =
+      {new Color(0, 90, 255), Color.MAGENTA, new Color(0, 170, 170), new Color(140, 70, 0)};
 
   /**
    * Constructs a new {@code MapPanel} to draw the given {@code Geography} using the given
@@ -62,13 +100,106 @@ public class MapPanel extends TransformPanel {
   }
 
   /**
-   * Assigns x and y values for all the intersections in the current {@code Geography} using the
-   * current {@code Projection}.
+   * Highlights a route on the map, replacing the route that was highlighted before.
+   *
+   * @param route the route to highlight, or {@code null} to highlight none
+   */
+  public void setRoute(Route route) {
+    this.routeRoads = new BitSet();
+
+    if (route != null) {
+      for (int road : route.getRoads()) {
+        this.routeRoads.set(road);
+      }
+    }
+
+    this.repaint();
+  }
+
+  /**
+   * Shows alternative routes on the map, replacing the alternatives that were shown before. Each
+   * alternative is drawn in a different color, and the highlighted route is drawn over them.
+   *
+   * @param routes the alternative routes to show, in order, or {@code null} to show none
+   */
+  public void setAlternativeRoutes(Route[] routes) {
+    this.alternativeRoads = new BitSet[routes != null ? routes.length : 0];
+
+    for (int i = 0; i < this.alternativeRoads.length; i++) {
+      this.alternativeRoads[i] = new BitSet();
+
+      for (int road : routes[i].getRoads()) {
+        this.alternativeRoads[i].set(road);
+      }
+    }
+
+    this.repaint();
+  }
+
+  /**
+   * Shows the isochrone of a shortest path tree on the map, replacing the isochrone that was shown
+   * before. Roads within the isochrone are drawn in green, and roads that cross its boundary in
+   * orange.
+   *
+   * @param tree the shortest path tree whose isochrone to show, or {@code null} to show none
+   */
+  public void setShortestPathTree(ShortestPathTree tree) {
+    this.isochroneRoads = new BitSet();
+    this.frontierRoads = new BitSet();
+
+    if (tree != null) {
+      RoadGraph graph = this.geo.getGraph();
+
+      for (int road = 0; road < graph.getRoadCount(); road++) {
+        if (tree.isReachable(graph.getRoadIntersection1(road))
+            && tree.isReachable(graph.getRoadIntersection2(road))) {
+          this.isochroneRoads.set(road);
+        }
+      }
+
+      for (int road : tree.getFrontierRoads()) {
+        this.frontierRoads.set(road);
+      }
+    }
+
+    this.repaint();
+  }
+
+  /**
+   * Computes x and y values for all the intersections in the current {@code Geography} using the
+   * current {@code Projection}. The projection is recorded as a {@code ProjectionEvent} and in the
+   * histogram {@code projection} of {@code Metrics}, when they are on.
    */
   public void project() {
-    for (Intersection intersection : this.geo.getIntersections()) {
-      intersection.setLocation(
-          this.projection.project(intersection.getLatitude(), intersection.getLongtitude()));
+    RoadGraph graph = this.geo.getGraph();
+    int n = graph.getIntersectionCount();
+    ProjectionEvent event = new ProjectionEvent();
+    boolean isTimed = Metrics.isEnabled();
+    long startTime = isTimed ? System.nanoTime() : 0;
+
+    event.begin();
+
+    if (this.projectedX.length != n) {
+      this.projectedX = new int[n];
+      this.projectedY = new int[n];
+    }
+
+    for (int i = 0; i < n; i++) {
+      Point point = this.projection.project(graph.getLatitude(i), graph.getLongtitude(i));
+
+      this.projectedX[i] = point.x;
+      this.projectedY[i] = point.y;
+    }
+
+    if (isTimed) {
+      Metrics.record("projection", System.nanoTime() - startTime);
+    }
+
+    event.end();
+
+    if (event.shouldCommit()) {
+      event.intersectionCount = n;
+      event.commit();
     }
   }
 
@@ -84,17 +215,17 @@ public class MapPanel extends TransformPanel {
     int boxX = 0, boxY = 0, boxWidth = 0, boxHeight = 0;
     boolean isFirst = true;
 
-    for (Intersection intersection : this.geo.getIntersections()) {
+    for (int i = 0; i < this.projectedX.length; i++) {
       if (isFirst) {
-        boxX = (int) Math.round(intersection.getX());
-        boxY = (int) Math.round(intersection.getY());
+        boxX = this.projectedX[i];
+        boxY = this.projectedY[i];
         boxWidth = 0;
         boxHeight = 0;
 
         isFirst = false;
       } else {
-        int x = (int) Math.round(intersection.getX());
-        int y = (int) Math.round(intersection.getY());
+        int x = this.projectedX[i];
+        int y = this.projectedY[i];
 
         if (x < boxX) {
           boxX = x;
@@ -156,18 +287,32 @@ public class MapPanel extends TransformPanel {
 
     Graphics2D g2d = (Graphics2D) g;
 
-    for (Road road : this.geo.getRoads()) {
-      Intersection intersection1 = road.getIntersection1();
-      Intersection intersection2 = road.getIntersection2();
+    RoadGraph graph = this.geo.getGraph();
+
+    for (int road = 0; road < graph.getRoadCount(); road++) {
+      int intersection1 = graph.getRoadIntersection1(road);
+      int intersection2 = graph.getRoadIntersection2(road);
+
+      int alternative = 0;
+      while (alternative < this.alternativeRoads.length
+          && !this.alternativeRoads[alternative].get(road)) {
+        alternative++;
+      }
 
-      if (road.getIsShortestRoad()) {
+      if (this.routeRoads.get(road)) {
         g2d.setColor(Color.RED);
+      } else if (alternative < this.alternativeRoads.length) {
+        g2d.setColor(ALTERNATIVE_COLORS[alternative % ALTERNATIVE_COLORS.length]);
+      } else if (this.frontierRoads.get(road)) {
+        g2d.setColor(Color.ORANGE);
+      } else if (this.isochroneRoads.get(road)) {
+        g2d.setColor(ISOCHRONE_COLOR);
       } else {
         g2d.setColor(Color.BLACK);
       }
 
-      g2d.drawLine((int) intersection1.getX(), (int) intersection1.getY(),
-          (int) intersection2.getX(), (int) intersection2.getY());
+      g2d.drawLine(this.projectedX[intersection1], this.projectedY[intersection1],
+          this.projectedX[intersection2], this.projectedY[intersection2]);
     }
 
     if (this.debugging && this.boundingBox != null) {
@@ -0,0 +1,24 @@
+package io.github.cszach.Trailblazer.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JDK Flight Recorder event for a phase of an import of map data.
+ *
+ * @see ImportPhase
+ */
+@Name("io.github.cszach.Trailblazer.ImportPhase")
+@Label("Import Phase")
+@Category({"Trailblazer", "Import"})
+@Description("A phase of an import of map data")
+public final class ImportPhaseEvent extends jdk.jfr.Event {
+  @Label("Phase")
+  public String phase;
+
+  @Label("Items")
+  @Description("The number of bytes, intersections, or roads that the phase went through")
+  public long itemCount;
+}
@@ -0,0 +1,172 @@
+package io.github.cszach.Trailblazer.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of latencies, in nanoseconds, laid out like an HdrHistogram: values below
+ * {@code SUB_BUCKET_COUNT} have a bucket each, and every power of two above that is split into
+ * {@code SUB_BUCKET_COUNT / 2} buckets of equal width. Every value is therefore counted within
+ * 1/128 (under 0.8%) of itself, from nanoseconds up to centuries, in a fixed number of buckets.
+ *
+ * <p>
+ * Recording is lock-free, so a {@code LatencyHistogram} can be shared between threads. Reads are
+ * not atomic with respect to recording, so a percentile read while values are being recorded may
+ * miss the latest few.
+ */
+public final class LatencyHistogram {
+  /**
+   * The number of bits of a value that pick its bucket within its power of two.
+   */
+  private static final int SUB_BUCKET_BITS = 8;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+  /**
+   * The number of buckets, enough for every value up to {@code Long.MAX_VALUE}.
+   */
+  private static final int BUCKET_COUNT =
+      SUB_BUCKET_COUNT + (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKET_HALF_COUNT;
+
+  private final String name;
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+  private final AtomicLong max = new AtomicLong();
+
+  /**
+   * Constructs a new, empty {@code LatencyHistogram}.
+   *
+   * @param name the name of the histogram, as it appears in reports
+   */
+  public LatencyHistogram(String name) {
+    this.name = name;
+  }
+
+  /**
+   * Returns the bucket of a value.
+   */
+  private static int getBucket(long value) {
+    if (value < SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+
+    // The shift that brings the value into [SUB_BUCKET_HALF_COUNT, SUB_BUCKET_COUNT)
+    int shift = Long.SIZE - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+
+    return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF_COUNT + (int) (value >>> shift)
+        - SUB_BUCKET_HALF_COUNT;
+  }
+
+  /**
+   * Returns the largest value that falls in a bucket.
+   */
+  private static long getHighestValue(int bucket) {
+    if (bucket < SUB_BUCKET_COUNT) {
+      return bucket;
+    }
+
+    int shift = (bucket - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF_COUNT + 1;
+    long subBucket = (bucket - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF_COUNT + SUB_BUCKET_HALF_COUNT;
+
+    return ((subBucket + 1) << shift) - 1;
+  }
+
+  /**
+   * Records a value.
+   *
+   * @param nanos the value, in nanoseconds; negative values are recorded as {@code 0}
+   */
+  public void record(long nanos) {
+    long value = Math.max(0, nanos);
+
+    this.counts.incrementAndGet(getBucket(value));
+    this.count.increment();
+    this.sum.add(value);
+
+    if (value > this.max.get()) {
+      this.max.accumulateAndGet(value, Math::max);
+    }
+  }
+
+  /**
+   * Returns the name of this histogram.
+   *
+   * @return the name of this histogram.
+   */
+  public String getName() {
+    return this.name;
+  }
+
+  /**
+   * Returns the number of recorded values.
+   *
+   * @return the number of recorded values.
+   */
+  public long getCount() {
+    return this.count.sum();
+  }
+
+  /**
+   * Returns the mean of the recorded values.
+   *
+   * @return the mean, in nanoseconds, or {@code 0} if no value has been recorded.
+   */
+  public double getMean() {
+    long count = this.count.sum();
+
+    return count == 0 ? 0 : (double) this.sum.sum() / count;
+  }
+
+  /**
+   * Returns the largest recorded value.
+   *
+   * @return the largest recorded value, in nanoseconds, or {@code 0} if no value has been recorded.
+   */
+  public long getMax() {
+    return this.max.get();
+  }
+
+  /**
+   * Returns the value at a percentile, that is, the smallest value that the given percentage of the
+   * recorded values are at most, within the precision of the buckets.
+   *
+   * @param percentile the percentile, from {@code 0} to {@code 100}
+   * @return the value at the percentile, in nanoseconds, or {@code 0} if no value has been
+   *         recorded.
+   * @throws IllegalArgumentException when the percentile is not between {@code 0} and {@code 100}.
+   */
+  public long getValueAtPercentile(double percentile) {
+    if (!(percentile >= 0 && percentile <= 100)) {
+      throw new IllegalArgumentException("The percentile must be between 0 and 100");
+    }
+
+    long total = 0;
+
+    for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+      total += this.counts.get(bucket);
+    }
+
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+    long seen = 0;
+
+    for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+      seen += this.counts.get(bucket);
+
+      if (seen >= rank) {
+        return Math.min(getHighestValue(bucket), this.getMax());
+      }
+    }
+
+    return 0;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "%s: %d, mean %.3f ms, p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, p99.9 %.3f ms, max %.3f ms",
+        this.name, this.getCount(), this.getMean() / 1e6, this.getValueAtPercentile(50) / 1e6,
+        this.getValueAtPercentile(90) / 1e6, this.getValueAtPercentile(99) / 1e6,
+        this.getValueAtPercentile(99.9) / 1e6, this.getMax() / 1e6);
+  }
+}
@@ -0,0 +1,127 @@
+package io.github.cszach.Trailblazer.metrics;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The counters and latency histograms of the program, by name.
+ *
+ * <p>
+ * Metrics are off until {@code enable} is called, and instrumented code checks {@code isEnabled}
+ * before it reads the clock or counts anything, so that they cost a single read of a field when
+ * off. The JDK Flight Recorder events of the program are independent of this: they are committed
+ * whenever a recording enables them.
+ *
+ * <p>
+ * Names are dotted, such as {@code search.ch} or {@code import.parse}, and reports list them in
+ * order, so that related metrics appear together.
+ */
+public final class Metrics {
+  private static volatile boolean enabled = false;
+  private static final Map<String, LatencyHistogram> HISTOGRAMS = new ConcurrentSkipListMap<>();
+  private static final Map<String, LongAdder> COUNTERS = new ConcurrentSkipListMap<>();
+
+  private Metrics() {}
+
+  /**
+   * Turns metrics on, for the rest of the run.
+   */
+  public static void enable() {
+    enabled = true;
+  }
+
+  /**
+   * Checks whether metrics are on.
+   *
+   * @return {@code true} if metrics are on, {@code false} otherwise.
+   */
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Returns the latency histogram of a name, creating it if there is none.
+   *
+   * @param name the name of the histogram
+   * @return the latency histogram of the name.
+   */
+  public static LatencyHistogram getHistogram(String name) {
+    return HISTOGRAMS.computeIfAbsent(name, LatencyHistogram::new);
+  }
+
+  /**
+   * Returns the counter of a name, creating it if there is none.
+   *
+   * @param name the name of the counter
+   * @return the counter of the name.
+   */
+  public static LongAdder getCounter(String name) {
+    return COUNTERS.computeIfAbsent(name, key -> new LongAdder());
+  }
+
+  /**
+   * Records a latency in the histogram of a name, if metrics are on.
+   *
+   * @param name the name of the histogram
+   * @param nanos the latency, in nanoseconds
+   */
+  public static void record(String name, long nanos) {
+    if (enabled) {
+      getHistogram(name).record(nanos);
+    }
+  }
+
+  /**
+   * Adds to the counter of a name, if metrics are on.
+   *
+   * @param name the name of the counter
+   * @param count the number to add
+   */
+  public static void count(String name, long count) {
+    if (enabled) {
+      getCounter(name).add(count);
+    }
+  }
+
+  /**
+   * Prints every counter and histogram, in order of their names.
+   *
+   * @param out the stream to print to
+   */
+  public static void report(PrintStream out) {
+    for (Map.Entry<String, LongAdder> entry : COUNTERS.entrySet()) {
+      out.printf("%s: %d%n", entry.getKey(), entry.getValue().sum());
+    }
+
+    for (LatencyHistogram histogram : HISTOGRAMS.values()) {
+      out.println(histogram);
+    }
+  }
+
+  /**
+   * Prints a report periodically, on a daemon thread, for the rest of the run.
+   *
+   * @param out the stream to print to
+   * @param periodSeconds the time between reports, in seconds
+   * @throws IllegalArgumentException when the period is not positive.
+   */
+  public static void startReporting(PrintStream out, long periodSeconds) {
+    ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "metrics-reporter");
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    executor.scheduleAtFixedRate(() -> {
+      synchronized (out) {
+        out.println("--- Metrics ---");
+        report(out);
+      }
+    }, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+  }
+}
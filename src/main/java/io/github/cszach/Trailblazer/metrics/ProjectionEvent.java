@@ -0,0 +1,18 @@
+package io.github.cszach.Trailblazer.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JDK Flight Recorder event for a projection of every intersection of a map onto the screen.
+ *
+ * @see io.github.cszach.Trailblazer.gui.MapPanel#project()
+ */
+@Name("io.github.cszach.Trailblazer.Projection")
+@Label("Map Projection")
+@Category({"Trailblazer", "GUI"})
+public final class ProjectionEvent extends jdk.jfr.Event {
+  @Label("Intersections")
+  public int intersectionCount;
+}
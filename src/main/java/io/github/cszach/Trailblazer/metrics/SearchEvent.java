@@ -0,0 +1,42 @@
+package io.github.cszach.Trailblazer.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JDK Flight Recorder event for a shortest path query, with the work that its search did.
+ *
+ * @see io.github.cszach.Trailblazer.routing.RoutingEngine#findShortestPath(int, int,
+ *      io.github.cszach.Trailblazer.routing.Algorithm)
+ */
+@Name("io.github.cszach.Trailblazer.Search")
+@Label("Shortest Path Search")
+@Category({"Trailblazer", "Routing"})
+@Description("A shortest path query and the work that its search did")
+public final class SearchEvent extends jdk.jfr.Event {
+  @Label("Algorithm")
+  public String algorithm;
+
+  @Label("Start Intersection")
+  public int startIntersection;
+
+  @Label("End Intersection")
+  public int endIntersection;
+
+  @Label("Distance")
+  @Description("The distance of the route in miles, or Infinity if no path was found")
+  public double distance;
+
+  @Label("Settled Intersections")
+  public long settledCount;
+
+  @Label("Relaxations")
+  @Description("The relaxations of roads and shortcuts that lowered a tentative distance")
+  public long relaxedCount;
+
+  @Label("Queue Operations")
+  @Description("The insertions, decreases of keys, and removals of the priority queues")
+  public long queueOperationCount;
+}
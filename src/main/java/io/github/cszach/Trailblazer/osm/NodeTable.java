@@ -0,0 +1,73 @@
+package io.github.cszach.Trailblazer.osm;
+
+import java.util.Arrays;
+
+/**
+ * The coordinates of the nodes that highway ways reference, looked up by node ID.
+ *
+ * <p>
+ * The table is sized once from the node references of the ways, so that nodes that no highway
+ * references are never stored. Readers may fill in coordinates concurrently, since every node has
+ * its own slot.
+ */
+class NodeTable {
+  /**
+   * The distinct IDs of the referenced nodes, in ascending order.
+   */
+  private final long[] ids;
+  /**
+   * The latitude of every node, or {@code NaN} if the node has not been read.
+   */
+  private final double[] latitudes;
+  private final double[] longtitudes;
+
+  /**
+   * Constructs a new {@code NodeTable} for the nodes that some ways reference.
+   *
+   * @param ways the ways whose nodes to store
+   */
+  NodeTable(WayTable ways) {
+    this.ids = ways.getDistinctRefs();
+    this.latitudes = new double[this.ids.length];
+    this.longtitudes = new double[this.ids.length];
+
+    Arrays.fill(this.latitudes, Double.NaN);
+  }
+
+  int size() {
+    return this.ids.length;
+  }
+
+  long getId(int node) {
+    return this.ids[node];
+  }
+
+  /**
+   * Returns the slot of a node.
+   *
+   * @param id the ID of the node
+   * @return the slot of the node, or {@code -1} if no way references the node.
+   */
+  int indexOf(long id) {
+    int node = Arrays.binarySearch(this.ids, id);
+
+    return node < 0 ? -1 : node;
+  }
+
+  boolean isRead(int node) {
+    return !Double.isNaN(this.latitudes[node]);
+  }
+
+  double getLatitude(int node) {
+    return this.latitudes[node];
+  }
+
+  double getLongtitude(int node) {
+    return this.longtitudes[node];
+  }
+
+  void set(int node, double latitude, double longtitude) {
+    this.latitudes[node] = latitude;
+    this.longtitudes[node] = longtitude;
+  }
+}
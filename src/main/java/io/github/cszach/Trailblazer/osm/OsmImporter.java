@@ -0,0 +1,207 @@
+package io.github.cszach.Trailblazer.osm;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import io.github.cszach.Trailblazer.geo.GeographyBuilder;
+import io.github.cszach.Trailblazer.geo.ImportStatistics;
+import io.github.cszach.Trailblazer.metrics.ImportPhase;
+
+/**
+ * An importer of local OpenStreetMap extracts, in either the {@code .osm.pbf} format or the
+ * {@code .osm} XML format (optionally gzip-compressed).
+ *
+ * <p>
+ * The extract is streamed twice with bounded memory. The first pass collects the ways that are
+ * tagged as routable highways, along with the IDs of the nodes that they reference. The second pass
+ * reads the coordinates of those nodes only; all other nodes, and all relations, are skipped. PBF
+ * blocks are decoded on several threads.
+ *
+ * <p>
+ * Every referenced node becomes an intersection whose ID is the node ID, and every way is split
+ * into one road per pair of consecutive nodes, whose ID is the way ID followed by {@code -} and the
+ * number of the segment in the way (e.g. {@code 4242-0}, {@code 4242-1}). Road directions, such as
+ * {@code oneway}, are ignored since the road network is undirected. Segments whose nodes are
+ * missing from the extract, as happens at the edges of clipped extracts, are dropped.
+ *
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * GeographyBuilder builder = new GeographyBuilder();
+ * new OsmImporter(4).importInto(builder, "monaco-latest.osm.pbf");
+ * Geography geo = builder.build();
+ * </pre>
+ *
+ * @see GeographyBuilder
+ */
+public class OsmImporter {
+  /**
+   * The values of the {@code highway} tag of ways that are not roads one can travel on.
+   */
+  private static final Set<String> UNROUTABLE_HIGHWAYS =
+      Set.of("abandoned", "bus_stop", "construction", "disused", "elevator", "emergency_bay",
+          "platform", "proposed", "raceway", "razed", "rest_area", "services");
+
+  /**
+   * The number of threads that decode PBF blocks.
+   */
+  private int threads;
+
+  /**
+   * Constructs a new {@code OsmImporter} that decodes PBF blocks on the given number of threads.
+   *
+   * @param threads the number of threads that decode PBF blocks
+   */
+  public OsmImporter(int threads) {
+    this.threads = Math.max(1, threads);
+  }
+
+  /**
+   * Checks whether a file is an OpenStreetMap extract, judging by its name.
+   *
+   * @param path the path of the file
+   * @return {@code true} if the file name ends with {@code .pbf}, {@code .osm}, or {@code .osm.gz};
+   *         {@code false} otherwise.
+   */
+  public static boolean isOsmFile(String path) {
+    return isPbfFile(path) || path.endsWith(".osm") || path.endsWith(".osm.gz");
+  }
+
+  /**
+   * Imports an OpenStreetMap extract into a {@code GeographyBuilder}.
+   *
+   * @param builder the {@code GeographyBuilder} to import into
+   * @param path the path of the extract; files whose name ends with {@code .pbf} are read as PBF,
+   *        and all others as XML
+   * @return the statistics of the import, where the number of bytes is the size of the extract.
+   * @throws FileNotFoundException when the specified file does not exist.
+   * @throws IOException when the file cannot be read.
+   * @throws NoSuchElementException when the file format is invalid.
+   */
+  public ImportStatistics importInto(GeographyBuilder builder, String path) throws IOException {
+    long startTime = System.nanoTime();
+    Path file = Path.of(path);
+
+    if (!Files.isRegularFile(file)) {
+      throw new FileNotFoundException(path + " (No such file)");
+    }
+
+    OsmReader reader = isPbfFile(path) ? new PbfReader(file, this.threads) : new XmlReader(file);
+    int intersectionCount = builder.getIntersectionCount();
+    int roadCount = builder.getRoadCount();
+
+    ImportPhase phase = ImportPhase.begin("osm.ways");
+    WayTable ways = new WayTable();
+    reader.readWays(ways);
+    phase.end(ways.size());
+
+    phase = ImportPhase.begin("osm.nodes");
+    NodeTable nodes = new NodeTable(ways);
+    reader.readNodes(nodes);
+    phase.end(nodes.size());
+
+    phase = ImportPhase.begin("osm.roads");
+    addTo(builder, ways, nodes);
+    phase.end(builder.getRoadCount() - roadCount);
+
+    return new ImportStatistics(Files.size(file),
+        builder.getIntersectionCount() - intersectionCount, builder.getRoadCount() - roadCount,
+        System.nanoTime() - startTime);
+  }
+
+  /**
+   * Checks whether a way with a given {@code highway} tag is a road one can travel on.
+   *
+   * @param value the value of the {@code highway} tag
+   * @return {@code true} if the way is routable, {@code false} otherwise.
+   */
+  static boolean isRoutableHighway(String value) {
+    return !UNROUTABLE_HIGHWAYS.contains(value);
+  }
+
+  private static boolean isPbfFile(String path) {
+    return path.endsWith(".pbf");
+  }
+
+  /**
+   * Adds the nodes that have been read as intersections, and the segments of the ways as roads.
+   *
+   * @param builder the {@code GeographyBuilder} to add to
+   * @param ways the highway ways
+   * @param nodes the coordinates of the nodes that the ways reference
+   */
+  private static void addTo(GeographyBuilder builder, WayTable ways, NodeTable nodes) {
+    byte[] id = new byte[48];
+    int[] intersections = new int[nodes.size()];
+
+    for (int node = 0; node < nodes.size(); node++) {
+      if (nodes.isRead(node)) {
+        int length = appendDecimal(nodes.getId(node), id, 0);
+
+        intersections[node] = builder.addIntersection(id, 0, length, nodes.getLatitude(node),
+            nodes.getLongtitude(node));
+      } else {
+        intersections[node] = -1;
+      }
+    }
+
+    for (int way = 0; way < ways.size(); way++) {
+      int wayIdLength = appendDecimal(ways.getId(way), id, 0);
+      int segment = 0;
+      int previous = -1;
+      int refEnd = ways.getRefStart(way + 1);
+
+      id[wayIdLength] = '-';
+
+      for (int ref = ways.getRefStart(way); ref < refEnd; ref++) {
+        int intersection = intersections[nodes.indexOf(ways.getRef(ref))];
+
+        if (intersection < 0) {
+          previous = -1;
+        } else if (intersection != previous) {
+          if (previous >= 0) {
+            int length = appendDecimal(segment++, id, wayIdLength + 1);
+            builder.addRoad(id, 0, length, previous, intersection);
+          }
+
+          previous = intersection;
+        }
+      }
+    }
+  }
+
+  /**
+   * Writes the decimal digits of a number into a byte array as ASCII.
+   *
+   * @param value the number to write
+   * @param bytes the array to write to, which must have room for 20 more bytes
+   * @param offset the position to start writing at
+   * @return the position after the last digit.
+   */
+  private static int appendDecimal(long value, byte[] bytes, int offset) {
+    if (value < 0) {
+      bytes[offset++] = '-';
+    }
+
+    int start = offset;
+
+    do {
+      bytes[offset++] = (byte) ('0' + Math.abs(value % 10));
+      value /= 10;
+    } while (value != 0);
+
+    // The digits were written from the least significant one
+    for (int i = start, j = offset - 1; i < j; i++, j--) {
+      byte digit = bytes[i];
+      bytes[i] = bytes[j];
+      bytes[j] = digit;
+    }
+
+    return offset;
+  }
+}
@@ -0,0 +1,33 @@
+package io.github.cszach.Trailblazer.osm;
+
+import java.io.IOException;
+import java.util.NoSuchElementException;
+
+/**
+ * A reader of an OSM extract, which streams over the extract once per call.
+ *
+ * <p>
+ * Ways are read before nodes, so that only the nodes that highway ways reference need to be kept in
+ * memory.
+ *
+ * @see OsmImporter
+ */
+interface OsmReader {
+  /**
+   * Reads the ways that are tagged as routable highways.
+   *
+   * @param ways the table to add the ways to, in file order
+   * @throws IOException when the extract cannot be read.
+   * @throws NoSuchElementException when the extract's format is invalid.
+   */
+  void readWays(WayTable ways) throws IOException;
+
+  /**
+   * Reads the coordinates of the nodes that are in a table, and ignores all other nodes.
+   *
+   * @param nodes the table to fill in
+   * @throws IOException when the extract cannot be read.
+   * @throws NoSuchElementException when the extract's format is invalid.
+   */
+  void readNodes(NodeTable nodes) throws IOException;
+}
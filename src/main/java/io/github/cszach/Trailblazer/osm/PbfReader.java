@@ -0,0 +1,606 @@
+package io.github.cszach.Trailblazer.osm;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * A reader of OSM PBF extracts.
+ *
+ * <p>
+ * A PBF file is a sequence of independently compressed blobs of up to 8000 entities each. Blobs are
+ * read from the file sequentially, and decompressed and decoded concurrently. At most two blobs per
+ * thread are in flight at any time, so memory stays bounded however large the extract is, and
+ * results are consumed in file order.
+ *
+ * <p>
+ * Only zlib-compressed and uncompressed blobs are supported, which is what common tools write.
+ *
+ * @see <a href="https://wiki.openstreetmap.org/wiki/PBF_Format">PBF Format</a>
+ */
+class PbfReader implements OsmReader {
+  /**
+   * The maximum sizes, in bytes, of a blob header and of a blob, as set by the format.
+   */
+  private static final int MAX_HEADER_SIZE = 64 << 10;
+  private static final int MAX_BLOB_SIZE = 32 << 20;
+  /**
+   * The features that a file may require readers to understand.
+   */
+  private static final Set<String> SUPPORTED_FEATURES = Set.of("OsmSchema-V0.6", "DenseNodes");
+  private static final byte[] HIGHWAY = "highway".getBytes(StandardCharsets.UTF_8);
+
+  // Keys of the fields that are read, which combine the field number and the wire type
+
+  private static final int BLOB_HEADER_TYPE = 1 << 3 | ProtobufReader.LENGTH_DELIMITED;
+  private static final int BLOB_HEADER_DATA_SIZE = 3 << 3 | ProtobufReader.VARINT;
+  private static final int BLOB_RAW = 1 << 3 | ProtobufReader.LENGTH_DELIMITED;
+  private static final int BLOB_RAW_SIZE = 2 << 3 | ProtobufReader.VARINT;
+  private static final int BLOB_ZLIB_DATA = 3 << 3 | ProtobufReader.LENGTH_DELIMITED;
+  private static final int HEADER_REQUIRED_FEATURES = 4 << 3 | ProtobufReader.LENGTH_DELIMITED;
+  private static final int BLOCK_STRING_TABLE = 1 << 3 | ProtobufReader.LENGTH_DELIMITED;
+  private static final int BLOCK_GROUP = 2 << 3 | ProtobufReader.LENGTH_DELIMITED;
+  private static final int BLOCK_GRANULARITY = 17 << 3 | ProtobufReader.VARINT;
+  private static final int BLOCK_LATITUDE_OFFSET = 19 << 3 | ProtobufReader.VARINT;
+  private static final int BLOCK_LONGTITUDE_OFFSET = 20 << 3 | ProtobufReader.VARINT;
+  private static final int STRING_TABLE_STRING = 1 << 3 | ProtobufReader.LENGTH_DELIMITED;
+  private static final int GROUP_NODE = 1 << 3 | ProtobufReader.LENGTH_DELIMITED;
+  private static final int GROUP_DENSE_NODES = 2 << 3 | ProtobufReader.LENGTH_DELIMITED;
+  private static final int GROUP_WAY = 3 << 3 | ProtobufReader.LENGTH_DELIMITED;
+  private static final int NODE_ID = 1 << 3 | ProtobufReader.VARINT;
+  private static final int NODE_LATITUDE = 8 << 3 | ProtobufReader.VARINT;
+  private static final int NODE_LONGTITUDE = 9 << 3 | ProtobufReader.VARINT;
+  private static final int DENSE_NODES_IDS = 1 << 3 | ProtobufReader.LENGTH_DELIMITED;
+  private static final int DENSE_NODES_LATITUDES = 8 << 3 | ProtobufReader.LENGTH_DELIMITED;
+  private static final int DENSE_NODES_LONGTITUDES = 9 << 3 | ProtobufReader.LENGTH_DELIMITED;
+  private static final int WAY_ID = 1 << 3 | ProtobufReader.VARINT;
+  private static final int WAY_KEYS = 2 << 3 | ProtobufReader.LENGTH_DELIMITED;
+  private static final int WAY_VALUES = 3 << 3 | ProtobufReader.LENGTH_DELIMITED;
+  private static final int WAY_REFS = 8 << 3 | ProtobufReader.LENGTH_DELIMITED;
+
+  private Path file;
+  /**
+   * The number of threads that decode blobs.
+   */
+  private int threads;
+
+  /**
+   * Constructs a new {@code PbfReader}.
+   *
+   * @param file the PBF file to read
+   * @param threads the number of threads that decode blobs
+   */
+  PbfReader(Path file, int threads) {
+    this.file = file;
+    this.threads = Math.max(1, threads);
+  }
+
+  @Override
+  public void readWays(WayTable ways) throws IOException {
+    this.readBlocks(PbfReader::decodeWays, ways::addAll);
+  }
+
+  @Override
+  public void readNodes(NodeTable nodes) throws IOException {
+    this.readBlocks(block -> decodeNodes(block, nodes), count -> {
+    });
+  }
+
+  /**
+   * Reads every data blob of the file, decodes the blobs concurrently, and consumes the results in
+   * file order.
+   *
+   * @param decoder the function that decodes a block, which runs on the decoding threads
+   * @param consumer the function that consumes the result of decoding a block, which runs on the
+   *        calling thread
+   * @throws IOException when the file cannot be read.
+   * @throws NoSuchElementException when the file format is invalid.
+   */
+  private <T> void readBlocks(Function<Block, T> decoder, Consumer<T> consumer) throws IOException {
+    ExecutorService executor = Executors.newFixedThreadPool(this.threads, runnable -> {
+      Thread thread = new Thread(runnable, "pbf-reader");
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    Deque<Future<T>> pending = new ArrayDeque<>();
+
+    try (DataInputStream input = new DataInputStream(
+        new BufferedInputStream(new FileInputStream(this.file.toFile()), 1 << 16))) {
+      while (true) {
+        int headerLength;
+
+        try {
+          headerLength = input.readInt();
+        } catch (EOFException exception) {
+          break;
+        }
+
+        if (headerLength < 0 || headerLength > MAX_HEADER_SIZE) {
+          throw new NoSuchElementException("Invalid or broken file format: bad blob header size");
+        }
+
+        ProtobufReader header = new ProtobufReader(readFully(input, headerLength), 0, headerLength);
+        String type = null;
+        int dataSize = -1;
+
+        while (header.hasNext()) {
+          int key = header.readKey();
+
+          if (key == BLOB_HEADER_TYPE) {
+            type = header.readString();
+          } else if (key == BLOB_HEADER_DATA_SIZE) {
+            dataSize = (int) header.readVarint();
+          } else {
+            header.skip(key);
+          }
+        }
+
+        if (type == null || dataSize < 0 || dataSize > MAX_BLOB_SIZE) {
+          throw new NoSuchElementException("Invalid or broken file format: bad blob header");
+        }
+
+        byte[] blob = readFully(input, dataSize);
+
+        switch (type) {
+          case "OSMHeader":
+            checkHeader(decompress(blob));
+
+            break;
+
+          case "OSMData":
+            if (pending.size() >= 2 * this.threads) {
+              consumer.accept(await(pending.poll()));
+            }
+
+            pending.add(executor.submit(() -> decoder.apply(new Block(decompress(blob)))));
+
+            break;
+
+          default:
+            // Unknown blob types are skipped, as the format requires
+        }
+      }
+
+      while (!pending.isEmpty()) {
+        consumer.accept(await(pending.poll()));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static byte[] readFully(DataInputStream input, int length) throws IOException {
+    byte[] bytes = input.readNBytes(length);
+
+    if (bytes.length < length) {
+      throw new NoSuchElementException("Invalid or broken file format: truncated blob");
+    }
+
+    return bytes;
+  }
+
+  /**
+   * Waits for a decoding task to finish, rethrowing its failure.
+   *
+   * @param future the future of the task
+   * @return the result of the task.
+   * @throws IOException when the task failed to read its blob.
+   */
+  private static <T> T await(Future<T> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while importing", exception);
+    } catch (ExecutionException exception) {
+      Throwable cause = exception.getCause();
+
+      if (cause instanceof UncheckedIOException uncheckedException) {
+        throw uncheckedException.getCause();
+      } else if (cause instanceof RuntimeException runtimeException) {
+        throw runtimeException;
+      } else {
+        throw new IOException(cause);
+      }
+    }
+  }
+
+  /**
+   * Decompresses a blob.
+   *
+   * @param blob the encoded {@code Blob} message
+   * @return the decompressed data.
+   * @throws NoSuchElementException when the blob is corrupted or uses an unsupported compression.
+   */
+  private static byte[] decompress(byte[] blob) {
+    ProtobufReader reader = new ProtobufReader(blob, 0, blob.length);
+    ProtobufReader raw = null;
+    ProtobufReader zlibData = null;
+    int rawSize = -1;
+
+    while (reader.hasNext()) {
+      int key = reader.readKey();
+
+      if (key == BLOB_RAW) {
+        raw = reader.readMessage();
+      } else if (key == BLOB_RAW_SIZE) {
+        rawSize = (int) reader.readVarint();
+      } else if (key == BLOB_ZLIB_DATA) {
+        zlibData = reader.readMessage();
+      } else if ((key & 7) == ProtobufReader.LENGTH_DELIMITED) {
+        throw new NoSuchElementException(
+            "Unsupported PBF blob compression (field " + (key >>> 3) + ")");
+      } else {
+        reader.skip(key);
+      }
+    }
+
+    if (raw != null) {
+      return Arrays.copyOfRange(blob, raw.getPosition(), raw.getLimit());
+    }
+
+    if (zlibData == null || rawSize < 0 || rawSize > MAX_BLOB_SIZE) {
+      throw new NoSuchElementException("Invalid or broken file format: bad blob");
+    }
+
+    Inflater inflater = new Inflater();
+
+    try {
+      byte[] data = new byte[rawSize];
+
+      inflater.setInput(blob, zlibData.getPosition(), zlibData.getLimit() - zlibData.getPosition());
+
+      int length = 0;
+
+      while (length < rawSize && !inflater.finished()) {
+        int inflated = inflater.inflate(data, length, rawSize - length);
+
+        if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          break;
+        }
+
+        length += inflated;
+      }
+
+      if (length != rawSize) {
+        throw new NoSuchElementException("Invalid or broken file format: truncated blob");
+      }
+
+      return data;
+    } catch (DataFormatException exception) {
+      throw new NoSuchElementException("Invalid or broken file format: " + exception.getMessage());
+    } finally {
+      inflater.end();
+    }
+  }
+
+  /**
+   * Checks that the file does not require any feature that this reader does not understand.
+   *
+   * @param data the decompressed {@code HeaderBlock} message
+   */
+  private static void checkHeader(byte[] data) {
+    ProtobufReader reader = new ProtobufReader(data, 0, data.length);
+
+    while (reader.hasNext()) {
+      int key = reader.readKey();
+
+      if (key == HEADER_REQUIRED_FEATURES) {
+        String feature = reader.readString();
+
+        if (!SUPPORTED_FEATURES.contains(feature)) {
+          throw new NoSuchElementException("Unsupported PBF feature " + feature);
+        }
+      } else {
+        reader.skip(key);
+      }
+    }
+  }
+
+  /**
+   * Decodes the routable highway ways of a block.
+   *
+   * @param block the block to decode
+   * @return the routable highway ways of the block, in order.
+   */
+  private static WayTable decodeWays(Block block) {
+    WayTable ways = new WayTable();
+    int highway = block.indexOf(HIGHWAY);
+
+    if (highway < 0) {
+      return ways;
+    }
+
+    long[] refs = new long[256];
+
+    for (ProtobufReader group : block.groups) {
+      while (group.hasNext()) {
+        int key = group.readKey();
+
+        if (key != GROUP_WAY) {
+          group.skip(key);
+          continue;
+        }
+
+        ProtobufReader way = group.readMessage();
+        long id = 0;
+        ProtobufReader keys = null;
+        ProtobufReader values = null;
+        ProtobufReader refDeltas = null;
+
+        while (way.hasNext()) {
+          int wayKey = way.readKey();
+
+          if (wayKey == WAY_ID) {
+            id = way.readVarint();
+          } else if (wayKey == WAY_KEYS) {
+            keys = way.readMessage();
+          } else if (wayKey == WAY_VALUES) {
+            values = way.readMessage();
+          } else if (wayKey == WAY_REFS) {
+            refDeltas = way.readMessage();
+          } else {
+            way.skip(wayKey);
+          }
+        }
+
+        if (keys == null || values == null || refDeltas == null
+            || !isRoutable(block, highway, keys, values)) {
+          continue;
+        }
+
+        int refCount = 0;
+        long ref = 0;
+
+        while (refDeltas.hasNext()) {
+          if (refCount == refs.length) {
+            refs = Arrays.copyOf(refs, refCount * 2);
+          }
+
+          ref += refDeltas.readSignedVarint();
+          refs[refCount++] = ref;
+        }
+
+        ways.add(id, refs, refCount);
+      }
+    }
+
+    return ways;
+  }
+
+  /**
+   * Checks whether the tags of a way mark it as a routable highway.
+   */
+  private static boolean isRoutable(Block block, int highway, ProtobufReader keys,
+      ProtobufReader values) {
+    while (keys.hasNext() && values.hasNext()) {
+      int key = (int) keys.readVarint();
+      int value = (int) values.readVarint();
+
+      if (key == highway) {
+        return OsmImporter.isRoutableHighway(block.getString(value));
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Reads the coordinates of the nodes of a block that are in a table.
+   *
+   * @param block the block to decode
+   * @param nodes the table to fill in
+   * @return the number of nodes that were filled in.
+   */
+  private static Integer decodeNodes(Block block, NodeTable nodes) {
+    int count = 0;
+
+    for (ProtobufReader group : block.groups) {
+      while (group.hasNext()) {
+        int key = group.readKey();
+
+        if (key == GROUP_DENSE_NODES) {
+          count += decodeDenseNodes(block, group.readMessage(), nodes);
+        } else if (key == GROUP_NODE) {
+          ProtobufReader node = group.readMessage();
+          long id = 0;
+          long latitude = 0;
+          long longtitude = 0;
+
+          while (node.hasNext()) {
+            int nodeKey = node.readKey();
+
+            if (nodeKey == NODE_ID) {
+              id = node.readSignedVarint();
+            } else if (nodeKey == NODE_LATITUDE) {
+              latitude = node.readSignedVarint();
+            } else if (nodeKey == NODE_LONGTITUDE) {
+              longtitude = node.readSignedVarint();
+            } else {
+              node.skip(nodeKey);
+            }
+          }
+
+          int slot = nodes.indexOf(id);
+
+          if (slot >= 0) {
+            nodes.set(slot, block.toLatitude(latitude), block.toLongtitude(longtitude));
+            count++;
+          }
+        } else {
+          group.skip(key);
+        }
+      }
+    }
+
+    return count;
+  }
+
+  private static int decodeDenseNodes(Block block, ProtobufReader dense, NodeTable nodes) {
+    ProtobufReader ids = null;
+    ProtobufReader latitudes = null;
+    ProtobufReader longtitudes = null;
+
+    while (dense.hasNext()) {
+      int key = dense.readKey();
+
+      if (key == DENSE_NODES_IDS) {
+        ids = dense.readMessage();
+      } else if (key == DENSE_NODES_LATITUDES) {
+        latitudes = dense.readMessage();
+      } else if (key == DENSE_NODES_LONGTITUDES) {
+        longtitudes = dense.readMessage();
+      } else {
+        dense.skip(key);
+      }
+    }
+
+    if (ids == null) {
+      return 0;
+    }
+
+    if (latitudes == null || longtitudes == null) {
+      throw new NoSuchElementException("Invalid or broken file format: nodes without coordinates");
+    }
+
+    // IDs and coordinates are delta-encoded
+
+    int count = 0;
+    long id = 0;
+    long latitude = 0;
+    long longtitude = 0;
+
+    while (ids.hasNext()) {
+      id += ids.readSignedVarint();
+      latitude += latitudes.readSignedVarint();
+      longtitude += longtitudes.readSignedVarint();
+
+      int slot = nodes.indexOf(id);
+
+      if (slot >= 0) {
+        nodes.set(slot, block.toLatitude(latitude), block.toLongtitude(longtitude));
+        count++;
+      }
+    }
+
+    return count;
+  }
+
+  /**
+   * A decompressed {@code PrimitiveBlock}: its string table, its groups of entities, and the
+   * parameters that coordinates are encoded with.
+   */
+  private static class Block {
+    private byte[] data;
+    private int[] stringOffsets = new int[64];
+    private int[] stringLengths = new int[64];
+    private int stringCount = 0;
+    private List<ProtobufReader> groups = new ArrayList<>();
+    /**
+     * The precision of coordinates, in nanodegrees.
+     */
+    private long granularity = 100;
+    private long latitudeOffset = 0;
+    private long longtitudeOffset = 0;
+
+    Block(byte[] data) {
+      this.data = data;
+
+      ProtobufReader reader = new ProtobufReader(data, 0, data.length);
+
+      while (reader.hasNext()) {
+        int key = reader.readKey();
+
+        if (key == BLOCK_STRING_TABLE) {
+          this.readStringTable(reader.readMessage());
+        } else if (key == BLOCK_GROUP) {
+          this.groups.add(reader.readMessage());
+        } else if (key == BLOCK_GRANULARITY) {
+          this.granularity = reader.readVarint();
+        } else if (key == BLOCK_LATITUDE_OFFSET) {
+          this.latitudeOffset = reader.readVarint();
+        } else if (key == BLOCK_LONGTITUDE_OFFSET) {
+          this.longtitudeOffset = reader.readVarint();
+        } else {
+          reader.skip(key);
+        }
+      }
+    }
+
+    private void readStringTable(ProtobufReader table) {
+      while (table.hasNext()) {
+        int key = table.readKey();
+
+        if (key != STRING_TABLE_STRING) {
+          table.skip(key);
+          continue;
+        }
+
+        ProtobufReader string = table.readMessage();
+
+        if (this.stringCount == this.stringOffsets.length) {
+          this.stringOffsets = Arrays.copyOf(this.stringOffsets, this.stringCount * 2);
+          this.stringLengths = Arrays.copyOf(this.stringLengths, this.stringCount * 2);
+        }
+
+        this.stringOffsets[this.stringCount] = string.getPosition();
+        this.stringLengths[this.stringCount] = string.getLimit() - string.getPosition();
+        this.stringCount++;
+      }
+    }
+
+    /**
+     * Returns the index of a string in the string table, or {@code -1} if it is not there.
+     */
+    int indexOf(byte[] string) {
+      for (int i = 0; i < this.stringCount; i++) {
+        int offset = this.stringOffsets[i];
+
+        if (Arrays.equals(this.data, offset, offset + this.stringLengths[i], string, 0,
+            string.length)) {
+          return i;
+        }
+      }
+
+      return -1;
+    }
+
+    String getString(int index) {
+      if (index < 0 || index >= this.stringCount) {
+        throw new NoSuchElementException("Invalid or broken file format: bad string index");
+      }
+
+      return new String(this.data, this.stringOffsets[index], this.stringLengths[index],
+          StandardCharsets.UTF_8);
+    }
+
+    double toLatitude(long latitude) {
+      return 1e-9 * (this.latitudeOffset + this.granularity * latitude);
+    }
+
+    double toLongtitude(long longtitude) {
+      return 1e-9 * (this.longtitudeOffset + this.granularity * longtitude);
+    }
+  }
+}
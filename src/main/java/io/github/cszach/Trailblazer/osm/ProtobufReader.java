@@ -0,0 +1,162 @@
+package io.github.cszach.Trailblazer.osm;
+
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+
+/**
+ * A minimal reader of Protocol Buffers wire data, over a range of a byte array.
+ *
+ * <p>
+ * Only what the OSM PBF format needs is supported: varints, zigzag-encoded varints, fixed-size
+ * fields that are skipped, and length-delimited fields, which are read as nested readers so that no
+ * bytes are copied.
+ *
+ * @see <a href="https://protobuf.dev/programming-guides/encoding/">Protocol Buffers encoding</a>
+ */
+class ProtobufReader {
+  static final int VARINT = 0;
+  static final int FIXED64 = 1;
+  static final int LENGTH_DELIMITED = 2;
+  static final int FIXED32 = 5;
+
+  private final byte[] buffer;
+  private int position;
+  private final int limit;
+
+  /**
+   * Constructs a new {@code ProtobufReader} over a range of a byte array.
+   *
+   * @param buffer the array that holds the data
+   * @param offset the start of the data in the array
+   * @param length the length, in bytes, of the data
+   */
+  ProtobufReader(byte[] buffer, int offset, int length) {
+    this.buffer = buffer;
+    this.position = offset;
+    this.limit = offset + length;
+  }
+
+  /**
+   * Checks whether there is data left to read.
+   *
+   * @return {@code true} if there is data left to read, {@code false} otherwise.
+   */
+  boolean hasNext() {
+    return this.position < this.limit;
+  }
+
+  /**
+   * Reads the key of the next field.
+   *
+   * @return the key of the field, whose field number is {@code key >>> 3} and whose wire type is
+   *         {@code key & 7}.
+   */
+  int readKey() {
+    return (int) this.readVarint();
+  }
+
+  long readVarint() {
+    long value = 0;
+
+    for (int shift = 0; shift < 64; shift += 7) {
+      if (this.position >= this.limit) {
+        throw new NoSuchElementException("Invalid or broken file format: truncated varint");
+      }
+
+      byte b = this.buffer[this.position++];
+      value |= (long) (b & 0x7f) << shift;
+
+      if (b >= 0) {
+        return value;
+      }
+    }
+
+    throw new NoSuchElementException("Invalid or broken file format: malformed varint");
+  }
+
+  /**
+   * Reads a zigzag-encoded varint, as used by the {@code sint32} and {@code sint64} types.
+   */
+  long readSignedVarint() {
+    long value = this.readVarint();
+
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  /**
+   * Reads a length-delimited field as a nested reader, and skips past it.
+   */
+  ProtobufReader readMessage() {
+    int length = this.readLength();
+    ProtobufReader message = new ProtobufReader(this.buffer, this.position, length);
+    this.position += length;
+
+    return message;
+  }
+
+  /**
+   * Reads a length-delimited field as UTF-8 text.
+   */
+  String readString() {
+    int length = this.readLength();
+    String string = new String(this.buffer, this.position, length, StandardCharsets.UTF_8);
+    this.position += length;
+
+    return string;
+  }
+
+  /**
+   * Skips the value of a field.
+   *
+   * @param key the key of the field, which has just been read
+   */
+  void skip(int key) {
+    switch (key & 7) {
+      case VARINT:
+        this.readVarint();
+        break;
+
+      case FIXED64:
+        this.advance(8);
+        break;
+
+      case LENGTH_DELIMITED:
+        this.advance(this.readLength());
+        break;
+
+      case FIXED32:
+        this.advance(4);
+        break;
+
+      default:
+        throw new NoSuchElementException(
+            "Invalid or broken file format: unsupported wire type " + (key & 7));
+    }
+  }
+
+  int getPosition() {
+    return this.position;
+  }
+
+  int getLimit() {
+    return this.limit;
+  }
+
+  private int readLength() {
+    long length = this.readVarint();
+
+    if (length < 0 || length > this.limit - this.position) {
+      throw new NoSuchElementException("Invalid or broken file format: truncated field");
+    }
+
+    return (int) length;
+  }
+
+  private void advance(int length) {
+    if (length > this.limit - this.position) {
+      throw new NoSuchElementException("Invalid or broken file format: truncated field");
+    }
+
+    this.position += length;
+  }
+}
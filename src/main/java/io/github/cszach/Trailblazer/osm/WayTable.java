@@ -0,0 +1,120 @@
+package io.github.cszach.Trailblazer.osm;
+
+import java.util.Arrays;
+
+/**
+ * The highway ways of an OSM extract, stored in primitive arrays: the ID of every way, and the IDs
+ * of the nodes that every way references, in order.
+ *
+ * <p>
+ * The node references of way {@code w} are at {@code getRefStart(w)} (inclusive) to
+ * {@code getRefStart(w + 1)} (exclusive).
+ */
+class WayTable {
+  private int count = 0;
+  private long[] ids = new long[256];
+  private int[] refStarts = new int[256];
+  private long[] refs = new long[1024];
+
+  int size() {
+    return this.count;
+  }
+
+  long getId(int way) {
+    return this.ids[way];
+  }
+
+  int getRefStart(int way) {
+    return this.refStarts[way];
+  }
+
+  long getRef(int ref) {
+    return this.refs[ref];
+  }
+
+  int getRefCount() {
+    return this.refStarts[this.count];
+  }
+
+  /**
+   * Adds a way.
+   *
+   * @param id the ID of the way
+   * @param refs an array that holds the IDs of the nodes that the way references, in order
+   * @param refCount the number of node references
+   */
+  void add(long id, long[] refs, int refCount) {
+    this.ensureCapacity(this.count + 1);
+
+    int start = this.refStarts[this.count];
+
+    if (start + refCount > this.refs.length) {
+      this.refs = Arrays.copyOf(this.refs, Math.max(start + refCount, this.refs.length * 2));
+    }
+
+    System.arraycopy(refs, 0, this.refs, start, refCount);
+    this.ids[this.count] = id;
+    this.refStarts[++this.count] = start + refCount;
+  }
+
+  /**
+   * Appends all ways of another table, in order.
+   *
+   * @param other the table to append
+   */
+  void addAll(WayTable other) {
+    int count = this.count + other.count;
+    int start = this.refStarts[this.count];
+    int refCount = other.getRefCount();
+
+    this.ensureCapacity(count);
+
+    if (start + refCount > this.refs.length) {
+      this.refs = Arrays.copyOf(this.refs, Math.max(start + refCount, this.refs.length * 2));
+    }
+
+    System.arraycopy(other.ids, 0, this.ids, this.count, other.count);
+    System.arraycopy(other.refs, 0, this.refs, start, refCount);
+
+    for (int way = 1; way <= other.count; way++) {
+      this.refStarts[this.count + way] = start + other.refStarts[way];
+    }
+
+    this.count = count;
+  }
+
+  /**
+   * Grows the way arrays, if needed, so that they can hold the given number of ways. The array of
+   * reference starts holds one more entry than the array of IDs, for the end of the last way.
+   *
+   * @param count the number of ways to hold
+   */
+  private void ensureCapacity(int count) {
+    if (count + 1 > this.refStarts.length) {
+      int capacity = Math.max(count + 1, this.refStarts.length * 2);
+
+      this.ids = Arrays.copyOf(this.ids, capacity);
+      this.refStarts = Arrays.copyOf(this.refStarts, capacity);
+    }
+  }
+
+  /**
+   * Returns the distinct IDs of the referenced nodes, in ascending order.
+   *
+   * @return a new sorted array of the distinct node IDs.
+   */
+  long[] getDistinctRefs() {
+    long[] sorted = Arrays.copyOf(this.refs, this.getRefCount());
+    Arrays.parallelSort(sorted);
+
+    int distinct = 0;
+
+    for (int i = 0; i < sorted.length; i++) {
+      if (i == 0 || sorted[i] != sorted[i - 1]) {
+        sorted[distinct++] = sorted[i];
+      }
+    }
+
+    return Arrays.copyOf(sorted, distinct);
+  }
+}
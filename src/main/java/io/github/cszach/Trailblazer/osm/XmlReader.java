@@ -0,0 +1,160 @@
+package io.github.cszach.Trailblazer.osm;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.zip.GZIPInputStream;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * A reader of OSM XML extracts, which may be gzip-compressed.
+ *
+ * <p>
+ * The extract is streamed with StAX, so only the element that is being read is held in memory. XML
+ * cannot be split safely, so it is read on a single thread.
+ *
+ * @see <a href="https://wiki.openstreetmap.org/wiki/OSM_XML">OSM XML</a>
+ */
+class XmlReader implements OsmReader {
+  /**
+   * The first two bytes of a gzip stream.
+   */
+  private static final int GZIP_MAGIC = 0x1f8b;
+
+  private Path file;
+  private XMLInputFactory factory;
+
+  /**
+   * Constructs a new {@code XmlReader}.
+   *
+   * @param file the XML file to read
+   */
+  XmlReader(Path file) {
+    this.file = file;
+    this.factory = XMLInputFactory.newInstance();
+
+    // An extract never needs a DTD, and resolving external entities is unsafe
+    this.factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    this.factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+  }
+
+  @Override
+  public void readWays(WayTable ways) throws IOException {
+    try (InputStream input = this.open()) {
+      XMLStreamReader reader = this.factory.createXMLStreamReader(input);
+      long[] refs = new long[256];
+      int refCount = 0;
+      long id = 0;
+      boolean inWay = false;
+      boolean isRoutable = false;
+
+      while (reader.hasNext()) {
+        int event = reader.next();
+
+        if (event == XMLStreamConstants.START_ELEMENT) {
+          switch (reader.getLocalName()) {
+            case "way":
+              id = Long.parseLong(getAttribute(reader, "id"));
+              refCount = 0;
+              inWay = true;
+              isRoutable = false;
+
+              break;
+
+            case "nd":
+              if (inWay) {
+                if (refCount == refs.length) {
+                  refs = Arrays.copyOf(refs, refCount * 2);
+                }
+
+                refs[refCount++] = Long.parseLong(getAttribute(reader, "ref"));
+              }
+
+              break;
+
+            case "tag":
+              if (inWay && "highway".equals(reader.getAttributeValue(null, "k"))) {
+                isRoutable = OsmImporter.isRoutableHighway(getAttribute(reader, "v"));
+              }
+
+              break;
+
+            default:
+          }
+        } else if (event == XMLStreamConstants.END_ELEMENT && reader.getLocalName().equals("way")) {
+          if (isRoutable) {
+            ways.add(id, refs, refCount);
+          }
+
+          inWay = false;
+        }
+      }
+
+      reader.close();
+    } catch (XMLStreamException | NumberFormatException exception) {
+      throw new NoSuchElementException("Invalid or broken file format: " + exception.getMessage());
+    }
+  }
+
+  @Override
+  public void readNodes(NodeTable nodes) throws IOException {
+    try (InputStream input = this.open()) {
+      XMLStreamReader reader = this.factory.createXMLStreamReader(input);
+
+      while (reader.hasNext()) {
+        if (reader.next() == XMLStreamConstants.START_ELEMENT
+            && reader.getLocalName().equals("node")) {
+          int node = nodes.indexOf(Long.parseLong(getAttribute(reader, "id")));
+
+          if (node >= 0) {
+            nodes.set(node, Double.parseDouble(getAttribute(reader, "lat")),
+                Double.parseDouble(getAttribute(reader, "lon")));
+          }
+        }
+      }
+
+      reader.close();
+    } catch (XMLStreamException | NumberFormatException exception) {
+      throw new NoSuchElementException("Invalid or broken file format: " + exception.getMessage());
+    }
+  }
+
+  /**
+   * Opens the file for reading, decompressing it if it is gzip-compressed.
+   *
+   * @return a new stream of the XML data.
+   * @throws IOException when the file cannot be read.
+   */
+  private InputStream open() throws IOException {
+    InputStream input = new BufferedInputStream(new FileInputStream(this.file.toFile()), 1 << 16);
+
+    input.mark(2);
+    int byte1 = input.read();
+    int byte2 = input.read();
+    input.reset();
+
+    if (byte1 >= 0 && byte2 >= 0 && ((byte1 << 8) | byte2) == GZIP_MAGIC) {
+      return new GZIPInputStream(input, 1 << 16);
+    }
+
+    return input;
+  }
+
+  private static String getAttribute(XMLStreamReader reader, String name) {
+    String value = reader.getAttributeValue(null, name);
+
+    if (value == null) {
+      throw new NoSuchElementException("Invalid or broken file format: <" + reader.getLocalName()
+          + "> without " + name + " at line " + reader.getLocation().getLineNumber());
+    }
+
+    return value;
+  }
+}
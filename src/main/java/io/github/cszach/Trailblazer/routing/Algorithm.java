@@ -0,0 +1,78 @@
+package io.github.cszach.Trailblazer.routing;
+
+/**
+ * The algorithms that a {@code RoutingEngine} can find shortest paths with. All of them find routes
+ * of the same length; they differ in how much of the graph they explore.
+ *
+ * @see RoutingEngine#findShortestPath(int, int, Algorithm)
+ */
+public enum Algorithm {
+  /**
+   * Dijkstra's algorithm, which explores every intersection that is closer to the start than the
+   * end is.
+   */
+  DIJKSTRA("dijkstra"),
+  /**
+   * The A* algorithm, which steers Dijkstra's algorithm towards the end with the great-circle
+   * distance to the end as a lower bound of the remaining distance.
+   */
+  ASTAR("astar"),
+  /**
+   * The A* algorithm with lower bounds from the road distances to a set of landmarks, which are
+   * selected and measured on first use.
+   *
+   * @see Landmarks
+   */
+  ALT("alt"),
+  /**
+   * Bidirectional Dijkstra's algorithm, which grows one search from the start and one from the end
+   * until they meet in the middle, so that each covers about half the distance.
+   */
+  BIDIRECTIONAL("bidirectional"),
+  /**
+   * A bidirectional search over a contraction hierarchy, where each search only goes up the
+   * hierarchy. It needs the hierarchy to be built or loaded first.
+   *
+   * @see ContractionHierarchy
+   */
+  CH("ch"),
+  /**
+   * A search over a multi-level overlay of the graph (customizable route planning), which only
+   * follows roads in the cells of the start and the end, and clique edges between the boundaries of
+   * cells elsewhere. The partition and the overlay are built on first use.
+   *
+   * @see Overlay
+   */
+  CRP("crp");
+
+  /**
+   * The name of the algorithm on the command line.
+   */
+  private final String name;
+
+  private Algorithm(String name) {
+    this.name = name;
+  }
+
+  /**
+   * Returns the algorithm with a given command line name.
+   *
+   * @param name the name of the algorithm, such as {@code astar}
+   * @return the algorithm with the given name.
+   * @throws IllegalArgumentException when no algorithm has the given name.
+   */
+  public static Algorithm fromName(String name) {
+    for (Algorithm algorithm : values()) {
+      if (algorithm.name.equals(name)) {
+        return algorithm;
+      }
+    }
+
+    throw new IllegalArgumentException("Unknown algorithm " + name);
+  }
+
+  @Override
+  public String toString() {
+    return this.name;
+  }
+}
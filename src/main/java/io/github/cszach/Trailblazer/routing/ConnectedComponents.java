@@ -0,0 +1,175 @@
+package io.github.cszach.Trailblazer.routing;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+
+import io.github.cszach.Trailblazer.geo.RoadGraph;
+
+/**
+ * The connected components of a graph: the groups of intersections that open roads connect, between
+ * which no path exists.
+ *
+ * <p>
+ * Components are found by union-find over the roads, with union by size and path halving, which
+ * takes a few milliseconds even for a statewide map. They are numbered by decreasing size, so
+ * component {@code 0} is the largest, and the others are islands: groups of intersections (often
+ * just one, without any roads) that cannot be reached from the rest of the map.
+ *
+ * @see RoutingEngine#getComponents()
+ */
+public final class ConnectedComponents {
+  /**
+   * The component of every intersection, by index.
+   */
+  private final int[] componentIds;
+  /**
+   * The number of intersections of every component.
+   */
+  private final int[] sizes;
+
+  private ConnectedComponents(int[] componentIds, int[] sizes) {
+    this.componentIds = componentIds;
+    this.sizes = sizes;
+  }
+
+  /**
+   * Finds the connected components of a graph.
+   *
+   * @param graph the graph whose components to find
+   * @return the connected components of the graph.
+   */
+  public static ConnectedComponents compute(RoadGraph graph) {
+    int n = graph.getIntersectionCount();
+    int[] parents = new int[n];
+    int[] treeSizes = new int[n];
+
+    for (int intersection = 0; intersection < n; intersection++) {
+      parents[intersection] = intersection;
+      treeSizes[intersection] = 1;
+    }
+
+    for (int road = 0; road < graph.getRoadCount(); road++) {
+      if (graph.getRoadDistance(road) == Double.POSITIVE_INFINITY) {
+        continue; // a closed road
+      }
+
+      int root1 = findRoot(parents, graph.getRoadIntersection1(road));
+      int root2 = findRoot(parents, graph.getRoadIntersection2(road));
+
+      if (root1 != root2) {
+        // Hang the smaller tree under the larger one, so that trees stay shallow
+        if (treeSizes[root1] < treeSizes[root2]) {
+          int temp = root1;
+          root1 = root2;
+          root2 = temp;
+        }
+
+        parents[root2] = root1;
+        treeSizes[root1] += treeSizes[root2];
+      }
+    }
+
+    // Number the components in the order that they first appear, then renumber them by decreasing
+    // size; the sort is stable, so components of the same size keep their order
+
+    int[] labels = new int[n];
+    int componentCount = 0;
+
+    Arrays.fill(labels, -1);
+
+    for (int intersection = 0; intersection < n; intersection++) {
+      int root = findRoot(parents, intersection);
+
+      if (labels[root] < 0) {
+        labels[root] = componentCount++;
+      }
+
+      labels[intersection] = labels[root];
+    }
+
+    int[] firstSizes = new int[componentCount];
+
+    for (int intersection = 0; intersection < n; intersection++) {
+      firstSizes[labels[intersection]]++;
+    }
+
+    int[] order = IntStream.range(0, componentCount).boxed()
+        .sorted(Comparator.comparingInt(label -> -firstSizes[label])).mapToInt(Integer::intValue)
+        .toArray();
+    int[] newLabels = new int[componentCount];
+    int[] sizes = new int[componentCount];
+
+    for (int i = 0; i < componentCount; i++) {
+      newLabels[order[i]] = i;
+      sizes[i] = firstSizes[order[i]];
+    }
+
+    for (int intersection = 0; intersection < n; intersection++) {
+      labels[intersection] = newLabels[labels[intersection]];
+    }
+
+    return new ConnectedComponents(labels, sizes);
+  }
+
+  private static int findRoot(int[] parents, int intersection) {
+    while (parents[intersection] != intersection) {
+      // Path halving: point every other node on the way at its grandparent
+      parents[intersection] = parents[parents[intersection]];
+      intersection = parents[intersection];
+    }
+
+    return intersection;
+  }
+
+  /**
+   * Returns the number of components.
+   *
+   * @return the number of components, including islands of a single intersection.
+   */
+  public int getComponentCount() {
+    return this.sizes.length;
+  }
+
+  /**
+   * Returns the component of an intersection.
+   *
+   * @param intersection the index of the intersection
+   * @return the number of the component of the intersection, where {@code 0} is the largest.
+   */
+  public int getComponent(int intersection) {
+    return this.componentIds[intersection];
+  }
+
+  /**
+   * Returns the number of intersections of a component.
+   *
+   * @param component the number of the component
+   * @return the number of intersections of the component.
+   */
+  public int getSize(int component) {
+    return this.sizes[component];
+  }
+
+  /**
+   * Checks whether a path connects two intersections.
+   *
+   * @param intersection1 the index of an intersection
+   * @param intersection2 the index of another intersection
+   * @return {@code true} if the intersections are in the same component, {@code false} otherwise.
+   */
+  public boolean areConnected(int intersection1, int intersection2) {
+    return this.componentIds[intersection1] == this.componentIds[intersection2];
+  }
+
+  /**
+   * Returns the intersections of a component.
+   *
+   * @param component the number of the component
+   * @return the indices of the intersections of the component, in increasing order.
+   */
+  public int[] getIntersections(int component) {
+    return IntStream.range(0, this.componentIds.length)
+        .filter(intersection -> this.componentIds[intersection] == component).toArray();
+  }
+}
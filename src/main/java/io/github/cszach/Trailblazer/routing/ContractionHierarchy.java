@@ -0,0 +1,509 @@
+package io.github.cszach.Trailblazer.routing;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32C;
+
+import io.github.cszach.Trailblazer.geo.RoadGraph;
+
+/**
+ * A contraction hierarchy of a {@code RoadGraph}, which answers shortest path queries by searching
+ * only a small upward part of the graph from either end.
+ *
+ * <p>
+ * Every intersection has a rank, which is the order in which it was contracted. Contracting an
+ * intersection removes it from the graph, and adds a shortcut between two of its neighbors whenever
+ * the only shortest path between them goes through it. The hierarchy keeps, for every intersection,
+ * the edges to its neighbors of higher rank at the time it was contracted (its upward edges), so
+ * that a shortest path always goes up from the start and then down to the end.
+ *
+ * <p>
+ * Every edge is either an original road or a shortcut that bridges two other edges, its children,
+ * so a path of edges can be unpacked into the roads that it stands for.
+ *
+ * <p>
+ * A hierarchy can be written to a file, conventionally next to the map file with an extension of
+ * {@code .ch}. The file is laid out like a {@code GeographySnapshot}: a header of
+ * {@code HEADER_SIZE} bytes holds {@code MAGIC}, the format version, the number of intersections,
+ * upward edges, and edges, the fingerprint of the graph, the length of the body, and the CRC-32C
+ * checksum of the body; the body holds the little-endian sections {@code ranks},
+ * {@code upwardOffsets}, {@code upwardTargets}, {@code upwardEdges}, {@code upwardWeights},
+ * {@code edgeIntersections1}, {@code edgeIntersections2}, {@code edgeRoads}, {@code edgeChildren1},
+ * and {@code edgeChildren2}, each starting on an 8-byte boundary.
+ *
+ * @see ContractionHierarchyBuilder
+ * @see RoutingEngine#findShortestPath(int, int, Algorithm)
+ */
+public final class ContractionHierarchy {
+  /**
+   * The first 8 bytes of every hierarchy file, which read {@code TRLBLZCH} in ASCII.
+   */
+  private static final long MAGIC = 0x48435a4c424c5254L;
+  /**
+   * The version of the hierarchy format that this class reads and writes.
+   */
+  private static final int VERSION = 1;
+  /**
+   * The size of the header, in bytes.
+   */
+  private static final int HEADER_SIZE = 64;
+  /**
+   * The size of the regions of the body that are mapped in turn to verify its checksum, in bytes.
+   */
+  private static final int CHECKSUM_REGION_SIZE = 1 << 30;
+
+  private final int intersectionCount;
+  /**
+   * The fingerprint of the graph that this hierarchy was built from.
+   */
+  private final long fingerprint;
+  private final IntBuffer ranks;
+  /**
+   * The upward edges of intersection {@code i} are from {@code upwardOffsets[i]} (inclusive) to
+   * {@code upwardOffsets[i + 1]} (exclusive).
+   */
+  private final IntBuffer upwardOffsets;
+  private final IntBuffer upwardTargets;
+  /**
+   * The edge that every upward edge stands for, for unpacking.
+   */
+  private final IntBuffer upwardEdges;
+  private final DoubleBuffer upwardWeights;
+  private final IntBuffer edgeIntersections1;
+  private final IntBuffer edgeIntersections2;
+  /**
+   * The road of every edge, or {@code -1} if the edge is a shortcut.
+   */
+  private final IntBuffer edgeRoads;
+  /**
+   * The children of every shortcut, or {@code -1} for original roads. The first child touches the
+   * first intersection of the shortcut, and the second child touches the second intersection.
+   */
+  private final IntBuffer edgeChildren1;
+  private final IntBuffer edgeChildren2;
+
+  ContractionHierarchy(int intersectionCount, long fingerprint, IntBuffer ranks,
+      IntBuffer upwardOffsets, IntBuffer upwardTargets, IntBuffer upwardEdges,
+      DoubleBuffer upwardWeights, IntBuffer edgeIntersections1, IntBuffer edgeIntersections2,
+      IntBuffer edgeRoads, IntBuffer edgeChildren1, IntBuffer edgeChildren2) {
+    this.intersectionCount = intersectionCount;
+    this.fingerprint = fingerprint;
+    this.ranks = ranks;
+    this.upwardOffsets = upwardOffsets;
+    this.upwardTargets = upwardTargets;
+    this.upwardEdges = upwardEdges;
+    this.upwardWeights = upwardWeights;
+    this.edgeIntersections1 = edgeIntersections1;
+    this.edgeIntersections2 = edgeIntersections2;
+    this.edgeRoads = edgeRoads;
+    this.edgeChildren1 = edgeChildren1;
+    this.edgeChildren2 = edgeChildren2;
+  }
+
+  /**
+   * Returns the number of intersections in this hierarchy.
+   *
+   * @return the number of intersections in this hierarchy.
+   */
+  public int getIntersectionCount() {
+    return this.intersectionCount;
+  }
+
+  /**
+   * Returns the number of upward edges, which is the size of the search graph of queries.
+   *
+   * @return the number of upward edges.
+   */
+  public int getUpwardEdgeCount() {
+    return this.upwardTargets.capacity();
+  }
+
+  /**
+   * Returns the number of shortcuts that contraction added.
+   *
+   * @return the number of shortcuts in this hierarchy.
+   */
+  public int getShortcutCount() {
+    int count = 0;
+
+    for (int edge = 0; edge < this.edgeRoads.capacity(); edge++) {
+      if (this.edgeRoads.get(edge) < 0) {
+        count++;
+      }
+    }
+
+    return count;
+  }
+
+  /**
+   * Returns the rank of an intersection.
+   *
+   * @param intersection the index of the intersection
+   * @return the position of the intersection in the contraction order, starting from 0.
+   */
+  public int getRank(int intersection) {
+    return this.ranks.get(intersection);
+  }
+
+  /**
+   * Checks whether this hierarchy was built from a graph with the same intersections and roads as
+   * the given graph.
+   *
+   * @param graph the graph to check
+   * @return {@code true} if this hierarchy can answer queries on the graph, {@code false}
+   *         otherwise.
+   */
+  public boolean matches(RoadGraph graph) {
+    return graph.getIntersectionCount() == this.intersectionCount
+        && fingerprint(graph) == this.fingerprint;
+  }
+
+  int getEdgeCount() {
+    return this.edgeRoads.capacity();
+  }
+
+  int getEdgeIntersection1(int edge) {
+    return this.edgeIntersections1.get(edge);
+  }
+
+  int getEdgeIntersection2(int edge) {
+    return this.edgeIntersections2.get(edge);
+  }
+
+  int getEdgeRoad(int edge) {
+    return this.edgeRoads.get(edge);
+  }
+
+  int getEdgeChild1(int edge) {
+    return this.edgeChildren1.get(edge);
+  }
+
+  int getEdgeChild2(int edge) {
+    return this.edgeChildren2.get(edge);
+  }
+
+  int getFirstUpwardEdge(int intersection) {
+    return this.upwardOffsets.get(intersection);
+  }
+
+  int getUpwardTarget(int upwardEdge) {
+    return this.upwardTargets.get(upwardEdge);
+  }
+
+  int getUpwardEdge(int upwardEdge) {
+    return this.upwardEdges.get(upwardEdge);
+  }
+
+  double getUpwardWeight(int upwardEdge) {
+    return this.upwardWeights.get(upwardEdge);
+  }
+
+  /**
+   * Given an endpoint of an edge, returns the other endpoint.
+   */
+  int getTheOtherEnd(int edge, int intersection) {
+    int intersection1 = this.edgeIntersections1.get(edge);
+
+    return intersection == intersection1 ? this.edgeIntersections2.get(edge) : intersection1;
+  }
+
+  /**
+   * Unpacks an edge into the roads that it stands for, in travel order.
+   *
+   * @param edge the index of the edge
+   * @param from the endpoint of the edge that the roads start from
+   * @param roads the list to append the roads to
+   */
+  void unpack(int edge, int from, IntList roads) {
+    // Pairs of an edge and the endpoint it is traversed from, to visit in reverse order
+    IntList stack = new IntList();
+    stack.add(edge);
+    stack.add(from);
+
+    while (stack.size() > 0) {
+      int start = stack.removeLast();
+      int current = stack.removeLast();
+      int road = this.edgeRoads.get(current);
+
+      if (road >= 0) {
+        roads.add(road);
+        continue;
+      }
+
+      int child1 = this.edgeChildren1.get(current);
+      int child2 = this.edgeChildren2.get(current);
+      int intersection1 = this.edgeIntersections1.get(current);
+      int middle = this.getTheOtherEnd(child1, intersection1);
+
+      if (start == intersection1) {
+        stack.add(child2);
+        stack.add(middle);
+        stack.add(child1);
+        stack.add(start);
+      } else {
+        stack.add(child1);
+        stack.add(middle);
+        stack.add(child2);
+        stack.add(start);
+      }
+    }
+  }
+
+  /**
+   * Computes a fingerprint of the intersections and roads of a graph, which changes whenever a road
+   * is added, removed, reconnected, or has its distance changed.
+   *
+   * @param graph the graph to fingerprint
+   * @return the fingerprint of the graph.
+   */
+  static long fingerprint(RoadGraph graph) {
+    long hash = 0xcbf29ce484222325L ^ graph.getIntersectionCount();
+
+    for (int road = 0; road < graph.getRoadCount(); road++) {
+      hash = (hash ^ graph.getRoadIntersection1(road)) * 0x100000001b3L;
+      hash = (hash ^ graph.getRoadIntersection2(road)) * 0x100000001b3L;
+      hash = (hash ^ Double.doubleToLongBits(graph.getRoadDistance(road))) * 0x100000001b3L;
+    }
+
+    return hash;
+  }
+
+  /**
+   * Reads a hierarchy file. The sections stay in the mapped file.
+   *
+   * @param path the path of the hierarchy file
+   * @return the hierarchy in the file.
+   * @throws FileNotFoundException when the specified file does not exist.
+   * @throws IOException when there is a trouble reading the file.
+   * @throws NoSuchElementException when the file is not a hierarchy file, has an unsupported
+   *         version, or is corrupted.
+   */
+  public static ContractionHierarchy read(String path) throws IOException, NoSuchElementException {
+    Path file = Path.of(path);
+
+    if (!Files.isRegularFile(file)) {
+      throw new FileNotFoundException(path + " (No such file)");
+    }
+
+    // Every section is mapped on its own, so that the file can be larger than 2 GB; mapped regions
+    // stay valid once the channel is closed
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+
+      if (size < HEADER_SIZE) {
+        throw new NoSuchElementException("Invalid or broken hierarchy: unexpected file size");
+      }
+
+      ByteBuffer header =
+          channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+      if (header.getLong(0) != MAGIC) {
+        throw new NoSuchElementException("Invalid or broken hierarchy: not a hierarchy file");
+      }
+
+      if (header.getInt(8) != VERSION) {
+        throw new NoSuchElementException(
+            "Invalid or broken hierarchy: unsupported version " + header.getInt(8));
+      }
+
+      int n = header.getInt(12);
+      int upwardEdgeCount = header.getInt(16);
+      int edgeCount = header.getInt(20);
+      long fingerprint = header.getLong(24);
+      long bodyLength = header.getLong(32);
+      long checksum = header.getLong(40);
+
+      if (bodyLength != size - HEADER_SIZE) {
+        throw new NoSuchElementException("Invalid or broken hierarchy: truncated file");
+      }
+
+      CRC32C crc = new CRC32C();
+
+      for (long offset = HEADER_SIZE; offset < size; offset += CHECKSUM_REGION_SIZE) {
+        crc.update(channel.map(FileChannel.MapMode.READ_ONLY, offset,
+            Math.min(CHECKSUM_REGION_SIZE, size - offset)));
+      }
+
+      if (crc.getValue() != checksum) {
+        throw new NoSuchElementException("Invalid or broken hierarchy: checksum mismatch");
+      }
+
+      // The counts are outside the checksum, so they are checked before they size anything
+      if (n < 0 || n == Integer.MAX_VALUE || upwardEdgeCount < 0 || edgeCount < 0) {
+        throw new NoSuchElementException("Invalid or broken hierarchy: bad counts");
+      }
+
+      long[] position = {HEADER_SIZE};
+
+      return new ContractionHierarchy(n, fingerprint, ints(channel, position, n),
+          ints(channel, position, n + 1), ints(channel, position, upwardEdgeCount),
+          ints(channel, position, upwardEdgeCount), doubles(channel, position, upwardEdgeCount),
+          ints(channel, position, edgeCount), ints(channel, position, edgeCount),
+          ints(channel, position, edgeCount), ints(channel, position, edgeCount),
+          ints(channel, position, edgeCount));
+    }
+  }
+
+  /**
+   * Writes this hierarchy to a file.
+   *
+   * <p>
+   * The hierarchy is written to a temporary file first, which then replaces the file at the given
+   * path, so that a reader never sees a partially written hierarchy. The temporary file is deleted
+   * if either step fails. The sections are streamed through a small buffer, so writing takes no
+   * copy of the hierarchy.
+   *
+   * @param path the path of the hierarchy file
+   * @throws IOException when there is a trouble writing the file, or when a section of the file
+   *         would be larger than 2 GB, in which case nothing is written.
+   */
+  public void write(String path) throws IOException {
+    IntBuffer[] intSections =
+        {this.ranks, this.upwardOffsets, this.upwardTargets, this.upwardEdges};
+    IntBuffer[] edgeSections = {this.edgeIntersections1, this.edgeIntersections2, this.edgeRoads,
+        this.edgeChildren1, this.edgeChildren2};
+    long largestSection = Math.max((long) this.upwardWeights.capacity() * Double.BYTES,
+        (long) Math.max(this.upwardOffsets.capacity(), this.edgeRoads.capacity()) * Integer.BYTES);
+
+    if (largestSection > Integer.MAX_VALUE) {
+      throw new IOException(String.format(
+          "The hierarchy is too large: a section would take %d bytes, over the 2 GB that can be mapped",
+          largestSection));
+    }
+
+    Path file = Path.of(path);
+    Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+
+    try {
+      try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+        CRC32C crc = new CRC32C();
+        long[] position = {HEADER_SIZE};
+
+        for (IntBuffer section : intSections) {
+          for (int i = 0; i < section.capacity(); i++) {
+            ensureRemaining(channel, buffer, crc, position, Integer.BYTES);
+            buffer.putInt(section.get(i));
+          }
+
+          align(channel, buffer, crc, position);
+        }
+
+        for (int i = 0; i < this.upwardWeights.capacity(); i++) {
+          ensureRemaining(channel, buffer, crc, position, Double.BYTES);
+          buffer.putDouble(this.upwardWeights.get(i));
+        }
+
+        for (IntBuffer section : edgeSections) {
+          for (int i = 0; i < section.capacity(); i++) {
+            ensureRemaining(channel, buffer, crc, position, Integer.BYTES);
+            buffer.putInt(section.get(i));
+          }
+
+          align(channel, buffer, crc, position);
+        }
+
+        flush(channel, buffer, crc, position);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putLong(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(this.intersectionCount);
+        header.putInt(this.upwardTargets.capacity());
+        header.putInt(this.edgeRoads.capacity());
+        header.putLong(this.fingerprint);
+        header.putLong(position[0] - HEADER_SIZE);
+        header.putLong(crc.getValue());
+        header.clear();
+
+        while (header.hasRemaining()) {
+          channel.write(header, header.position());
+        }
+
+        channel.force(false);
+      }
+
+      Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException | RuntimeException exception) {
+      try {
+        Files.deleteIfExists(temporaryFile);
+      } catch (IOException suppressed) {
+        exception.addSuppressed(suppressed);
+      }
+
+      throw exception;
+    }
+  }
+
+  private static long align(long length) {
+    return (length + 7) & ~7L;
+  }
+
+  private static void ensureRemaining(FileChannel channel, ByteBuffer buffer, CRC32C crc,
+      long[] position, int count) throws IOException {
+    if (buffer.remaining() < count) {
+      flush(channel, buffer, crc, position);
+    }
+  }
+
+  /**
+   * Pads the section that was just written with zeros up to the next 8-byte boundary.
+   */
+  private static void align(FileChannel channel, ByteBuffer buffer, CRC32C crc, long[] position)
+      throws IOException {
+    while (((position[0] + buffer.position()) & 7) != 0) {
+      ensureRemaining(channel, buffer, crc, position, 1);
+      buffer.put((byte) 0);
+    }
+  }
+
+  /**
+   * Writes out the buffer at the position, adding it to the checksum.
+   */
+  private static void flush(FileChannel channel, ByteBuffer buffer, CRC32C crc, long[] position)
+      throws IOException {
+    buffer.flip();
+    crc.update(buffer.duplicate());
+
+    while (buffer.hasRemaining()) {
+      position[0] += channel.write(buffer, position[0]);
+    }
+
+    buffer.clear();
+  }
+
+  private static ByteBuffer section(FileChannel channel, long[] position, long length)
+      throws IOException {
+    if (length < 0 || length > Integer.MAX_VALUE || position[0] + length > channel.size()) {
+      throw new NoSuchElementException("Invalid or broken hierarchy: section out of bounds");
+    }
+
+    ByteBuffer section = channel.map(FileChannel.MapMode.READ_ONLY, position[0], length)
+        .order(ByteOrder.LITTLE_ENDIAN);
+    position[0] += align(length);
+
+    return section;
+  }
+
+  private static IntBuffer ints(FileChannel channel, long[] position, int count)
+      throws IOException {
+    return section(channel, position, (long) count * Integer.BYTES).asIntBuffer();
+  }
+
+  private static DoubleBuffer doubles(FileChannel channel, long[] position, int count)
+      throws IOException {
+    return section(channel, position, (long) count * Double.BYTES).asDoubleBuffer();
+  }
+}
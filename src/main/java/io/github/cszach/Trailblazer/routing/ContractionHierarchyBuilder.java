@@ -0,0 +1,714 @@
+package io.github.cszach.Trailblazer.routing;
+
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import io.github.cszach.Trailblazer.geo.RoadGraph;
+
+/**
+ * Builds the {@code ContractionHierarchy} of a {@code RoadGraph}.
+ *
+ * <p>
+ * Intersections are contracted in rounds. The priority of an intersection is twice its edge
+ * difference (the number of shortcuts that contracting it would add, minus the number of its edges)
+ * plus the number of its neighbors that have already been contracted, which keeps the contraction
+ * spread evenly over the graph. Every round picks the intersections whose priority is lower than
+ * that of all their remaining neighbors; no two of them are adjacent, so their shortcuts are found
+ * in parallel, and then added to the graph one intersection at a time. Only the neighbors of
+ * contracted intersections have their priority recomputed.
+ *
+ * <p>
+ * A shortcut between two neighbors of an intersection is only needed if no other path between them,
+ * a witness, is shorter. Witnesses are found with a Dijkstra search that avoids the intersection,
+ * and gives up after settling {@code WITNESS_SETTLE_LIMIT} intersections. Giving up early only adds
+ * shortcuts that are not needed, so the hierarchy stays correct. A witness may go through another
+ * intersection of the same round, so it must be strictly shorter than the shortcut: of two paths
+ * that witness each other, at least one then keeps its shortcut.
+ *
+ * <p>
+ * After the distances of some roads change, {@code repair} contracts the graph again in the order
+ * of the old hierarchy, from the lowest intersection whose contraction the change may have made
+ * wrong, and keeps what was contracted below it.
+ *
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * ContractionHierarchy hierarchy = new ContractionHierarchyBuilder(geo.getGraph()).build();
+ * RoutingEngine engine = new RoutingEngine(geo.getGraph(), hierarchy);
+ * </pre>
+ */
+public class ContractionHierarchyBuilder {
+  /**
+   * The number of intersections after which a witness search gives up.
+   */
+  private static final int WITNESS_SETTLE_LIMIT = 200;
+  /**
+   * The number of intersections after which a witness search gives up when it only estimates the
+   * priority of an intersection, which happens far more often than contracting it.
+   */
+  private static final int PRIORITY_SETTLE_LIMIT = 20;
+
+  private static final byte REMAINING = 0;
+  private static final byte SELECTED = 1;
+  private static final byte CONTRACTED = 2;
+
+  private final RoadGraph graph;
+
+  // The edges of the graph being contracted: first the roads, then the shortcuts
+
+  private int edgeCount = 0;
+  private int[] edgeIntersections1;
+  private int[] edgeIntersections2;
+  private double[] edgeWeights;
+  private int[] edgeRoads;
+  private int[] edgeChildren1;
+  private int[] edgeChildren2;
+
+  /**
+   * The edges of every intersection. Once an intersection is contracted, its list no longer changes
+   * and holds its upward edges.
+   */
+  private final int[][] adjacency;
+  private final int[] degrees;
+  private final byte[] states;
+  private final int[] priorities;
+  private final int[] deletedNeighbors;
+  /**
+   * For every intersection, its best edge to the intersection being compacted, or {@code -1}.
+   */
+  private final int[] bestEdges;
+  private final ThreadLocal<WitnessSearch> witnessSearches;
+
+  /**
+   * Constructs a new {@code ContractionHierarchyBuilder}.
+   *
+   * @param graph the graph to build the hierarchy of
+   */
+  public ContractionHierarchyBuilder(RoadGraph graph) {
+    int n = graph.getIntersectionCount();
+    int m = graph.getRoadCount();
+
+    this.graph = graph;
+    this.edgeIntersections1 = new int[Math.max(m, 16)];
+    this.edgeIntersections2 = new int[this.edgeIntersections1.length];
+    this.edgeWeights = new double[this.edgeIntersections1.length];
+    this.edgeRoads = new int[this.edgeIntersections1.length];
+    this.edgeChildren1 = new int[this.edgeIntersections1.length];
+    this.edgeChildren2 = new int[this.edgeIntersections1.length];
+    this.adjacency = new int[n][];
+    this.degrees = new int[n];
+    this.states = new byte[n];
+    this.priorities = new int[n];
+    this.deletedNeighbors = new int[n];
+    this.bestEdges = new int[n];
+    this.witnessSearches = ThreadLocal.withInitial(() -> new WitnessSearch(n));
+
+    Arrays.fill(this.bestEdges, -1);
+  }
+
+  /**
+   * Contracts every intersection of the graph. This takes a while on large graphs, and uses every
+   * available processor.
+   *
+   * @return the hierarchy of the graph.
+   */
+  public ContractionHierarchy build() {
+    int n = this.graph.getIntersectionCount();
+    int[] ranks = new int[n];
+
+    this.addRoads();
+
+    for (int intersection = 0; intersection < n; intersection++) {
+      this.compact(intersection);
+    }
+
+    IntStream.range(0, n).parallel().forEach(
+        intersection -> this.priorities[intersection] = this.computePriority(intersection));
+
+    this.contractInRounds(IntStream.range(0, n).toArray(), ranks, false);
+
+    return this.toHierarchy(ranks);
+  }
+
+  /**
+   * Repairs the hierarchy of the graph as it was before the distances of some roads changed,
+   * keeping its order of contraction.
+   *
+   * <p>
+   * The contraction of an intersection below both ends of every changed road is still valid: its
+   * shortcuts bridge edges that do not go through a changed road, and a witness path that goes
+   * through a road that got shorter only gets shorter. A witness path that goes through a road that
+   * got longer may no longer be one, so the intersections that are close enough to such a road for
+   * their witness searches to reach it are not trusted either. The upward edges and the shortcuts
+   * of every intersection below the lowest one that is not trusted are kept, and the rest are
+   * contracted again in the same order, without estimating any priorities.
+   *
+   * @param hierarchy the hierarchy of the graph before the change
+   * @param oldGraph the graph before the change
+   * @param changedRoads the indices of the roads whose distance changed
+   * @return the hierarchy of the graph.
+   * @throws IllegalArgumentException when the hierarchy was not built from the old graph, or the
+   *         old graph does not have the same intersections and roads as the graph.
+   */
+  public ContractionHierarchy repair(ContractionHierarchy hierarchy, RoadGraph oldGraph,
+      int[] changedRoads) {
+    int n = this.graph.getIntersectionCount();
+
+    if (!hierarchy.matches(oldGraph) || oldGraph.getIntersectionCount() != n
+        || oldGraph.getRoadCount() != this.graph.getRoadCount()) {
+      throw new IllegalArgumentException("The hierarchy was not built from a graph like this one");
+    }
+
+    int[] ranks = new int[n];
+
+    for (int intersection = 0; intersection < n; intersection++) {
+      ranks[intersection] = hierarchy.getRank(intersection);
+      this.priorities[intersection] = ranks[intersection];
+    }
+
+    int firstRank = this.findFirstStaleRank(hierarchy, oldGraph, ranks, changedRoads);
+    int[] roadEdges = this.addRoads();
+    // The edge of this builder that every edge of the hierarchy is kept as, or -1
+    int[] edges = new int[hierarchy.getEdgeCount()];
+
+    for (int edge = 0; edge < edges.length; edge++) {
+      int road = hierarchy.getEdgeRoad(edge);
+      int child1 = hierarchy.getEdgeChild1(edge);
+      int intersection1 = hierarchy.getEdgeIntersection1(edge);
+
+      if (road >= 0) {
+        edges[edge] = roadEdges[road];
+      } else if (ranks[hierarchy.getTheOtherEnd(child1, intersection1)] < firstRank) {
+        // The children of a shortcut are older edges, so they have been kept already
+        int newChild1 = edges[child1];
+        int newChild2 = edges[hierarchy.getEdgeChild2(edge)];
+
+        edges[edge] = this.addEdge(intersection1, hierarchy.getEdgeIntersection2(edge),
+            this.edgeWeights[newChild1] + this.edgeWeights[newChild2], -1, newChild1, newChild2);
+      } else {
+        edges[edge] = -1;
+      }
+    }
+
+    IntList remaining = new IntList();
+
+    for (int intersection = 0; intersection < n; intersection++) {
+      if (ranks[intersection] < firstRank) {
+        this.states[intersection] = CONTRACTED;
+        this.degrees[intersection] = 0;
+
+        for (int upwardEdge = hierarchy.getFirstUpwardEdge(intersection); upwardEdge < hierarchy
+            .getFirstUpwardEdge(intersection + 1); upwardEdge++) {
+          this.appendEdge(intersection, edges[hierarchy.getUpwardEdge(upwardEdge)]);
+        }
+      } else {
+        remaining.add(intersection);
+      }
+    }
+
+    int[] toContract = remaining.toArray();
+
+    for (int intersection : toContract) {
+      this.compact(intersection);
+    }
+
+    this.contractInRounds(toContract, ranks, true);
+
+    return this.toHierarchy(ranks);
+  }
+
+  /**
+   * Adds an edge for every road of the graph, other than those from an intersection to itself.
+   *
+   * @return the edge of every road, or {@code -1} for a road that has none.
+   */
+  private int[] addRoads() {
+    int[] roadEdges = new int[this.graph.getRoadCount()];
+
+    for (int intersection = 0; intersection < this.adjacency.length; intersection++) {
+      this.adjacency[intersection] = new int[4];
+    }
+
+    for (int road = 0; road < roadEdges.length; road++) {
+      int intersection1 = this.graph.getRoadIntersection1(road);
+      int intersection2 = this.graph.getRoadIntersection2(road);
+
+      roadEdges[road] = intersection1 == intersection2 ? -1
+          : this.addEdge(intersection1, intersection2, this.graph.getRoadDistance(road), road, -1,
+              -1);
+    }
+
+    return roadEdges;
+  }
+
+  /**
+   * Finds the lowest rank from which a hierarchy must be contracted again after some roads changed.
+   * That is the lowest rank of an end of a changed road, or of an intersection whose witness
+   * searches may have gone through a road that got longer.
+   *
+   * <p>
+   * A witness between two neighbors of an intersection is shorter than the two edges to them, so
+   * any intersection on it is closer to the intersection than three times its longest upward edge.
+   * The intersections around the roads that got longer are settled by a Dijkstra search over the
+   * old graph, which stops once no intersection below the lowest rank found so far has edges long
+   * enough to reach further.
+   */
+  private int findFirstStaleRank(ContractionHierarchy hierarchy, RoadGraph oldGraph, int[] ranks,
+      int[] changedRoads) {
+    int n = ranks.length;
+    int firstRank = n;
+    // The longest finite upward edge of every intersection, and of every intersection below a rank
+    double[] reaches = new double[n];
+    double[] reachesBelow = new double[n + 1];
+    SearchWorkspace workspace = this.witnessSearches.get().workspace;
+    NodeQueue q = workspace.getQueue();
+
+    workspace.reset();
+
+    for (int road : changedRoads) {
+      int intersection1 = this.graph.getRoadIntersection1(road);
+      int intersection2 = this.graph.getRoadIntersection2(road);
+
+      firstRank = Math.min(firstRank, Math.min(ranks[intersection1], ranks[intersection2]));
+
+      if (this.graph.getRoadDistance(road) > oldGraph.getRoadDistance(road)) {
+        for (int intersection : new int[] {intersection1, intersection2}) {
+          if (!workspace.isReached(intersection)) {
+            workspace.update(intersection, 0, -1, 0);
+          }
+        }
+      }
+    }
+
+    for (int intersection = 0; intersection < n; intersection++) {
+      for (int upwardEdge = hierarchy.getFirstUpwardEdge(intersection); upwardEdge < hierarchy
+          .getFirstUpwardEdge(intersection + 1); upwardEdge++) {
+        double weight = hierarchy.getUpwardWeight(upwardEdge);
+
+        if (weight != Double.POSITIVE_INFINITY) {
+          reaches[intersection] = Math.max(reaches[intersection], 3 * weight);
+        }
+      }
+
+      reachesBelow[ranks[intersection] + 1] = reaches[intersection];
+    }
+
+    for (int rank = 1; rank <= n; rank++) {
+      reachesBelow[rank] = Math.max(reachesBelow[rank], reachesBelow[rank - 1]);
+    }
+
+    while (!q.isEmpty() && q.peekKey() <= reachesBelow[firstRank]) {
+      double minDistance = q.peekKey();
+      int min = workspace.poll();
+
+      if (minDistance > workspace.getDistance(min)) {
+        continue; // an outdated entry
+      }
+
+      workspace.markSettled();
+
+      if (ranks[min] < firstRank && minDistance <= reaches[min]) {
+        firstRank = ranks[min];
+      }
+
+      for (int edge = oldGraph.getFirstEdge(min); edge < oldGraph.getFirstEdge(min + 1); edge++) {
+        int neighbor = oldGraph.getEdgeTarget(edge);
+        double temp = minDistance + oldGraph.getEdgeWeight(edge);
+
+        if (temp < workspace.getDistance(neighbor)) {
+          workspace.update(neighbor, temp, -1, 0);
+        }
+      }
+    }
+
+    return firstRank;
+  }
+
+  /**
+   * Contracts intersections in rounds until none remain.
+   *
+   * @param remaining the intersections to contract, which must be compacted
+   * @param ranks the rank of every intersection, which is assigned here unless the order is kept
+   * @param keepsOrder {@code true} to contract in the order of the ranks, which are the priorities
+   *        of the intersections, or {@code false} to contract by priority and to rank in that order
+   */
+  private void contractInRounds(int[] remaining, int[] ranks, boolean keepsOrder) {
+    int n = this.graph.getIntersectionCount();
+    int nextRank = 0;
+    boolean[] isDirty = new boolean[n];
+    IntList dirty = new IntList();
+
+    while (remaining.length > 0) {
+      int[] batch = Arrays.stream(remaining).parallel().filter(this::isLocalMinimum).toArray();
+
+      for (int intersection : batch) {
+        this.states[intersection] = SELECTED;
+      }
+
+      Shortcuts[] shortcuts = new Shortcuts[batch.length];
+
+      IntStream.range(0, batch.length).parallel().forEach(i -> {
+        shortcuts[i] = new Shortcuts();
+        this.contract(batch[i], shortcuts[i]);
+      });
+
+      for (int intersection : batch) {
+        if (!keepsOrder) {
+          ranks[intersection] = nextRank++;
+        }
+
+        this.states[intersection] = CONTRACTED;
+
+        for (int i = 0; i < this.degrees[intersection]; i++) {
+          int neighbor = this.getTheOtherEnd(this.adjacency[intersection][i], intersection);
+
+          this.deletedNeighbors[neighbor]++;
+
+          if (!isDirty[neighbor]) {
+            isDirty[neighbor] = true;
+            dirty.add(neighbor);
+          }
+        }
+      }
+
+      for (Shortcuts list : shortcuts) {
+        for (int i = 0; i < list.count; i++) {
+          this.addEdge(list.intersections1[i], list.intersections2[i], list.weights[i], -1,
+              list.children1[i], list.children2[i]);
+        }
+      }
+
+      int[] neighbors = dirty.toArray();
+
+      for (int neighbor : neighbors) {
+        this.compact(neighbor);
+        isDirty[neighbor] = false;
+      }
+
+      if (!keepsOrder) {
+        Arrays.stream(neighbors).parallel()
+            .forEach(neighbor -> this.priorities[neighbor] = this.computePriority(neighbor));
+      }
+
+      dirty.clear();
+      remaining = Arrays.stream(remaining).filter(i -> this.states[i] == REMAINING).toArray();
+    }
+  }
+
+  /**
+   * Lays out the upward edges of every contracted intersection in CSR form.
+   */
+  private ContractionHierarchy toHierarchy(int[] ranks) {
+    int n = ranks.length;
+    int[] upwardOffsets = new int[n + 1];
+
+    for (int intersection = 0; intersection < n; intersection++) {
+      upwardOffsets[intersection + 1] = upwardOffsets[intersection] + this.degrees[intersection];
+    }
+
+    int[] upwardTargets = new int[upwardOffsets[n]];
+    int[] upwardEdges = new int[upwardOffsets[n]];
+    double[] upwardWeights = new double[upwardOffsets[n]];
+
+    for (int intersection = 0; intersection < n; intersection++) {
+      for (int i = 0; i < this.degrees[intersection]; i++) {
+        int edge = this.adjacency[intersection][i];
+        int upwardEdge = upwardOffsets[intersection] + i;
+
+        upwardTargets[upwardEdge] = this.getTheOtherEnd(edge, intersection);
+        upwardEdges[upwardEdge] = edge;
+        upwardWeights[upwardEdge] = this.edgeWeights[edge];
+      }
+    }
+
+    return new ContractionHierarchy(n, ContractionHierarchy.fingerprint(this.graph),
+        IntBuffer.wrap(ranks), IntBuffer.wrap(upwardOffsets), IntBuffer.wrap(upwardTargets),
+        IntBuffer.wrap(upwardEdges), DoubleBuffer.wrap(upwardWeights),
+        IntBuffer.wrap(Arrays.copyOf(this.edgeIntersections1, this.edgeCount)),
+        IntBuffer.wrap(Arrays.copyOf(this.edgeIntersections2, this.edgeCount)),
+        IntBuffer.wrap(Arrays.copyOf(this.edgeRoads, this.edgeCount)),
+        IntBuffer.wrap(Arrays.copyOf(this.edgeChildren1, this.edgeCount)),
+        IntBuffer.wrap(Arrays.copyOf(this.edgeChildren2, this.edgeCount)));
+  }
+
+  /**
+   * Checks whether an intersection goes before all its remaining neighbors, by priority and then by
+   * a hash of its index, so that ties are broken evenly across the graph.
+   */
+  private boolean isLocalMinimum(int intersection) {
+    for (int i = 0; i < this.degrees[intersection]; i++) {
+      int neighbor = this.getTheOtherEnd(this.adjacency[intersection][i], intersection);
+
+      if (this.states[neighbor] == REMAINING && !this.precedes(intersection, neighbor)) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  private boolean precedes(int intersection1, int intersection2) {
+    if (this.priorities[intersection1] != this.priorities[intersection2]) {
+      return this.priorities[intersection1] < this.priorities[intersection2];
+    }
+
+    int hash1 = intersection1 * 0x9e3779b9;
+    int hash2 = intersection2 * 0x9e3779b9;
+
+    return hash1 != hash2 ? hash1 < hash2 : intersection1 < intersection2;
+  }
+
+  private int computePriority(int intersection) {
+    return 2 * (this.contract(intersection, null) - this.degrees[intersection])
+        + this.deletedNeighbors[intersection];
+  }
+
+  /**
+   * Finds the shortcuts that contracting an intersection needs.
+   *
+   * @param intersection the index of the intersection
+   * @param shortcuts the list to add the shortcuts to, or {@code null} to only count them
+   * @return the number of shortcuts needed.
+   */
+  private int contract(int intersection, Shortcuts shortcuts) {
+    int[] edges = this.adjacency[intersection];
+    int degree = this.degrees[intersection];
+    WitnessSearch search = this.witnessSearches.get();
+    SearchWorkspace workspace = search.workspace;
+    int count = 0;
+
+    for (int i = 0; i < degree - 1; i++) {
+      int edge1 = edges[i];
+      int neighbor1 = this.getTheOtherEnd(edge1, intersection);
+      double maxWeight = 0;
+
+      search.nextTargets();
+
+      for (int j = i + 1; j < degree; j++) {
+        maxWeight = Math.max(maxWeight, this.edgeWeights[edges[j]]);
+        search.addTarget(this.getTheOtherEnd(edges[j], intersection));
+      }
+
+      this.findWitnesses(search, neighbor1, intersection, this.edgeWeights[edge1] + maxWeight,
+          shortcuts != null ? WITNESS_SETTLE_LIMIT : PRIORITY_SETTLE_LIMIT);
+
+      for (int j = i + 1; j < degree; j++) {
+        int edge2 = edges[j];
+        int neighbor2 = this.getTheOtherEnd(edge2, intersection);
+        double weight = this.edgeWeights[edge1] + this.edgeWeights[edge2];
+
+        // Only a strictly shorter witness makes the shortcut unnecessary, since the witness may go
+        // through an intersection that is being contracted in the same round
+        if (workspace.getDistance(neighbor2) >= weight) {
+          count++;
+
+          if (shortcuts != null) {
+            shortcuts.add(neighbor1, neighbor2, weight, edge1, edge2);
+          }
+        }
+      }
+    }
+
+    return count;
+  }
+
+  /**
+   * Runs a Dijkstra search from an intersection over the intersections that have not been
+   * contracted yet, other than the one being contracted, until every target is settled or the
+   * distance limit is reached. The tentative distances left in the workspace are the lengths of
+   * actual paths, so they are witnesses even if the search gave up.
+   */
+  private void findWitnesses(WitnessSearch search, int source, int excluded, double maxDistance,
+      int settleLimit) {
+    SearchWorkspace workspace = search.workspace;
+    NodeQueue q = workspace.getQueue();
+    int remainingTargets = search.targetCount;
+
+    workspace.reset();
+    workspace.update(source, 0, -1, 0);
+
+    while (!q.isEmpty() && q.peekKey() <= maxDistance
+        && workspace.getSettledCount() < settleLimit) {
+      double minDistance = q.peekKey();
+      int min = workspace.poll();
+
+      if (minDistance > workspace.getDistance(min)) {
+        continue; // an outdated entry
+      }
+
+      workspace.markSettled();
+
+      if (search.isTarget(min) && --remainingTargets == 0) {
+        break;
+      }
+
+      int[] edges = this.adjacency[min];
+
+      for (int i = 0; i < this.degrees[min]; i++) {
+        int edge = edges[i];
+        int neighbor = this.getTheOtherEnd(edge, min);
+
+        if (neighbor == excluded || this.states[neighbor] == CONTRACTED) {
+          continue;
+        }
+
+        double temp = minDistance + this.edgeWeights[edge];
+
+        if (temp < workspace.getDistance(neighbor)) {
+          workspace.update(neighbor, temp, -1, 0);
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes the edges of an intersection that lead to contracted intersections, and all but the
+   * shortest edge to every remaining neighbor.
+   */
+  private void compact(int intersection) {
+    int[] edges = this.adjacency[intersection];
+    int degree = this.degrees[intersection];
+
+    for (int i = 0; i < degree; i++) {
+      int neighbor = this.getTheOtherEnd(edges[i], intersection);
+      int best = this.bestEdges[neighbor];
+
+      if (best < 0 || this.edgeWeights[edges[i]] < this.edgeWeights[best]) {
+        this.bestEdges[neighbor] = edges[i];
+      }
+    }
+
+    int newDegree = 0;
+
+    for (int i = 0; i < degree; i++) {
+      int neighbor = this.getTheOtherEnd(edges[i], intersection);
+
+      if (this.bestEdges[neighbor] == edges[i]) {
+        this.bestEdges[neighbor] = -1;
+
+        if (this.states[neighbor] == REMAINING) {
+          edges[newDegree++] = edges[i];
+        }
+      }
+    }
+
+    this.degrees[intersection] = newDegree;
+  }
+
+  private int addEdge(int intersection1, int intersection2, double weight, int road, int child1,
+      int child2) {
+    if (this.edgeCount == this.edgeRoads.length) {
+      int capacity = this.edgeCount * 2;
+
+      this.edgeIntersections1 = Arrays.copyOf(this.edgeIntersections1, capacity);
+      this.edgeIntersections2 = Arrays.copyOf(this.edgeIntersections2, capacity);
+      this.edgeWeights = Arrays.copyOf(this.edgeWeights, capacity);
+      this.edgeRoads = Arrays.copyOf(this.edgeRoads, capacity);
+      this.edgeChildren1 = Arrays.copyOf(this.edgeChildren1, capacity);
+      this.edgeChildren2 = Arrays.copyOf(this.edgeChildren2, capacity);
+    }
+
+    int edge = this.edgeCount++;
+
+    this.edgeIntersections1[edge] = intersection1;
+    this.edgeIntersections2[edge] = intersection2;
+    this.edgeWeights[edge] = weight;
+    this.edgeRoads[edge] = road;
+    this.edgeChildren1[edge] = child1;
+    this.edgeChildren2[edge] = child2;
+
+    this.appendEdge(intersection1, edge);
+    this.appendEdge(intersection2, edge);
+
+    return edge;
+  }
+
+  private void appendEdge(int intersection, int edge) {
+    int[] edges = this.adjacency[intersection];
+
+    if (this.degrees[intersection] == edges.length) {
+      edges = Arrays.copyOf(edges, edges.length * 2);
+      this.adjacency[intersection] = edges;
+    }
+
+    edges[this.degrees[intersection]++] = edge;
+  }
+
+  private int getTheOtherEnd(int edge, int intersection) {
+    int intersection1 = this.edgeIntersections1[edge];
+
+    return intersection == intersection1 ? this.edgeIntersections2[edge] : intersection1;
+  }
+
+  /**
+   * The shortcuts found for one intersection: for each, its endpoints, its weight, and the edges
+   * that it bridges (the first touching the first endpoint).
+   */
+  private static class Shortcuts {
+    private int count = 0;
+    private int[] intersections1 = new int[4];
+    private int[] intersections2 = new int[4];
+    private double[] weights = new double[4];
+    private int[] children1 = new int[4];
+    private int[] children2 = new int[4];
+
+    private void add(int intersection1, int intersection2, double weight, int child1, int child2) {
+      if (this.count == this.weights.length) {
+        int capacity = this.count * 2;
+
+        this.intersections1 = Arrays.copyOf(this.intersections1, capacity);
+        this.intersections2 = Arrays.copyOf(this.intersections2, capacity);
+        this.weights = Arrays.copyOf(this.weights, capacity);
+        this.children1 = Arrays.copyOf(this.children1, capacity);
+        this.children2 = Arrays.copyOf(this.children2, capacity);
+      }
+
+      this.intersections1[this.count] = intersection1;
+      this.intersections2[this.count] = intersection2;
+      this.weights[this.count] = weight;
+      this.children1[this.count] = child1;
+      this.children2[this.count] = child2;
+      this.count++;
+    }
+  }
+
+  /**
+   * The state of the witness searches of one thread: the workspace of the search, and the neighbors
+   * that the current search is looking for, marked with the number of the search.
+   */
+  private static class WitnessSearch {
+    private final SearchWorkspace workspace;
+    private final int[] targetMarks;
+    private int mark = 0;
+    private int targetCount = 0;
+
+    private WitnessSearch(int intersectionCount) {
+      this.workspace = new SearchWorkspace(intersectionCount);
+      this.targetMarks = new int[intersectionCount];
+    }
+
+    private void nextTargets() {
+      this.mark++;
+      this.targetCount = 0;
+
+      if (this.mark == 0) {
+        Arrays.fill(this.targetMarks, 0);
+        this.mark = 1;
+      }
+    }
+
+    private void addTarget(int intersection) {
+      if (this.targetMarks[intersection] != this.mark) {
+        this.targetMarks[intersection] = this.mark;
+        this.targetCount++;
+      }
+    }
+
+    private boolean isTarget(int intersection) {
+      return this.targetMarks[intersection] == this.mark;
+    }
+  }
+}
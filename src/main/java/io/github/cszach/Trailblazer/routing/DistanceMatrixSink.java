@@ -0,0 +1,22 @@
+package io.github.cszach.Trailblazer.routing;
+
+import java.io.IOException;
+
+/**
+ * Receives the rows of a distance matrix as they are computed.
+ *
+ * @see RoutingEngine#distanceMatrix(int[], int[], DistanceMatrixSink)
+ */
+@FunctionalInterface
+public interface DistanceMatrixSink {
+  /**
+   * Receives a row of the matrix. Rows are received in order, on the thread that requested the
+   * matrix.
+   *
+   * @param row the number of the row, which is the position of its source
+   * @param distances the distance from the source to every target, in the order of the targets, or
+   *        {@code +Infinity} where no path connects them
+   * @throws IOException when the row cannot be written.
+   */
+  void writeRow(int row, double[] distances) throws IOException;
+}
@@ -0,0 +1,171 @@
+package io.github.cszach.Trailblazer.routing;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes a distance matrix to a file row by row, so that rows reach the file as soon as they are
+ * computed.
+ *
+ * <p>
+ * A file whose name ends with {@code .csv} is written as CSV: a header line of {@code source}
+ * followed by the IDs of the targets, then a line for every source with its ID followed by its
+ * distances in miles, where an empty field means that no path connects the intersections. An ID
+ * that contains a comma, a double quote, or a line break is quoted as in RFC 4180: it is enclosed
+ * in double quotes, and each of its double quotes is doubled.
+ *
+ * <p>
+ * Any other file is written in binary: a header of {@code HEADER_SIZE} bytes holds {@code MAGIC},
+ * the format version, the number of rows, and the number of columns, all little-endian, followed by
+ * the distances as little-endian {@code double}s, row by row, with {@code +Infinity} where no path
+ * connects the intersections. The IDs are not written; rows and columns are in the order of the
+ * sources and the targets.
+ *
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * try (
+ *     DistanceMatrixWriter writer = DistanceMatrixWriter.open("costs.csv", sourceIds, targetIds)) {
+ *   engine.distanceMatrix(sources, targets, writer);
+ * }
+ * </pre>
+ */
+public abstract class DistanceMatrixWriter implements DistanceMatrixSink, Closeable {
+  /**
+   * The first 8 bytes of every binary matrix file, which read {@code TRLBLZDM} in ASCII.
+   */
+  private static final long MAGIC = 0x4d445a4c424c5254L;
+  /**
+   * The version of the binary format that this class writes.
+   */
+  private static final int VERSION = 1;
+  /**
+   * The size of the header of binary files, in bytes.
+   */
+  private static final int HEADER_SIZE = 24;
+
+  /**
+   * Opens a file for writing a distance matrix, in the format that its name implies.
+   *
+   * @param path the path of the output file
+   * @param sourceIds the IDs of the sources, which label the rows
+   * @param targetIds the IDs of the targets, which label the columns
+   * @return the writer of the file.
+   * @throws IOException when the file cannot be created.
+   */
+  public static DistanceMatrixWriter open(String path, String[] sourceIds, String[] targetIds)
+      throws IOException {
+    if (path.endsWith(".csv")) {
+      return new CsvWriter(path, sourceIds, targetIds);
+    } else {
+      return new BinaryWriter(path, sourceIds.length, targetIds.length);
+    }
+  }
+
+  private static class CsvWriter extends DistanceMatrixWriter {
+    private final Writer writer;
+    private final String[] sourceIds;
+
+    private CsvWriter(String path, String[] sourceIds, String[] targetIds) throws IOException {
+      this.writer = Files.newBufferedWriter(Path.of(path), StandardCharsets.UTF_8);
+      this.sourceIds = sourceIds;
+
+      this.writer.write("source");
+
+      for (String targetId : targetIds) {
+        this.writer.write(',');
+        this.writer.write(quote(targetId));
+      }
+
+      this.writer.write('\n');
+    }
+
+    @Override
+    public void writeRow(int row, double[] distances) throws IOException {
+      this.writer.write(quote(this.sourceIds[row]));
+
+      for (double distance : distances) {
+        this.writer.write(',');
+
+        if (distance != Double.POSITIVE_INFINITY) {
+          this.writer.write(Double.toString(distance));
+        }
+      }
+
+      this.writer.write('\n');
+      this.writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      this.writer.close();
+    }
+
+    /**
+     * Quotes a field if it contains a character that would otherwise end it or its line.
+     */
+    private static String quote(String field) {
+      for (int i = 0; i < field.length(); i++) {
+        char c = field.charAt(i);
+
+        if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+          return '"' + field.replace("\"", "\"\"") + '"';
+        }
+      }
+
+      return field;
+    }
+  }
+
+  private static class BinaryWriter extends DistanceMatrixWriter {
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+
+    private BinaryWriter(String path, int rowCount, int columnCount) throws IOException {
+      this.channel = FileChannel.open(Path.of(path), StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+      this.buffer = ByteBuffer.allocate(Math.max(HEADER_SIZE, columnCount * Double.BYTES))
+          .order(ByteOrder.LITTLE_ENDIAN);
+
+      this.buffer.putLong(MAGIC);
+      this.buffer.putInt(VERSION);
+      this.buffer.putInt(rowCount);
+      this.buffer.putInt(columnCount);
+      this.buffer.putInt(0);
+      this.flush();
+    }
+
+    @Override
+    public void writeRow(int row, double[] distances) throws IOException {
+      for (double distance : distances) {
+        this.buffer.putDouble(distance);
+      }
+
+      this.flush();
+    }
+
+    private void flush() throws IOException {
+      this.buffer.flip();
+
+      while (this.buffer.hasRemaining()) {
+        this.channel.write(this.buffer);
+      }
+
+      this.buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+      this.channel.close();
+    }
+  }
+}
@@ -0,0 +1,136 @@
+package io.github.cszach.Trailblazer.routing;
+
+/**
+ * A 4-ary min-heap of intersection indices keyed by distance, with decrease-key, stored in
+ * primitive arrays.
+ *
+ * <p>
+ * The heap keeps the position of every queued intersection, so lowering the key of an intersection
+ * moves its entry instead of adding another one. The heap therefore never holds more entries than
+ * there are intersections, and never returns an outdated entry. A 4-ary heap is shallower than a
+ * binary heap, and the four children of a node share a cache line.
+ *
+ * <p>
+ * Positions are never reset: a position is trusted only if the entry there is the intersection, so
+ * clearing the heap is free.
+ */
+class IndexedHeap implements NodeQueue {
+  private static final int ARITY = 4;
+
+  private final double[] keys;
+  private final int[] nodes;
+  /**
+   * The position of every intersection in the heap, if it is queued.
+   */
+  private final int[] positions;
+  private int size = 0;
+
+  /**
+   * Constructs a new {@code IndexedHeap} for a graph of the given size.
+   *
+   * @param intersectionCount the number of intersections in the graph
+   */
+  IndexedHeap(int intersectionCount) {
+    this.keys = new double[intersectionCount];
+    this.nodes = new int[intersectionCount];
+    this.positions = new int[intersectionCount];
+  }
+
+  @Override
+  public void clear() {
+    this.size = 0;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return this.size == 0;
+  }
+
+  @Override
+  public double peekKey() {
+    return this.keys[0];
+  }
+
+  @Override
+  public void add(int node, double key) {
+    int position = this.positions[node];
+
+    if (position < this.size && this.nodes[position] == node) {
+      if (key < this.keys[position]) {
+        this.siftUp(position, node, key);
+      }
+    } else {
+      this.siftUp(this.size++, node, key);
+    }
+  }
+
+  @Override
+  public int poll() {
+    int min = this.nodes[0];
+
+    this.size--;
+
+    if (this.size > 0) {
+      this.siftDown(0, this.nodes[this.size], this.keys[this.size]);
+    }
+
+    return min;
+  }
+
+  /**
+   * Moves an entry up from a position until its parent has a key no larger than its own.
+   */
+  private void siftUp(int i, int node, double key) {
+    while (i > 0) {
+      int parent = (i - 1) / ARITY;
+
+      if (this.keys[parent] <= key) {
+        break;
+      }
+
+      this.keys[i] = this.keys[parent];
+      this.nodes[i] = this.nodes[parent];
+      this.positions[this.nodes[i]] = i;
+      i = parent;
+    }
+
+    this.keys[i] = key;
+    this.nodes[i] = node;
+    this.positions[node] = i;
+  }
+
+  /**
+   * Moves an entry down from a position until none of its children has a smaller key.
+   */
+  private void siftDown(int i, int node, double key) {
+    while (true) {
+      int firstChild = ARITY * i + 1;
+
+      if (firstChild >= this.size) {
+        break;
+      }
+
+      int lastChild = Math.min(firstChild + ARITY, this.size);
+      int child = firstChild;
+
+      for (int sibling = firstChild + 1; sibling < lastChild; sibling++) {
+        if (this.keys[sibling] < this.keys[child]) {
+          child = sibling;
+        }
+      }
+
+      if (key <= this.keys[child]) {
+        break;
+      }
+
+      this.keys[i] = this.keys[child];
+      this.nodes[i] = this.nodes[child];
+      this.positions[this.nodes[i]] = i;
+      i = child;
+    }
+
+    this.keys[i] = key;
+    this.nodes[i] = node;
+    this.positions[node] = i;
+  }
+}
@@ -0,0 +1,52 @@
+package io.github.cszach.Trailblazer.routing;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of primitive {@code int}s, which avoids boxing in the inner loops of searches and
+ * preprocessing.
+ */
+class IntList {
+  private int[] elements;
+  private int size = 0;
+
+  IntList() {
+    this(16);
+  }
+
+  IntList(int capacity) {
+    this.elements = new int[Math.max(capacity, 1)];
+  }
+
+  int size() {
+    return this.size;
+  }
+
+  int get(int index) {
+    return this.elements[index];
+  }
+
+  void set(int index, int element) {
+    this.elements[index] = element;
+  }
+
+  void add(int element) {
+    if (this.size == this.elements.length) {
+      this.elements = Arrays.copyOf(this.elements, this.size * 2);
+    }
+
+    this.elements[this.size++] = element;
+  }
+
+  int removeLast() {
+    return this.elements[--this.size];
+  }
+
+  void clear() {
+    this.size = 0;
+  }
+
+  int[] toArray() {
+    return Arrays.copyOf(this.elements, this.size);
+  }
+}
@@ -0,0 +1,292 @@
+package io.github.cszach.Trailblazer.routing;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import io.github.cszach.Trailblazer.geo.Road;
+import io.github.cszach.Trailblazer.geo.RoadGraph;
+
+/**
+ * A set of landmark intersections and their road distances to every intersection, which give lower
+ * bounds of road distances for A* search (ALT: A*, landmarks, and the triangle inequality).
+ *
+ * <p>
+ * For a landmark {@code L}, the triangle inequality gives {@code dist(v, t) >= |dist(L, t) -
+ * dist(L, v)|} for any intersections {@code v} and {@code t}. The largest of these bounds over all
+ * landmarks is usually much tighter than the great-circle distance, especially where roads have to
+ * go around rivers and lakes. Landmarks on the periphery of the map work best, so they are selected
+ * one at a time as the intersection farthest (by great-circle distance) from the ones selected so
+ * far, starting from the intersection farthest from the center of the map. The distances from the
+ * landmarks are then computed in parallel, one Dijkstra search per landmark.
+ *
+ * <p>
+ * Distances are stored as {@code float}s, intersection by intersection, so that the bounds of an
+ * intersection are read from a single cache line. To make up for the rounding, bounds are lowered
+ * by a small tolerance, so they remain lower bounds.
+ *
+ * @see RoutingEngine#getLandmarks()
+ */
+public final class Landmarks {
+  /**
+   * The number of landmarks that {@code RoutingEngine} selects.
+   */
+  public static final int DEFAULT_COUNT = 16;
+
+  private final int[] intersections;
+  /**
+   * The distance from landmark {@code i} to intersection {@code v} is at
+   * {@code distances[v * intersections.length + i]}, or {@code +Infinity} if no path connects them.
+   */
+  private final float[] distances;
+  /**
+   * The most that rounding the distances to {@code float}s can overestimate a bound by.
+   */
+  private final double tolerance;
+  private final long preprocessingTime;
+
+  private Landmarks(int[] intersections, float[] distances, double tolerance,
+      long preprocessingTime) {
+    this.intersections = intersections;
+    this.distances = distances;
+    this.tolerance = tolerance;
+    this.preprocessingTime = preprocessingTime;
+  }
+
+  /**
+   * Selects landmarks on the periphery of a graph and computes their distances to every
+   * intersection.
+   *
+   * @param graph the graph to select landmarks in
+   * @param count the number of landmarks to select; fewer are selected if the graph has fewer
+   *        intersections with roads
+   * @return the selected landmarks.
+   * @throws IllegalArgumentException when the count is not positive, or the distance table would be
+   *         too large.
+   */
+  public static Landmarks select(RoadGraph graph, int count) {
+    long startTime = System.nanoTime();
+    int n = graph.getIntersectionCount();
+
+    if (count <= 0) {
+      throw new IllegalArgumentException("The number of landmarks must be positive");
+    }
+
+    if ((long) n * count > Integer.MAX_VALUE - 8) {
+      throw new IllegalArgumentException("Too many landmarks for a graph of this size");
+    }
+
+    int[] intersections = selectPeriphery(graph, count);
+    int k = intersections.length;
+    float[] distances = new float[n * k];
+    double[] maxDistances = new double[k];
+
+    IntStream.range(0, k).parallel().forEach(i -> {
+      double[] landmarkDistances = computeDistances(graph, intersections[i]);
+
+      for (int intersection = 0; intersection < n; intersection++) {
+        double distance = landmarkDistances[intersection];
+
+        distances[intersection * k + i] = (float) distance;
+
+        if (distance != Double.POSITIVE_INFINITY) {
+          maxDistances[i] = Math.max(maxDistances[i], distance);
+        }
+      }
+    });
+
+    // Every distance is off by at most half a unit in the last place of the largest distance, and
+    // a bound is the difference of two distances
+    double maxDistance = Arrays.stream(maxDistances).max().orElse(0);
+    double tolerance = Math.ulp((float) maxDistance);
+
+    return new Landmarks(intersections, distances, tolerance,
+        (System.nanoTime() - startTime) / 1_000_000);
+  }
+
+  /**
+   * Selects intersections that are far apart and far from the center, by great-circle distance.
+   * Intersections without roads are never selected.
+   */
+  private static int[] selectPeriphery(RoadGraph graph, int count) {
+    int n = graph.getIntersectionCount();
+    double centerLatitude = 0;
+    double centerLongtitude = 0;
+    int connectedCount = 0;
+
+    for (int intersection = 0; intersection < n; intersection++) {
+      if (graph.getFirstEdge(intersection) < graph.getFirstEdge(intersection + 1)) {
+        centerLatitude += graph.getLatitude(intersection);
+        centerLongtitude += graph.getLongtitude(intersection);
+        connectedCount++;
+      }
+    }
+
+    if (connectedCount == 0) {
+      return new int[0];
+    }
+
+    centerLatitude /= connectedCount;
+    centerLongtitude /= connectedCount;
+
+    // The distance from every intersection to the nearest selected point, which is the center
+    // until the first landmark is selected
+    double[] nearestDistances = new double[n];
+    int[] landmarks = new int[Math.min(count, connectedCount)];
+
+    for (int intersection = 0; intersection < n; intersection++) {
+      nearestDistances[intersection] =
+          graph.getFirstEdge(intersection) < graph.getFirstEdge(intersection + 1)
+              ? Road.haversine(graph.getLatitude(intersection), graph.getLongtitude(intersection),
+                  centerLatitude, centerLongtitude)
+              : Double.NEGATIVE_INFINITY;
+    }
+
+    for (int i = 0; i < landmarks.length; i++) {
+      int farthest = 0;
+
+      for (int intersection = 1; intersection < n; intersection++) {
+        if (nearestDistances[intersection] > nearestDistances[farthest]) {
+          farthest = intersection;
+        }
+      }
+
+      landmarks[i] = farthest;
+
+      double latitude = graph.getLatitude(farthest);
+      double longtitude = graph.getLongtitude(farthest);
+
+      for (int intersection = 0; intersection < n; intersection++) {
+        if (nearestDistances[intersection] > 0) {
+          double distance = Road.haversine(graph.getLatitude(intersection),
+              graph.getLongtitude(intersection), latitude, longtitude);
+
+          // The first landmark replaces the center rather than joining it
+          nearestDistances[intersection] =
+              i == 0 ? distance : Math.min(nearestDistances[intersection], distance);
+        }
+      }
+
+      nearestDistances[farthest] = Double.NEGATIVE_INFINITY;
+    }
+
+    return landmarks;
+  }
+
+  /**
+   * Computes the road distance from an intersection to every intersection with Dijkstra's
+   * algorithm.
+   */
+  private static double[] computeDistances(RoadGraph graph, int source) {
+    double[] distances = new double[graph.getIntersectionCount()];
+    NodeQueue q = new IndexedHeap(graph.getIntersectionCount());
+
+    Arrays.fill(distances, Double.POSITIVE_INFINITY);
+    distances[source] = 0;
+    q.add(source, 0);
+
+    while (!q.isEmpty()) {
+      double minDistance = q.peekKey();
+      int min = q.poll();
+
+      if (minDistance > distances[min]) {
+        continue; // an outdated entry
+      }
+
+      int edgeEnd = graph.getFirstEdge(min + 1);
+
+      for (int edge = graph.getFirstEdge(min); edge < edgeEnd; edge++) {
+        int neighbor = graph.getEdgeTarget(edge);
+        double temp = minDistance + graph.getEdgeWeight(edge);
+
+        if (temp < distances[neighbor]) {
+          distances[neighbor] = temp;
+          q.add(neighbor, temp);
+        }
+      }
+    }
+
+    return distances;
+  }
+
+  /**
+   * Returns the number of landmarks.
+   *
+   * @return the number of landmarks.
+   */
+  public int getCount() {
+    return this.intersections.length;
+  }
+
+  /**
+   * Returns a landmark.
+   *
+   * @param i the number of the landmark, from 0 to {@code getCount() - 1}
+   * @return the index of the intersection of the landmark.
+   */
+  public int getIntersection(int i) {
+    return this.intersections[i];
+  }
+
+  /**
+   * Returns the time that selecting the landmarks and computing their distances took.
+   *
+   * @return the preprocessing time, in milliseconds.
+   */
+  public long getPreprocessingTime() {
+    return this.preprocessingTime;
+  }
+
+  /**
+   * Returns the memory that the distances of a single landmark take.
+   *
+   * @return the size of the distances of a landmark, in bytes.
+   */
+  public long getBytesPerLandmark() {
+    return (long) this.distances.length / Math.max(this.intersections.length, 1) * Float.BYTES;
+  }
+
+  /**
+   * Returns the distances from every landmark to an intersection.
+   *
+   * @param intersection the index of the intersection
+   * @return the distances from the landmarks to the intersection, in the order of the landmarks.
+   */
+  float[] getDistances(int intersection) {
+    int k = this.intersections.length;
+
+    return Arrays.copyOfRange(this.distances, intersection * k, intersection * k + k);
+  }
+
+  /**
+   * Returns a lower bound of the road distance between an intersection and another intersection,
+   * given the distances from every landmark to the latter.
+   *
+   * @param intersection the index of the intersection
+   * @param endDistances the distances from the landmarks to the other intersection, as returned by
+   *        {@code getDistances}
+   * @return a lower bound of the road distance between the intersections.
+   */
+  double getLowerBound(int intersection, float[] endDistances) {
+    int k = endDistances.length;
+    int offset = intersection * k;
+    double bound = 0;
+
+    for (int i = 0; i < k; i++) {
+      // If either distance is infinite, the landmark says nothing about this pair
+      double difference = Math.abs((double) this.distances[offset + i] - endDistances[i]);
+
+      if (difference > bound && difference != Double.POSITIVE_INFINITY) {
+        bound = difference;
+      }
+    }
+
+    return Math.max(0, bound - this.tolerance);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Selected %d landmarks in %d ms (%.1f MB per landmark)",
+        this.intersections.length, this.preprocessingTime,
+        this.getBytesPerLandmark() / 1024.0 / 1024.0);
+  }
+}
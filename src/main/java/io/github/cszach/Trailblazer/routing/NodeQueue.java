@@ -0,0 +1,40 @@
+package io.github.cszach.Trailblazer.routing;
+
+/**
+ * A priority queue of intersection indices keyed by distance, which every search in this package
+ * uses to pick the next intersection to settle.
+ *
+ * <p>
+ * Depending on the implementation, an intersection whose key is lowered is either moved or added
+ * again, so searches must still skip outdated entries when they are polled.
+ *
+ * @see IndexedHeap
+ * @see RadixQueue
+ */
+interface NodeQueue {
+  /**
+   * Removes every entry.
+   */
+  void clear();
+
+  boolean isEmpty();
+
+  /**
+   * Returns the key of the entry that {@code poll} returns next. This queue must not be empty.
+   */
+  double peekKey();
+
+  /**
+   * Removes the entry with the smallest key, and returns its intersection. This queue must not be
+   * empty.
+   */
+  int poll();
+
+  /**
+   * Queues an intersection with a key, or lowers its key if it is already queued with a larger one.
+   *
+   * @param node the index of the intersection
+   * @param key the key, which must not be negative
+   */
+  void add(int node, double key);
+}
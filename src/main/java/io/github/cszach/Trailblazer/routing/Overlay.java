@@ -0,0 +1,243 @@
+package io.github.cszach.Trailblazer.routing;
+
+import java.util.Arrays;
+
+import io.github.cszach.Trailblazer.geo.RoadGraph;
+
+/**
+ * The metric-independent part of a multi-level overlay of a graph (customizable route planning):
+ * the boundary intersections of the cells of a {@code Partition}, and the layout of the cliques
+ * that connect them.
+ *
+ * <p>
+ * An intersection is a boundary intersection of its cell on a level if a road leads from it to
+ * another cell of that level. Within every cell, every pair of boundary intersections is connected
+ * by a clique edge, whose weight is the distance between them inside the cell. A query then only
+ * needs the roads of the cells of the start and the end, and the clique edges and the roads between
+ * cells elsewhere. Since a road between cells of a level is also between cells of every lower
+ * level, the boundary intersections of a level are boundary intersections of every lower level too,
+ * so the overlay of a level is built on the overlay of the level below.
+ *
+ * <p>
+ * Nothing here depends on road distances: the weights of the clique edges are computed separately,
+ * by {@code customize}, so that a new metric only needs a new customization.
+ *
+ * @see OverlayMetric
+ */
+public final class Overlay {
+  private final RoadGraph graph;
+  private final Partition partition;
+  /**
+   * The boundary intersections of every cell, where the boundary intersections of cell {@code c} of
+   * level {@code l} are from {@code boundaryOffsets[l - 1][c]} (inclusive) to
+   * {@code boundaryOffsets[l - 1][c + 1]} (exclusive) in {@code boundaries[l - 1]}.
+   */
+  private final int[][] boundaryOffsets;
+  private final int[][] boundaries;
+  /**
+   * The position of every intersection among the boundary intersections of its cell on every level,
+   * or {@code -1} if it is not a boundary intersection of that level.
+   */
+  private final int[][] boundaryPositions;
+  /**
+   * The first clique weight of every cell, where the weights of the cliques of a level are laid out
+   * cell after cell, each as the upper triangle of a matrix without its diagonal.
+   */
+  private final long[][] cliqueOffsets;
+
+  /**
+   * Builds the overlay of a graph on a partition of it.
+   *
+   * @param graph the graph, whose road distances are not used
+   * @param partition a partition of the graph
+   */
+  public Overlay(RoadGraph graph, Partition partition) {
+    int n = graph.getIntersectionCount();
+    int levelCount = partition.getLevelCount();
+
+    this.graph = graph;
+    this.partition = partition;
+    this.boundaryOffsets = new int[levelCount][];
+    this.boundaries = new int[levelCount][];
+    this.boundaryPositions = new int[levelCount][n];
+    this.cliqueOffsets = new long[levelCount][];
+
+    for (int level = 1; level <= levelCount; level++) {
+      int cellCount = partition.getCellCount(level);
+      int[] offsets = new int[cellCount + 1];
+      int[] positions = this.boundaryPositions[level - 1];
+
+      Arrays.fill(positions, -1);
+
+      // Count the boundary intersections of every cell, then lay them out with a counting sort
+
+      for (int intersection = 0; intersection < n; intersection++) {
+        if (this.isBoundary(level, intersection)) {
+          offsets[partition.getCell(level, intersection) + 1]++;
+        }
+      }
+
+      for (int cell = 0; cell < cellCount; cell++) {
+        offsets[cell + 1] += offsets[cell];
+      }
+
+      int[] levelBoundaries = new int[offsets[cellCount]];
+      int[] next = Arrays.copyOf(offsets, cellCount);
+
+      for (int intersection = 0; intersection < n; intersection++) {
+        if (this.isBoundary(level, intersection)) {
+          int cell = partition.getCell(level, intersection);
+
+          positions[intersection] = next[cell] - offsets[cell];
+          levelBoundaries[next[cell]++] = intersection;
+        }
+      }
+
+      long[] levelCliqueOffsets = new long[cellCount + 1];
+
+      for (int cell = 0; cell < cellCount; cell++) {
+        long k = offsets[cell + 1] - offsets[cell];
+
+        levelCliqueOffsets[cell + 1] = levelCliqueOffsets[cell] + k * (k - 1) / 2;
+      }
+
+      if (levelCliqueOffsets[cellCount] > Integer.MAX_VALUE - 8) {
+        throw new IllegalArgumentException("The cliques of level " + level + " are too large");
+      }
+
+      this.boundaryOffsets[level - 1] = offsets;
+      this.boundaries[level - 1] = levelBoundaries;
+      this.cliqueOffsets[level - 1] = levelCliqueOffsets;
+    }
+  }
+
+  private boolean isBoundary(int level, int intersection) {
+    int cell = this.partition.getCell(level, intersection);
+    int edgeEnd = this.graph.getFirstEdge(intersection + 1);
+
+    for (int edge = this.graph.getFirstEdge(intersection); edge < edgeEnd; edge++) {
+      if (this.partition.getCell(level, this.graph.getEdgeTarget(edge)) != cell) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Computes the weights of the clique edges for the road distances of a graph, in parallel.
+   *
+   * @param metric a graph with the same intersections, roads, and edges as the graph of this
+   *        overlay, whose road distances to use
+   * @return the customized overlay.
+   * @throws IllegalArgumentException when the graph does not have the same intersections and roads.
+   */
+  public OverlayMetric customize(RoadGraph metric) {
+    this.checkGraph(metric);
+
+    return OverlayMetric.customize(this, metric, null, null);
+  }
+
+  /**
+   * Computes the weights of the clique edges for the road distances of a graph that differs from an
+   * earlier one in a few roads. Only the cells that contain a changed road are computed again; the
+   * weights of the others are copied.
+   *
+   * @param metric the graph with the new road distances
+   * @param previous the customization for the earlier graph
+   * @param changedRoads the indices of the roads whose distances differ
+   * @return the customized overlay.
+   * @throws IllegalArgumentException when the graph does not have the same intersections and roads,
+   *         or the earlier customization is of another overlay.
+   */
+  public OverlayMetric customize(RoadGraph metric, OverlayMetric previous, int[] changedRoads) {
+    this.checkGraph(metric);
+
+    if (previous.getOverlay() != this) {
+      throw new IllegalArgumentException("The customization is of another overlay");
+    }
+
+    return OverlayMetric.customize(this, metric, previous, changedRoads);
+  }
+
+  private void checkGraph(RoadGraph metric) {
+    if (metric.getIntersectionCount() != this.graph.getIntersectionCount()
+        || metric.getRoadCount() != this.graph.getRoadCount()) {
+      throw new IllegalArgumentException("The graph must have the same intersections and roads");
+    }
+  }
+
+  /**
+   * Returns the partition that this overlay is built on.
+   *
+   * @return the partition that this overlay is built on.
+   */
+  public Partition getPartition() {
+    return this.partition;
+  }
+
+  /**
+   * Returns the number of boundary intersections of a level.
+   *
+   * @param level the level, from {@code 1} to {@code getPartition().getLevelCount()}
+   * @return the number of boundary intersections of the level.
+   */
+  public int getBoundaryCount(int level) {
+    return this.boundaries[level - 1].length;
+  }
+
+  /**
+   * Returns the number of clique edges of a level, counting each pair of boundary intersections
+   * once.
+   *
+   * @param level the level, from {@code 1} to {@code getPartition().getLevelCount()}
+   * @return the number of clique edges of the level.
+   */
+  public long getCliqueEdgeCount(int level) {
+    long[] offsets = this.cliqueOffsets[level - 1];
+
+    return offsets[offsets.length - 1];
+  }
+
+  int getFirstBoundary(int level, int cell) {
+    return this.boundaryOffsets[level - 1][cell];
+  }
+
+  int getBoundary(int level, int i) {
+    return this.boundaries[level - 1][i];
+  }
+
+  /**
+   * Returns the position of an intersection among the boundary intersections of its cell.
+   *
+   * @return the position, or {@code -1} if the intersection is not a boundary intersection of the
+   *         level.
+   */
+  int getBoundaryPosition(int level, int intersection) {
+    return this.boundaryPositions[level - 1][intersection];
+  }
+
+  /**
+   * Returns the index of the weight of a clique edge among the clique weights of its level.
+   *
+   * @param level the level of the clique
+   * @param cell the cell of the clique
+   * @param i the position of one end among the boundary intersections of the cell
+   * @param j the position of the other end, which must differ from {@code i}
+   * @return the index of the weight.
+   */
+  int getCliqueIndex(int level, int cell, int i, int j) {
+    if (i > j) {
+      int temp = i;
+      i = j;
+      j = temp;
+    }
+
+    int k = this.boundaryOffsets[level - 1][cell + 1] - this.boundaryOffsets[level - 1][cell];
+
+    // Row i of the upper triangle starts after the k - 1, k - 2, ..., k - i entries of the rows
+    // before it
+    return (int) (this.cliqueOffsets[level - 1][cell] + (long) i * (2 * k - i - 1) / 2
+        + (j - i - 1));
+  }
+}
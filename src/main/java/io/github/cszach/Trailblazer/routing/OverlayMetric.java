@@ -0,0 +1,293 @@
+package io.github.cszach.Trailblazer.routing;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import io.github.cszach.Trailblazer.geo.RoadGraph;
+
+/**
+ * The metric-dependent part of a multi-level overlay: the weights of the clique edges of every cell
+ * for the road distances of a graph.
+ *
+ * <p>
+ * Customization goes up the levels. On level {@code 1}, the weights of a cell come from one
+ * Dijkstra search per boundary intersection over the roads inside the cell. On every higher level,
+ * they come from searches over the overlay of the level below inside the cell: the clique edges of
+ * its subcells and the roads between them, which are much fewer than the roads. The cells of a
+ * level are independent, so they are customized in parallel.
+ *
+ * <p>
+ * An {@code OverlayMetric} is immutable, so it can be shared freely between threads.
+ *
+ * @see Overlay#customize(RoadGraph)
+ */
+public final class OverlayMetric {
+  private final Overlay overlay;
+  private final RoadGraph graph;
+  /**
+   * The weights of the clique edges of every level, where the weights of level {@code l} are in
+   * {@code cliqueWeights[l - 1]}, as laid out by {@code Overlay.getCliqueIndex}.
+   */
+  private final double[][] cliqueWeights;
+  private final int customizedCellCount;
+  private final long customizationTime;
+
+  private OverlayMetric(Overlay overlay, RoadGraph graph, double[][] cliqueWeights,
+      int customizedCellCount, long customizationTime) {
+    this.overlay = overlay;
+    this.graph = graph;
+    this.cliqueWeights = cliqueWeights;
+    this.customizedCellCount = customizedCellCount;
+    this.customizationTime = customizationTime;
+  }
+
+  /**
+   * Computes the weights of the clique edges of an overlay.
+   *
+   * @param overlay the overlay to customize
+   * @param graph the graph whose road distances to use
+   * @param previous a customization of the overlay for a graph that differs in a few roads, whose
+   *        weights are copied for the cells without a changed road, or {@code null}
+   * @param changedRoads the roads whose distances differ from the graph of {@code previous}, or
+   *        {@code null}
+   * @return the customized overlay.
+   */
+  static OverlayMetric customize(Overlay overlay, RoadGraph graph, OverlayMetric previous,
+      int[] changedRoads) {
+    long startTime = System.nanoTime();
+    Partition partition = overlay.getPartition();
+    int levelCount = partition.getLevelCount();
+    double[][] cliqueWeights = new double[levelCount][];
+    OverlayMetric metric = new OverlayMetric(overlay, graph, cliqueWeights, 0, 0);
+    ThreadLocal<SearchWorkspace> workspaces =
+        ThreadLocal.withInitial(() -> new SearchWorkspace(graph.getIntersectionCount()));
+    int customizedCellCount = 0;
+
+    for (int level = 1; level <= levelCount; level++) {
+      int cellLevel = level;
+      int cellCount = partition.getCellCount(level);
+      boolean[] isChanged = new boolean[cellCount];
+
+      if (previous != null) {
+        // A road changes a cell only if both of its ends are inside it
+        for (int road : changedRoads) {
+          int cell = partition.getCell(level, graph.getRoadIntersection1(road));
+
+          if (cell == partition.getCell(level, graph.getRoadIntersection2(road))) {
+            isChanged[cell] = true;
+          }
+        }
+
+        cliqueWeights[level - 1] = previous.cliqueWeights[level - 1].clone();
+      } else {
+        cliqueWeights[level - 1] = new double[(int) overlay.getCliqueEdgeCount(level)];
+        Arrays.fill(isChanged, true);
+      }
+
+      int[] cells = IntStream.range(0, cellCount).filter(cell -> isChanged[cell]).toArray();
+
+      IntStream.of(cells).parallel()
+          .forEach(cell -> metric.customizeCell(workspaces.get(), cellLevel, cell));
+      customizedCellCount += cells.length;
+    }
+
+    return new OverlayMetric(overlay, graph, cliqueWeights, customizedCellCount,
+        (System.nanoTime() - startTime) / 1_000_000);
+  }
+
+  /**
+   * Computes the weights of the clique of a cell, with one search from every boundary intersection
+   * but the last. The cliques of the level below must have been computed.
+   */
+  private void customizeCell(SearchWorkspace workspace, int level, int cell) {
+    int first = this.overlay.getFirstBoundary(level, cell);
+    int k = this.overlay.getFirstBoundary(level, cell + 1) - first;
+    double[] weights = this.cliqueWeights[level - 1];
+
+    for (int i = 0; i < k - 1; i++) {
+      this.searchCell(workspace, level, cell, this.overlay.getBoundary(level, first + i), -1);
+
+      for (int j = i + 1; j < k; j++) {
+        weights[this.overlay.getCliqueIndex(level, cell, i, j)] =
+            workspace.getDistance(this.overlay.getBoundary(level, first + j));
+      }
+    }
+  }
+
+  /**
+   * Runs Dijkstra's algorithm inside a cell over the overlay of the level below it: the roads
+   * inside the cell if it is on level {@code 1}, and otherwise the clique edges of its subcells and
+   * the roads between them. The parent of an intersection that is reached by a clique edge is
+   * recorded as {@code -2 - i}, where {@code i} is the intersection at the other end.
+   *
+   * @param workspace the workspace to search in
+   * @param level the level of the cell
+   * @param cell the cell to search inside
+   * @param source the index of the intersection to search from, which must be in the cell and be a
+   *        boundary intersection of the level below, unless that is level {@code 0}
+   * @param target the index of the intersection at which to stop, or {@code -1} to search the whole
+   *        cell
+   */
+  void searchCell(SearchWorkspace workspace, int level, int cell, int source, int target) {
+    Partition partition = this.overlay.getPartition();
+    NodeQueue q = workspace.getQueue();
+    int subLevel = level - 1;
+
+    workspace.reset();
+    workspace.update(source, 0, -1, 0);
+
+    while (!q.isEmpty()) {
+      double minDistance = q.peekKey();
+      int min = workspace.poll();
+
+      if (minDistance > workspace.getDistance(min)) {
+        continue; // an outdated entry
+      }
+
+      if (min == target) {
+        break;
+      }
+
+      int subCell = subLevel > 0 ? partition.getCell(subLevel, min) : -1;
+
+      if (subLevel > 0) {
+        this.relaxClique(workspace, subLevel, subCell, min, minDistance);
+      }
+
+      int edgeEnd = this.graph.getFirstEdge(min + 1);
+
+      for (int edge = this.graph.getFirstEdge(min); edge < edgeEnd; edge++) {
+        int neighbor = this.graph.getEdgeTarget(edge);
+
+        // Roads inside a subcell are covered by its clique
+        if (partition.getCell(level, neighbor) != cell
+            || (subLevel > 0 && partition.getCell(subLevel, neighbor) == subCell)) {
+          continue;
+        }
+
+        double temp = minDistance + this.graph.getEdgeWeight(edge);
+
+        if (temp < workspace.getDistance(neighbor)) {
+          workspace.update(neighbor, temp, this.graph.getEdgeRoad(edge), 0);
+        }
+      }
+    }
+  }
+
+  /**
+   * Relaxes the clique edges from a boundary intersection of a cell to every other boundary
+   * intersection of the cell.
+   *
+   * @param workspace the workspace of the search
+   * @param level the level of the cell
+   * @param cell the cell of the intersection on the level
+   * @param intersection the index of the boundary intersection
+   * @param distance the distance of the intersection
+   */
+  void relaxClique(SearchWorkspace workspace, int level, int cell, int intersection,
+      double distance) {
+    int position = this.overlay.getBoundaryPosition(level, intersection);
+    int first = this.overlay.getFirstBoundary(level, cell);
+    int k = this.overlay.getFirstBoundary(level, cell + 1) - first;
+    double[] weights = this.cliqueWeights[level - 1];
+
+    for (int j = 0; j < k; j++) {
+      if (j != position) {
+        int neighbor = this.overlay.getBoundary(level, first + j);
+        double temp = distance + weights[this.overlay.getCliqueIndex(level, cell, position, j)];
+
+        if (temp < workspace.getDistance(neighbor)) {
+          workspace.update(neighbor, temp, -2 - intersection, 0);
+        }
+      }
+    }
+  }
+
+  /**
+   * Unpacks a clique edge into the roads of a shortest path inside its cell, by searching the cell
+   * and unpacking the clique edges of the level below that the path takes in turn.
+   *
+   * @param workspace a workspace to search in, whose state is lost
+   * @param level the level of the clique edge
+   * @param from the index of the intersection where the clique edge starts
+   * @param to the index of the intersection where the clique edge ends
+   * @param roads the list to add the roads of the path to, in travel order
+   */
+  void unpack(SearchWorkspace workspace, int level, int from, int to, IntList roads) {
+    int cell = this.overlay.getPartition().getCell(level, from);
+
+    this.searchCell(workspace, level, cell, from, to);
+
+    // Collect the steps of the path before the workspace is reused by the searches of the level
+    // below: every step is a road, or a clique edge from an intersection
+    IntList steps = new IntList();
+    IntList stepEnds = new IntList();
+
+    for (int current = to; current != from;) {
+      int parent = workspace.getParentRoad(current);
+
+      steps.add(parent);
+      stepEnds.add(current);
+      current = parent >= 0 ? this.graph.getTheOtherEnd(parent, current) : -2 - parent;
+    }
+
+    for (int i = steps.size() - 1; i >= 0; i--) {
+      int step = steps.get(i);
+
+      if (step >= 0) {
+        roads.add(step);
+      } else {
+        this.unpack(workspace, level - 1, -2 - step, stepEnds.get(i), roads);
+      }
+    }
+  }
+
+  /**
+   * Returns the overlay that this customizes.
+   *
+   * @return the overlay that this customizes.
+   */
+  public Overlay getOverlay() {
+    return this.overlay;
+  }
+
+  /**
+   * Returns the graph whose road distances this customization is for.
+   *
+   * @return the graph whose road distances this customization is for.
+   */
+  public RoadGraph getGraph() {
+    return this.graph;
+  }
+
+  /**
+   * Returns the number of cells whose cliques were computed, rather than copied from an earlier
+   * customization.
+   *
+   * @return the number of cells that were customized.
+   */
+  public int getCustomizedCellCount() {
+    return this.customizedCellCount;
+  }
+
+  /**
+   * Returns the time that the customization took.
+   *
+   * @return the customization time, in milliseconds.
+   */
+  public long getCustomizationTime() {
+    return this.customizationTime;
+  }
+
+  @Override
+  public String toString() {
+    long cliqueEdgeCount = 0;
+
+    for (int level = 1; level <= this.overlay.getPartition().getLevelCount(); level++) {
+      cliqueEdgeCount += this.overlay.getCliqueEdgeCount(level);
+    }
+
+    return String.format("Customized %d cells with %d clique edges in %d ms",
+        this.customizedCellCount, cliqueEdgeCount, this.customizationTime);
+  }
+}
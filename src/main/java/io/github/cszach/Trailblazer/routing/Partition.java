@@ -0,0 +1,355 @@
+package io.github.cszach.Trailblazer.routing;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.github.cszach.Trailblazer.geo.RoadGraph;
+
+/**
+ * A nested partition of the intersections of a graph into cells on several levels, where every cell
+ * of a level lies within a single cell of the level above it.
+ *
+ * <p>
+ * Level {@code 1} has the smallest cells and level {@code getLevelCount()} the largest; level
+ * {@code 0} stands for the graph itself, where every intersection is on its own. The cells are
+ * found by recursive geometric bisection, which is the first half of inertial flow: the
+ * intersections are projected onto several directions in the plane of their coordinates, and split
+ * at the median of the direction whose split cuts the fewest roads. Splits at the median keep the
+ * cells balanced, and road networks are close to planar, so a straight line between two halves cuts
+ * few roads. Halves are split in parallel until they are no larger than the cells of level
+ * {@code 1}, and a half becomes a cell of every level whose size it is the first to fit.
+ *
+ * <p>
+ * The partition only depends on the coordinates and the roads of the graph, not on road distances,
+ * so it survives changes to the distances.
+ *
+ * @see Overlay
+ */
+public final class Partition {
+  /**
+   * The largest number of intersections of a cell on every level, from level {@code 1} up, that
+   * {@code RoutingEngine} uses.
+   */
+  public static final int[] DEFAULT_CELL_SIZES = {128, 1024, 8192, 65536};
+
+  /**
+   * The number of directions to try for every split: horizontal, vertical, and the two diagonals.
+   */
+  private static final int DIRECTION_COUNT = 4;
+  /**
+   * The number of intersections below which halves are split on the calling thread.
+   */
+  private static final int PARALLEL_THRESHOLD = 8192;
+
+  /**
+   * The cell of every intersection on every level, where {@code cells[level - 1][intersection]} is
+   * the cell of the intersection on {@code level}.
+   */
+  private final int[][] cells;
+  private final int[] cellCounts;
+  private final long preprocessingTime;
+
+  private Partition(int[][] cells, int[] cellCounts, long preprocessingTime) {
+    this.cells = cells;
+    this.cellCounts = cellCounts;
+    this.preprocessingTime = preprocessingTime;
+  }
+
+  /**
+   * Partitions a graph into cells on several levels.
+   *
+   * @param graph the graph to partition
+   * @param cellSizes the largest number of intersections of a cell on every level, from level
+   *        {@code 1} up, in increasing order; levels whose cells would hold the whole graph are
+   *        left out
+   * @return the partition of the graph.
+   * @throws IllegalArgumentException when the sizes are not positive and increasing.
+   */
+  public static Partition build(RoadGraph graph, int[] cellSizes) {
+    long startTime = System.nanoTime();
+    int n = graph.getIntersectionCount();
+
+    for (int i = 0; i < cellSizes.length; i++) {
+      if (cellSizes[i] <= 0 || (i > 0 && cellSizes[i] <= cellSizes[i - 1])) {
+        throw new IllegalArgumentException("Cell sizes must be positive and increasing");
+      }
+    }
+
+    int levelCount = 0;
+    while (levelCount < cellSizes.length && cellSizes[levelCount] < n) {
+      levelCount++;
+    }
+
+    int[][] cells = new int[levelCount][n];
+    Bisection bisection = new Bisection(graph, Arrays.copyOf(cellSizes, levelCount), cells);
+    int[] intersections = new int[n];
+
+    for (int intersection = 0; intersection < n; intersection++) {
+      intersections[intersection] = intersection;
+    }
+
+    if (levelCount > 0) {
+      ForkJoinPool.commonPool().invoke(bisection.new Split(intersections, 0, n, levelCount));
+    }
+
+    // Cells are numbered in whatever order the parallel splits finish, so renumber them in the
+    // order of their first intersection, which does not depend on timing
+
+    int[] cellCounts = new int[levelCount];
+
+    for (int level = 0; level < levelCount; level++) {
+      int[] levelCells = cells[level];
+      int[] newIds = new int[bisection.cellCounters[level].get()];
+
+      Arrays.fill(newIds, -1);
+
+      for (int intersection = 0; intersection < n; intersection++) {
+        int cell = levelCells[intersection];
+
+        if (newIds[cell] < 0) {
+          newIds[cell] = cellCounts[level]++;
+        }
+
+        levelCells[intersection] = newIds[cell];
+      }
+    }
+
+    return new Partition(cells, cellCounts, (System.nanoTime() - startTime) / 1_000_000);
+  }
+
+  /**
+   * The state of a recursive bisection of a graph.
+   */
+  private static final class Bisection {
+    private final RoadGraph graph;
+    private final int[] cellSizes;
+    private final int[][] cells;
+    private final AtomicInteger[] cellCounters;
+    /**
+     * The side of every intersection in the split that last looked at it, as a stamp that is unique
+     * to the split and the side, so that parallel splits of disjoint halves never mistake each
+     * other's marks.
+     */
+    private final int[] sides;
+    private final AtomicInteger stamps = new AtomicInteger();
+    /**
+     * The projections of the coordinates of every intersection onto every direction, where
+     * {@code projections[d][intersection]} is the projection onto direction {@code d}.
+     */
+    private final float[][] projections;
+
+    Bisection(RoadGraph graph, int[] cellSizes, int[][] cells) {
+      int n = graph.getIntersectionCount();
+
+      this.graph = graph;
+      this.cellSizes = cellSizes;
+      this.cells = cells;
+      this.cellCounters = new AtomicInteger[cellSizes.length];
+      this.sides = new int[n];
+      this.projections = new float[DIRECTION_COUNT][n];
+
+      for (int level = 0; level < cellSizes.length; level++) {
+        this.cellCounters[level] = new AtomicInteger();
+      }
+
+      // Project onto a plane where a degree of longtitude is as long as a degree of latitude
+      double meanLatitude = 0;
+
+      for (int intersection = 0; intersection < n; intersection++) {
+        meanLatitude += graph.getLatitude(intersection) / n;
+      }
+
+      double longtitudeScale = Math.cos(Math.toRadians(meanLatitude));
+
+      for (int intersection = 0; intersection < n; intersection++) {
+        double x = graph.getLongtitude(intersection) * longtitudeScale;
+        double y = graph.getLatitude(intersection);
+
+        this.projections[0][intersection] = (float) x;
+        this.projections[1][intersection] = (float) y;
+        this.projections[2][intersection] = (float) (x + y);
+        this.projections[3][intersection] = (float) (x - y);
+      }
+    }
+
+    /**
+     * A split of a range of intersections in two halves, which are then split in turn.
+     */
+    private final class Split extends RecursiveAction {
+      private static final long serialVersionUID = 1L;
+
+      private final int[] intersections;
+      private final int from;
+      private final int to;
+      /**
+       * The number of levels whose cells have not been assigned to the range yet, which are the
+       * lowest ones.
+       */
+      private final int openLevels;
+
+      Split(int[] intersections, int from, int to, int openLevels) {
+        this.intersections = intersections;
+        this.from = from;
+        this.to = to;
+        this.openLevels = openLevels;
+      }
+
+      @Override
+      protected void compute() {
+        int size = this.to - this.from;
+        int openLevels = this.openLevels;
+
+        // The range becomes a cell of every open level that it fits
+        while (openLevels > 0 && size <= cellSizes[openLevels - 1]) {
+          int level = openLevels - 1;
+          int cell = cellCounters[level].getAndIncrement();
+
+          for (int i = this.from; i < this.to; i++) {
+            cells[level][this.intersections[i]] = cell;
+          }
+
+          openLevels--;
+        }
+
+        if (openLevels == 0) {
+          return;
+        }
+
+        this.bisect();
+
+        int middle = this.from + size / 2;
+        Split left = new Split(this.intersections, this.from, middle, openLevels);
+        Split right = new Split(this.intersections, middle, this.to, openLevels);
+
+        if (size >= PARALLEL_THRESHOLD) {
+          invokeAll(left, right);
+        } else {
+          left.compute();
+          right.compute();
+        }
+      }
+
+      /**
+       * Orders the range so that its first half is the half of the best direction.
+       */
+      private void bisect() {
+        int size = this.to - this.from;
+        int middle = size / 2;
+        long[] bestOrder = null;
+        long bestCut = Long.MAX_VALUE;
+
+        for (int direction = 0; direction < DIRECTION_COUNT; direction++) {
+          float[] projection = projections[direction];
+          long[] order = new long[size];
+
+          // Sort by projection, with the intersection in the low bits to break ties
+          for (int i = 0; i < size; i++) {
+            int intersection = this.intersections[this.from + i];
+
+            order[i] = ((long) sortableBits(projection[intersection]) << 32) | intersection;
+          }
+
+          Arrays.sort(order);
+
+          long cut = this.countCut(order, middle);
+
+          if (cut < bestCut) {
+            bestCut = cut;
+            bestOrder = order;
+          }
+        }
+
+        for (int i = 0; i < size; i++) {
+          this.intersections[this.from + i] = (int) bestOrder[i];
+        }
+      }
+
+      /**
+       * Counts the roads between the first {@code middle} intersections of an order and the rest.
+       */
+      private long countCut(long[] order, int middle) {
+        int stamp = stamps.getAndAdd(2);
+        long cut = 0;
+
+        for (int i = 0; i < order.length; i++) {
+          sides[(int) order[i]] = i < middle ? stamp : stamp + 1;
+        }
+
+        for (int i = 0; i < middle; i++) {
+          int intersection = (int) order[i];
+          int edgeEnd = graph.getFirstEdge(intersection + 1);
+
+          for (int edge = graph.getFirstEdge(intersection); edge < edgeEnd; edge++) {
+            if (sides[graph.getEdgeTarget(edge)] == stamp + 1) {
+              cut++;
+            }
+          }
+        }
+
+        return cut;
+      }
+    }
+
+    /**
+     * Maps a {@code float} to an {@code int} with the same order.
+     */
+    private static int sortableBits(float value) {
+      int bits = Float.floatToIntBits(value);
+
+      return bits ^ ((bits >> 31) & 0x7fffffff);
+    }
+  }
+
+  /**
+   * Returns the number of levels.
+   *
+   * @return the number of levels, not counting level {@code 0}.
+   */
+  public int getLevelCount() {
+    return this.cells.length;
+  }
+
+  /**
+   * Returns the number of cells of a level.
+   *
+   * @param level the level, from {@code 1} to {@code getLevelCount()}
+   * @return the number of cells of the level.
+   */
+  public int getCellCount(int level) {
+    return this.cellCounts[level - 1];
+  }
+
+  /**
+   * Returns the cell of an intersection on a level.
+   *
+   * @param level the level, from {@code 1} to {@code getLevelCount()}
+   * @param intersection the index of the intersection
+   * @return the number of the cell of the intersection on the level.
+   */
+  public int getCell(int level, int intersection) {
+    return this.cells[level - 1][intersection];
+  }
+
+  /**
+   * Returns the time that partitioning took.
+   *
+   * @return the preprocessing time, in milliseconds.
+   */
+  public long getPreprocessingTime() {
+    return this.preprocessingTime;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder counts = new StringBuilder();
+
+    for (int level = 1; level <= this.getLevelCount(); level++) {
+      counts.append(level > 1 ? ", " : "").append(this.getCellCount(level));
+    }
+
+    return String.format("Partitioned into %d levels of %s cells in %d ms", this.getLevelCount(),
+        counts, this.preprocessingTime);
+  }
+}
@@ -0,0 +1,60 @@
+package io.github.cszach.Trailblazer.routing;
+
+/**
+ * The priority queues that the searches of a {@code RoutingEngine} can use.
+ *
+ * @see RoutingEngine#RoutingEngine(io.github.cszach.Trailblazer.geo.RoadGraph,
+ *      ContractionHierarchy, QueueType)
+ */
+public enum QueueType {
+  /**
+   * An indexed 4-ary heap with decrease-key, which orders distances exactly.
+   */
+  HEAP("heap"),
+  /**
+   * A radix heap over distances scaled to integers, whose operations cost depends on the range of
+   * the queued distances rather than on their number. It orders distances exactly up to a nanomile.
+   */
+  RADIX("radix");
+
+  /**
+   * The name of the queue on the command line.
+   */
+  private final String name;
+
+  private QueueType(String name) {
+    this.name = name;
+  }
+
+  /**
+   * Returns the queue with a given command line name.
+   *
+   * @param name the name of the queue, such as {@code radix}
+   * @return the queue with the given name.
+   * @throws IllegalArgumentException when no queue has the given name.
+   */
+  public static QueueType fromName(String name) {
+    for (QueueType queueType : values()) {
+      if (queueType.name.equals(name)) {
+        return queueType;
+      }
+    }
+
+    throw new IllegalArgumentException("Unknown queue " + name);
+  }
+
+  /**
+   * Creates an empty queue of this type.
+   *
+   * @param intersectionCount the number of intersections in the graph to search
+   * @return the new queue.
+   */
+  NodeQueue create(int intersectionCount) {
+    return this == RADIX ? new RadixQueue() : new IndexedHeap(intersectionCount);
+  }
+
+  @Override
+  public String toString() {
+    return this.name;
+  }
+}
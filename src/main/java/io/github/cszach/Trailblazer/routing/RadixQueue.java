@@ -0,0 +1,131 @@
+package io.github.cszach.Trailblazer.routing;
+
+import java.util.Arrays;
+
+/**
+ * A radix heap of intersection indices keyed by distance, for searches whose keys never go below
+ * the last polled key, as in Dijkstra's algorithm.
+ *
+ * <p>
+ * Keys are scaled to integers in units of {@code RESOLUTION} miles. Bucket {@code 0} holds the
+ * entries whose integer key equals the last polled one, and bucket {@code b} holds those whose
+ * integer key first differs from it at bit {@code b - 1}. Only the lowest non-empty bucket is ever
+ * searched and redistributed, and every entry moves to a lower bucket each time, so an entry is
+ * moved at most 64 times, and usually far fewer. Entries in the same bucket {@code 0} are polled in
+ * any order, so this queue orders keys exactly only up to {@code RESOLUTION}.
+ *
+ * <p>
+ * Lowering the key of an intersection adds another entry, so searches must skip outdated entries.
+ */
+class RadixQueue implements NodeQueue {
+  /**
+   * The distance, in miles, that integer keys count in.
+   */
+  static final double RESOLUTION = 1e-9;
+
+  private static final int BUCKET_COUNT = Long.SIZE + 1;
+
+  private final int[][] nodes = new int[BUCKET_COUNT][];
+  private final double[][] keys = new double[BUCKET_COUNT][];
+  private final long[][] scaledKeys = new long[BUCKET_COUNT][];
+  private final int[] sizes = new int[BUCKET_COUNT];
+  /**
+   * The integer key of the last polled entry.
+   */
+  private long last = 0;
+  private int size = 0;
+
+  RadixQueue() {
+    for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+      this.nodes[bucket] = new int[16];
+      this.keys[bucket] = new double[16];
+      this.scaledKeys[bucket] = new long[16];
+    }
+  }
+
+  @Override
+  public void clear() {
+    Arrays.fill(this.sizes, 0);
+    this.last = 0;
+    this.size = 0;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return this.size == 0;
+  }
+
+  @Override
+  public double peekKey() {
+    this.fillFirstBucket();
+
+    return this.keys[0][this.sizes[0] - 1];
+  }
+
+  @Override
+  public int poll() {
+    this.fillFirstBucket();
+    this.size--;
+
+    return this.nodes[0][--this.sizes[0]];
+  }
+
+  @Override
+  public void add(int node, double key) {
+    // A key below the last polled one can only come from rounding errors, and is treated as equal
+    long scaledKey = Math.max((long) (key / RESOLUTION), this.last);
+
+    this.put(node, key, scaledKey);
+    this.size++;
+  }
+
+  private void put(int node, double key, long scaledKey) {
+    int bucket =
+        scaledKey == this.last ? 0 : Long.SIZE - Long.numberOfLeadingZeros(scaledKey ^ this.last);
+    int bucketSize = this.sizes[bucket];
+
+    if (bucketSize == this.nodes[bucket].length) {
+      this.nodes[bucket] = Arrays.copyOf(this.nodes[bucket], bucketSize * 2);
+      this.keys[bucket] = Arrays.copyOf(this.keys[bucket], bucketSize * 2);
+      this.scaledKeys[bucket] = Arrays.copyOf(this.scaledKeys[bucket], bucketSize * 2);
+    }
+
+    this.nodes[bucket][bucketSize] = node;
+    this.keys[bucket][bucketSize] = key;
+    this.scaledKeys[bucket][bucketSize] = scaledKey;
+    this.sizes[bucket]++;
+  }
+
+  /**
+   * Makes sure that bucket {@code 0} is not empty, by moving the smallest integer key of the lowest
+   * non-empty bucket to {@code last} and redistributing that bucket. This queue must not be empty.
+   */
+  private void fillFirstBucket() {
+    if (this.sizes[0] > 0) {
+      return;
+    }
+
+    int bucket = 1;
+    while (this.sizes[bucket] == 0) {
+      bucket++;
+    }
+
+    int bucketSize = this.sizes[bucket];
+    int[] bucketNodes = this.nodes[bucket];
+    double[] bucketKeys = this.keys[bucket];
+    long[] bucketScaledKeys = this.scaledKeys[bucket];
+    long min = Long.MAX_VALUE;
+
+    for (int i = 0; i < bucketSize; i++) {
+      min = Math.min(min, bucketScaledKeys[i]);
+    }
+
+    // Every entry of the bucket lands in a lower bucket, so the arrays being read are not written
+    this.last = min;
+    this.sizes[bucket] = 0;
+
+    for (int i = 0; i < bucketSize; i++) {
+      this.put(bucketNodes[i], bucketKeys[i], bucketScaledKeys[i]);
+    }
+  }
+}
@@ -0,0 +1,101 @@
+package io.github.cszach.Trailblazer.routing;
+
+/**
+ * The result of a shortest path query: the roads to take from the start intersection to the end,
+ * and some statistics about the search.
+ *
+ * <p>
+ * A {@code Route} is immutable, so it can be shared freely between threads. Intersections and roads
+ * are referred to by their indices in the {@code RoadGraph} that was searched.
+ *
+ * @see RoutingEngine
+ */
+public final class Route {
+  private final int[] intersections;
+  private final int[] roads;
+  private final double distance;
+  private final int settledCount;
+
+  /**
+   * Constructs a new {@code Route}.
+   *
+   * @param intersections the intersections along the route, from the start to the end, or just the
+   *        start and the end if no path connects them
+   * @param roads the roads along the route, in order, or {@code null} if no path connects the start
+   *        and the end
+   * @param distance the total distance of the route
+   * @param settledCount the number of intersections that the search settled
+   */
+  Route(int[] intersections, int[] roads, double distance, int settledCount) {
+    this.intersections = intersections;
+    this.roads = roads;
+    this.distance = distance;
+    this.settledCount = settledCount;
+  }
+
+  /**
+   * Checks whether a path connects the start and the end intersection.
+   *
+   * @return {@code true} if a path was found, {@code false} otherwise.
+   */
+  public boolean isFound() {
+    return this.roads != null;
+  }
+
+  /**
+   * Returns the start intersection.
+   *
+   * @return the index of the start intersection.
+   */
+  public int getStartIntersection() {
+    return this.intersections[0];
+  }
+
+  /**
+   * Returns the end intersection.
+   *
+   * @return the index of the end intersection.
+   */
+  public int getEndIntersection() {
+    return this.intersections[this.intersections.length - 1];
+  }
+
+  /**
+   * Returns the intersections along this route.
+   *
+   * @return the indices of the intersections along this route, from the start to the end; empty if
+   *         no path was found.
+   */
+  public int[] getIntersections() {
+    return this.isFound() ? this.intersections.clone() : new int[0];
+  }
+
+  /**
+   * Returns the roads along this route.
+   *
+   * @return the indices of the roads along this route, in the order that they should be taken;
+   *         empty if no path was found or the start is the end.
+   */
+  public int[] getRoads() {
+    return this.isFound() ? this.roads.clone() : new int[0];
+  }
+
+  /**
+   * Returns the total distance of this route.
+   *
+   * @return the total distance, in miles, of this route, or {@code +Infinity} if no path was found.
+   */
+  public double getDistance() {
+    return this.distance;
+  }
+
+  /**
+   * Returns the number of intersections that the search settled, that is, whose shortest distance
+   * from the start it determined. This measures the work of the search.
+   *
+   * @return the number of intersections that the search settled.
+   */
+  public int getSettledCount() {
+    return this.settledCount;
+  }
+}
@@ -0,0 +1,415 @@
+package io.github.cszach.Trailblazer.routing;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread-safe, size-bounded cache of shortest routes in front of a {@code RoutingEngine}.
+ *
+ * <p>
+ * Routes are kept by their start and end intersection. Since every part of a shortest path is
+ * itself a shortest path between its ends (and, roads being two-way, so is the part read
+ * backwards), a cached route also answers the queries between any two intersections along it. An
+ * index from every intersection to the cached routes through it finds such a route without
+ * searching.
+ *
+ * <p>
+ * The cache is bounded both by its number of routes and by the total number of intersections along
+ * them, which is what the index and the routes take memory for: a few long routes across a state
+ * weigh as much as thousands of short ones. Once either bound is passed, routes are evicted in the
+ * order they were cached, except that a route that has answered a query since it was last looked at
+ * gets a second chance, which approximates evicting the least recently used route.
+ *
+ * <p>
+ * Lookups take no lock, and a miss indexes its route without holding up other threads, so that
+ * threads that hit and miss run in parallel. Two threads that miss the same query at once both
+ * search, and the first result is kept.
+ *
+ * <p>
+ * Cached routes refer to intersections by index, so they are only valid for the graph that they
+ * were found in. When the graph is reloaded, the cache must be given an engine over the new graph
+ * with {@code setEngine}, which drops every cached route.
+ *
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * RouteCache cache = new RouteCache(new RoutingEngine(geo.getGraph()), Algorithm.DIJKSTRA, 10_000);
+ * Route route = cache.findShortestPath(geo.getIntersection("SUEB").getIndex(),
+ *     geo.getIntersection("HOYT").getIndex());
+ * </pre>
+ *
+ * @see RoutingEngine#findShortestPath(int, int, Algorithm)
+ */
+public final class RouteCache {
+  /**
+   * The number of routes that {@code App} keeps.
+   */
+  public static final int DEFAULT_CAPACITY = 10_000;
+  /**
+   * The total number of intersections along the routes that {@code App} keeps, which bounds the
+   * index to a hundred megabytes or so.
+   */
+  public static final long DEFAULT_INTERSECTION_CAPACITY = 1_000_000;
+
+  /**
+   * A cached route, with its intersections and roads unpacked for finding subpaths.
+   */
+  private static final class Entry {
+    private final long key;
+    private final Route route;
+    private final int[] intersections;
+    private final int[] roads;
+    /**
+     * Whether the route has answered a query since eviction last looked at it.
+     */
+    private volatile boolean referenced = false;
+
+    Entry(long key, Route route) {
+      this.key = key;
+      this.route = route;
+      this.intersections = route.getIntersections();
+      this.roads = route.getRoads();
+    }
+
+    /**
+     * Returns how much of the intersection capacity the route takes: an index entry per
+     * intersection, or 1 if no path was found, which is not indexed.
+     */
+    long getWeight() {
+      return this.route.isFound() ? this.intersections.length : 1;
+    }
+  }
+
+  /**
+   * The cached routes of an engine. It is replaced as a whole when the engine is, so that a route
+   * that was found with the old engine is added to the old contents, which nothing reads anymore.
+   */
+  private static final class Contents {
+    private final RoutingEngine engine;
+    /**
+     * The cached routes by their start and end.
+     */
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    /**
+     * The cached routes through every intersection.
+     */
+    private final Map<Integer, Set<Entry>> entriesByIntersection = new ConcurrentHashMap<>();
+    /**
+     * The cached routes in the order that they are considered for eviction.
+     */
+    private final Queue<Entry> evictionQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicLong weight = new AtomicLong();
+
+    Contents(RoutingEngine engine) {
+      this.engine = engine;
+    }
+  }
+
+  private final Algorithm algorithm;
+  private final int capacity;
+  private final long intersectionCapacity;
+  private volatile Contents contents;
+
+  private final LongAdder hitCount = new LongAdder();
+  private final LongAdder subpathHitCount = new LongAdder();
+  private final LongAdder missCount = new LongAdder();
+  private final LongAdder evictionCount = new LongAdder();
+
+  /**
+   * Constructs a new, empty {@code RouteCache} of at most {@code DEFAULT_INTERSECTION_CAPACITY}
+   * intersections.
+   *
+   * @param engine the engine that finds the routes that are not cached
+   * @param algorithm the algorithm that the engine searches with
+   * @param capacity the largest number of routes to keep
+   * @throws IllegalArgumentException when the capacity is not positive.
+   */
+  public RouteCache(RoutingEngine engine, Algorithm algorithm, int capacity) {
+    this(engine, algorithm, capacity, DEFAULT_INTERSECTION_CAPACITY);
+  }
+
+  /**
+   * Constructs a new, empty {@code RouteCache}.
+   *
+   * @param engine the engine that finds the routes that are not cached
+   * @param algorithm the algorithm that the engine searches with
+   * @param capacity the largest number of routes to keep
+   * @param intersectionCapacity the largest total number of intersections along the routes to keep;
+   *        a longer route is never cached
+   * @throws IllegalArgumentException when a capacity is not positive.
+   */
+  public RouteCache(RoutingEngine engine, Algorithm algorithm, int capacity,
+      long intersectionCapacity) {
+    if (capacity <= 0 || intersectionCapacity <= 0) {
+      throw new IllegalArgumentException("The capacity of the cache must be positive");
+    }
+
+    this.contents = new Contents(Objects.requireNonNull(engine));
+    this.algorithm = Objects.requireNonNull(algorithm);
+    this.capacity = capacity;
+    this.intersectionCapacity = intersectionCapacity;
+  }
+
+  /**
+   * Finds the shortest path between two intersections, from the cache if a cached route contains
+   * both of them, and with the engine otherwise.
+   *
+   * @param startIntersection the index of the start intersection
+   * @param endIntersection the index of the end intersection
+   * @return the shortest route from the start intersection to the end.
+   * @throws IndexOutOfBoundsException when an index is not that of an intersection.
+   */
+  public Route findShortestPath(int startIntersection, int endIntersection) {
+    long key = ((long) startIntersection << 32) | (endIntersection & 0xffffffffL);
+    Contents current = this.contents;
+    Entry entry = current.entries.get(key);
+
+    if (entry != null) {
+      entry.referenced = true;
+      this.hitCount.increment();
+
+      return entry.route;
+    }
+
+    Route subpath = this.findSubpath(current, startIntersection, endIntersection);
+
+    if (subpath != null) {
+      this.hitCount.increment();
+      this.subpathHitCount.increment();
+
+      return subpath;
+    }
+
+    this.missCount.increment();
+
+    Route route =
+        current.engine.findShortestPath(startIntersection, endIntersection, this.algorithm);
+
+    this.put(current, new Entry(key, route));
+
+    return route;
+  }
+
+  /**
+   * Finds a cached route through two intersections, and cuts out the part between them.
+   *
+   * @return the part of a cached route from the start intersection to the end, or {@code null} if
+   *         no cached route goes through both.
+   */
+  private Route findSubpath(Contents current, int startIntersection, int endIntersection) {
+    Set<Entry> startEntries = current.entriesByIntersection.get(startIntersection);
+    Set<Entry> endEntries = current.entriesByIntersection.get(endIntersection);
+
+    if (startEntries == null || endEntries == null) {
+      return null;
+    }
+
+    Set<Entry> smaller = startEntries.size() <= endEntries.size() ? startEntries : endEntries;
+    Set<Entry> larger = smaller == startEntries ? endEntries : startEntries;
+
+    for (Entry entry : smaller) {
+      if (larger.contains(entry)) {
+        entry.referenced = true;
+
+        return cut(current.engine, entry, startIntersection, endIntersection);
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Cuts out the part of a cached route between two intersections along it, reversing it if the end
+   * comes first.
+   */
+  private static Route cut(RoutingEngine engine, Entry entry, int startIntersection,
+      int endIntersection) {
+    int startPosition = indexOf(entry.intersections, startIntersection);
+    int endPosition = indexOf(entry.intersections, endIntersection);
+    int length = Math.abs(endPosition - startPosition);
+    int step = endPosition >= startPosition ? 1 : -1;
+    int[] intersections = new int[length + 1];
+    int[] roads = new int[length];
+    double distance = 0.0;
+
+    for (int i = 0; i <= length; i++) {
+      intersections[i] = entry.intersections[startPosition + i * step];
+    }
+
+    // Road i of the route joins intersections i and i + 1, so going backwards starts a road earlier
+    for (int i = 0; i < length; i++) {
+      roads[i] = entry.roads[step > 0 ? startPosition + i : startPosition - i - 1];
+      distance += engine.getGraph().getRoadDistance(roads[i]);
+    }
+
+    return new Route(intersections, roads, distance, 0);
+  }
+
+  private static int indexOf(int[] array, int value) {
+    for (int i = 0; i < array.length; i++) {
+      if (array[i] == value) {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
+  /**
+   * Adds a route to the cache, unless the query already has one, and evicts routes while the cache
+   * is over capacity. The route is indexed before it can be evicted, so that eviction always finds
+   * every index entry of the routes that it removes.
+   */
+  private void put(Contents current, Entry entry) {
+    long weight = entry.getWeight();
+
+    if (weight > this.intersectionCapacity
+        || current.entries.putIfAbsent(entry.key, entry) != null) {
+      return;
+    }
+
+    if (entry.route.isFound()) {
+      for (int intersection : entry.intersections) {
+        current.entriesByIntersection.compute(intersection, (key, intersectionEntries) -> {
+          Set<Entry> updated =
+              intersectionEntries != null ? intersectionEntries : ConcurrentHashMap.newKeySet();
+
+          updated.add(entry);
+
+          return updated;
+        });
+      }
+    }
+
+    current.evictionQueue.add(entry);
+    current.weight.addAndGet(weight);
+
+    while (current.entries.size() > this.capacity
+        || current.weight.get() > this.intersectionCapacity) {
+      Entry eldest = current.evictionQueue.poll();
+
+      if (eldest == null) {
+        break;
+      }
+
+      if (eldest.referenced) {
+        eldest.referenced = false;
+        current.evictionQueue.add(eldest);
+      } else if (current.entries.remove(eldest.key, eldest)) {
+        unindex(current, eldest);
+        current.weight.addAndGet(-eldest.getWeight());
+        this.evictionCount.increment();
+      }
+    }
+  }
+
+  private static void unindex(Contents current, Entry entry) {
+    if (!entry.route.isFound()) {
+      return;
+    }
+
+    for (int intersection : entry.intersections) {
+      current.entriesByIntersection.computeIfPresent(intersection, (key, intersectionEntries) -> {
+        intersectionEntries.remove(entry);
+
+        return intersectionEntries.isEmpty() ? null : intersectionEntries;
+      });
+    }
+  }
+
+  /**
+   * Replaces the engine that finds the routes that are not cached, and drops every cached route.
+   * This must be called when the graph is reloaded, with an engine over the new graph.
+   *
+   * @param engine the engine over the new graph
+   */
+  public void setEngine(RoutingEngine engine) {
+    this.contents = new Contents(Objects.requireNonNull(engine));
+  }
+
+  /**
+   * Returns the engine that finds the routes that are not cached.
+   *
+   * @return the engine that finds the routes that are not cached.
+   */
+  public RoutingEngine getEngine() {
+    return this.contents.engine;
+  }
+
+  /**
+   * Drops every cached route. The counters are kept.
+   */
+  public void clear() {
+    this.contents = new Contents(this.contents.engine);
+  }
+
+  /**
+   * Returns the number of cached routes.
+   *
+   * @return the number of cached routes.
+   */
+  public int size() {
+    return this.contents.entries.size();
+  }
+
+  /**
+   * Returns the total number of intersections along the cached routes, counting 1 for a query
+   * between intersections that no path connects.
+   *
+   * @return the number of cached intersections.
+   */
+  public long getIntersectionCount() {
+    return this.contents.weight.get();
+  }
+
+  /**
+   * Returns the number of queries that the cache answered, including those answered by part of a
+   * cached route.
+   *
+   * @return the number of hits.
+   */
+  public long getHitCount() {
+    return this.hitCount.sum();
+  }
+
+  /**
+   * Returns the number of queries that the cache answered by part of a cached route.
+   *
+   * @return the number of hits on subpaths.
+   */
+  public long getSubpathHitCount() {
+    return this.subpathHitCount.sum();
+  }
+
+  /**
+   * Returns the number of queries that the engine had to answer.
+   *
+   * @return the number of misses.
+   */
+  public long getMissCount() {
+    return this.missCount.sum();
+  }
+
+  /**
+   * Returns the number of routes that were evicted to keep the cache within its capacity.
+   *
+   * @return the number of evictions.
+   */
+  public long getEvictionCount() {
+    return this.evictionCount.sum();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Route cache: %d hits (%d on subpaths), %d misses, %d evictions",
+        this.getHitCount(), this.getSubpathHitCount(), this.getMissCount(),
+        this.getEvictionCount());
+  }
+}
@@ -0,0 +1,1759 @@
+package io.github.cszach.Trailblazer.routing;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.IntStream;
+
+import io.github.cszach.Trailblazer.geo.Road;
+import io.github.cszach.Trailblazer.geo.RoadChains;
+import io.github.cszach.Trailblazer.geo.RoadGraph;
+import io.github.cszach.Trailblazer.metrics.Metrics;
+import io.github.cszach.Trailblazer.metrics.SearchEvent;
+
+/**
+ * A thread-safe engine that answers shortest path queries over a {@code RoadGraph}.
+ *
+ * <p>
+ * The graph is never modified. All the state of a query lives in a {@code SearchWorkspace} that
+ * belongs to the calling thread and is reused by its later queries, and the answer is returned as
+ * an immutable {@code Route}. Any number of threads can therefore query the same engine at once,
+ * without locking.
+ *
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * RoutingEngine engine = new RoutingEngine(geo.getGraph());
+ * Route route = engine.findShortestPath(geo.getIntersection("SUEB").getIndex(),
+ *     geo.getIntersection("HOYT").getIndex());
+ * </pre>
+ *
+ * @see Route
+ */
+public class RoutingEngine {
+  /**
+   * The number of queries above which batches are answered in parallel.
+   */
+  private static final int PARALLEL_THRESHOLD = 16;
+  /**
+   * How much longer than the shortest path an alternative route may be, as a fraction of the
+   * shortest distance.
+   */
+  private static final double MAX_STRETCH = 0.25;
+  /**
+   * How much of its distance an alternative route may share with each route chosen before it, as a
+   * fraction of the shortest distance.
+   */
+  private static final double MAX_SHARING = 0.8;
+  /**
+   * The distance around its via intersection, as a fraction of the shortest distance, along which
+   * an alternative route must be a shortest path.
+   */
+  private static final double LOCAL_OPTIMALITY = 0.25;
+  /**
+   * The number of candidates per requested alternative whose local optimality is tested before
+   * giving up.
+   */
+  private static final int MAX_TESTS_PER_ALTERNATIVE = 16;
+
+  private final RoadGraph graph;
+  /**
+   * The contraction hierarchy of the graph, or {@code null} if there is none.
+   */
+  private final ContractionHierarchy hierarchy;
+  /**
+   * The connected components of the graph, which answer unreachable queries without searching.
+   */
+  private final ConnectedComponents components;
+  private final QueueType queueType;
+  /**
+   * The chains of the graph, or {@code null} if point-to-point queries search the graph itself.
+   */
+  private final RoadChains chains;
+  /**
+   * The engine over the core graph of the chains, or {@code null} if there are none.
+   */
+  private final RoutingEngine coreEngine;
+  /**
+   * The workspace of every thread that has queried this engine.
+   */
+  private final ThreadLocal<SearchWorkspace> workspaces;
+  /**
+   * The workspace of every thread for the backward half of bidirectional searches.
+   */
+  private final ThreadLocal<SearchWorkspace> backwardWorkspaces;
+  /**
+   * The workspace of every thread for the local optimality tests of alternative routes.
+   */
+  private final ThreadLocal<SearchWorkspace> testWorkspaces;
+  /**
+   * The factor that great-circle distances are scaled by to become lower bounds of road distances
+   * for A*, or {@code NaN} until it is needed.
+   */
+  private volatile double heuristicScale = Double.NaN;
+  /**
+   * The landmarks for ALT, or {@code null} until they are needed.
+   */
+  private volatile Landmarks landmarks;
+  /**
+   * The customized overlay for {@code Algorithm.CRP}, or {@code null} until it is needed.
+   */
+  private volatile OverlayMetric overlayMetric;
+
+  /**
+   * Constructs a new {@code RoutingEngine} over a graph.
+   *
+   * @param graph the graph to search, which must not be modified afterwards
+   */
+  public RoutingEngine(RoadGraph graph) {
+    this(graph, null);
+  }
+
+  /**
+   * Constructs a new {@code RoutingEngine} over a graph and its contraction hierarchy, which
+   * enables {@code Algorithm.CH}.
+   *
+   * @param graph the graph to search, which must not be modified afterwards
+   * @param hierarchy the contraction hierarchy of the graph, or {@code null}
+   * @throws IllegalArgumentException when the hierarchy was not built from the graph.
+   */
+  public RoutingEngine(RoadGraph graph, ContractionHierarchy hierarchy) {
+    this(graph, hierarchy, QueueType.HEAP);
+  }
+
+  /**
+   * Constructs a new {@code RoutingEngine} over a graph and its contraction hierarchy, whose
+   * searches use a given type of priority queue.
+   *
+   * @param graph the graph to search, which must not be modified afterwards
+   * @param hierarchy the contraction hierarchy of the graph, or {@code null}
+   * @param queueType the type of the priority queue of every search
+   * @throws IllegalArgumentException when the hierarchy was not built from the graph.
+   */
+  public RoutingEngine(RoadGraph graph, ContractionHierarchy hierarchy, QueueType queueType) {
+    this(graph, hierarchy, queueType, null, null, null);
+  }
+
+  /**
+   * Constructs a new {@code RoutingEngine} over a graph whose point-to-point queries search the
+   * core graph of its chains, which enables every algorithm on the core graph, including
+   * {@code Algorithm.CH} if a contraction hierarchy of the core graph is given. Queries that start
+   * or end at an inner intersection of a chain leave it at either end, and the route through the
+   * core graph is expanded into the roads of the graph. Alternative routes, shortest path trees,
+   * and distance matrices search the graph itself.
+   *
+   * @param chains the chains of the graph to search, whose graph must not be modified afterwards
+   * @param coreHierarchy the contraction hierarchy of the core graph of the chains, or {@code null}
+   * @param queueType the type of the priority queue of every search
+   * @throws IllegalArgumentException when the hierarchy was not built from the core graph.
+   */
+  public RoutingEngine(RoadChains chains, ContractionHierarchy coreHierarchy, QueueType queueType) {
+    this(chains.getGraph(), null, queueType, null, chains,
+        new RoutingEngine(chains.getCoreGraph(), coreHierarchy, queueType));
+  }
+
+  /**
+   * Makes an engine over the graph of a customized overlay, which searches that overlay with
+   * {@code Algorithm.CRP} instead of one partitioned with {@code Partition.DEFAULT_CELL_SIZES},
+   * such as an overlay of smaller cells.
+   *
+   * @param metric the customized overlay of the graph to search
+   * @param queueType the type of the priority queue of every search
+   * @return an engine over the graph of the overlay.
+   */
+  public static RoutingEngine withOverlay(OverlayMetric metric, QueueType queueType) {
+    RoutingEngine engine = new RoutingEngine(metric.getGraph(), null, queueType, null, null, null);
+
+    engine.overlayMetric = metric;
+
+    return engine;
+  }
+
+  /**
+   * Constructs a new {@code RoutingEngine}, reusing the connected components of the graph if they
+   * are known.
+   */
+  private RoutingEngine(RoadGraph graph, ContractionHierarchy hierarchy, QueueType queueType,
+      ConnectedComponents components, RoadChains chains, RoutingEngine coreEngine) {
+    if (hierarchy != null && !hierarchy.matches(graph)) {
+      throw new IllegalArgumentException("The contraction hierarchy was built from another graph");
+    }
+
+    this.graph = graph;
+    this.hierarchy = hierarchy;
+    this.components = components != null ? components : ConnectedComponents.compute(graph);
+    this.queueType = queueType;
+    this.chains = chains;
+    this.coreEngine = coreEngine;
+    this.workspaces =
+        ThreadLocal.withInitial(() -> new SearchWorkspace(graph.getIntersectionCount(), queueType));
+    this.backwardWorkspaces =
+        ThreadLocal.withInitial(() -> new SearchWorkspace(graph.getIntersectionCount(), queueType));
+    this.testWorkspaces =
+        ThreadLocal.withInitial(() -> new SearchWorkspace(graph.getIntersectionCount(), queueType));
+  }
+
+  /**
+   * Makes an engine over a graph whose road distances have changed, such as the new graph of a
+   * {@code Geography} after {@code updateRoads}, reusing or repairing what this engine has
+   * precomputed instead of computing it all again.
+   *
+   * <ul>
+   * <li>The connected components are kept unless a road was closed or reopened, in which case they
+   * are found again, which takes a few milliseconds.
+   * <li>The A* heuristic scale stays a lower bound if no road got shorter. Otherwise, it is lowered
+   * to fit the changed roads, which only takes a pass over them.
+   * <li>The landmark distances stay lower bounds if no road got shorter: every road distance is at
+   * least what it was, so the bounds of the old distances are still below the new ones, if looser.
+   * Otherwise, the landmarks are computed again on first use.
+   * <li>The partition and the overlay are kept, since they do not depend on road distances. Only
+   * the cells that contain a changed road are customized again.
+   * <li>The chains are kept, and the distances of the chains that contain a changed road are summed
+   * again. The engine over the core graph is repaired in the same way.
+   * <li>The contraction hierarchy keeps its order of contraction, and what was contracted below the
+   * changed roads and the witness paths that may go through them. The rest is contracted again; see
+   * {@link ContractionHierarchyBuilder#repair}.
+   * </ul>
+   *
+   * <p>
+   * This engine is not modified, so queries that are running on it finish undisturbed.
+   *
+   * @param graph the graph with the new road distances, which must have the same intersections,
+   *        roads, and edges as the graph of this engine
+   * @param changedRoads the indices of the roads whose distance changed
+   * @return an engine over the new graph.
+   * @throws IllegalArgumentException when the graph does not have the same intersections and roads.
+   */
+  public RoutingEngine withUpdatedGraph(RoadGraph graph, int[] changedRoads) {
+    if (graph.getIntersectionCount() != this.graph.getIntersectionCount()
+        || graph.getRoadCount() != this.graph.getRoadCount()) {
+      throw new IllegalArgumentException("The graph must have the same intersections and roads");
+    }
+
+    boolean isShortened = false;
+    boolean isConnectivityChanged = false;
+
+    for (int road : changedRoads) {
+      double oldDistance = this.graph.getRoadDistance(road);
+      double newDistance = graph.getRoadDistance(road);
+
+      isShortened |= newDistance < oldDistance;
+      isConnectivityChanged |=
+          (oldDistance == Double.POSITIVE_INFINITY) != (newDistance == Double.POSITIVE_INFINITY);
+    }
+
+    RoadChains newChains = null;
+    RoutingEngine newCoreEngine = null;
+
+    if (this.chains != null) {
+      newChains = this.chains.withUpdatedGraph(graph, changedRoads);
+      newCoreEngine = this.coreEngine.withUpdatedGraph(newChains.getCoreGraph(),
+          this.chains.getChains(changedRoads));
+    }
+
+    ContractionHierarchy hierarchy = this.hierarchy == null ? null
+        : new ContractionHierarchyBuilder(graph).repair(this.hierarchy, this.graph, changedRoads);
+    RoutingEngine engine = new RoutingEngine(graph, hierarchy, this.queueType,
+        isConnectivityChanged ? null : this.components, newChains, newCoreEngine);
+    double scale = this.heuristicScale;
+
+    if (!Double.isNaN(scale) && isShortened) {
+      for (int road : changedRoads) {
+        scale = Math.min(scale, Math.max(0, engine.getHeuristicScale(road) * (1 - 1e-9)));
+      }
+    }
+
+    engine.heuristicScale = scale;
+    engine.landmarks = isShortened ? null : this.landmarks;
+
+    OverlayMetric metric = this.overlayMetric;
+
+    if (metric != null) {
+      engine.overlayMetric = metric.getOverlay().customize(graph, metric, changedRoads);
+    }
+
+    return engine;
+  }
+
+  /**
+   * Returns the graph that this engine searches.
+   *
+   * @return the graph that this engine searches.
+   */
+  public RoadGraph getGraph() {
+    return this.graph;
+  }
+
+  /**
+   * Returns the type of the priority queue of the searches of this engine.
+   *
+   * @return the type of the priority queue of the searches of this engine.
+   */
+  public QueueType getQueueType() {
+    return this.queueType;
+  }
+
+  /**
+   * Returns the contraction hierarchy that this engine searches with {@code Algorithm.CH}.
+   *
+   * @return the contraction hierarchy of the graph, or {@code null} if there is none.
+   */
+  public ContractionHierarchy getContractionHierarchy() {
+    return this.hierarchy;
+  }
+
+  /**
+   * Returns the chains of the graph whose core graph point-to-point queries search.
+   *
+   * @return the chains of the graph, or {@code null} if queries search the graph itself.
+   */
+  public RoadChains getChains() {
+    return this.chains;
+  }
+
+  /**
+   * Returns the engine that point-to-point queries search with, which holds the landmarks, the
+   * overlay, and the contraction hierarchy that they use.
+   *
+   * @return the engine over the core graph of the chains, or this engine if there are none.
+   */
+  public RoutingEngine getCoreEngine() {
+    return this.coreEngine != null ? this.coreEngine : this;
+  }
+
+  /**
+   * Returns the connected components of the graph, which were found when this engine was
+   * constructed.
+   *
+   * @return the connected components of the graph.
+   */
+  public ConnectedComponents getComponents() {
+    return this.components;
+  }
+
+  /**
+   * Returns the landmarks that this engine searches with {@code Algorithm.ALT}, selecting them and
+   * computing their distances on first use. Callers that want to report the preprocessing time
+   * separately from the first query can call this beforehand.
+   *
+   * @return the landmarks of the graph.
+   */
+  public Landmarks getLandmarks() {
+    Landmarks result = this.landmarks;
+
+    if (result == null) {
+      synchronized (this) {
+        result = this.landmarks;
+
+        if (result == null) {
+          result = Landmarks.select(this.graph, Landmarks.DEFAULT_COUNT);
+          this.landmarks = result;
+        }
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the customized overlay that this engine searches with {@code Algorithm.CRP},
+   * partitioning the graph and customizing the overlay on first use. Callers that want to report
+   * the preprocessing time separately from the first query can call this beforehand.
+   *
+   * @return the customized overlay of the graph.
+   */
+  public OverlayMetric getOverlayMetric() {
+    OverlayMetric result = this.overlayMetric;
+
+    if (result == null) {
+      synchronized (this) {
+        result = this.overlayMetric;
+
+        if (result == null) {
+          Partition partition = Partition.build(this.graph, Partition.DEFAULT_CELL_SIZES);
+
+          result = new Overlay(this.graph, partition).customize(this.graph);
+          this.overlayMetric = result;
+        }
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Finds the shortest path between two intersections using Dijkstra's algorithm.
+   *
+   * @param startIntersection the index of the start intersection
+   * @param endIntersection the index of the end intersection
+   * @return the shortest route from the start intersection to the end.
+   * @throws IndexOutOfBoundsException when an index is not that of an intersection.
+   */
+  public Route findShortestPath(int startIntersection, int endIntersection) {
+    return this.findShortestPath(startIntersection, endIntersection, Algorithm.DIJKSTRA);
+  }
+
+  /**
+   * Finds the shortest path between two intersections using a given algorithm.
+   *
+   * <p>
+   * When metrics are on, or a Flight Recorder recording enables {@code SearchEvent}, the query is
+   * recorded with its latency and the intersections, relaxations, and queue operations of its
+   * searches.
+   *
+   * @param startIntersection the index of the start intersection
+   * @param endIntersection the index of the end intersection
+   * @param algorithm the algorithm to search with
+   * @return the shortest route from the start intersection to the end.
+   * @throws IndexOutOfBoundsException when an index is not that of an intersection.
+   * @throws IllegalStateException when the algorithm is {@code Algorithm.CH} and this engine has no
+   *         contraction hierarchy.
+   */
+  public Route findShortestPath(int startIntersection, int endIntersection, Algorithm algorithm) {
+    SearchEvent event = new SearchEvent();
+
+    if (!event.isEnabled() && !Metrics.isEnabled()) {
+      return this.searchWith(startIntersection, endIntersection, algorithm);
+    }
+
+    SearchCounters counters = SearchCounters.get();
+    long settledCount = counters.settledCount;
+    long relaxedCount = counters.relaxedCount;
+    long queueOperationCount = counters.queueOperationCount;
+    long startTime = System.nanoTime();
+
+    event.begin();
+
+    Route route = this.searchWith(startIntersection, endIntersection, algorithm);
+
+    event.end();
+    settledCount = counters.settledCount - settledCount;
+    relaxedCount = counters.relaxedCount - relaxedCount;
+    queueOperationCount = counters.queueOperationCount - queueOperationCount;
+
+    Metrics.record("search." + algorithm, System.nanoTime() - startTime);
+    Metrics.count("search.settled", settledCount);
+    Metrics.count("search.relaxed", relaxedCount);
+    Metrics.count("search.queueOperations", queueOperationCount);
+
+    if (event.shouldCommit()) {
+      event.algorithm = algorithm.toString();
+      event.startIntersection = startIntersection;
+      event.endIntersection = endIntersection;
+      event.distance = route.getDistance();
+      event.settledCount = settledCount;
+      event.relaxedCount = relaxedCount;
+      event.queueOperationCount = queueOperationCount;
+      event.commit();
+    }
+
+    return route;
+  }
+
+  /**
+   * Finds the shortest path between two intersections using a given algorithm, like
+   * {@code findShortestPath}, without recording the query. The core engine is searched through
+   * this, so that a query is recorded once.
+   */
+  private Route searchWith(int startIntersection, int endIntersection, Algorithm algorithm) {
+    int n = this.graph.getIntersectionCount();
+
+    Objects.checkIndex(startIntersection, n);
+    Objects.checkIndex(endIntersection, n);
+
+    if (!this.components.areConnected(startIntersection, endIntersection)) {
+      return unreachable(startIntersection, endIntersection);
+    }
+
+    if (this.coreEngine != null) {
+      return this.searchCore(startIntersection, endIntersection, algorithm);
+    }
+
+    switch (algorithm) {
+      case ASTAR:
+        return this.search(startIntersection, endIntersection, this.getHeuristicScale(), null);
+
+      case ALT:
+        return this.search(startIntersection, endIntersection, 0, this.getLandmarks());
+
+      case BIDIRECTIONAL:
+        return this.searchBidirectionally(startIntersection, endIntersection);
+
+      case CH:
+        return this.searchHierarchy(startIntersection, endIntersection);
+
+      case CRP:
+        return this.searchOverlay(startIntersection, endIntersection);
+
+      case DIJKSTRA:
+      default:
+        return this.search(startIntersection, endIntersection, 0, null);
+    }
+  }
+
+  /**
+   * Finds the shortest paths between several pairs of intersections using Dijkstra's algorithm.
+   * Large batches are answered in parallel.
+   *
+   * @param startIntersections the index of the start intersection of every query
+   * @param endIntersections the index of the end intersection of every query
+   * @return the shortest route of every query, in order.
+   * @throws IllegalArgumentException when the arrays have different lengths.
+   * @throws IndexOutOfBoundsException when an index is not that of an intersection.
+   */
+  public Route[] findShortestPaths(int[] startIntersections, int[] endIntersections) {
+    return this.findShortestPaths(startIntersections, endIntersections, Algorithm.DIJKSTRA);
+  }
+
+  /**
+   * Finds the shortest paths between several pairs of intersections using a given algorithm. Large
+   * batches are answered in parallel.
+   *
+   * @param startIntersections the index of the start intersection of every query
+   * @param endIntersections the index of the end intersection of every query
+   * @param algorithm the algorithm to search with
+   * @return the shortest route of every query, in order.
+   * @throws IllegalArgumentException when the arrays have different lengths.
+   * @throws IndexOutOfBoundsException when an index is not that of an intersection.
+   */
+  public Route[] findShortestPaths(int[] startIntersections, int[] endIntersections,
+      Algorithm algorithm) {
+    if (startIntersections.length != endIntersections.length) {
+      throw new IllegalArgumentException("There must be as many start as end intersections");
+    }
+
+    IntStream queries = IntStream.range(0, startIntersections.length);
+
+    if (startIntersections.length >= PARALLEL_THRESHOLD) {
+      queries = queries.parallel();
+    }
+
+    return queries
+        .mapToObj(i -> this.findShortestPath(startIntersections[i], endIntersections[i], algorithm))
+        .toArray(Route[]::new);
+  }
+
+  /**
+   * Finds the shortest path between two intersections and up to a given number of reasonable
+   * alternatives to it, with the via-intersection method.
+   *
+   * <p>
+   * One Dijkstra search grows from the start and one from the end, each until it has settled every
+   * intersection within {@code 1 + MAX_STRETCH} times the shortest distance. Every intersection
+   * {@code v} that both searches settled gives a candidate route: the shortest path from the start
+   * to {@code v}, followed by the shortest path from {@code v} to the end. Candidates are tried
+   * shortest first, and one is chosen if
+   * <ul>
+   * <li>it is at most {@code 1 + MAX_STRETCH} times as long as the shortest path (bounded stretch);
+   * <li>it shares at most {@code MAX_SHARING} times the shortest distance with each route chosen
+   * before it (limited overlap); and
+   * <li>it does not visit an intersection twice, and its stretch of {@code LOCAL_OPTIMALITY} times
+   * the shortest distance on each side of {@code v} is a shortest path (local optimality), which a
+   * small Dijkstra search checks.
+   * </ul>
+   *
+   * @param startIntersection the index of the start intersection
+   * @param endIntersection the index of the end intersection
+   * @param maxAlternatives the largest number of alternatives to find
+   * @return the shortest route, followed by the alternatives that were found, shortest first; just
+   *         the shortest route if no path connects the intersections.
+   * @throws IndexOutOfBoundsException when an index is not that of an intersection.
+   * @throws IllegalArgumentException when the number of alternatives is negative.
+   */
+  public Route[] findAlternativeRoutes(int startIntersection, int endIntersection,
+      int maxAlternatives) {
+    int n = this.graph.getIntersectionCount();
+
+    Objects.checkIndex(startIntersection, n);
+    Objects.checkIndex(endIntersection, n);
+
+    if (maxAlternatives < 0) {
+      throw new IllegalArgumentException("The number of alternatives must not be negative");
+    }
+
+    if (!this.components.areConnected(startIntersection, endIntersection)) {
+      return new Route[] {unreachable(startIntersection, endIntersection)};
+    }
+
+    SearchWorkspace forward = this.workspaces.get();
+    SearchWorkspace backward = this.backwardWorkspaces.get();
+    IntList forwardSettled = new IntList();
+
+    this.searchWithinStretch(forward, startIntersection, endIntersection, forwardSettled);
+    this.searchWithinStretch(backward, endIntersection, startIntersection, new IntList());
+
+    int settledCount = forward.getSettledCount() + backward.getSettledCount();
+    Route shortest = this.compileRoute(forward, null, startIntersection,
+        forward.isReached(endIntersection) ? endIntersection : -1, endIntersection, settledCount);
+    double shortestDistance = shortest.getDistance();
+
+    if (!shortest.isFound() || shortestDistance == 0 || maxAlternatives == 0) {
+      return new Route[] {shortest};
+    }
+
+    // An intersection on a route that has been tried gives much the same route again (exactly the
+    // same if it is where the paths from the start and the end overlap), so it is skipped
+
+    BitSet isTried = new BitSet(n);
+    for (int intersection : shortest.getIntersections()) {
+      isTried.set(intersection);
+    }
+
+    double maxDistance = shortestDistance * (1 + MAX_STRETCH);
+    int[] candidates = IntStream.range(0, forwardSettled.size()).map(forwardSettled::get)
+        .filter(
+            v -> !isTried.get(v) && forward.getDistance(v) + backward.getDistance(v) <= maxDistance)
+        .boxed()
+        .sorted((a, b) -> Double.compare(forward.getDistance(a) + backward.getDistance(a),
+            forward.getDistance(b) + backward.getDistance(b)))
+        .mapToInt(Integer::intValue).toArray();
+
+    List<Route> routes = new ArrayList<>();
+    List<BitSet> routeRoads = new ArrayList<>();
+    int remainingTests = MAX_TESTS_PER_ALTERNATIVE * maxAlternatives;
+
+    routes.add(shortest);
+    routeRoads.add(toRoadSet(shortest));
+
+    for (int v : candidates) {
+      if (routes.size() > maxAlternatives || remainingTests == 0) {
+        break;
+      }
+
+      // If the paths to and from v leave v by the same road, the candidate turns back on itself
+      if (isTried.get(v) || forward.getParentRoad(v) == backward.getParentRoad(v)) {
+        continue;
+      }
+
+      Route candidate =
+          this.compileRoute(forward, backward, startIntersection, v, endIntersection, settledCount);
+
+      for (int intersection : candidate.getIntersections()) {
+        isTried.set(intersection);
+      }
+
+      if (!this.hasLimitedSharing(candidate, routeRoads, MAX_SHARING * shortestDistance)
+          || !isSimple(candidate)) {
+        continue;
+      }
+
+      remainingTests--;
+
+      if (this.isLocallyOptimal(candidate, v, LOCAL_OPTIMALITY * shortestDistance)) {
+        routes.add(candidate);
+        routeRoads.add(toRoadSet(candidate));
+      }
+    }
+
+    return routes.toArray(new Route[0]);
+  }
+
+  /**
+   * Runs Dijkstra's algorithm from an intersection until every intersection within
+   * {@code 1 + MAX_STRETCH} times the distance to another intersection is settled, or, if no path
+   * leads there, until the component of the source is exhausted.
+   *
+   * @param workspace the workspace to search in
+   * @param source the index of the intersection to search from
+   * @param end the index of the intersection whose distance bounds the search
+   * @param settled the list to add the settled intersections to, in the order of their distance
+   */
+  private void searchWithinStretch(SearchWorkspace workspace, int source, int end,
+      IntList settled) {
+    NodeQueue q = workspace.getQueue();
+    double maxDistance = Double.POSITIVE_INFINITY;
+
+    workspace.reset();
+    workspace.update(source, 0, -1, 0);
+
+    while (!q.isEmpty() && q.peekKey() <= maxDistance) {
+      double minDistance = q.peekKey();
+      int min = workspace.poll();
+
+      if (minDistance > workspace.getDistance(min)) {
+        continue; // an outdated entry
+      }
+
+      workspace.markSettled();
+      settled.add(min);
+
+      if (min == end) {
+        maxDistance = minDistance * (1 + MAX_STRETCH);
+      }
+
+      int edgeEnd = this.graph.getFirstEdge(min + 1);
+
+      for (int edge = this.graph.getFirstEdge(min); edge < edgeEnd; edge++) {
+        int neighbor = this.graph.getEdgeTarget(edge);
+        double temp = minDistance + this.graph.getEdgeWeight(edge);
+
+        if (temp < workspace.getDistance(neighbor)) {
+          workspace.update(neighbor, temp, this.graph.getEdgeRoad(edge), 0);
+        }
+      }
+    }
+  }
+
+  private static BitSet toRoadSet(Route route) {
+    BitSet roads = new BitSet();
+
+    for (int road : route.getRoads()) {
+      roads.set(road);
+    }
+
+    return roads;
+  }
+
+  /**
+   * Checks whether a route shares at most a given distance with each of several routes.
+   */
+  private boolean hasLimitedSharing(Route route, List<BitSet> routeRoads, double maxShared) {
+    int[] roads = route.getRoads();
+
+    for (BitSet otherRoads : routeRoads) {
+      double shared = 0;
+
+      for (int road : roads) {
+        if (otherRoads.get(road)) {
+          shared += this.graph.getRoadDistance(road);
+        }
+      }
+
+      if (shared > maxShared) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Checks whether a route visits every intersection at most once.
+   */
+  private static boolean isSimple(Route route) {
+    BitSet visited = new BitSet();
+
+    for (int intersection : route.getIntersections()) {
+      if (visited.get(intersection)) {
+        return false;
+      }
+
+      visited.set(intersection);
+    }
+
+    return true;
+  }
+
+  /**
+   * Checks whether the part of a route around its via intersection is a shortest path: from the
+   * last intersection at least a given distance before the via intersection (or the start) to the
+   * first intersection at least that distance after it (or the end).
+   *
+   * @param route the route to check
+   * @param via the index of the via intersection of the route
+   * @param radius the distance, in miles, to check on each side of the via intersection
+   * @return {@code true} if no shorter path connects the ends of the part, {@code false} otherwise.
+   */
+  private boolean isLocallyOptimal(Route route, int via, double radius) {
+    int[] intersections = route.getIntersections();
+    int[] roads = route.getRoads();
+    double[] prefixDistances = new double[intersections.length];
+    int viaIndex = 0;
+
+    for (int i = 0; i < roads.length; i++) {
+      prefixDistances[i + 1] = prefixDistances[i] + this.graph.getRoadDistance(roads[i]);
+    }
+
+    while (intersections[viaIndex] != via) {
+      viaIndex++;
+    }
+
+    int from = viaIndex;
+    while (from > 0 && prefixDistances[viaIndex] - prefixDistances[from] < radius) {
+      from--;
+    }
+
+    int to = viaIndex;
+    while (to < roads.length && prefixDistances[to] - prefixDistances[viaIndex] < radius) {
+      to++;
+    }
+
+    double length = prefixDistances[to] - prefixDistances[from];
+    double shortestLength = this.findDistance(this.testWorkspaces.get(), intersections[from],
+        intersections[to], length);
+
+    // Leave room for the rounding errors of adding the same distances in a different order
+    return shortestLength >= length * (1 - 1e-9);
+  }
+
+  /**
+   * Finds the distance between two intersections with Dijkstra's algorithm, which gives up beyond a
+   * given distance.
+   *
+   * @return the distance, or {@code +Infinity} if it is more than the given distance.
+   */
+  private double findDistance(SearchWorkspace workspace, int source, int target,
+      double maxDistance) {
+    NodeQueue q = workspace.getQueue();
+
+    workspace.reset();
+    workspace.update(source, 0, -1, 0);
+
+    while (!q.isEmpty() && q.peekKey() <= maxDistance) {
+      double minDistance = q.peekKey();
+      int min = workspace.poll();
+
+      if (minDistance > workspace.getDistance(min)) {
+        continue; // an outdated entry
+      }
+
+      if (min == target) {
+        return minDistance;
+      }
+
+      int edgeEnd = this.graph.getFirstEdge(min + 1);
+
+      for (int edge = this.graph.getFirstEdge(min); edge < edgeEnd; edge++) {
+        int neighbor = this.graph.getEdgeTarget(edge);
+        double temp = minDistance + this.graph.getEdgeWeight(edge);
+
+        if (temp < workspace.getDistance(neighbor)) {
+          workspace.update(neighbor, temp, this.graph.getEdgeRoad(edge), 0);
+        }
+      }
+    }
+
+    return Double.POSITIVE_INFINITY;
+  }
+
+  /**
+   * Finds the shortest paths from an intersection to every intersection within a distance, using
+   * Dijkstra's algorithm.
+   *
+   * @param source the index of the source intersection
+   * @param cutoff the largest distance, in miles, to search, or {@code Double.POSITIVE_INFINITY}
+   *        for the full distance field
+   * @return the tree of shortest paths from the source.
+   * @throws IndexOutOfBoundsException when the index is not that of an intersection.
+   * @throws IllegalArgumentException when the cutoff is negative or {@code NaN}.
+   */
+  public ShortestPathTree findShortestPathTree(int source, double cutoff) {
+    int n = this.graph.getIntersectionCount();
+
+    Objects.checkIndex(source, n);
+
+    if (!(cutoff >= 0)) {
+      throw new IllegalArgumentException("The cutoff must not be negative");
+    }
+
+    SearchWorkspace workspace = this.workspaces.get();
+    NodeQueue q = workspace.getQueue();
+    double[] distances = new double[n];
+    int[] parentRoads = new int[n];
+
+    Arrays.fill(distances, Double.POSITIVE_INFINITY);
+    Arrays.fill(parentRoads, -1);
+    workspace.reset();
+    workspace.update(source, 0, -1, 0);
+
+    while (!q.isEmpty() && q.peekKey() <= cutoff) {
+      double minDistance = q.peekKey();
+      int min = workspace.poll();
+
+      if (minDistance > workspace.getDistance(min)) {
+        continue; // an outdated entry
+      }
+
+      workspace.markSettled();
+      distances[min] = minDistance;
+      parentRoads[min] = workspace.getParentRoad(min);
+
+      int edgeEnd = this.graph.getFirstEdge(min + 1);
+
+      for (int edge = this.graph.getFirstEdge(min); edge < edgeEnd; edge++) {
+        int neighbor = this.graph.getEdgeTarget(edge);
+        double temp = minDistance + this.graph.getEdgeWeight(edge);
+
+        if (temp < workspace.getDistance(neighbor)) {
+          workspace.update(neighbor, temp, this.graph.getEdgeRoad(edge), 0);
+        }
+      }
+    }
+
+    return new ShortestPathTree(this.graph, source, cutoff, distances, parentRoads,
+        workspace.getSettledCount());
+  }
+
+  /**
+   * Computes the road distance from every source to every target. Rows are computed in parallel by
+   * one-to-many Dijkstra searches, each of which stops once it has settled every target.
+   *
+   * @param sources the indices of the source intersections, which make the rows
+   * @param targets the indices of the target intersections, which make the columns
+   * @return the matrix of distances, where {@code matrix[i][j]} is the distance from
+   *         {@code sources[i]} to {@code targets[j]}, or {@code +Infinity} if no path connects
+   *         them.
+   * @throws IndexOutOfBoundsException when an index is not that of an intersection.
+   */
+  public double[][] distanceMatrix(int[] sources, int[] targets) {
+    boolean[] isTarget = this.markTargets(sources, targets);
+    int[] targetCounts = this.countTargetsByComponent(isTarget);
+    IntStream rows = IntStream.range(0, sources.length);
+
+    if (sources.length >= PARALLEL_THRESHOLD) {
+      rows = rows.parallel();
+    }
+
+    return rows.mapToObj(i -> this.findDistances(sources[i], targets, isTarget, targetCounts))
+        .toArray(double[][]::new);
+  }
+
+  /**
+   * Computes the road distance from every source to every target, and hands every row to a sink as
+   * soon as it and the rows before it are done, so that the whole matrix is never held in memory.
+   * Rows are computed in parallel on the common fork-join pool.
+   *
+   * @param sources the indices of the source intersections, which make the rows
+   * @param targets the indices of the target intersections, which make the columns
+   * @param sink the sink of the rows, which is called on the calling thread
+   * @throws IOException when the sink fails to write a row.
+   * @throws IndexOutOfBoundsException when an index is not that of an intersection.
+   */
+  public void distanceMatrix(int[] sources, int[] targets, DistanceMatrixSink sink)
+      throws IOException {
+    boolean[] isTarget = this.markTargets(sources, targets);
+    int[] targetCounts = this.countTargetsByComponent(isTarget);
+    int window = 2 * ForkJoinPool.getCommonPoolParallelism();
+    Deque<ForkJoinTask<double[]>> pending = new ArrayDeque<>();
+    int nextRow = 0;
+
+    try {
+      for (int source : sources) {
+        if (pending.size() >= window) {
+          sink.writeRow(nextRow++, pending.poll().join());
+        }
+
+        pending.add(ForkJoinPool.commonPool()
+            .submit(() -> this.findDistances(source, targets, isTarget, targetCounts)));
+      }
+
+      while (!pending.isEmpty()) {
+        sink.writeRow(nextRow++, pending.poll().join());
+      }
+    } finally {
+      for (ForkJoinTask<double[]> task : pending) {
+        task.cancel(false);
+      }
+    }
+  }
+
+  /**
+   * Checks the sources and the targets of a distance matrix, and marks the targets.
+   */
+  private boolean[] markTargets(int[] sources, int[] targets) {
+    int n = this.graph.getIntersectionCount();
+    boolean[] isTarget = new boolean[n];
+
+    for (int source : sources) {
+      Objects.checkIndex(source, n);
+    }
+
+    for (int target : targets) {
+      isTarget[Objects.checkIndex(target, n)] = true;
+    }
+
+    return isTarget;
+  }
+
+  /**
+   * Counts the distinct targets of a distance matrix in every component.
+   */
+  private int[] countTargetsByComponent(boolean[] isTarget) {
+    int[] counts = new int[this.components.getComponentCount()];
+
+    for (int intersection = 0; intersection < isTarget.length; intersection++) {
+      if (isTarget[intersection]) {
+        counts[this.components.getComponent(intersection)]++;
+      }
+    }
+
+    return counts;
+  }
+
+  /**
+   * Finds the distances from a source to several targets with Dijkstra's algorithm, which stops
+   * once every target in the component of the source is settled.
+   *
+   * @param source the index of the source intersection
+   * @param targets the indices of the target intersections
+   * @param isTarget whether every intersection is a target
+   * @param targetCounts the number of distinct targets in every component
+   * @return the distance to every target, or {@code +Infinity} if no path leads to it.
+   */
+  private double[] findDistances(int source, int[] targets, boolean[] isTarget,
+      int[] targetCounts) {
+    SearchWorkspace workspace = this.workspaces.get();
+    NodeQueue q = workspace.getQueue();
+    int remainingTargets = targetCounts[this.components.getComponent(source)];
+
+    workspace.reset();
+    workspace.update(source, 0, -1, 0);
+
+    while (!q.isEmpty() && remainingTargets > 0) {
+      double minDistance = q.peekKey();
+      int min = workspace.poll();
+
+      if (minDistance > workspace.getDistance(min)) {
+        continue; // an outdated entry
+      }
+
+      workspace.markSettled();
+
+      if (isTarget[min]) {
+        remainingTargets--;
+      }
+
+      int edgeEnd = this.graph.getFirstEdge(min + 1);
+
+      for (int edge = this.graph.getFirstEdge(min); edge < edgeEnd; edge++) {
+        int neighbor = this.graph.getEdgeTarget(edge);
+        double temp = minDistance + this.graph.getEdgeWeight(edge);
+
+        if (temp < workspace.getDistance(neighbor)) {
+          workspace.update(neighbor, temp, this.graph.getEdgeRoad(edge), 0);
+        }
+      }
+    }
+
+    double[] distances = new double[targets.length];
+
+    for (int i = 0; i < targets.length; i++) {
+      distances[i] = workspace.getDistance(targets[i]);
+    }
+
+    return distances;
+  }
+
+  /**
+   * Searches for the shortest path with Dijkstra's algorithm, optionally guided towards the end by
+   * the great-circle distance or by landmarks (A*).
+   *
+   * <p>
+   * Intersections are settled in the order of their distance from the start plus their estimated
+   * distance to the end. Since the estimate is a lower bound, and an intersection whose distance
+   * improves after it was settled is queued again, the search can stop as soon as the end is
+   * settled.
+   *
+   * @param startIntersection the index of the start intersection
+   * @param endIntersection the index of the end intersection
+   * @param heuristicScale the factor that great-circle distances to the end are scaled by, or 0
+   * @param landmarks the landmarks to estimate distances to the end with, or {@code null}; both 0
+   *        and {@code null} make this Dijkstra's algorithm
+   * @return the route that was found.
+   */
+  private Route search(int startIntersection, int endIntersection, double heuristicScale,
+      Landmarks landmarks) {
+    SearchWorkspace workspace = this.workspaces.get();
+    NodeQueue q = workspace.getQueue();
+    double endLatitude = this.graph.getLatitude(endIntersection);
+    double endLongtitude = this.graph.getLongtitude(endIntersection);
+    float[] endDistances = landmarks != null ? landmarks.getDistances(endIntersection) : null;
+
+    workspace.reset();
+    workspace.update(startIntersection, 0, -1, 0);
+
+    // Main Dijkstra's algorithm's loop
+
+    while (!q.isEmpty()) {
+      double minKey = q.peekKey();
+      int min = workspace.poll();
+      double minDistance = workspace.getDistance(min);
+
+      if (minKey > minDistance + workspace.getHeuristic(min)) {
+        continue; // an outdated entry
+      }
+
+      workspace.markSettled();
+
+      if (min == endIntersection) {
+        break;
+      }
+
+      int edgeEnd = this.graph.getFirstEdge(min + 1);
+
+      for (int edge = this.graph.getFirstEdge(min); edge < edgeEnd; edge++) {
+        int neighbor = this.graph.getEdgeTarget(edge);
+        double temp = minDistance + this.graph.getEdgeWeight(edge);
+
+        if (temp < workspace.getDistance(neighbor)) {
+          double heuristic = 0;
+
+          if (workspace.isReached(neighbor)) {
+            heuristic = workspace.getHeuristic(neighbor);
+          } else if (landmarks != null) {
+            heuristic = landmarks.getLowerBound(neighbor, endDistances);
+          } else if (heuristicScale > 0) {
+            heuristic = heuristicScale * Road.haversine(this.graph.getLatitude(neighbor),
+                this.graph.getLongtitude(neighbor), endLatitude, endLongtitude);
+          }
+
+          workspace.update(neighbor, temp, this.graph.getEdgeRoad(edge), heuristic);
+        }
+      }
+    }
+
+    return this.compileRoute(workspace, null, startIntersection,
+        workspace.isReached(endIntersection) ? endIntersection : -1, endIntersection,
+        workspace.getSettledCount());
+  }
+
+  /**
+   * Searches for the shortest path with two Dijkstra searches, one from the start and one from the
+   * end, that grow towards each other.
+   *
+   * <p>
+   * The search whose queue has the smaller minimum is expanded next. Whenever an edge leads to an
+   * intersection that the other search has reached, the path through that intersection is a
+   * candidate. The search stops once the two queue minimums add up to at least the best candidate:
+   * any path that has not been seen must leave both settled regions, so it is at least that long.
+   *
+   * @param startIntersection the index of the start intersection
+   * @param endIntersection the index of the end intersection
+   * @return the route that was found.
+   */
+  private Route searchBidirectionally(int startIntersection, int endIntersection) {
+    SearchWorkspace forward = this.workspaces.get();
+    SearchWorkspace backward = this.backwardWorkspaces.get();
+    NodeQueue forwardQueue = forward.getQueue();
+    NodeQueue backwardQueue = backward.getQueue();
+
+    forward.reset();
+    backward.reset();
+    forward.update(startIntersection, 0, -1, 0);
+    backward.update(endIntersection, 0, -1, 0);
+
+    double bestDistance = startIntersection == endIntersection ? 0 : Double.POSITIVE_INFINITY;
+    int meetingIntersection = startIntersection == endIntersection ? startIntersection : -1;
+
+    // If either queue runs out, the component of its intersection has been exhausted, and every
+    // path has been seen
+
+    while (!forwardQueue.isEmpty() && !backwardQueue.isEmpty()) {
+      if (forwardQueue.peekKey() + backwardQueue.peekKey() >= bestDistance) {
+        break;
+      }
+
+      boolean isForward = forwardQueue.peekKey() <= backwardQueue.peekKey();
+      SearchWorkspace workspace = isForward ? forward : backward;
+      SearchWorkspace other = isForward ? backward : forward;
+      NodeQueue q = workspace.getQueue();
+
+      double minDistance = q.peekKey();
+      int min = workspace.poll();
+
+      if (minDistance > workspace.getDistance(min)) {
+        continue; // an outdated entry
+      }
+
+      workspace.markSettled();
+
+      int edgeEnd = this.graph.getFirstEdge(min + 1);
+
+      for (int edge = this.graph.getFirstEdge(min); edge < edgeEnd; edge++) {
+        int neighbor = this.graph.getEdgeTarget(edge);
+        double temp = minDistance + this.graph.getEdgeWeight(edge);
+
+        if (temp < workspace.getDistance(neighbor)) {
+          workspace.update(neighbor, temp, this.graph.getEdgeRoad(edge), 0);
+        }
+
+        if (other.isReached(neighbor)) {
+          double distance = workspace.getDistance(neighbor) + other.getDistance(neighbor);
+
+          if (distance < bestDistance) {
+            bestDistance = distance;
+            meetingIntersection = neighbor;
+          }
+        }
+      }
+    }
+
+    return this.compileRoute(forward, backward, startIntersection, meetingIntersection,
+        endIntersection, forward.getSettledCount() + backward.getSettledCount());
+  }
+
+  /**
+   * Searches for the shortest path with two Dijkstra searches over the contraction hierarchy, one
+   * from the start and one from the end, that only follow upward edges.
+   *
+   * <p>
+   * The highest-ranked intersection of a shortest path is reached by both searches, so the path is
+   * found at the intersection that both searches settle with the least total distance. Each search
+   * stops once its queue minimum is at least the best total found. The upward edges of the path are
+   * then unpacked into roads.
+   *
+   * @param startIntersection the index of the start intersection
+   * @param endIntersection the index of the end intersection
+   * @return the route that was found.
+   */
+  private Route searchHierarchy(int startIntersection, int endIntersection) {
+    if (this.hierarchy == null) {
+      throw new IllegalStateException("No contraction hierarchy has been built or loaded");
+    }
+
+    SearchWorkspace forward = this.workspaces.get();
+    SearchWorkspace backward = this.backwardWorkspaces.get();
+    NodeQueue forwardQueue = forward.getQueue();
+    NodeQueue backwardQueue = backward.getQueue();
+
+    forward.reset();
+    backward.reset();
+    forward.update(startIntersection, 0, -1, 0);
+    backward.update(endIntersection, 0, -1, 0);
+
+    double bestDistance = Double.POSITIVE_INFINITY;
+    int meetingIntersection = -1;
+
+    // The parent "roads" of these searches are the edges of the hierarchy
+
+    while (true) {
+      if (!forwardQueue.isEmpty() && forwardQueue.peekKey() >= bestDistance) {
+        forwardQueue.clear();
+      }
+
+      if (!backwardQueue.isEmpty() && backwardQueue.peekKey() >= bestDistance) {
+        backwardQueue.clear();
+      }
+
+      if (forwardQueue.isEmpty() && backwardQueue.isEmpty()) {
+        break;
+      }
+
+      boolean isForward = backwardQueue.isEmpty()
+          || (!forwardQueue.isEmpty() && forwardQueue.peekKey() <= backwardQueue.peekKey());
+      SearchWorkspace workspace = isForward ? forward : backward;
+      SearchWorkspace other = isForward ? backward : forward;
+      NodeQueue q = workspace.getQueue();
+
+      double minDistance = q.peekKey();
+      int min = workspace.poll();
+
+      if (minDistance > workspace.getDistance(min)) {
+        continue; // an outdated entry
+      }
+
+      workspace.markSettled();
+
+      if (other.isReached(min) && minDistance + other.getDistance(min) < bestDistance) {
+        bestDistance = minDistance + other.getDistance(min);
+        meetingIntersection = min;
+      }
+
+      int upwardEnd = this.hierarchy.getFirstUpwardEdge(min + 1);
+
+      for (int upwardEdge =
+          this.hierarchy.getFirstUpwardEdge(min); upwardEdge < upwardEnd; upwardEdge++) {
+        int neighbor = this.hierarchy.getUpwardTarget(upwardEdge);
+        double temp = minDistance + this.hierarchy.getUpwardWeight(upwardEdge);
+
+        if (temp < workspace.getDistance(neighbor)) {
+          workspace.update(neighbor, temp, this.hierarchy.getUpwardEdge(upwardEdge), 0);
+        }
+      }
+    }
+
+    int settledCount = forward.getSettledCount() + backward.getSettledCount();
+
+    if (meetingIntersection < 0) {
+      return new Route(new int[] {startIntersection, endIntersection}, null,
+          Double.POSITIVE_INFINITY, settledCount);
+    }
+
+    // Collect the edges from the meeting intersection down to the start, then unpack them in
+    // travel order, followed by the edges from the meeting intersection down to the end
+
+    IntList forwardEdges = new IntList();
+    IntList forwardStarts = new IntList();
+
+    for (int current = meetingIntersection; current != startIntersection;) {
+      int edge = forward.getParentRoad(current);
+
+      current = this.hierarchy.getTheOtherEnd(edge, current);
+      forwardEdges.add(edge);
+      forwardStarts.add(current);
+    }
+
+    IntList roads = new IntList();
+
+    for (int i = forwardEdges.size() - 1; i >= 0; i--) {
+      this.hierarchy.unpack(forwardEdges.get(i), forwardStarts.get(i), roads);
+    }
+
+    for (int current = meetingIntersection; current != endIntersection;) {
+      int edge = backward.getParentRoad(current);
+
+      this.hierarchy.unpack(edge, current, roads);
+      current = this.hierarchy.getTheOtherEnd(edge, current);
+    }
+
+    int[] intersections = new int[roads.size() + 1];
+    double distance = 0.0;
+
+    intersections[0] = startIntersection;
+
+    for (int i = 0; i < roads.size(); i++) {
+      intersections[i + 1] = this.graph.getTheOtherEnd(roads.get(i), intersections[i]);
+      distance += this.graph.getRoadDistance(roads.get(i));
+    }
+
+    return new Route(intersections, roads.toArray(), distance, settledCount);
+  }
+
+  /**
+   * Searches for the shortest path with Dijkstra's algorithm over the multi-level overlay.
+   *
+   * <p>
+   * The query level of an intersection is the highest level on which its cell contains neither the
+   * start nor the end. An intersection of level {@code 0} is in the cells of the start or the end
+   * on level {@code 1}, so its roads are followed as usual. An intersection of a higher level is a
+   * boundary intersection of its cell on that level, which the path either crosses through, along a
+   * clique edge, or leaves, along a road. The clique edges of the path are then unpacked into roads
+   * level by level.
+   *
+   * @param startIntersection the index of the start intersection
+   * @param endIntersection the index of the end intersection
+   * @return the route that was found.
+   */
+  private Route searchOverlay(int startIntersection, int endIntersection) {
+    OverlayMetric metric = this.getOverlayMetric();
+    Partition partition = metric.getOverlay().getPartition();
+    int levelCount = partition.getLevelCount();
+    SearchWorkspace workspace = this.workspaces.get();
+    NodeQueue q = workspace.getQueue();
+    int[] startCells = new int[levelCount + 1];
+    int[] endCells = new int[levelCount + 1];
+
+    for (int level = 1; level <= levelCount; level++) {
+      startCells[level] = partition.getCell(level, startIntersection);
+      endCells[level] = partition.getCell(level, endIntersection);
+    }
+
+    workspace.reset();
+    workspace.update(startIntersection, 0, -1, 0);
+
+    // The parent "roads" of this search are roads, or clique edges from an intersection i recorded
+    // as -2 - i
+
+    while (!q.isEmpty()) {
+      double minDistance = q.peekKey();
+      int min = workspace.poll();
+
+      if (minDistance > workspace.getDistance(min)) {
+        continue; // an outdated entry
+      }
+
+      workspace.markSettled();
+
+      if (min == endIntersection) {
+        break;
+      }
+
+      // Cells are nested, so once a cell contains neither end, neither do the cells below it
+      int level = levelCount;
+      while (level > 0 && (partition.getCell(level, min) == startCells[level]
+          || partition.getCell(level, min) == endCells[level])) {
+        level--;
+      }
+
+      int cell = level > 0 ? partition.getCell(level, min) : -1;
+
+      if (level > 0) {
+        metric.relaxClique(workspace, level, cell, min, minDistance);
+      }
+
+      int edgeEnd = this.graph.getFirstEdge(min + 1);
+
+      for (int edge = this.graph.getFirstEdge(min); edge < edgeEnd; edge++) {
+        int neighbor = this.graph.getEdgeTarget(edge);
+
+        // Roads inside the cell are covered by its clique
+        if (level > 0 && partition.getCell(level, neighbor) == cell) {
+          continue;
+        }
+
+        double temp = minDistance + this.graph.getEdgeWeight(edge);
+
+        if (temp < workspace.getDistance(neighbor)) {
+          workspace.update(neighbor, temp, this.graph.getEdgeRoad(edge), 0);
+        }
+      }
+    }
+
+    int settledCount = workspace.getSettledCount();
+
+    if (!workspace.isReached(endIntersection)) {
+      return new Route(new int[] {startIntersection, endIntersection}, null,
+          Double.POSITIVE_INFINITY, settledCount);
+    }
+
+    // Collect the steps of the path before the workspace is reused to unpack the clique edges
+
+    IntList steps = new IntList();
+    IntList stepEnds = new IntList();
+
+    for (int current = endIntersection; current != startIntersection;) {
+      int parent = workspace.getParentRoad(current);
+
+      steps.add(parent);
+      stepEnds.add(current);
+      current = parent >= 0 ? this.graph.getTheOtherEnd(parent, current) : -2 - parent;
+    }
+
+    IntList roads = new IntList();
+
+    for (int i = steps.size() - 1; i >= 0; i--) {
+      int step = steps.get(i);
+
+      if (step >= 0) {
+        roads.add(step);
+      } else {
+        int from = -2 - step;
+        int level = levelCount;
+
+        // The clique edge belongs to the cell of the query level of its start
+        while (partition.getCell(level, from) == startCells[level]
+            || partition.getCell(level, from) == endCells[level]) {
+          level--;
+        }
+
+        metric.unpack(workspace, level, from, stepEnds.get(i), roads);
+      }
+    }
+
+    int[] intersections = new int[roads.size() + 1];
+    double distance = 0.0;
+
+    intersections[0] = startIntersection;
+
+    for (int i = 0; i < roads.size(); i++) {
+      intersections[i + 1] = this.graph.getTheOtherEnd(roads.get(i), intersections[i]);
+      distance += this.graph.getRoadDistance(roads.get(i));
+    }
+
+    return new Route(intersections, roads.toArray(), distance, settledCount);
+  }
+
+  /**
+   * Searches for the shortest path over the core graph of the chains.
+   *
+   * <p>
+   * A path from an inner intersection of a chain either stays on the chain or leaves it at one of
+   * its ends, so the core graph is searched from every end that the start leaves by to every end
+   * that the end is entered by, which takes at most four searches, and the path along the chain is
+   * tried if both are on the same chain. The shortest of them is expanded into the roads of the
+   * graph.
+   *
+   * @param startIntersection the index of the start intersection
+   * @param endIntersection the index of the end intersection
+   * @param algorithm the algorithm to search the core graph with
+   * @return the route that was found.
+   */
+  private Route searchCore(int startIntersection, int endIntersection, Algorithm algorithm) {
+    int[][] startExits = this.getChainExits(startIntersection);
+    int[][] endExits = this.getChainExits(endIntersection);
+    double bestDistance = Double.POSITIVE_INFINITY;
+    int[] bestStartRoads = null;
+    int[] bestEndRoads = null;
+    Route bestCoreRoute = null;
+    int settledCount = 0;
+
+    // Try the path along the chain first, so that it wins ties
+    if (startExits.length == 2 && endExits.length == 2
+        && this.getChain(startIntersection) == this.getChain(endIntersection)) {
+      bestStartRoads = this.getChainPath(startIntersection, endIntersection);
+      bestEndRoads = new int[0];
+      bestDistance = this.getDistance(bestStartRoads);
+    }
+
+    for (int[] startRoads : startExits) {
+      double startDistance = this.getDistance(startRoads);
+
+      for (int[] endRoads : endExits) {
+        double endDistance = this.getDistance(endRoads);
+
+        if (startDistance + endDistance >= bestDistance) {
+          continue;
+        }
+
+        int from = this.chains.getCoreIntersection(this.walk(startIntersection, startRoads));
+        int to = this.chains.getCoreIntersection(this.walk(endIntersection, endRoads));
+        Route coreRoute = this.coreEngine.searchWith(from, to, algorithm);
+        double distance = startDistance + coreRoute.getDistance() + endDistance;
+
+        settledCount += coreRoute.getSettledCount();
+
+        if (distance < bestDistance) {
+          bestDistance = distance;
+          bestStartRoads = startRoads;
+          bestEndRoads = endRoads;
+          bestCoreRoute = coreRoute;
+        }
+      }
+    }
+
+    if (bestStartRoads == null) {
+      return new Route(new int[] {startIntersection, endIntersection}, null,
+          Double.POSITIVE_INFINITY, settledCount);
+    }
+
+    // Expand every core road of the route into the roads of its chain, in travel order, between
+    // the roads to the core graph and the roads from it, which are read backwards
+
+    IntList roads = new IntList();
+
+    for (int road : bestStartRoads) {
+      roads.add(road);
+    }
+
+    if (bestCoreRoute != null) {
+      int[] coreIntersections = bestCoreRoute.getIntersections();
+      int[] coreRoads = bestCoreRoute.getRoads();
+
+      for (int i = 0; i < coreRoads.length; i++) {
+        int chain = coreRoads[i];
+        int length = this.chains.getLength(chain);
+        boolean isForward =
+            this.chains.getCoreGraph().getRoadIntersection1(chain) == coreIntersections[i];
+
+        for (int j = 0; j < length; j++) {
+          roads.add(this.chains.getRoad(chain, isForward ? j : length - 1 - j));
+        }
+      }
+    }
+
+    for (int i = bestEndRoads.length - 1; i >= 0; i--) {
+      roads.add(bestEndRoads[i]);
+    }
+
+    int[] intersections = new int[roads.size() + 1];
+    double distance = 0.0;
+
+    intersections[0] = startIntersection;
+
+    for (int i = 0; i < roads.size(); i++) {
+      intersections[i + 1] = this.graph.getTheOtherEnd(roads.get(i), intersections[i]);
+      distance += this.graph.getRoadDistance(roads.get(i));
+    }
+
+    return new Route(intersections, roads.toArray(), distance, settledCount);
+  }
+
+  /**
+   * Returns the chain of an inner intersection.
+   */
+  private int getChain(int intersection) {
+    return this.chains.getChain(this.graph.getEdgeRoad(this.graph.getFirstEdge(intersection)));
+  }
+
+  /**
+   * Returns the position of an inner intersection within its chain, which is the number of roads
+   * before it from the first end of the chain. The two roads of an inner intersection are next to
+   * each other in its chain, so it comes right before the later one.
+   */
+  private int getChainPosition(int intersection) {
+    int firstEdge = this.graph.getFirstEdge(intersection);
+
+    return Math.max(this.chains.getPosition(this.graph.getEdgeRoad(firstEdge)),
+        this.chains.getPosition(this.graph.getEdgeRoad(firstEdge + 1)));
+  }
+
+  /**
+   * Returns the ways to reach the core graph from an intersection, each as roads in travel order:
+   * no roads for a core intersection, and the roads to either end of its chain for an inner
+   * intersection.
+   */
+  private int[][] getChainExits(int intersection) {
+    if (this.chains.getCoreIntersection(intersection) >= 0) {
+      return new int[][] {new int[0]};
+    }
+
+    int chain = this.getChain(intersection);
+    int position = this.getChainPosition(intersection);
+    int length = this.chains.getLength(chain);
+    int[] backward = new int[position];
+    int[] forward = new int[length - position];
+
+    for (int i = 0; i < backward.length; i++) {
+      backward[i] = this.chains.getRoad(chain, position - 1 - i);
+    }
+
+    for (int i = 0; i < forward.length; i++) {
+      forward[i] = this.chains.getRoad(chain, position + i);
+    }
+
+    return new int[][] {backward, forward};
+  }
+
+  /**
+   * Returns the roads along a chain between two of its inner intersections, in travel order.
+   */
+  private int[] getChainPath(int startIntersection, int endIntersection) {
+    int chain = this.getChain(startIntersection);
+    int startPosition = this.getChainPosition(startIntersection);
+    int endPosition = this.getChainPosition(endIntersection);
+    int[] roads = new int[Math.abs(endPosition - startPosition)];
+
+    for (int i = 0; i < roads.length; i++) {
+      roads[i] = this.chains.getRoad(chain,
+          endPosition >= startPosition ? startPosition + i : startPosition - 1 - i);
+    }
+
+    return roads;
+  }
+
+  /**
+   * Returns the intersection that a sequence of roads leads to from an intersection.
+   */
+  private int walk(int intersection, int[] roads) {
+    for (int road : roads) {
+      intersection = this.graph.getTheOtherEnd(road, intersection);
+    }
+
+    return intersection;
+  }
+
+  /**
+   * Sums the distances of roads, in order.
+   */
+  private double getDistance(int[] roads) {
+    double distance = 0.0;
+
+    for (int road : roads) {
+      distance += this.graph.getRoadDistance(road);
+    }
+
+    return distance;
+  }
+
+  /**
+   * Returns the factor that great-circle distances are scaled by to become lower bounds of road
+   * distances, computing it on first use.
+   *
+   * <p>
+   * Road distances are normally the great-circle distances between their endpoints, so the factor
+   * is just below 1. It is calibrated against every road anyway, so that the A* heuristic stays
+   * admissible even if coordinates have been rounded (as in snapshots) or distances come from
+   * elsewhere: for every road, the scaled great-circle distance between its endpoints is at most
+   * its distance, so by the triangle inequality the scaled great-circle distance to the end is at
+   * most the length of any path to the end.
+   *
+   * @return the factor, between 0 and 1.
+   */
+  private double getHeuristicScale() {
+    double scale = this.heuristicScale;
+
+    if (Double.isNaN(scale)) {
+      scale = 1;
+
+      for (int road = 0; road < this.graph.getRoadCount(); road++) {
+        scale = Math.min(scale, this.getHeuristicScale(road));
+      }
+
+      // Leave room for rounding errors in the haversine formula
+      scale = Math.max(0, scale * (1 - 1e-9));
+      this.heuristicScale = scale;
+    }
+
+    return scale;
+  }
+
+  /**
+   * Returns the largest factor that the great-circle distance between the endpoints of a road can
+   * be scaled by and stay below the distance of the road.
+   *
+   * @param road the index of the road
+   * @return the factor, between 0 and 1.
+   */
+  private double getHeuristicScale(int road) {
+    int intersection1 = this.graph.getRoadIntersection1(road);
+    int intersection2 = this.graph.getRoadIntersection2(road);
+    double greatCircleDistance = Road.haversine(this.graph.getLatitude(intersection1),
+        this.graph.getLongtitude(intersection1), this.graph.getLatitude(intersection2),
+        this.graph.getLongtitude(intersection2));
+    double distance = this.graph.getRoadDistance(road);
+
+    return distance >= greatCircleDistance ? 1 : distance / greatCircleDistance;
+  }
+
+  /**
+   * Returns the route between two intersections that no path connects, which took no search.
+   */
+  private static Route unreachable(int startIntersection, int endIntersection) {
+    return new Route(new int[] {startIntersection, endIntersection}, null, Double.POSITIVE_INFINITY,
+        0);
+  }
+
+  /**
+   * Follows the parent roads of a finished search from the intersection where the path was found
+   * back to the start, and, for a bidirectional search, forward to the end.
+   *
+   * @param forward the workspace of the search from the start
+   * @param backward the workspace of the search from the end, or {@code null}
+   * @param startIntersection the index of the start intersection
+   * @param meetingIntersection the index of an intersection on the path that both searches reached
+   *        (the end intersection for a search from the start only), or {@code -1} if no path was
+   *        found
+   * @param endIntersection the index of the end intersection
+   * @param settledCount the number of intersections that the search settled
+   * @return the route that the search found.
+   */
+  private Route compileRoute(SearchWorkspace forward, SearchWorkspace backward,
+      int startIntersection, int meetingIntersection, int endIntersection, int settledCount) {
+    if (meetingIntersection < 0) {
+      return new Route(new int[] {startIntersection, endIntersection}, null,
+          Double.POSITIVE_INFINITY, settledCount);
+    }
+
+    int forwardLength = 0;
+    for (int current = meetingIntersection; current != startIntersection; forwardLength++) {
+      current = this.graph.getTheOtherEnd(forward.getParentRoad(current), current);
+    }
+
+    int length = forwardLength;
+    for (int current = meetingIntersection; current != endIntersection; length++) {
+      current = this.graph.getTheOtherEnd(backward.getParentRoad(current), current);
+    }
+
+    int[] intersections = new int[length + 1];
+    int[] roads = new int[length];
+
+    intersections[forwardLength] = meetingIntersection;
+
+    for (int i = forwardLength - 1; i >= 0; i--) {
+      roads[i] = forward.getParentRoad(intersections[i + 1]);
+      intersections[i] = this.graph.getTheOtherEnd(roads[i], intersections[i + 1]);
+    }
+
+    for (int i = forwardLength; i < length; i++) {
+      roads[i] = backward.getParentRoad(intersections[i]);
+      intersections[i + 1] = this.graph.getTheOtherEnd(roads[i], intersections[i]);
+    }
+
+    // Sum the distances in travel order, so that every algorithm reports the same total for the
+    // same route
+    double distance = 0.0;
+    for (int road : roads) {
+      distance += this.graph.getRoadDistance(road);
+    }
+
+    return new Route(intersections, roads, distance, settledCount);
+  }
+}
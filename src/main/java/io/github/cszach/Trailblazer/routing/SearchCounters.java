@@ -0,0 +1,39 @@
+package io.github.cszach.Trailblazer.routing;
+
+/**
+ * The running totals of the work of the searches of one thread, which every {@code SearchWorkspace}
+ * that the thread creates adds to. A query reads the totals before and after it searches, so that
+ * the difference covers every search it ran, including those of the core engine and the backward
+ * searches.
+ *
+ * <p>
+ * The totals are plain fields that only their thread writes, so counting costs next to nothing.
+ */
+final class SearchCounters {
+  private static final ThreadLocal<SearchCounters> COUNTERS =
+      ThreadLocal.withInitial(SearchCounters::new);
+
+  /**
+   * The number of intersections that were settled.
+   */
+  long settledCount = 0;
+  /**
+   * The number of relaxations that lowered a tentative distance.
+   */
+  long relaxedCount = 0;
+  /**
+   * The number of insertions, decreases of keys, and removals of the priority queues.
+   */
+  long queueOperationCount = 0;
+
+  private SearchCounters() {}
+
+  /**
+   * Returns the totals of the current thread.
+   *
+   * @return the totals of the current thread.
+   */
+  static SearchCounters get() {
+    return COUNTERS.get();
+  }
+}
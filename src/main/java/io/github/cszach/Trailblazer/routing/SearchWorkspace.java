@@ -0,0 +1,156 @@
+package io.github.cszach.Trailblazer.routing;
+
+import java.util.Arrays;
+
+/**
+ * The per-intersection state of a shortest path search: the tentative distance of every
+ * intersection, the road that it was reached by, and its heuristic estimate of the remaining
+ * distance, plus the priority queue.
+ *
+ * <p>
+ * A workspace is reused across searches, and is reset lazily: every entry is stamped with the
+ * generation of the search that wrote it, and an entry whose stamp is not the current generation
+ * reads as unreached. Starting a new search only bumps the generation, so the cost of a search is
+ * proportional to the intersections that it visits rather than to the size of the graph.
+ *
+ * <p>
+ * A workspace is not thread-safe; each thread uses its own. The work of its searches is added to
+ * the {@code SearchCounters} of the thread that created it.
+ */
+class SearchWorkspace {
+  private final double[] distances;
+  private final int[] parentRoads;
+  private final double[] heuristics;
+  /**
+   * The generation of the search that last wrote each entry.
+   */
+  private final int[] stamps;
+  private int generation = 0;
+  private final NodeQueue queue;
+  private int settledCount = 0;
+  private final SearchCounters counters = SearchCounters.get();
+
+  /**
+   * Constructs a new {@code SearchWorkspace} for a graph of the given size.
+   *
+   * @param intersectionCount the number of intersections in the graph
+   */
+  SearchWorkspace(int intersectionCount) {
+    this(intersectionCount, QueueType.HEAP);
+  }
+
+  /**
+   * Constructs a new {@code SearchWorkspace} for a graph of the given size, with a given type of
+   * priority queue.
+   *
+   * @param intersectionCount the number of intersections in the graph
+   * @param queueType the type of the priority queue
+   */
+  SearchWorkspace(int intersectionCount, QueueType queueType) {
+    this.queue = queueType.create(intersectionCount);
+    this.distances = new double[intersectionCount];
+    this.parentRoads = new int[intersectionCount];
+    this.heuristics = new double[intersectionCount];
+    this.stamps = new int[intersectionCount];
+  }
+
+  int getIntersectionCount() {
+    return this.stamps.length;
+  }
+
+  /**
+   * Forgets the state of the previous search.
+   */
+  void reset() {
+    this.generation++;
+
+    if (this.generation == 0) {
+      // The generation wrapped around, so old stamps could be mistaken for current ones
+      Arrays.fill(this.stamps, 0);
+      this.generation = 1;
+    }
+
+    this.queue.clear();
+    this.settledCount = 0;
+  }
+
+  /**
+   * Returns the tentative distance of an intersection.
+   *
+   * @return the tentative distance of the intersection, or {@code +Infinity} if it has not been
+   *         reached.
+   */
+  double getDistance(int intersection) {
+    return this.stamps[intersection] == this.generation ? this.distances[intersection]
+        : Double.POSITIVE_INFINITY;
+  }
+
+  /**
+   * Returns the road that an intersection was reached by.
+   *
+   * @return the index of the road, or {@code -1} if the intersection is the start or has not been
+   *         reached.
+   */
+  int getParentRoad(int intersection) {
+    return this.stamps[intersection] == this.generation ? this.parentRoads[intersection] : -1;
+  }
+
+  /**
+   * Checks whether an intersection has been reached.
+   *
+   * @return {@code true} if the intersection has a tentative distance, {@code false} otherwise.
+   */
+  boolean isReached(int intersection) {
+    return this.stamps[intersection] == this.generation;
+  }
+
+  /**
+   * Returns the heuristic estimate of an intersection that has been reached.
+   */
+  double getHeuristic(int intersection) {
+    return this.heuristics[intersection];
+  }
+
+  /**
+   * Records a shorter tentative distance for an intersection, and queues it by the sum of the
+   * distance and the heuristic estimate, or lowers its key if it is already queued.
+   *
+   * @param intersection the index of the intersection
+   * @param distance the new tentative distance
+   * @param parentRoad the road that the intersection was reached by, or {@code -1}
+   * @param heuristic the estimate of the remaining distance from the intersection, which must be
+   *        the same every time the intersection is updated in a search
+   */
+  void update(int intersection, double distance, int parentRoad, double heuristic) {
+    this.stamps[intersection] = this.generation;
+    this.distances[intersection] = distance;
+    this.parentRoads[intersection] = parentRoad;
+    this.heuristics[intersection] = heuristic;
+    this.queue.add(intersection, distance + heuristic);
+    this.counters.relaxedCount++;
+    this.counters.queueOperationCount++;
+  }
+
+  /**
+   * Removes the entry with the smallest key from the queue, and returns its intersection. The queue
+   * must not be empty.
+   */
+  int poll() {
+    this.counters.queueOperationCount++;
+
+    return this.queue.poll();
+  }
+
+  NodeQueue getQueue() {
+    return this.queue;
+  }
+
+  void markSettled() {
+    this.settledCount++;
+    this.counters.settledCount++;
+  }
+
+  int getSettledCount() {
+    return this.settledCount;
+  }
+}
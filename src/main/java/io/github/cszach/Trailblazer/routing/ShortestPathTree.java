@@ -0,0 +1,178 @@
+package io.github.cszach.Trailblazer.routing;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import io.github.cszach.Trailblazer.geo.RoadGraph;
+
+/**
+ * The result of a one-to-all query: the distance from a source to every intersection within a
+ * cutoff, and the road that the shortest path to each of them arrives by.
+ *
+ * <p>
+ * The intersections within the cutoff form an isochrone, whose boundary is given by its frontier
+ * roads: the roads that lead from an intersection within the cutoff to one beyond it, on which the
+ * cutoff is reached.
+ *
+ * <p>
+ * A {@code ShortestPathTree} is immutable, so it can be shared freely between threads.
+ * Intersections and roads are referred to by their indices in the {@code RoadGraph} that was
+ * searched.
+ *
+ * @see RoutingEngine#findShortestPathTree(int, double)
+ */
+public final class ShortestPathTree {
+  private final RoadGraph graph;
+  private final int source;
+  private final double cutoff;
+  /**
+   * The distance of every intersection, or {@code +Infinity} if it is beyond the cutoff.
+   */
+  private final double[] distances;
+  /**
+   * The road that the shortest path to every intersection arrives by, or {@code -1} for the source
+   * and the intersections beyond the cutoff.
+   */
+  private final int[] parentRoads;
+  private final int settledCount;
+
+  ShortestPathTree(RoadGraph graph, int source, double cutoff, double[] distances,
+      int[] parentRoads, int settledCount) {
+    this.graph = graph;
+    this.source = source;
+    this.cutoff = cutoff;
+    this.distances = distances;
+    this.parentRoads = parentRoads;
+    this.settledCount = settledCount;
+  }
+
+  /**
+   * Returns the source of this tree.
+   *
+   * @return the index of the source intersection.
+   */
+  public int getSource() {
+    return this.source;
+  }
+
+  /**
+   * Returns the cutoff of this tree.
+   *
+   * @return the largest distance, in miles, that this tree covers, which is {@code +Infinity} for a
+   *         full distance field.
+   */
+  public double getCutoff() {
+    return this.cutoff;
+  }
+
+  /**
+   * Returns the distance from the source to an intersection.
+   *
+   * @param intersection the index of the intersection
+   * @return the distance, in miles, or {@code +Infinity} if the intersection is beyond the cutoff
+   *         or cannot be reached.
+   */
+  public double getDistance(int intersection) {
+    return this.distances[intersection];
+  }
+
+  /**
+   * Returns the road that the shortest path from the source to an intersection arrives by.
+   *
+   * @param intersection the index of the intersection
+   * @return the index of the road, or {@code -1} if the intersection is the source or is beyond the
+   *         cutoff.
+   */
+  public int getParentRoad(int intersection) {
+    return this.parentRoads[intersection];
+  }
+
+  /**
+   * Checks whether an intersection is within the cutoff.
+   *
+   * @param intersection the index of the intersection
+   * @return {@code true} if the intersection can be reached within the cutoff, {@code false}
+   *         otherwise.
+   */
+  public boolean isReachable(int intersection) {
+    return this.distances[intersection] != Double.POSITIVE_INFINITY;
+  }
+
+  /**
+   * Returns the distance from the source to every intersection.
+   *
+   * @return the distance, in miles, of every intersection by index, with {@code +Infinity} for the
+   *         intersections beyond the cutoff.
+   */
+  public double[] getDistances() {
+    return this.distances.clone();
+  }
+
+  /**
+   * Returns the road that the shortest path to every intersection arrives by.
+   *
+   * @return the index of the parent road of every intersection by index, with {@code -1} for the
+   *         source and the intersections beyond the cutoff.
+   */
+  public int[] getParentRoads() {
+    return this.parentRoads.clone();
+  }
+
+  /**
+   * Returns the intersections within the cutoff, nearest first.
+   *
+   * @return the indices of the intersections within the cutoff, in the order of their distance.
+   */
+  public int[] getReachableIntersections() {
+    return IntStream.range(0, this.distances.length).filter(this::isReachable).boxed()
+        .sorted((a, b) -> Double.compare(this.distances[a], this.distances[b]))
+        .mapToInt(Integer::intValue).toArray();
+  }
+
+  /**
+   * Returns the roads that cross the boundary of the isochrone, from an intersection within the
+   * cutoff to one beyond it.
+   *
+   * @return the indices of the frontier roads, in increasing order.
+   */
+  public int[] getFrontierRoads() {
+    int[] roads = new int[this.graph.getRoadCount()];
+    int count = 0;
+
+    for (int road = 0; road < roads.length; road++) {
+      boolean isReachable1 = this.isReachable(this.graph.getRoadIntersection1(road));
+      boolean isReachable2 = this.isReachable(this.graph.getRoadIntersection2(road));
+
+      if (isReachable1 != isReachable2) {
+        roads[count++] = road;
+      }
+    }
+
+    return Arrays.copyOf(roads, count);
+  }
+
+  /**
+   * Returns how far along a frontier road, from its endpoint within the cutoff, the cutoff is
+   * reached. This is where the boundary of the isochrone crosses the road.
+   *
+   * @param road the index of a frontier road
+   * @return the fraction of the road, between 0 and 1, that is within the cutoff.
+   */
+  public double getFrontierFraction(int road) {
+    int intersection1 = this.graph.getRoadIntersection1(road);
+    int intersection2 = this.graph.getRoadIntersection2(road);
+    double distance = Math.min(this.distances[intersection1], this.distances[intersection2]);
+    double length = this.graph.getRoadDistance(road);
+
+    return length > 0 ? Math.min(1, Math.max(0, (this.cutoff - distance) / length)) : 1;
+  }
+
+  /**
+   * Returns the number of intersections that the search settled.
+   *
+   * @return the number of intersections that the search settled.
+   */
+  public int getSettledCount() {
+    return this.settledCount;
+  }
+}
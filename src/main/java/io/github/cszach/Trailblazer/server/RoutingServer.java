@@ -0,0 +1,626 @@
+package io.github.cszach.Trailblazer.server;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import io.github.cszach.Trailblazer.geo.Geography;
+import io.github.cszach.Trailblazer.geo.Intersection;
+import io.github.cszach.Trailblazer.geo.Road;
+import io.github.cszach.Trailblazer.routing.Route;
+import io.github.cszach.Trailblazer.routing.RouteCache;
+import io.github.cszach.Trailblazer.spatial.KdTree;
+
+/**
+ * An HTTP server that answers routing queries as JSON, over a {@code Geography} that is loaded once
+ * and shared by every request.
+ *
+ * <p>
+ * The endpoints take their parameters from the query string:
+ *
+ * <ul>
+ * <li>{@code GET /route?from=<ID>&to=<ID>}: the shortest route between two intersections, as
+ * {@code {"from", "to", "miles", "intersections"}}, where {@code miles} is {@code null} and
+ * {@code intersections} is empty if no path connects them. Either end can also be given as
+ * {@code <LAT>,<LON>}, which is snapped to the nearest intersection;
+ * <li>{@code GET /nearest?lat=<LAT>&lon=<LON>[&k=<K>]}: the {@code K} (by default 1) intersections
+ * nearest to a point, nearest first, as {@code {"intersections": [{"id", "latitude", "longtitude",
+ * "miles"}]}};
+ * <li>{@code GET /matrix?sources=<ID>,<ID>...&targets=<ID>,<ID>...}: the road distance from every
+ * source to every target, as {@code {"sources", "targets", "miles"}}, where {@code miles} has a row
+ * per source and {@code null} for unreachable targets.
+ * </ul>
+ *
+ * <p>
+ * Errors are answered with a status code and {@code {"error"}}. Requests are handled on virtual
+ * threads when the runtime has them (Java 21 and later), and on a bounded pool of platform threads
+ * otherwise, so that waiting on the network never holds up the cores. The searches themselves run
+ * on platform threads, one per core, which keep their search workspaces from one query to the next:
+ *
+ * <ul>
+ * <li>Route queries are queued, and answered through a {@code RouteCache} by a worker per core,
+ * each of which takes the next query as soon as it is done with the last one. Queries that arrive
+ * together share the cores instead of competing for them, and none waits for a slower one that
+ * happened to arrive at the same time.
+ * <li>Distance matrices are computed on the common fork/join pool, which has a thread per core, at
+ * most one per core at a time. Their rows are streamed to the response as they are done, so that a
+ * matrix is never held in memory. A matrix that takes longer than {@code MATRIX_TIMEOUT_SECONDS},
+ * or is still being computed when the server stops, is cut off, which ends its response early.
+ * <li>Requests are admitted up to a bound on the number in flight. Beyond it, requests are answered
+ * at once with {@code 503 Service Unavailable} and a {@code Retry-After} header, rather than
+ * queued, so that the latency of the admitted requests stays flat under overload. So are distance
+ * matrices beyond one per core, route queries that wait longer than {@code ROUTE_TIMEOUT_SECONDS},
+ * and route queries still waiting when the server stops.
+ * </ul>
+ *
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * RoutingServer server = new RoutingServer(geo, cache, KdTree.build(geo.getGraph()));
+ * server.start(8080);
+ * </pre>
+ */
+public final class RoutingServer {
+  /**
+   * The number of requests in flight per core above which requests are turned away.
+   */
+  private static final int MAX_IN_FLIGHT_PER_CORE = 16;
+  /**
+   * The longest time, in seconds, that a route query waits for its answer.
+   */
+  private static final long ROUTE_TIMEOUT_SECONDS = 30;
+  /**
+   * The longest time, in seconds, that a distance matrix request may take.
+   */
+  private static final long MATRIX_TIMEOUT_SECONDS = 60;
+  /**
+   * The largest number of distances that a distance matrix request may ask for.
+   */
+  private static final long MAX_MATRIX_SIZE = 1_000_000;
+  /**
+   * The largest number of intersections that a nearest intersection request may ask for.
+   */
+  private static final int MAX_NEAREST_COUNT = 1000;
+
+  /**
+   * A route query that is waiting for a worker.
+   */
+  private static final class PendingRoute {
+    private final int startIntersection;
+    private final int endIntersection;
+    private final CompletableFuture<Route> route = new CompletableFuture<>();
+
+    PendingRoute(int startIntersection, int endIntersection) {
+      this.startIntersection = startIntersection;
+      this.endIntersection = endIntersection;
+    }
+  }
+
+  /**
+   * An error that is answered with a status code.
+   */
+  private static final class RequestException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    private final int status;
+
+    RequestException(int status, String message) {
+      super(message);
+      this.status = status;
+    }
+  }
+
+  private final Geography geo;
+  private final RouteCache cache;
+  private final KdTree tree;
+  private final int maxInFlight;
+  private final Semaphore permits;
+  private final Semaphore matrixPermits;
+  private final BlockingQueue<PendingRoute> pendingRoutes;
+  private HttpServer server;
+  private ExecutorService executor;
+  private Thread[] workers;
+  private volatile boolean stopped = false;
+
+  /**
+   * Constructs a new {@code RoutingServer}, which does not listen until it is started.
+   *
+   * @param geo the {@code Geography} to answer queries about, which must not be modified while the
+   *        server runs
+   * @param cache the {@code RouteCache} that answers route queries, over an engine of the graph of
+   *        {@code geo}
+   * @param tree the k-d tree of the intersections of {@code geo}
+   */
+  public RoutingServer(Geography geo, RouteCache cache, KdTree tree) {
+    this.geo = geo;
+    this.cache = cache;
+    this.tree = tree;
+    this.maxInFlight = MAX_IN_FLIGHT_PER_CORE * Runtime.getRuntime().availableProcessors();
+    this.permits = new Semaphore(this.maxInFlight);
+    this.matrixPermits = new Semaphore(Runtime.getRuntime().availableProcessors());
+    // Every query in the queue holds a permit, so the queue never fills up
+    this.pendingRoutes = new ArrayBlockingQueue<>(this.maxInFlight);
+  }
+
+  /**
+   * Starts listening on a port of every local address.
+   *
+   * @param port the port to listen on, or {@code 0} for any free port
+   * @throws IOException when the port cannot be bound.
+   * @throws IllegalStateException when the server has already been started, or has stopped.
+   */
+  public synchronized void start(int port) throws IOException {
+    if (this.server != null || this.stopped) {
+      throw new IllegalStateException("The server has already been started");
+    }
+
+    this.server = HttpServer.create(new InetSocketAddress(port), 0);
+    this.executor = newExecutor(2 * this.maxInFlight);
+    this.server.setExecutor(this.executor);
+    this.server.createContext("/route", exchange -> this.handle(exchange,
+        (parameters, response) -> send(response, 200, this.answerRoute(parameters))));
+    this.server.createContext("/nearest", exchange -> this.handle(exchange,
+        (parameters, response) -> send(response, 200, this.answerNearest(parameters))));
+    this.server.createContext("/matrix", exchange -> this.handle(exchange, this::answerMatrix));
+
+    this.workers = new Thread[Runtime.getRuntime().availableProcessors()];
+
+    for (int i = 0; i < this.workers.length; i++) {
+      this.workers[i] = new Thread(this::answerRoutes, "route-worker-" + i);
+      this.workers[i].setDaemon(true);
+      this.workers[i].start();
+    }
+
+    this.server.start();
+  }
+
+  /**
+   * Makes the executor that requests are handled on: one virtual thread per request if the runtime
+   * has virtual threads, and otherwise a pool of twice as many platform threads as requests may be
+   * in flight, so that requests beyond the bound reach a thread to be turned away rather than wait
+   * in the queue of the pool. The method is looked up by reflection, so that the server still runs
+   * on Java 17.
+   */
+  private static ExecutorService newExecutor(int poolSize) {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+          .invoke(null);
+    } catch (ReflectiveOperationException exception) {
+      return Executors.newFixedThreadPool(poolSize, runnable -> {
+        Thread thread = new Thread(runnable, "route-server");
+
+        thread.setDaemon(true);
+
+        return thread;
+      });
+    }
+  }
+
+  /**
+   * Stops listening, waiting up to a second for the requests in flight to be answered. Route
+   * queries that no worker has taken yet are answered at once with {@code 503 Service Unavailable}.
+   * A server cannot be started again once it has stopped.
+   */
+  public synchronized void stop() {
+    if (this.server == null) {
+      return;
+    }
+
+    this.stopped = true;
+
+    // Queries that were queued before the flag was set; later ones are cancelled by answerRoute
+    PendingRoute pending;
+
+    while ((pending = this.pendingRoutes.poll()) != null) {
+      pending.route.cancel(false);
+    }
+
+    // Lets the searches that are under way finish and be sent before the connections close
+    this.server.stop(1);
+
+    for (Thread worker : this.workers) {
+      worker.interrupt();
+    }
+
+    this.executor.shutdown();
+    this.server = null;
+  }
+
+  /**
+   * Returns the port that the server listens on.
+   *
+   * @return the port that the server listens on.
+   * @throws IllegalStateException when the server has not been started.
+   */
+  public synchronized int getPort() {
+    if (this.server == null) {
+      throw new IllegalStateException("The server has not been started");
+    }
+
+    return this.server.getAddress().getPort();
+  }
+
+  /**
+   * Returns the number of requests in flight above which requests are turned away.
+   *
+   * @return the largest number of requests in flight.
+   */
+  public int getMaxInFlight() {
+    return this.maxInFlight;
+  }
+
+  /**
+   * Answers route queries one at a time, as they are queued, until the worker is interrupted.
+   */
+  private void answerRoutes() {
+    try {
+      while (!this.stopped) {
+        PendingRoute pending = this.pendingRoutes.take();
+
+        // Skips queries whose requests have already been answered
+        if (pending.route.isDone()) {
+          continue;
+        }
+
+        try {
+          pending.route.complete(
+              this.cache.findShortestPath(pending.startIntersection, pending.endIntersection));
+        } catch (RuntimeException exception) {
+          pending.route.completeExceptionally(exception);
+        }
+      }
+    } catch (InterruptedException exception) {
+      // Stopped
+    }
+  }
+
+  /**
+   * Answers a request with a JSON document, or fails with an error before anything is sent.
+   */
+  @FunctionalInterface
+  private interface Handler {
+    void answer(Map<String, String> parameters, HttpExchange exchange)
+        throws RequestException, InterruptedException, IOException;
+  }
+
+  /**
+   * Admits a request if there is room for it, and sends its answer.
+   */
+  private void handle(HttpExchange exchange, Handler handler) throws IOException {
+    try (exchange) {
+      if (!exchange.getRequestMethod().equals("GET")) {
+        exchange.getResponseHeaders().set("Allow", "GET");
+        send(exchange, 405, error("Only GET is supported"));
+        return;
+      }
+
+      if (!this.permits.tryAcquire()) {
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        send(exchange, 503, error("Too many requests in flight"));
+        return;
+      }
+
+      try {
+        handler.answer(parseQuery(exchange.getRequestURI().getRawQuery()), exchange);
+      } catch (RequestException exception) {
+        if (exception.status == 503) {
+          exchange.getResponseHeaders().set("Retry-After", "1");
+        }
+
+        send(exchange, exception.status, error(exception.getMessage()));
+      } catch (InterruptedException exception) {
+        Thread.currentThread().interrupt();
+        send(exchange, 503, error("The server is stopping"));
+      } catch (RuntimeException exception) {
+        send(exchange, 500, error(String.valueOf(exception.getMessage())));
+      } finally {
+        this.permits.release();
+      }
+    }
+  }
+
+  private static void send(HttpExchange exchange, int status, String json) throws IOException {
+    byte[] body = json.getBytes(StandardCharsets.UTF_8);
+
+    exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+    exchange.sendResponseHeaders(status, body.length);
+
+    try (OutputStream output = exchange.getResponseBody()) {
+      output.write(body);
+    }
+  }
+
+  private static Map<String, String> parseQuery(String query) {
+    Map<String, String> parameters = new HashMap<>();
+
+    if (query == null) {
+      return parameters;
+    }
+
+    for (String parameter : query.split("&")) {
+      int equals = parameter.indexOf('=');
+
+      if (equals > 0) {
+        parameters.put(URLDecoder.decode(parameter.substring(0, equals), StandardCharsets.UTF_8),
+            URLDecoder.decode(parameter.substring(equals + 1), StandardCharsets.UTF_8));
+      }
+    }
+
+    return parameters;
+  }
+
+  private String answerRoute(Map<String, String> parameters)
+      throws RequestException, InterruptedException {
+    Intersection start = this.resolve(getParameter(parameters, "from"));
+    Intersection end = this.resolve(getParameter(parameters, "to"));
+    PendingRoute pending = new PendingRoute(start.getIndex(), end.getIndex());
+    Route route;
+
+    if (this.stopped) {
+      throw new RequestException(503, "The server is stopping");
+    }
+
+    this.pendingRoutes.add(pending);
+
+    // The query may have been queued after stop drained the queue, which no worker will take
+    if (this.stopped && this.pendingRoutes.remove(pending)) {
+      pending.route.cancel(false);
+    }
+
+    try {
+      route = pending.route.get(ROUTE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    } catch (CancellationException exception) {
+      throw new RequestException(503, "The server is stopping");
+    } catch (TimeoutException exception) {
+      // Frees the worker that would take it, and the slot of the queue that it holds
+      pending.route.cancel(false);
+      this.pendingRoutes.remove(pending);
+
+      throw new RequestException(503, "The route query timed out");
+    } catch (ExecutionException exception) {
+      throw new RequestException(500, String.valueOf(exception.getCause().getMessage()));
+    }
+
+    StringBuilder json = new StringBuilder();
+
+    json.append("{\"from\":").append(quote(start.getId())).append(",\"to\":")
+        .append(quote(end.getId())).append(",\"miles\":").append(number(route.getDistance()))
+        .append(",\"intersections\":[");
+
+    if (route.isFound()) {
+      int[] intersections = route.getIntersections();
+
+      for (int i = 0; i < intersections.length; i++) {
+        json.append(i > 0 ? "," : "")
+            .append(quote(this.geo.getIntersection(intersections[i]).getId()));
+      }
+    }
+
+    return json.append("]}").toString();
+  }
+
+  private String answerNearest(Map<String, String> parameters) throws RequestException {
+    double latitude = parseCoordinate(getParameter(parameters, "lat"), 90);
+    double longtitude = parseCoordinate(getParameter(parameters, "lon"), 180);
+    int k;
+
+    try {
+      k = Integer.parseInt(parameters.getOrDefault("k", "1"));
+    } catch (NumberFormatException exception) {
+      throw new RequestException(400, "Invalid k");
+    }
+
+    if (k < 0 || k > MAX_NEAREST_COUNT) {
+      throw new RequestException(400, "k must be from 0 to " + MAX_NEAREST_COUNT);
+    }
+
+    StringBuilder json = new StringBuilder("{\"intersections\":[");
+    int[] nearest = this.tree.findNearest(latitude, longtitude, k);
+
+    for (int i = 0; i < nearest.length; i++) {
+      Intersection intersection = this.geo.getIntersection(nearest[i]);
+
+      json.append(i > 0 ? "," : "").append("{\"id\":").append(quote(intersection.getId()))
+          .append(",\"latitude\":").append(intersection.getLatitude()).append(",\"longtitude\":")
+          .append(intersection.getLongtitude()).append(",\"miles\":")
+          .append(number(Road.haversine(latitude, longtitude, intersection.getLatitude(),
+              intersection.getLongtitude())))
+          .append('}');
+    }
+
+    return json.append("]}").toString();
+  }
+
+  private void answerMatrix(Map<String, String> parameters, HttpExchange exchange)
+      throws RequestException, IOException {
+    Intersection[] sources = this.resolveAll(getParameter(parameters, "sources"));
+    Intersection[] targets = this.resolveAll(getParameter(parameters, "targets"));
+
+    if ((long) sources.length * targets.length > MAX_MATRIX_SIZE) {
+      throw new RequestException(400, "The matrix may have at most " + MAX_MATRIX_SIZE + " cells");
+    }
+
+    int[] sourceIndices = new int[sources.length];
+    int[] targetIndices = new int[targets.length];
+
+    for (int i = 0; i < sources.length; i++) {
+      sourceIndices[i] = sources[i].getIndex();
+    }
+
+    for (int j = 0; j < targets.length; j++) {
+      targetIndices[j] = targets[j].getIndex();
+    }
+
+    if (!this.matrixPermits.tryAcquire()) {
+      throw new RequestException(503, "Too many distance matrices in flight");
+    }
+
+    try {
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(MATRIX_TIMEOUT_SECONDS);
+      StringBuilder head = new StringBuilder("{\"sources\":");
+
+      appendIds(head, sources);
+      head.append(",\"targets\":");
+      appendIds(head, targets);
+      head.append(",\"miles\":[");
+
+      exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+      exchange.sendResponseHeaders(200, 0);
+
+      // The rows are searched on the common pool rather than on this thread, which may be a new
+      // virtual thread per request, so that they reuse workspaces that outlive the request
+      try (Writer json = new BufferedWriter(
+          new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8))) {
+        json.write(head.toString());
+
+        this.cache.getEngine().distanceMatrix(sourceIndices, targetIndices, (row, distances) -> {
+          // Failing the sink cancels the rows that are under way
+          if (this.stopped || System.nanoTime() > deadline) {
+            throw new IOException("The distance matrix was cut off");
+          }
+
+          json.write(row > 0 ? ",[" : "[");
+
+          for (int j = 0; j < distances.length; j++) {
+            json.write(j > 0 ? "," : "");
+            json.write(number(distances[j]));
+          }
+
+          json.write(']');
+        });
+
+        json.write("]}");
+      }
+    } finally {
+      this.matrixPermits.release();
+    }
+  }
+
+  private static String getParameter(Map<String, String> parameters, String name)
+      throws RequestException {
+    String value = parameters.get(name);
+
+    if (value == null || value.isEmpty()) {
+      throw new RequestException(400, "Missing parameter " + name);
+    }
+
+    return value;
+  }
+
+  private static double parseCoordinate(String value, double bound) throws RequestException {
+    try {
+      double coordinate = Double.parseDouble(value.strip());
+
+      if (coordinate >= -bound && coordinate <= bound) {
+        return coordinate;
+      }
+    } catch (NumberFormatException exception) {
+      // Rejected below
+    }
+
+    throw new RequestException(400, "Invalid coordinate " + value);
+  }
+
+  /**
+   * Finds the intersection of an ID, or the intersection nearest to a point given as
+   * {@code <LAT>,<LON>}.
+   */
+  private Intersection resolve(String value) throws RequestException {
+    int comma = value.indexOf(',');
+
+    if (comma >= 0) {
+      int index = this.tree.findNearest(parseCoordinate(value.substring(0, comma), 90),
+          parseCoordinate(value.substring(comma + 1), 180));
+
+      if (index < 0) {
+        throw new RequestException(404, "The map has no intersections");
+      }
+
+      return this.geo.getIntersection(index);
+    }
+
+    Intersection intersection = this.geo.getIntersection(value);
+
+    if (intersection == null) {
+      throw new RequestException(404, "Unknown intersection " + value);
+    }
+
+    return intersection;
+  }
+
+  private Intersection[] resolveAll(String ids) throws RequestException {
+    String[] values = ids.split(",");
+    Intersection[] intersections = new Intersection[values.length];
+
+    for (int i = 0; i < values.length; i++) {
+      intersections[i] = this.geo.getIntersection(values[i].strip());
+
+      if (intersections[i] == null) {
+        throw new RequestException(404, "Unknown intersection " + values[i]);
+      }
+    }
+
+    return intersections;
+  }
+
+  private static void appendIds(StringBuilder json, Intersection[] intersections) {
+    json.append('[');
+
+    for (int i = 0; i < intersections.length; i++) {
+      json.append(i > 0 ? "," : "").append(quote(intersections[i].getId()));
+    }
+
+    json.append(']');
+  }
+
+  private static String error(String message) {
+    return "{\"error\":" + quote(message) + "}";
+  }
+
+  /**
+   * Formats a distance as a JSON number, or {@code null} if it is infinite, which JSON cannot
+   * express.
+   */
+  private static String number(double value) {
+    return Double.isFinite(value) ? Double.toString(value) : "null";
+  }
+
+  private static String quote(String value) {
+    StringBuilder quoted = new StringBuilder("\"");
+
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+
+      if (c == '"' || c == '\\') {
+        quoted.append('\\').append(c);
+      } else if (c < 0x20) {
+        quoted.append(String.format("\\u%04x", (int) c));
+      } else {
+        quoted.append(c);
+      }
+    }
+
+    return quoted.append('"').toString();
+  }
+}
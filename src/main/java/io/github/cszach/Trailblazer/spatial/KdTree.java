@@ -0,0 +1,500 @@
+package io.github.cszach.Trailblazer.spatial;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import io.github.cszach.Trailblazer.geo.Road;
+import io.github.cszach.Trailblazer.geo.RoadGraph;
+
+/**
+ * A static k-d tree over the coordinates of the intersections of a graph, which finds the
+ * intersections nearest to a point, or within a distance of it, in microseconds.
+ *
+ * <p>
+ * Intersections are placed on the unit sphere as 3D points, where the straight-line distance
+ * between two points grows with the great-circle distance between them, so the tree can prune with
+ * plain coordinate differences and still rank by great-circle distance, even across the
+ * antimeridian or near the poles. The tree is implicit: the points are reordered so that every
+ * range splits at its middle point, on the axis along which the range is widest, and the halves are
+ * built in parallel.
+ *
+ * <p>
+ * Coordinates do not change when road distances do, so a tree stays valid across road updates. A
+ * {@code KdTree} is immutable, so it can be shared freely between threads.
+ *
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * KdTree tree = KdTree.build(geo.getGraph());
+ * Intersection nearest = geo.getIntersection(tree.findNearest(43.1284, -77.6284));
+ * </pre>
+ */
+public final class KdTree {
+  /**
+   * The number of points below which a range is scanned rather than split.
+   */
+  private static final int LEAF_SIZE = 8;
+  /**
+   * The number of points below which halves are built on the calling thread.
+   */
+  private static final int PARALLEL_THRESHOLD = 8192;
+  /**
+   * The number of miles per radian of a great circle, as measured by {@code Road.haversine}, which
+   * converts distances on the map to distances on the unit sphere.
+   */
+  private static final double MILES_PER_RADIAN = Road.haversine(0, 0, 1, 0) / Math.toRadians(1);
+
+  /**
+   * The intersection of every point, in tree order.
+   */
+  private final int[] intersections;
+  /**
+   * The coordinates of every point on the unit sphere, in tree order, where
+   * {@code coordinates[axis][i]} is the coordinate of point {@code i} along {@code axis}.
+   */
+  private final double[][] coordinates;
+  /**
+   * The axis that the range whose middle point is {@code i} splits along, for every range that is
+   * split.
+   */
+  private final byte[] splitAxes;
+  private final RoadGraph graph;
+  private final long buildTime;
+
+  private KdTree(RoadGraph graph, int[] intersections, double[][] coordinates, byte[] splitAxes,
+      long buildTime) {
+    this.graph = graph;
+    this.intersections = intersections;
+    this.coordinates = coordinates;
+    this.splitAxes = splitAxes;
+    this.buildTime = buildTime;
+  }
+
+  /**
+   * Builds a k-d tree over the intersections of a graph.
+   *
+   * @param graph the graph whose intersections to index
+   * @return the k-d tree of the intersections.
+   */
+  public static KdTree build(RoadGraph graph) {
+    long startTime = System.nanoTime();
+    int n = graph.getIntersectionCount();
+    int[] intersections = new int[n];
+    double[][] coordinates = new double[3][n];
+    byte[] splitAxes = new byte[n];
+
+    for (int intersection = 0; intersection < n; intersection++) {
+      double[] point = toPoint(graph.getLatitude(intersection), graph.getLongtitude(intersection));
+
+      intersections[intersection] = intersection;
+
+      for (int axis = 0; axis < 3; axis++) {
+        coordinates[axis][intersection] = point[axis];
+      }
+    }
+
+    KdTree tree = new KdTree(graph, intersections, coordinates, splitAxes, 0);
+
+    ForkJoinPool.commonPool().invoke(tree.new Split(0, n));
+
+    return new KdTree(graph, intersections, coordinates, splitAxes,
+        (System.nanoTime() - startTime) / 1_000_000);
+  }
+
+  /**
+   * Places a point of the map on the unit sphere.
+   */
+  private static double[] toPoint(double latitude, double longtitude) {
+    double phi = Math.toRadians(latitude);
+    double lambda = Math.toRadians(longtitude);
+
+    return new double[] {Math.cos(phi) * Math.cos(lambda), Math.cos(phi) * Math.sin(lambda),
+        Math.sin(phi)};
+  }
+
+  /**
+   * The construction of the subtree of a range of points.
+   */
+  private final class Split extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final int from;
+    private final int to;
+
+    Split(int from, int to) {
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      int size = this.to - this.from;
+
+      if (size <= LEAF_SIZE) {
+        return;
+      }
+
+      int axis = this.findWidestAxis();
+      int middle = (this.from + this.to) >>> 1;
+
+      select(axis, this.from, this.to - 1, middle);
+      splitAxes[middle] = (byte) axis;
+
+      Split left = new Split(this.from, middle);
+      Split right = new Split(middle + 1, this.to);
+
+      if (size >= PARALLEL_THRESHOLD) {
+        invokeAll(left, right);
+      } else {
+        left.compute();
+        right.compute();
+      }
+    }
+
+    private int findWidestAxis() {
+      int widestAxis = 0;
+      double widestExtent = -1;
+
+      for (int axis = 0; axis < 3; axis++) {
+        double[] values = coordinates[axis];
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+
+        for (int i = this.from; i < this.to; i++) {
+          min = Math.min(min, values[i]);
+          max = Math.max(max, values[i]);
+        }
+
+        if (max - min > widestExtent) {
+          widestExtent = max - min;
+          widestAxis = axis;
+        }
+      }
+
+      return widestAxis;
+    }
+  }
+
+  /**
+   * Reorders the points from {@code left} to {@code right} (inclusive) so that point {@code k} is
+   * the one that would be there if they were sorted along an axis, with no greater point before it
+   * and no smaller point after it (quickselect).
+   */
+  private void select(int axis, int left, int right, int k) {
+    double[] values = this.coordinates[axis];
+
+    while (left < right) {
+      double pivot = values[(left + right) >>> 1];
+      int i = left;
+      int j = right;
+
+      while (i <= j) {
+        while (values[i] < pivot) {
+          i++;
+        }
+
+        while (values[j] > pivot) {
+          j--;
+        }
+
+        if (i <= j) {
+          this.swap(i++, j--);
+        }
+      }
+
+      if (k <= j) {
+        right = j;
+      } else if (k >= i) {
+        left = i;
+      } else {
+        return;
+      }
+    }
+  }
+
+  private void swap(int i, int j) {
+    int intersection = this.intersections[i];
+    this.intersections[i] = this.intersections[j];
+    this.intersections[j] = intersection;
+
+    for (double[] values : this.coordinates) {
+      double value = values[i];
+      values[i] = values[j];
+      values[j] = value;
+    }
+  }
+
+  /**
+   * Finds the intersection nearest to a point.
+   *
+   * @param latitude the latitude of the point, in degrees
+   * @param longtitude the longtitude of the point, in degrees
+   * @return the index of the nearest intersection, or {@code -1} if the graph has none.
+   */
+  public int findNearest(double latitude, double longtitude) {
+    int[] nearest = this.findNearest(latitude, longtitude, 1);
+
+    return nearest.length > 0 ? nearest[0] : -1;
+  }
+
+  /**
+   * Finds the intersections nearest to a point.
+   *
+   * @param latitude the latitude of the point, in degrees
+   * @param longtitude the longtitude of the point, in degrees
+   * @param k the number of intersections to find
+   * @return the indices of the {@code k} nearest intersections (or of every intersection, if there
+   *         are fewer), nearest first.
+   * @throws IllegalArgumentException when {@code k} is negative.
+   */
+  public int[] findNearest(double latitude, double longtitude, int k) {
+    if (k < 0) {
+      throw new IllegalArgumentException("The number of intersections must not be negative");
+    }
+
+    Neighbors neighbors = new Neighbors(Math.min(k, this.intersections.length));
+
+    if (neighbors.capacity > 0) {
+      this.searchNearest(toPoint(latitude, longtitude), 0, this.intersections.length, neighbors);
+    }
+
+    return neighbors.toSortedArray();
+  }
+
+  /**
+   * The nearest points found so far by a search, as a bounded max-heap on their squared distance.
+   */
+  private static final class Neighbors {
+    private final int capacity;
+    private final int[] points;
+    private final double[] squaredDistances;
+    private int size = 0;
+
+    Neighbors(int capacity) {
+      this.capacity = capacity;
+      this.points = new int[capacity];
+      this.squaredDistances = new double[capacity];
+    }
+
+    /**
+     * Returns the squared distance that a point must beat to be added.
+     */
+    double getBound() {
+      return this.size < this.capacity ? Double.POSITIVE_INFINITY : this.squaredDistances[0];
+    }
+
+    void offer(int point, double squaredDistance) {
+      if (this.size < this.capacity) {
+        // Sift up
+        int i = this.size++;
+
+        while (i > 0 && this.squaredDistances[(i - 1) / 2] < squaredDistance) {
+          this.points[i] = this.points[(i - 1) / 2];
+          this.squaredDistances[i] = this.squaredDistances[(i - 1) / 2];
+          i = (i - 1) / 2;
+        }
+
+        this.points[i] = point;
+        this.squaredDistances[i] = squaredDistance;
+      } else if (squaredDistance < this.squaredDistances[0]) {
+        // Replace the farthest point and sift down
+        int i = 0;
+
+        while (2 * i + 1 < this.size) {
+          int child = 2 * i + 1;
+
+          if (child + 1 < this.size
+              && this.squaredDistances[child + 1] > this.squaredDistances[child]) {
+            child++;
+          }
+
+          if (this.squaredDistances[child] <= squaredDistance) {
+            break;
+          }
+
+          this.points[i] = this.points[child];
+          this.squaredDistances[i] = this.squaredDistances[child];
+          i = child;
+        }
+
+        this.points[i] = point;
+        this.squaredDistances[i] = squaredDistance;
+      }
+    }
+
+    int[] toSortedArray() {
+      return sortByDistance(this.points, this.squaredDistances, this.size);
+    }
+  }
+
+  /**
+   * The points found so far by a search within a distance.
+   */
+  private static final class Candidates {
+    private int[] points = new int[16];
+    private double[] squaredDistances = new double[16];
+    private int size = 0;
+
+    void add(int point, double squaredDistance) {
+      if (this.size == this.points.length) {
+        this.points = Arrays.copyOf(this.points, this.size * 2);
+        this.squaredDistances = Arrays.copyOf(this.squaredDistances, this.size * 2);
+      }
+
+      this.points[this.size] = point;
+      this.squaredDistances[this.size++] = squaredDistance;
+    }
+
+    int[] toSortedArray() {
+      return sortByDistance(this.points, this.squaredDistances, this.size);
+    }
+  }
+
+  /**
+   * Sorts the first {@code size} points by their squared distance, nearest first.
+   */
+  private static int[] sortByDistance(int[] points, double[] squaredDistances, int size) {
+    Integer[] order = new Integer[size];
+
+    for (int i = 0; i < size; i++) {
+      order[i] = i;
+    }
+
+    Arrays.sort(order, Comparator.comparingDouble(i -> squaredDistances[i]));
+
+    int[] sorted = new int[size];
+
+    for (int i = 0; i < size; i++) {
+      sorted[i] = points[order[i]];
+    }
+
+    return sorted;
+  }
+
+  private void searchNearest(double[] query, int from, int to, Neighbors neighbors) {
+    if (to - from <= LEAF_SIZE) {
+      for (int i = from; i < to; i++) {
+        neighbors.offer(this.intersections[i], this.getSquaredDistance(query, i));
+      }
+
+      return;
+    }
+
+    int middle = (from + to) >>> 1;
+    int axis = this.splitAxes[middle];
+    double difference = query[axis] - this.coordinates[axis][middle];
+
+    neighbors.offer(this.intersections[middle], this.getSquaredDistance(query, middle));
+
+    // Search the half of the query first, then the other half only if it can hold a nearer point
+    if (difference < 0) {
+      this.searchNearest(query, from, middle, neighbors);
+
+      if (difference * difference < neighbors.getBound()) {
+        this.searchNearest(query, middle + 1, to, neighbors);
+      }
+    } else {
+      this.searchNearest(query, middle + 1, to, neighbors);
+
+      if (difference * difference < neighbors.getBound()) {
+        this.searchNearest(query, from, middle, neighbors);
+      }
+    }
+  }
+
+  /**
+   * Finds the intersections within a great-circle distance of a point.
+   *
+   * @param latitude the latitude of the point, in degrees
+   * @param longtitude the longtitude of the point, in degrees
+   * @param miles the distance, in miles
+   * @return the indices of the intersections within the distance, nearest first.
+   * @throws IllegalArgumentException when the distance is negative or not a number.
+   */
+  public int[] findWithin(double latitude, double longtitude, double miles) {
+    if (!(miles >= 0)) {
+      throw new IllegalArgumentException("The distance must not be negative");
+    }
+
+    // The chord of an angle, widened a little so that rounding never prunes a point on the circle
+    double angle = Math.min(Math.PI, miles / MILES_PER_RADIAN);
+    double chord = 2 * Math.sin(angle / 2) * (1 + 1e-9) + 1e-12;
+    double[] query = toPoint(latitude, longtitude);
+    Candidates found = new Candidates();
+
+    this.searchWithin(query, chord * chord, 0, this.intersections.length, found);
+
+    // Keep only the points within the exact distance
+    return Arrays.stream(found.toSortedArray())
+        .filter(intersection -> Road.haversine(latitude, longtitude,
+            this.graph.getLatitude(intersection), this.graph.getLongtitude(intersection)) <= miles)
+        .toArray();
+  }
+
+  private void searchWithin(double[] query, double squaredChord, int from, int to,
+      Candidates found) {
+    if (to - from <= LEAF_SIZE) {
+      for (int i = from; i < to; i++) {
+        double squaredDistance = this.getSquaredDistance(query, i);
+
+        if (squaredDistance <= squaredChord) {
+          found.add(this.intersections[i], squaredDistance);
+        }
+      }
+
+      return;
+    }
+
+    int middle = (from + to) >>> 1;
+    int axis = this.splitAxes[middle];
+    double difference = query[axis] - this.coordinates[axis][middle];
+    double squaredDistance = this.getSquaredDistance(query, middle);
+
+    if (squaredDistance <= squaredChord) {
+      found.add(this.intersections[middle], squaredDistance);
+    }
+
+    if (difference < 0 || difference * difference <= squaredChord) {
+      this.searchWithin(query, squaredChord, from, middle, found);
+    }
+
+    if (difference >= 0 || difference * difference <= squaredChord) {
+      this.searchWithin(query, squaredChord, middle + 1, to, found);
+    }
+  }
+
+  private double getSquaredDistance(double[] query, int i) {
+    double dx = query[0] - this.coordinates[0][i];
+    double dy = query[1] - this.coordinates[1][i];
+    double dz = query[2] - this.coordinates[2][i];
+
+    return dx * dx + dy * dy + dz * dz;
+  }
+
+  /**
+   * Returns the number of intersections in the tree.
+   *
+   * @return the number of intersections in the tree.
+   */
+  public int size() {
+    return this.intersections.length;
+  }
+
+  /**
+   * Returns the time that building the tree took.
+   *
+   * @return the build time, in milliseconds.
+   */
+  public long getBuildTime() {
+    return this.buildTime;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Indexed %d intersections in %d ms", this.intersections.length,
+        this.buildTime);
+  }
+}
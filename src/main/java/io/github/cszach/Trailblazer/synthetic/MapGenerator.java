@@ -0,0 +1,536 @@
+package io.github.cszach.Trailblazer.synthetic;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.GZIPOutputStream;
+
+import io.github.cszach.Trailblazer.geo.GeographyBuilder;
+import io.github.cszach.Trailblazer.geo.ImportStatistics;
+
+/**
+ * A deterministic generator of synthetic road networks, for testing the importer and the routing
+ * engine on maps far larger than the real ones.
+ *
+ * <p>
+ * Intersection {@code i} is in row {@code i / columns} and column {@code i % columns} of a grid of
+ * cells that covers the bounds, and has the ID {@code i<i>}. Its coordinates, and whether each road
+ * to a neighboring cell exists, are a hash of the seed and {@code i}, so any range of intersections
+ * can be generated on its own. Intersections are generated in blocks on the common fork-join pool,
+ * and written or added in order while at most a few blocks per processor are held, so the memory
+ * used does not grow with the size of the map. The same topology, size, seed, and bounds always
+ * give the same map, byte for byte.
+ *
+ * <p>
+ * Row {@code 0} is along the southern bound, and column {@code 0} along the western bound, so
+ * {@code i0} is in the south-western corner. A road only joins an intersection to one that comes
+ * before it, in the same row or the row to the south, so every road of the map data file comes
+ * after the entries of both of its intersections. A road from intersection {@code i} has the ID
+ * {@code r<i>-<direction>}, where the direction is {@code 0} (west), {@code 1} (south), {@code 2}
+ * (south-west), or {@code 3} (south-east). A random geometric graph joins every two intersections
+ * that are close enough, which may be up to two rows or columns apart, so its roads also have the
+ * directions {@code 4} to {@code 9}, to those cells.
+ *
+ * @see Topology
+ */
+public final class MapGenerator {
+  /**
+   * The bounds of the state of New York, the largest real map, in degrees.
+   */
+  public static final double DEFAULT_MIN_LATITUDE = 40.5;
+  public static final double DEFAULT_MIN_LONGTITUDE = -79.8;
+  public static final double DEFAULT_MAX_LATITUDE = 45.0;
+  public static final double DEFAULT_MAX_LONGTITUDE = -71.8;
+
+  /**
+   * The number of intersections that are generated together.
+   */
+  private static final int BLOCK_SIZE = 1 << 16;
+  /**
+   * The probability that a road of a grid exists, which gives about 41% T-junctions, 24%
+   * crossroads, 26% bends, and 8% dead ends.
+   */
+  private static final double ROAD_PROBABILITY = 0.7;
+  /**
+   * The probability that each diagonal road of a perturbed grid exists.
+   */
+  private static final double DIAGONAL_PROBABILITY = 0.05;
+  /**
+   * How far an intersection of a perturbed grid is moved from the center of its cell, at most, in
+   * widths of a cell.
+   */
+  private static final double PERTURBATION = 0.3;
+  /**
+   * The distance within which the intersections of a random geometric graph are joined, in widths
+   * of a cell, which gives a mean degree of about 3.
+   */
+  private static final double RADIUS = 1.15;
+
+  private static final int WEST = 0;
+  private static final int SOUTH = 1;
+  private static final int SOUTH_WEST = 2;
+  private static final int SOUTH_EAST = 3;
+  /**
+   * The number of directions of a random geometric graph, which also reach the cells two columns or
+   * two rows away. The cells that are two columns and two rows away are left out, since no two
+   * points of them are closer than the square root of 2.
+   */
+  private static final int GEOMETRIC_DIRECTION_COUNT = 10;
+  /**
+   * The rows and columns from an intersection to its neighbor in each direction. Every neighbor
+   * comes before the intersection.
+   */
+  private static final int[] ROW_OFFSETS = {0, -1, -1, -1, 0, -1, -1, -2, -2, -2};
+  private static final int[] COLUMN_OFFSETS = {-1, 0, -1, 1, -2, -2, 2, -1, 0, 1};
+
+  /**
+   * The salts of the hashes of an intersection: its offsets within its cell, then one per road.
+   */
+  private static final int SALT_X = 4;
+  private static final int SALT_Y = 5;
+  private static final int SALT_COUNT = 8;
+
+  private final Topology topology;
+  private final int intersectionCount;
+  private final long seed;
+  private final double minLatitude;
+  private final double minLongtitude;
+  private final int columnCount;
+  private final double latitudeStep;
+  private final double longtitudeStep;
+
+  /**
+   * Constructs a new {@code MapGenerator} for a map within the bounds of the state of New York.
+   *
+   * @param topology the shape of the road network
+   * @param intersectionCount the number of intersections
+   * @param seed the seed of the random choices
+   * @throws IllegalArgumentException when the number of intersections is not positive.
+   */
+  public MapGenerator(Topology topology, int intersectionCount, long seed) {
+    this(topology, intersectionCount, seed, DEFAULT_MIN_LATITUDE, DEFAULT_MIN_LONGTITUDE,
+        DEFAULT_MAX_LATITUDE, DEFAULT_MAX_LONGTITUDE);
+  }
+
+  /**
+   * Constructs a new {@code MapGenerator}. The cells are about as tall as they are wide on the
+   * ground.
+   *
+   * @param topology the shape of the road network
+   * @param intersectionCount the number of intersections
+   * @param seed the seed of the random choices
+   * @param minLatitude the southern bound of the map, in degrees
+   * @param minLongtitude the western bound of the map, in degrees
+   * @param maxLatitude the northern bound of the map, in degrees
+   * @param maxLongtitude the eastern bound of the map, in degrees
+   * @throws IllegalArgumentException when the number of intersections is not positive, or the
+   *         bounds are not a nonempty area of valid coordinates.
+   */
+  public MapGenerator(Topology topology, int intersectionCount, long seed, double minLatitude,
+      double minLongtitude, double maxLatitude, double maxLongtitude) {
+    if (intersectionCount <= 0) {
+      throw new IllegalArgumentException("The number of intersections must be positive");
+    }
+
+    if (!(minLatitude >= -85 && minLatitude < maxLatitude && maxLatitude <= 85
+        && minLongtitude >= -180 && minLongtitude < maxLongtitude && maxLongtitude <= 180)) {
+      throw new IllegalArgumentException("Invalid bounds");
+    }
+
+    double latitudeSpan = maxLatitude - minLatitude;
+    double longtitudeSpan = maxLongtitude - minLongtitude;
+    double aspectRatio =
+        longtitudeSpan * Math.cos(Math.toRadians(minLatitude + latitudeSpan / 2)) / latitudeSpan;
+
+    this.topology = topology;
+    this.intersectionCount = intersectionCount;
+    this.seed = seed;
+    this.minLatitude = minLatitude;
+    this.minLongtitude = minLongtitude;
+    this.columnCount = (int) Math.max(1,
+        Math.min(intersectionCount, Math.round(Math.sqrt(intersectionCount * aspectRatio))));
+    this.latitudeStep = latitudeSpan / Math.ceil((double) intersectionCount / this.columnCount);
+    this.longtitudeStep = longtitudeSpan / this.columnCount;
+  }
+
+  /**
+   * Returns a uniformly random number for a hash of the seed, an intersection, and a salt, as the
+   * SplitMix64 generator would at that position of its stream.
+   *
+   * @return a number in [0, 1).
+   */
+  private double random(int intersection, int salt) {
+    long z = this.seed + ((long) intersection * SALT_COUNT + salt + 1) * 0x9e3779b97f4a7c15L;
+
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    z ^= z >>> 31;
+
+    return (z >>> 11) * 0x1.0p-53;
+  }
+
+  /**
+   * Returns the horizontal position of an intersection, in widths of a cell from the western bound.
+   */
+  private double getX(int intersection) {
+    return intersection % this.columnCount + this.getOffset(intersection, SALT_X);
+  }
+
+  /**
+   * Returns the vertical position of an intersection, in heights of a cell from the southern bound.
+   */
+  private double getY(int intersection) {
+    return intersection / this.columnCount + this.getOffset(intersection, SALT_Y);
+  }
+
+  /**
+   * Returns the position of an intersection within its cell along one axis.
+   */
+  private double getOffset(int intersection, int salt) {
+    switch (this.topology) {
+      case PERTURBED_GRID:
+        return 0.5 + (this.random(intersection, salt) - 0.5) * 2 * PERTURBATION;
+
+      case RANDOM_GEOMETRIC:
+        return this.random(intersection, salt);
+
+      case GRID:
+      default:
+        return 0.5;
+    }
+  }
+
+  /**
+   * Returns the neighbor of an intersection in a direction, if there is one. Every neighbor comes
+   * before the intersection.
+   *
+   * @return the index of the neighbor, or {@code -1} if it would be outside the map.
+   */
+  private int getNeighbor(int intersection, int direction) {
+    int row = intersection / this.columnCount + ROW_OFFSETS[direction];
+    int column = intersection % this.columnCount + COLUMN_OFFSETS[direction];
+
+    if (row < 0 || column < 0 || column >= this.columnCount) {
+      return -1;
+    }
+
+    return row * this.columnCount + column;
+  }
+
+  /**
+   * Decides whether the road from an intersection to its neighbor in a direction exists.
+   */
+  private boolean hasRoad(int intersection, int direction, int neighbor) {
+    switch (this.topology) {
+      case RANDOM_GEOMETRIC: {
+        double dx = this.getX(neighbor) - this.getX(intersection);
+        double dy = this.getY(neighbor) - this.getY(intersection);
+
+        return dx * dx + dy * dy < RADIUS * RADIUS;
+      }
+
+      case PERTURBED_GRID:
+        if (direction == SOUTH_WEST || direction == SOUTH_EAST) {
+          return this.random(intersection, direction) < DIAGONAL_PROBABILITY;
+        }
+
+        return this.random(intersection, direction) < ROAD_PROBABILITY;
+
+      case GRID:
+      default:
+        return (direction == WEST || direction == SOUTH)
+            && this.random(intersection, direction) < ROAD_PROBABILITY;
+    }
+  }
+
+  /**
+   * Generates the intersections of a block, and the roads from them to their neighbors to the west
+   * and the south.
+   *
+   * @param from the index of the first intersection of the block
+   * @param to the index after the last intersection of the block
+   * @param encodes {@code true} to also write the block in the map data file format
+   * @return the block.
+   */
+  private Block generateBlock(int from, int to, boolean encodes) {
+    Block block = new Block(from, to);
+    int directionCount =
+        this.topology == Topology.RANDOM_GEOMETRIC ? GEOMETRIC_DIRECTION_COUNT : SOUTH_EAST + 1;
+
+    for (int i = from; i < to; i++) {
+      // Rounded as in the file, so that a map added to a builder is the same as one imported
+      block.latitudes[i - from] =
+          Math.round((this.minLatitude + this.getY(i) * this.latitudeStep) * 1e6) / 1e6;
+      block.longtitudes[i - from] =
+          Math.round((this.minLongtitude + this.getX(i) * this.longtitudeStep) * 1e6) / 1e6;
+
+      for (int direction = 0; direction < directionCount; direction++) {
+        int neighbor = this.getNeighbor(i, direction);
+
+        if (neighbor >= 0 && this.hasRoad(i, direction, neighbor)) {
+          block.addRoad(i, neighbor, direction);
+        }
+      }
+    }
+
+    if (encodes) {
+      block.encode();
+    }
+
+    return block;
+  }
+
+  /**
+   * Generates the blocks of the map in parallel, and hands them to a consumer in order, on the
+   * calling thread.
+   */
+  private void generate(boolean encodes, BlockConsumer consumer) throws IOException {
+    int window = 2 * ForkJoinPool.getCommonPoolParallelism();
+    Deque<ForkJoinTask<Block>> pending = new ArrayDeque<>();
+
+    try {
+      for (long from = 0; from < this.intersectionCount; from += BLOCK_SIZE) {
+        int blockFrom = (int) from;
+        int blockTo = (int) Math.min(this.intersectionCount, from + BLOCK_SIZE);
+
+        if (pending.size() >= window) {
+          consumer.accept(pending.poll().join());
+        }
+
+        pending.add(ForkJoinPool.commonPool()
+            .submit(() -> this.generateBlock(blockFrom, blockTo, encodes)));
+      }
+
+      while (!pending.isEmpty()) {
+        consumer.accept(pending.poll().join());
+      }
+    } finally {
+      for (ForkJoinTask<Block> task : pending) {
+        task.cancel(false);
+      }
+    }
+  }
+
+  /**
+   * Writes the map to a stream in the map data file format, with the intersections and the roads
+   * from them block by block. A road only refers to intersections that are written before it.
+   *
+   * @param output the stream to write to, which is not closed
+   * @return the statistics of the generation, where the number of bytes is the number written.
+   * @throws IOException when the stream cannot be written.
+   */
+  public ImportStatistics writeTo(OutputStream output) throws IOException {
+    long startTime = System.nanoTime();
+    long[] totals = new long[2];
+
+    this.generate(true, block -> {
+      output.write(block.text.bytes, 0, block.text.size);
+      totals[0] += block.text.size;
+      totals[1] += block.roadCount;
+    });
+
+    return new ImportStatistics(totals[0], this.intersectionCount, (int) totals[1],
+        System.nanoTime() - startTime);
+  }
+
+  /**
+   * Writes the map to a file in the map data file format, gzip-compressed if the name of the file
+   * ends with {@code .gz}.
+   *
+   * @param path the path of the file to write
+   * @return the statistics of the generation, where the number of bytes is the number written
+   *         before compression.
+   * @throws IOException when the file cannot be written.
+   */
+  public ImportStatistics write(String path) throws IOException {
+    try (OutputStream output =
+        path.endsWith(".gz") ? new GZIPOutputStream(new FileOutputStream(path), 1 << 16)
+            : new FileOutputStream(path)) {
+      return this.writeTo(output);
+    }
+  }
+
+  /**
+   * Adds the map to an empty {@code GeographyBuilder}, without going through a file, so that
+   * intersection {@code i} of the map is intersection {@code i} of the builder.
+   *
+   * @param builder the {@code GeographyBuilder} to add to, which must be empty
+   * @return the statistics of the generation, where the number of bytes is {@code 0}.
+   * @throws IllegalArgumentException when the builder is not empty.
+   */
+  public ImportStatistics generateInto(GeographyBuilder builder) {
+    if (builder.getIntersectionCount() != 0 || builder.getRoadCount() != 0) {
+      throw new IllegalArgumentException("The builder must be empty");
+    }
+
+    long startTime = System.nanoTime();
+    Text id = new Text(32);
+
+    try {
+      this.generate(false, block -> {
+        for (int i = block.from; i < block.to; i++) {
+          id.size = 0;
+          id.append((byte) 'i').append(i);
+          builder.addIntersection(id.bytes, 0, id.size, block.latitudes[i - block.from],
+              block.longtitudes[i - block.from]);
+        }
+
+        for (int road = 0; road < block.roadCount; road++) {
+          id.size = 0;
+          block.appendRoadId(id, road);
+          builder.addRoad(id.bytes, 0, id.size, block.roadIntersections1[road],
+              block.roadIntersections2[road]);
+        }
+      });
+    } catch (IOException exception) {
+      throw new AssertionError(exception); // adding to a builder does no I/O
+    }
+
+    return new ImportStatistics(0, builder.getIntersectionCount(), builder.getRoadCount(),
+        System.nanoTime() - startTime);
+  }
+
+  /**
+   * Takes the blocks of a map in order.
+   */
+  @FunctionalInterface
+  private interface BlockConsumer {
+    void accept(Block block) throws IOException;
+  }
+
+  /**
+   * The intersections of a range of indices and the roads from them, and optionally their text in
+   * the map data file format.
+   */
+  private static class Block {
+    private final int from;
+    private final int to;
+    private final double[] latitudes;
+    private final double[] longtitudes;
+    private int[] roadIntersections1;
+    private int[] roadIntersections2;
+    private byte[] roadDirections;
+    private int roadCount = 0;
+    private Text text;
+
+    private Block(int from, int to) {
+      int size = to - from;
+
+      this.from = from;
+      this.to = to;
+      this.latitudes = new double[size];
+      this.longtitudes = new double[size];
+      this.roadIntersections1 = new int[2 * size];
+      this.roadIntersections2 = new int[2 * size];
+      this.roadDirections = new byte[2 * size];
+    }
+
+    private void addRoad(int intersection1, int intersection2, int direction) {
+      if (this.roadCount == this.roadDirections.length) {
+        this.roadIntersections1 = Arrays.copyOf(this.roadIntersections1, 2 * this.roadCount);
+        this.roadIntersections2 = Arrays.copyOf(this.roadIntersections2, 2 * this.roadCount);
+        this.roadDirections = Arrays.copyOf(this.roadDirections, 2 * this.roadCount);
+      }
+
+      this.roadIntersections1[this.roadCount] = intersection1;
+      this.roadIntersections2[this.roadCount] = intersection2;
+      this.roadDirections[this.roadCount] = (byte) direction;
+      this.roadCount++;
+    }
+
+    private void appendRoadId(Text text, int road) {
+      text.append((byte) 'r').append(this.roadIntersections1[road]).append((byte) '-')
+          .append((long) this.roadDirections[road]);
+    }
+
+    /**
+     * Writes the block in the map data file format: an {@code i} entry for every intersection,
+     * followed by an {@code r} entry for every road.
+     */
+    private void encode() {
+      int size = this.to - this.from;
+
+      this.text = new Text(36 * size + 40 * this.roadCount);
+
+      for (int i = 0; i < size; i++) {
+        this.text.append((byte) 'i').append((byte) ' ').append((byte) 'i').append(this.from + i)
+            .append((byte) ' ').appendCoordinate(this.latitudes[i]).append((byte) ' ')
+            .appendCoordinate(this.longtitudes[i]).append((byte) '\n');
+      }
+
+      for (int road = 0; road < this.roadCount; road++) {
+        this.text.append((byte) 'r').append((byte) ' ');
+        this.appendRoadId(this.text, road);
+        this.text.append((byte) ' ').append((byte) 'i').append(this.roadIntersections1[road])
+            .append((byte) ' ').append((byte) 'i').append(this.roadIntersections2[road])
+            .append((byte) '\n');
+      }
+    }
+  }
+
+  /**
+   * A growable buffer of ASCII text, which formats numbers without creating strings.
+   */
+  private static class Text {
+    private byte[] bytes;
+    private int size = 0;
+
+    private Text(int capacity) {
+      this.bytes = new byte[Math.max(16, capacity)];
+    }
+
+    private Text append(byte b) {
+      if (this.size == this.bytes.length) {
+        this.bytes = Arrays.copyOf(this.bytes, 2 * this.size);
+      }
+
+      this.bytes[this.size++] = b;
+
+      return this;
+    }
+
+    private Text append(long value) {
+      if (value < 0) {
+        this.append((byte) '-');
+        value = -value;
+      }
+
+      long divisor = 1;
+
+      while (divisor <= value / 10) {
+        divisor *= 10;
+      }
+
+      for (; divisor > 0; divisor /= 10) {
+        this.append((byte) ('0' + value / divisor % 10));
+      }
+
+      return this;
+    }
+
+    /**
+     * Appends a coordinate in degrees with six decimals, which is about 10 centimeters.
+     */
+    private Text appendCoordinate(double degrees) {
+      long micros = Math.round(degrees * 1e6);
+
+      if (micros < 0) {
+        this.append((byte) '-');
+        micros = -micros;
+      }
+
+      this.append(micros / 1_000_000).append((byte) '.');
+
+      for (long divisor = 100_000; divisor > 0; divisor /= 10) {
+        this.append((byte) ('0' + micros / divisor % 10));
+      }
+
+      return this;
+    }
+  }
+}
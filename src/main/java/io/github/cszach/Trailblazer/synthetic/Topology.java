@@ -0,0 +1,61 @@
+package io.github.cszach.Trailblazer.synthetic;
+
+/**
+ * The shapes of road networks that a {@code MapGenerator} can generate. In every one, the
+ * intersections are laid out row by row in cells of equal size, one per cell, and roads only join
+ * intersections that are at most two cells apart.
+ *
+ * @see MapGenerator
+ */
+public enum Topology {
+  /**
+   * A regular grid, like the streets of a planned city. Every road to the next intersection on the
+   * right and below is kept with a fixed probability, which makes most intersections T-junctions
+   * and crossroads, with some bends and dead ends.
+   */
+  GRID("grid"),
+  /**
+   * A grid whose intersections are moved randomly within their cells, with the roads of
+   * {@code GRID} and a few diagonal roads, like an older city.
+   */
+  PERTURBED_GRID("perturbed-grid"),
+  /**
+   * A random geometric graph: every intersection is at a uniformly random point of its cell, and a
+   * road joins every two intersections that are closer than 1.15 times the width of a cell, which
+   * may be in cells up to two apart. Since there is one point per cell, the points are spread more
+   * evenly than those of a Poisson process. Degrees vary from 0 to 8 or so, around a mean of 3, and
+   * about 1 intersection in 25 is left outside the largest connected component.
+   */
+  RANDOM_GEOMETRIC("random-geometric");
+
+  /**
+   * The name of the topology on the command line.
+   */
+  private final String name;
+
+  private Topology(String name) {
+    this.name = name;
+  }
+
+  /**
+   * Returns the topology with a given command line name.
+   *
+   * @param name the name of the topology, such as {@code grid}
+   * @return the topology with the given name.
+   * @throws IllegalArgumentException when no topology has the given name.
+   */
+  public static Topology fromName(String name) {
+    for (Topology topology : values()) {
+      if (topology.name.equals(name)) {
+        return topology;
+      }
+    }
+
+    throw new IllegalArgumentException("Unknown topology " + name);
+  }
+
+  @Override
+  public String toString() {
+    return this.name;
+  }
+}
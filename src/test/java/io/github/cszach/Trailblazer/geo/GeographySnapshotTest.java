@@ -0,0 +1,104 @@
+package io.github.cszach.Trailblazer.geo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.NoSuchElementException;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that a snapshot of {@code data/ur.txt} reads back as the geography it was written from.
+ */
+public class GeographySnapshotTest {
+  /**
+   * The precision of the fixed-point coordinates of a snapshot, in degrees.
+   */
+  private static final double COORDINATE_TOLERANCE = 1e-7;
+
+  private static Geography geo;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @BeforeClass
+  public static void importMap() throws IOException {
+    geo = new Geography();
+    geo.importFromFile("data/ur.txt");
+  }
+
+  @Test
+  public void readsWhatItWrites() throws IOException {
+    File file = folder.newFile("ur.snap");
+
+    GeographySnapshot.write(geo, file.getPath());
+
+    Geography read = GeographySnapshot.open(file.getPath()).toGeography();
+    RoadGraph expected = geo.getGraph();
+    RoadGraph actual = read.getGraph();
+    int n = expected.getIntersectionCount();
+
+    assertEquals(n, actual.getIntersectionCount());
+    assertEquals(expected.getRoadCount(), actual.getRoadCount());
+
+    for (int i = 0; i < n; i++) {
+      String id = geo.getIntersectionId(i);
+
+      assertEquals(id, read.getIntersectionId(i));
+      assertEquals(i, read.getIntersection(id).getIndex());
+      assertEquals(expected.getLatitude(i), actual.getLatitude(i), COORDINATE_TOLERANCE);
+      assertEquals(expected.getLongtitude(i), actual.getLongtitude(i), COORDINATE_TOLERANCE);
+    }
+
+    for (int road = 0; road < expected.getRoadCount(); road++) {
+      assertEquals(geo.getRoadId(road), read.getRoadId(road));
+      assertEquals(expected.getRoadIntersection1(road), actual.getRoadIntersection1(road));
+      assertEquals(expected.getRoadIntersection2(road), actual.getRoadIntersection2(road));
+      assertEquals(expected.getRoadDistance(road), actual.getRoadDistance(road), 0);
+    }
+
+    for (int edge = 0; edge <= n; edge++) {
+      assertEquals(expected.getFirstEdge(edge), actual.getFirstEdge(edge));
+    }
+
+    for (int edge = 0; edge < expected.getFirstEdge(n); edge++) {
+      assertEquals(expected.getEdgeTarget(edge), actual.getEdgeTarget(edge));
+      assertEquals(expected.getEdgeRoad(edge), actual.getEdgeRoad(edge));
+      assertEquals(expected.getEdgeWeight(edge), actual.getEdgeWeight(edge), 0);
+    }
+
+    assertNull(read.getIntersection("no such intersection"));
+    assertNull(read.getRoad("no such road"));
+  }
+
+  @Test
+  public void rejectsACorruptedSnapshot() throws IOException {
+    File file = folder.newFile("ur.snap");
+
+    GeographySnapshot.write(geo, file.getPath());
+
+    try (RandomAccessFile corrupted = new RandomAccessFile(file, "rw")) {
+      long position = corrupted.length() - 1;
+
+      corrupted.seek(position);
+
+      int last = corrupted.read();
+
+      corrupted.seek(position);
+      corrupted.write(last ^ 1);
+    }
+
+    NoSuchElementException exception =
+        assertThrows(NoSuchElementException.class, () -> GeographySnapshot.open(file.getPath()));
+
+    assertTrue(exception.getMessage().contains("checksum"));
+  }
+}
@@ -0,0 +1,224 @@
+package io.github.cszach.Trailblazer.geo;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that importing {@code data/ur.txt}, plain or gzip-compressed, in one chunk or in several,
+ * gives the graph that reading it one entry at a time, as the original loader did, would give.
+ */
+public class MapFileImporterTest {
+  private static final String MAP = "data/ur.txt";
+  private static final int INTERSECTION_COUNT = 124;
+  private static final int ROAD_COUNT = 181;
+  /**
+   * A chunk size that splits the map into a few dozen chunks.
+   */
+  private static final int SMALL_CHUNK_SIZE = 256;
+
+  private static List<String> intersectionIds = new ArrayList<>();
+  private static List<double[]> coordinates = new ArrayList<>();
+  private static List<String> roadIds = new ArrayList<>();
+  private static List<int[]> roadIntersections = new ArrayList<>();
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * Reads the map one entry at a time, numbering intersections and roads in file order.
+   */
+  @BeforeClass
+  public static void readMap() throws IOException {
+    Map<String, Integer> indices = new HashMap<>();
+
+    for (String line : Files.readAllLines(Path.of(MAP))) {
+      String[] cells = line.trim().split("\\s+");
+
+      if (cells[0].equals("i")) {
+        indices.put(cells[1], intersectionIds.size());
+        intersectionIds.add(cells[1]);
+        coordinates.add(new double[] {Double.parseDouble(cells[2]), Double.parseDouble(cells[3])});
+      } else if (cells[0].equals("r")) {
+        roadIds.add(cells[1]);
+        roadIntersections.add(new int[] {indices.get(cells[2]), indices.get(cells[3])});
+      }
+    }
+  }
+
+  /**
+   * Checks that a geography has the intersections and roads of the map, and that its graph has an
+   * edge each way for every road, in the order of the roads.
+   */
+  private static void assertImportedMap(Geography geo) {
+    RoadGraph graph = geo.getGraph();
+
+    assertEquals(INTERSECTION_COUNT, graph.getIntersectionCount());
+    assertEquals(ROAD_COUNT, graph.getRoadCount());
+    assertEquals(INTERSECTION_COUNT, intersectionIds.size());
+    assertEquals(ROAD_COUNT, roadIds.size());
+
+    List<List<int[]>> edges = new ArrayList<>();
+
+    for (int i = 0; i < INTERSECTION_COUNT; i++) {
+      assertEquals(intersectionIds.get(i), geo.getIntersectionId(i));
+      assertEquals(i, geo.getIntersection(intersectionIds.get(i)).getIndex());
+      assertEquals(coordinates.get(i)[0], graph.getLatitude(i), 0);
+      assertEquals(coordinates.get(i)[1], graph.getLongtitude(i), 0);
+      edges.add(new ArrayList<>());
+    }
+
+    for (int road = 0; road < ROAD_COUNT; road++) {
+      int intersection1 = roadIntersections.get(road)[0];
+      int intersection2 = roadIntersections.get(road)[1];
+
+      assertEquals(roadIds.get(road), geo.getRoadId(road));
+      assertEquals(intersection1, graph.getRoadIntersection1(road));
+      assertEquals(intersection2, graph.getRoadIntersection2(road));
+      assertEquals(
+          Road.haversine(coordinates.get(intersection1)[0], coordinates.get(intersection1)[1],
+              coordinates.get(intersection2)[0], coordinates.get(intersection2)[1]),
+          graph.getRoadDistance(road), 0);
+
+      if (intersection1 != intersection2) {
+        edges.get(intersection1).add(new int[] {intersection2, road});
+        edges.get(intersection2).add(new int[] {intersection1, road});
+      }
+    }
+
+    for (int i = 0; i < INTERSECTION_COUNT; i++) {
+      List<int[]> expected = edges.get(i);
+
+      assertEquals(expected.size(), graph.getFirstEdge(i + 1) - graph.getFirstEdge(i));
+
+      for (int j = 0; j < expected.size(); j++) {
+        int edge = graph.getFirstEdge(i) + j;
+
+        assertEquals(expected.get(j)[0], graph.getEdgeTarget(edge));
+        assertEquals(expected.get(j)[1], graph.getEdgeRoad(edge));
+        assertEquals(graph.getRoadDistance(expected.get(j)[1]), graph.getEdgeWeight(edge), 0);
+      }
+    }
+  }
+
+  @Test
+  public void importsAPlainFile() throws IOException {
+    Geography geo = new Geography();
+    ImportStatistics statistics = geo.importFromFile(MAP);
+
+    assertEquals(Files.size(Path.of(MAP)), statistics.getBytes());
+    assertImportedMap(geo);
+  }
+
+  @Test
+  public void importsAGzipFile() throws IOException {
+    File file = folder.newFile("ur.txt.gz");
+
+    try (OutputStream output = new GZIPOutputStream(Files.newOutputStream(file.toPath()))) {
+      Files.copy(Path.of(MAP), output);
+    }
+
+    Geography geo = new Geography();
+
+    geo.importFromFile(file.getPath());
+    assertImportedMap(geo);
+  }
+
+  @Test
+  public void importsTheSameMapOnOneThread() throws IOException {
+    GeographyBuilder builder = new GeographyBuilder();
+
+    new MapFileImporter(1).importInto(builder, MAP);
+    assertImportedMap(builder.build());
+  }
+
+  @Test
+  public void importsAPlainFileInSeveralChunks() throws IOException {
+    GeographyBuilder builder = new GeographyBuilder();
+
+    new MapFileImporter(4, SMALL_CHUNK_SIZE).importInto(builder, MAP);
+    assertImportedMap(builder.build());
+  }
+
+  @Test
+  public void importsAGzipFileInSeveralChunks() throws IOException {
+    File file = folder.newFile("ur.txt.gz");
+
+    try (OutputStream output = new GZIPOutputStream(Files.newOutputStream(file.toPath()))) {
+      Files.copy(Path.of(MAP), output);
+    }
+
+    GeographyBuilder builder = new GeographyBuilder();
+
+    new MapFileImporter(4, SMALL_CHUNK_SIZE).importInto(builder, file.getPath());
+    assertImportedMap(builder.build());
+  }
+
+  /**
+   * Checks that roads are joined to intersections that are declared in later chunks, by importing a
+   * copy of the map with its roads moved before its intersections.
+   */
+  @Test
+  public void joinsRoadsToIntersectionsInLaterChunks() throws IOException {
+    List<String> roads = new ArrayList<>();
+    List<String> intersections = new ArrayList<>();
+
+    for (String line : Files.readAllLines(Path.of(MAP))) {
+      (line.trim().startsWith("r") ? roads : intersections).add(line);
+    }
+
+    roads.addAll(intersections);
+
+    File file = folder.newFile("roads-first.txt");
+    Files.write(file.toPath(), roads);
+
+    GeographyBuilder expectedBuilder = new GeographyBuilder();
+    GeographyBuilder actualBuilder = new GeographyBuilder();
+
+    new MapFileImporter(1).importInto(expectedBuilder, file.getPath());
+    new MapFileImporter(4, SMALL_CHUNK_SIZE).importInto(actualBuilder, file.getPath());
+
+    Geography expected = expectedBuilder.build();
+    Geography actual = actualBuilder.build();
+    RoadGraph expectedGraph = expected.getGraph();
+    RoadGraph actualGraph = actual.getGraph();
+
+    assertEquals(INTERSECTION_COUNT, actualGraph.getIntersectionCount());
+    assertEquals(ROAD_COUNT, actualGraph.getRoadCount());
+
+    for (int i = 0; i < INTERSECTION_COUNT; i++) {
+      assertEquals(expected.getIntersectionId(i), actual.getIntersectionId(i));
+      assertEquals(expectedGraph.getLatitude(i), actualGraph.getLatitude(i), 0);
+      assertEquals(expectedGraph.getLongtitude(i), actualGraph.getLongtitude(i), 0);
+      assertEquals(expectedGraph.getFirstEdge(i + 1), actualGraph.getFirstEdge(i + 1));
+    }
+
+    for (int road = 0; road < ROAD_COUNT; road++) {
+      assertEquals(expected.getRoadId(road), actual.getRoadId(road));
+      assertEquals(expectedGraph.getRoadIntersection1(road),
+          actualGraph.getRoadIntersection1(road));
+      assertEquals(expectedGraph.getRoadIntersection2(road),
+          actualGraph.getRoadIntersection2(road));
+      assertEquals(expectedGraph.getRoadDistance(road), actualGraph.getRoadDistance(road), 0);
+    }
+
+    for (int edge = 0; edge < actualGraph.getFirstEdge(INTERSECTION_COUNT); edge++) {
+      assertEquals(expectedGraph.getEdgeTarget(edge), actualGraph.getEdgeTarget(edge));
+      assertEquals(expectedGraph.getEdgeRoad(edge), actualGraph.getEdgeRoad(edge));
+    }
+  }
+}
@@ -0,0 +1,136 @@
+package io.github.cszach.Trailblazer.osm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.Locale;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.github.cszach.Trailblazer.geo.Geography;
+import io.github.cszach.Trailblazer.geo.GeographyBuilder;
+import io.github.cszach.Trailblazer.geo.ImportStatistics;
+import io.github.cszach.Trailblazer.geo.RoadGraph;
+
+/**
+ * Checks that an XML extract with more highway ways than the initial capacity of a way table is
+ * imported in full, and that unroutable ways and segments to missing nodes are dropped.
+ */
+public class OsmImporterTest {
+  /**
+   * More than twice the initial capacity of a way table, so that it grows more than once.
+   */
+  private static final int WAY_COUNT = 1200;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * Writes an extract of {@code WAY_COUNT} highway ways in a chain, where way {@code w} references
+   * nodes {@code 2w + 1}, {@code 2w + 2}, and {@code 2w + 3}. It also has a way without a
+   * {@code highway} tag, a way under construction, and a highway whose second node is missing.
+   */
+  private File writeExtract() throws IOException {
+    File file = this.folder.newFile("chain.osm");
+
+    try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(file.toPath()))) {
+      writer.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+      writer.println("<osm version=\"0.6\">");
+
+      for (int node = 1; node <= 2 * WAY_COUNT + 1; node++) {
+        writer.printf(Locale.ROOT, "  <node id=\"%d\" lat=\"%.6f\" lon=\"%.6f\"/>%n", node,
+            43 + node * 1e-5, -77 - node * 1e-5);
+      }
+
+      writer.println("  <node id=\"9001\" lat=\"43.5\" lon=\"-77.5\"/>");
+      writer.println("  <node id=\"9002\" lat=\"43.6\" lon=\"-77.6\"/>");
+
+      for (int way = 0; way < WAY_COUNT; way++) {
+        writer.printf("  <way id=\"%d\">%n", way + 1);
+
+        for (int node = 2 * way + 1; node <= 2 * way + 3; node++) {
+          writer.printf("    <nd ref=\"%d\"/>%n", node);
+        }
+
+        writer.println("    <tag k=\"highway\" v=\"residential\"/>");
+        writer.println("  </way>");
+      }
+
+      writer.println("  <way id=\"8001\"><nd ref=\"1\"/><nd ref=\"9001\"/>"
+          + "<tag k=\"building\" v=\"yes\"/></way>");
+      writer.println("  <way id=\"8002\"><nd ref=\"1\"/><nd ref=\"9002\"/>"
+          + "<tag k=\"highway\" v=\"construction\"/></way>");
+      writer.println("  <way id=\"8003\"><nd ref=\"1\"/><nd ref=\"9999\"/>"
+          + "<tag k=\"highway\" v=\"service\"/></way>");
+      writer.println("</osm>");
+    }
+
+    return file;
+  }
+
+  @Test
+  public void importsAnExtractWithManyWays() throws IOException {
+    GeographyBuilder builder = new GeographyBuilder();
+    ImportStatistics statistics = new OsmImporter(2).importInto(builder, writeExtract().getPath());
+    Geography geo = builder.build();
+    RoadGraph graph = geo.getGraph();
+
+    assertEquals(2 * WAY_COUNT + 1, statistics.getIntersectionCount());
+    assertEquals(2 * WAY_COUNT, statistics.getRoadCount());
+    assertEquals(2 * WAY_COUNT + 1, graph.getIntersectionCount());
+    assertEquals(2 * WAY_COUNT, graph.getRoadCount());
+
+    for (int way = 0; way < WAY_COUNT; way++) {
+      for (int segment = 0; segment < 2; segment++) {
+        String roadId = (way + 1) + "-" + segment;
+        int road = geo.getRoad(roadId).getIndex();
+
+        assertEquals(String.valueOf(2 * way + segment + 1),
+            geo.getIntersectionId(graph.getRoadIntersection1(road)));
+        assertEquals(String.valueOf(2 * way + segment + 2),
+            geo.getIntersectionId(graph.getRoadIntersection2(road)));
+      }
+    }
+
+    assertNull(geo.getIntersection("9001"));
+    assertNull(geo.getIntersection("9002"));
+    assertNull(geo.getRoad("8003-0"));
+  }
+
+  @Test
+  public void appendsWayTablesWithManyWays() {
+    WayTable ways = new WayTable();
+    WayTable block = new WayTable();
+    long[] refs = new long[2];
+
+    for (int way = 0; way < WAY_COUNT; way++) {
+      refs[0] = way;
+      refs[1] = way + 1;
+      block.add(way, refs, 2);
+    }
+
+    ways.add(-1, refs, 0);
+    ways.addAll(block);
+    ways.addAll(block);
+
+    assertEquals(2 * WAY_COUNT + 1, ways.size());
+    assertEquals(4 * WAY_COUNT, ways.getRefCount());
+
+    for (int way = 0; way < 2 * WAY_COUNT; way++) {
+      int start = ways.getRefStart(way + 1);
+
+      assertEquals(way % WAY_COUNT, ways.getId(way + 1));
+      assertEquals(start + 2, ways.getRefStart(way + 2));
+      assertEquals(way % WAY_COUNT, ways.getRef(start));
+      assertEquals(way % WAY_COUNT + 1, ways.getRef(start + 1));
+    }
+
+    assertEquals(WAY_COUNT + 1, ways.getDistinctRefs().length);
+  }
+}
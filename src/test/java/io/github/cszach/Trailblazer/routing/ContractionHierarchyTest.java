@@ -0,0 +1,213 @@
+package io.github.cszach.Trailblazer.routing;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.github.cszach.Trailblazer.geo.Geography;
+import io.github.cszach.Trailblazer.geo.GeographyBuilder;
+import io.github.cszach.Trailblazer.geo.RoadGraph;
+import io.github.cszach.Trailblazer.geo.RoadUpdates;
+
+/**
+ * Checks searches of a contraction hierarchy of {@code data/ur.txt} against Dijkstra's algorithm.
+ */
+public class ContractionHierarchyTest {
+  private static final int QUERY_COUNT = 500;
+  private static final long SEED = 42;
+  private static final double TOLERANCE = 1e-9;
+
+  private static RoadGraph graph;
+  private static ContractionHierarchy hierarchy;
+  private static RoutingEngine engine;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @BeforeClass
+  public static void buildHierarchy() throws IOException {
+    Geography geo = new Geography();
+
+    geo.importFromFile("data/ur.txt");
+    graph = geo.getGraph();
+    hierarchy = new ContractionHierarchyBuilder(graph).build();
+    engine = new RoutingEngine(graph, hierarchy);
+  }
+
+  /**
+   * Checks that the hierarchy answers random queries with the distance, intersections, and roads of
+   * Dijkstra's algorithm.
+   */
+  private static void assertMatchesDijkstra(RoutingEngine hierarchyEngine) {
+    Random random = new Random(SEED);
+    int n = hierarchyEngine.getGraph().getIntersectionCount();
+
+    for (int i = 0; i < QUERY_COUNT; i++) {
+      int start = random.nextInt(n);
+      int end = random.nextInt(n);
+      Route expected = hierarchyEngine.findShortestPath(start, end, Algorithm.DIJKSTRA);
+      Route actual = hierarchyEngine.findShortestPath(start, end, Algorithm.CH);
+      String query = start + " -> " + end;
+
+      assertEquals(query, expected.isFound(), actual.isFound());
+      assertEquals(query, expected.getDistance(), actual.getDistance(), TOLERANCE);
+      assertArrayEquals(query, expected.getIntersections(), actual.getIntersections());
+      assertArrayEquals(query, expected.getRoads(), actual.getRoads());
+    }
+  }
+
+  @Test
+  public void findsTheShortestPathsOfDijkstra() {
+    assertMatchesDijkstra(engine);
+  }
+
+  @Test
+  public void unpacksShortcutsIntoConnectedRoads() {
+    Random random = new Random(SEED + 1);
+    int n = graph.getIntersectionCount();
+
+    for (int i = 0; i < QUERY_COUNT; i++) {
+      Route route = engine.findShortestPath(random.nextInt(n), random.nextInt(n), Algorithm.CH);
+
+      if (!route.isFound()) {
+        continue;
+      }
+
+      int[] intersections = route.getIntersections();
+      int[] roads = route.getRoads();
+      double distance = 0;
+
+      assertEquals(intersections.length - 1, roads.length);
+
+      for (int j = 0; j < roads.length; j++) {
+        int intersection1 = graph.getRoadIntersection1(roads[j]);
+        int intersection2 = graph.getRoadIntersection2(roads[j]);
+
+        assertTrue(intersection1 == intersections[j] && intersection2 == intersections[j + 1]
+            || intersection2 == intersections[j] && intersection1 == intersections[j + 1]);
+        distance += graph.getRoadDistance(roads[j]);
+      }
+
+      assertEquals(route.getDistance(), distance, TOLERANCE);
+    }
+  }
+
+  @Test
+  public void readsWhatItWrites() throws IOException {
+    File file = folder.newFile("ur.txt.ch");
+
+    hierarchy.write(file.getPath());
+
+    ContractionHierarchy read = ContractionHierarchy.read(file.getPath());
+
+    assertTrue(read.matches(graph));
+    assertEquals(hierarchy.getIntersectionCount(), read.getIntersectionCount());
+    assertEquals(hierarchy.getUpwardEdgeCount(), read.getUpwardEdgeCount());
+    assertEquals(hierarchy.getShortcutCount(), read.getShortcutCount());
+    assertMatchesDijkstra(new RoutingEngine(graph, read));
+  }
+
+  @Test
+  public void repairsInTheSameOrderAfterRoadsChange() throws IOException {
+    Geography geo = new Geography();
+    Random random = new Random(SEED + 2);
+
+    geo.importFromFile("data/ur.txt");
+
+    RoutingEngine updated = new RoutingEngine(geo.getGraph(), hierarchy);
+
+    // Several batches, so that repaired hierarchies are repaired again
+    for (int batch = 0; batch < 5; batch++) {
+      RoadGraph before = geo.getGraph();
+      RoadUpdates updates = new RoadUpdates();
+      int n = before.getIntersectionCount();
+      Route route =
+          updated.findShortestPath(random.nextInt(n), random.nextInt(n), Algorithm.DIJKSTRA);
+
+      // Closes and lengthens roads that searches would otherwise take, and shortens a few
+      for (int j = 0; j < route.getRoads().length; j += 2) {
+        if (j % 4 == 0) {
+          updates.close(route.getRoads()[j]);
+        } else {
+          updates.setDistance(route.getRoads()[j], 3 * before.getRoadDistance(route.getRoads()[j]));
+        }
+      }
+
+      for (int j = 0; j < 3; j++) {
+        int road = random.nextInt(before.getRoadCount());
+
+        updates.setDistance(road, before.getRoadDistance(road) / 4);
+      }
+
+      geo.updateRoads(updates);
+      updated = updated.withUpdatedGraph(geo.getGraph(), updates.getRoads());
+
+      ContractionHierarchy repaired = updated.getContractionHierarchy();
+
+      assertTrue(repaired.matches(geo.getGraph()));
+
+      for (int intersection = 0; intersection < n; intersection++) {
+        assertEquals(hierarchy.getRank(intersection), repaired.getRank(intersection));
+      }
+
+      assertMatchesDijkstra(updated);
+    }
+  }
+
+  /**
+   * Checks that the repair contracts again an intersection that got no shortcut because of a
+   * witness through a road that got longer, though it is below both ends of the road.
+   */
+  @Test
+  public void repairsAContractionWhoseWitnessGotLonger() {
+    GeographyBuilder builder = new GeographyBuilder();
+    int u = builder.addIntersection("u", 0, 0);
+    int v = builder.addIntersection("v", 0, 0.01);
+    int w = builder.addIntersection("w", 0, 0.02);
+    int uv = builder.addRoad("uv", u, v);
+    int vw = builder.addRoad("vw", v, w);
+    int uw = builder.addRoad("uw", u, w);
+
+    // Dead ends, so that v is contracted first
+    builder.addRoad("up", u, builder.addIntersection("p", 1, 0));
+    builder.addRoad("wq", w, builder.addIntersection("q", 1, 0.02));
+
+    Geography geo = builder.build();
+
+    geo.updateRoads(new RoadUpdates().setDistance(uv, 0.6).setDistance(vw, 0.6).setDistance(uw, 1));
+
+    ContractionHierarchy built = new ContractionHierarchyBuilder(geo.getGraph()).build();
+    RoutingEngine before = new RoutingEngine(geo.getGraph(), built);
+
+    assertTrue(built.getRank(v) < Math.min(built.getRank(u), built.getRank(w)));
+
+    RoadUpdates updates = new RoadUpdates().setDistance(uw, 5);
+
+    geo.updateRoads(updates);
+
+    RoutingEngine after = before.withUpdatedGraph(geo.getGraph(), updates.getRoads());
+
+    assertEquals(1.2, after.findShortestPath(u, w, Algorithm.CH).getDistance(), TOLERANCE);
+    assertMatchesDijkstra(after);
+  }
+
+  @Test
+  public void doesNotMatchAnUpdatedGraph() throws IOException {
+    Geography geo = new Geography();
+
+    geo.importFromFile("data/ur.txt");
+    geo.updateRoads(new RoadUpdates().close(0));
+
+    assertFalse(hierarchy.matches(geo.getGraph()));
+  }
+}
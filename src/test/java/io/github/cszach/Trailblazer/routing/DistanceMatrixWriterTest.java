@@ -0,0 +1,38 @@
+package io.github.cszach.Trailblazer.routing;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks the CSV format of distance matrices.
+ */
+public class DistanceMatrixWriterTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void quotesIdsThatWouldBreakARow() throws IOException {
+    File file = folder.newFile("matrix.csv");
+    String[] sourceIds = {"plain", "Main St, North"};
+    String[] targetIds = {"say \"hi\"", "two\nlines"};
+
+    try (DistanceMatrixWriter writer =
+        DistanceMatrixWriter.open(file.getPath(), sourceIds, targetIds)) {
+      writer.writeRow(0, new double[] {1.5, Double.POSITIVE_INFINITY});
+      writer.writeRow(1, new double[] {0, 2});
+    }
+
+    assertEquals(
+        "source,\"say \"\"hi\"\"\",\"two\nlines\"\n" + "plain,1.5,\n"
+            + "\"Main St, North\",0.0,2.0\n",
+        new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,110 @@
+package io.github.cszach.Trailblazer.routing;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.github.cszach.Trailblazer.geo.Geography;
+import io.github.cszach.Trailblazer.geo.RoadGraph;
+import io.github.cszach.Trailblazer.geo.RoadUpdates;
+
+/**
+ * Checks searches of a multi-level overlay of {@code data/ur.txt} against Dijkstra's algorithm,
+ * both customized from scratch and customized again after roads are closed.
+ */
+public class OverlayTest {
+  /**
+   * Cell sizes small enough that the 124 intersections of the map are split on every level.
+   */
+  private static final int[] CELL_SIZES = {4, 16, 64};
+  private static final int QUERY_COUNT = 500;
+  private static final long SEED = 42;
+  private static final double TOLERANCE = 1e-9;
+
+  private Geography geo;
+  private RoutingEngine engine;
+
+  @Before
+  public void customizeOverlay() throws IOException {
+    this.geo = new Geography();
+    this.geo.importFromFile("data/ur.txt");
+
+    RoadGraph graph = this.geo.getGraph();
+    Partition partition = Partition.build(graph, CELL_SIZES);
+
+    this.engine =
+        RoutingEngine.withOverlay(new Overlay(graph, partition).customize(graph), QueueType.HEAP);
+  }
+
+  /**
+   * Checks that the overlay answers random queries with the distance, intersections, and roads of
+   * Dijkstra's algorithm.
+   */
+  private static void assertMatchesDijkstra(RoutingEngine engine, long seed) {
+    Random random = new Random(seed);
+    int n = engine.getGraph().getIntersectionCount();
+
+    for (int i = 0; i < QUERY_COUNT; i++) {
+      int start = random.nextInt(n);
+      int end = random.nextInt(n);
+      Route expected = engine.findShortestPath(start, end, Algorithm.DIJKSTRA);
+      Route actual = engine.findShortestPath(start, end, Algorithm.CRP);
+      String query = start + " -> " + end;
+
+      assertEquals(query, expected.isFound(), actual.isFound());
+      assertEquals(query, expected.getDistance(), actual.getDistance(), TOLERANCE);
+      assertArrayEquals(query, expected.getIntersections(), actual.getIntersections());
+      assertArrayEquals(query, expected.getRoads(), actual.getRoads());
+    }
+  }
+
+  @Test
+  public void partitionsOnEveryLevel() {
+    assertEquals(CELL_SIZES.length,
+        this.engine.getOverlayMetric().getOverlay().getPartition().getLevelCount());
+  }
+
+  @Test
+  public void findsTheShortestPathsOfDijkstra() {
+    assertMatchesDijkstra(this.engine, SEED);
+  }
+
+  @Test
+  public void findsTheShortestPathsOfDijkstraAfterRoadsClose() {
+    OverlayMetric previous = this.engine.getOverlayMetric();
+    Random random = new Random(SEED);
+    RoadUpdates updates = new RoadUpdates();
+
+    // Closes roads of a long route, which the searches would otherwise take, and a few at random
+    Route route = this.engine.findShortestPath(0, this.geo.getGraph().getIntersectionCount() - 1,
+        Algorithm.DIJKSTRA);
+
+    for (int j = 0; j < route.getRoads().length; j += 3) {
+      updates.close(route.getRoads()[j]);
+    }
+
+    for (int j = 0; j < 5; j++) {
+      updates.close(random.nextInt(this.geo.getGraph().getRoadCount()));
+    }
+
+    this.geo.updateRoads(updates);
+
+    RoutingEngine updated = this.engine.withUpdatedGraph(this.geo.getGraph(), updates.getRoads());
+    OverlayMetric metric = updated.getOverlayMetric();
+    int cellCount = 0;
+
+    for (int level = 1; level <= metric.getOverlay().getPartition().getLevelCount(); level++) {
+      cellCount += metric.getOverlay().getPartition().getCellCount(level);
+    }
+
+    assertTrue(metric.getOverlay() == previous.getOverlay());
+    assertTrue(metric.getCustomizedCellCount() < cellCount);
+    assertMatchesDijkstra(updated, SEED + 1);
+  }
+}
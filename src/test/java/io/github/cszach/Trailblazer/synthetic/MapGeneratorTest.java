@@ -0,0 +1,120 @@
+package io.github.cszach.Trailblazer.synthetic;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.github.cszach.Trailblazer.geo.Geography;
+import io.github.cszach.Trailblazer.geo.GeographyBuilder;
+import io.github.cszach.Trailblazer.geo.RoadGraph;
+
+/**
+ * Checks that generated maps can be read in one pass, and are the same for the same seed.
+ */
+public class MapGeneratorTest {
+  /**
+   * More than two blocks of intersections, so that roads cross from one block to another.
+   */
+  private static final int INTERSECTION_COUNT = 140_000;
+  private static final long SEED = 42;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * Writes a map to a new file in the temporary folder.
+   */
+  private File write(Topology topology, String name) throws IOException {
+    File file = folder.newFile(name);
+
+    new MapGenerator(topology, INTERSECTION_COUNT, SEED).write(file.getPath());
+
+    return file;
+  }
+
+  private void assertDefinesIntersectionsBeforeRoads(Topology topology) throws IOException {
+    File file = this.write(topology, topology + ".txt");
+    Set<String> intersections = new HashSet<>();
+    int roadCount = 0;
+
+    try (BufferedReader reader = Files.newBufferedReader(file.toPath())) {
+      for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+        String[] cells = line.split(" ");
+
+        if (cells[0].equals("i")) {
+          intersections.add(cells[1]);
+        } else {
+          assertTrue(line, intersections.contains(cells[2]) && intersections.contains(cells[3]));
+          roadCount++;
+        }
+      }
+    }
+
+    assertEquals(INTERSECTION_COUNT, intersections.size());
+    assertTrue(roadCount > INTERSECTION_COUNT);
+  }
+
+  private void assertImportsTheSameMap(Topology topology) throws IOException {
+    File file = this.write(topology, topology + ".txt");
+    File again = this.write(topology, topology + "-again.txt");
+
+    assertArrayEquals(Files.readAllBytes(file.toPath()), Files.readAllBytes(again.toPath()));
+
+    Geography imported = new Geography();
+    GeographyBuilder builder = new GeographyBuilder();
+
+    imported.importFromFile(file.getPath());
+    new MapGenerator(topology, INTERSECTION_COUNT, SEED).generateInto(builder);
+
+    Geography generated = builder.build();
+    RoadGraph expected = generated.getGraph();
+    RoadGraph actual = imported.getGraph();
+
+    assertEquals(expected.getIntersectionCount(), actual.getIntersectionCount());
+    assertEquals(expected.getRoadCount(), actual.getRoadCount());
+
+    for (int i = 0; i < expected.getIntersectionCount(); i++) {
+      assertEquals(generated.getIntersectionId(i), imported.getIntersectionId(i));
+      assertEquals(expected.getLatitude(i), actual.getLatitude(i), 0);
+      assertEquals(expected.getLongtitude(i), actual.getLongtitude(i), 0);
+    }
+
+    for (int road = 0; road < expected.getRoadCount(); road++) {
+      assertEquals(generated.getRoadId(road), imported.getRoadId(road));
+      assertEquals(expected.getRoadIntersection1(road), actual.getRoadIntersection1(road));
+      assertEquals(expected.getRoadIntersection2(road), actual.getRoadIntersection2(road));
+      assertEquals(expected.getRoadDistance(road), actual.getRoadDistance(road), 0);
+    }
+  }
+
+  @Test
+  public void definesIntersectionsBeforeRoadsOfAGrid() throws IOException {
+    assertDefinesIntersectionsBeforeRoads(Topology.PERTURBED_GRID);
+  }
+
+  @Test
+  public void definesIntersectionsBeforeRoadsOfARandomGeometricGraph() throws IOException {
+    assertDefinesIntersectionsBeforeRoads(Topology.RANDOM_GEOMETRIC);
+  }
+
+  @Test
+  public void importsTheSameGridForTheSameSeed() throws IOException {
+    assertImportsTheSameMap(Topology.PERTURBED_GRID);
+  }
+
+  @Test
+  public void importsTheSameRandomGeometricGraphForTheSameSeed() throws IOException {
+    assertImportsTheSameMap(Topology.RANDOM_GEOMETRIC);
+  }
+}